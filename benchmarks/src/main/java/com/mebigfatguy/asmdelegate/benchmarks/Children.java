@@ -0,0 +1,172 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate.benchmarks;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * the children the benchmarks delegate to. Sparse children only look at method
+ * calls, the way a typical finder does, dense children look at most events.
+ */
+public final class Children {
+
+	private Children() {
+	}
+
+	static ClassVisitor create(Density density) {
+		return (density == Density.SPARSE) ? new SparseVisitor() : new DenseVisitor();
+	}
+
+	public enum Density {
+		SPARSE, DENSE
+	}
+
+	static class SparseVisitor extends ClassVisitor {
+		long calls;
+
+		SparseVisitor() {
+			super(Opcodes.ASM9);
+		}
+
+		@Override
+		public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+				String[] exceptions) {
+			return new MethodVisitor(Opcodes.ASM9) {
+				@Override
+				public void visitMethodInsn(int opcode, String owner, String name, String descriptor,
+						boolean isInterface) {
+					calls++;
+				}
+			};
+		}
+	}
+
+	static class DenseVisitor extends ClassVisitor {
+		long events;
+
+		DenseVisitor() {
+			super(Opcodes.ASM9);
+		}
+
+		@Override
+		public void visit(int version, int access, String name, String signature, String superName,
+				String[] interfaces) {
+			events++;
+		}
+
+		@Override
+		public void visitSource(String source, String debug) {
+			events++;
+		}
+
+		@Override
+		public void visitInnerClass(String name, String outerName, String innerName, int access) {
+			events++;
+		}
+
+		@Override
+		public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+			events++;
+			return null;
+		}
+
+		@Override
+		public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+				String[] exceptions) {
+			events++;
+			return new MethodVisitor(Opcodes.ASM9) {
+				@Override
+				public void visitInsn(int opcode) {
+					events++;
+				}
+
+				@Override
+				public void visitIntInsn(int opcode, int operand) {
+					events++;
+				}
+
+				@Override
+				public void visitVarInsn(int opcode, int var) {
+					events++;
+				}
+
+				@Override
+				public void visitTypeInsn(int opcode, String type) {
+					events++;
+				}
+
+				@Override
+				public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+					events++;
+				}
+
+				@Override
+				public void visitMethodInsn(int opcode, String owner, String name, String descriptor,
+						boolean isInterface) {
+					events++;
+				}
+
+				@Override
+				public void visitJumpInsn(int opcode, Label label) {
+					events++;
+				}
+
+				@Override
+				public void visitLabel(Label label) {
+					events++;
+				}
+
+				@Override
+				public void visitLdcInsn(Object value) {
+					events++;
+				}
+
+				@Override
+				public void visitIincInsn(int var, int increment) {
+					events++;
+				}
+
+				@Override
+				public void visitLineNumber(int line, Label start) {
+					events++;
+				}
+
+				@Override
+				public void visitLocalVariable(String name, String descriptor, String signature, Label start,
+						Label end, int index) {
+					events++;
+				}
+
+				@Override
+				public void visitMaxs(int maxStack, int maxLocals) {
+					events++;
+				}
+			};
+		}
+
+		@Override
+		public void visitEnd() {
+			events++;
+		}
+	}
+}
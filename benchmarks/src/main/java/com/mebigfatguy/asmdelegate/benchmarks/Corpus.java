@@ -0,0 +1,70 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate.benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * a fixed set of class files from the java.base module of the running JDK, so
+ * every benchmark parses the same bytes.
+ */
+final class Corpus {
+
+	static final int SIZE = 512;
+
+	private static final byte[][] CLASSES = load();
+
+	private Corpus() {
+	}
+
+	static byte[][] classes() {
+		return CLASSES;
+	}
+
+	private static byte[][] load() {
+		try {
+			FileSystem jrt = FileSystems.getFileSystem(URI.create("jrt:/"));
+			List<Path> paths;
+			try (Stream<Path> files = Files.walk(jrt.getPath("/modules/java.base/java"))) {
+				paths = files.filter(p -> p.toString().endsWith(".class")).sorted().limit(SIZE)
+						.collect(Collectors.toList());
+			}
+			if (paths.size() < SIZE) {
+				throw new IllegalStateException("Only found " + paths.size() + " classes in java.base");
+			}
+
+			byte[][] classes = new byte[SIZE][];
+			for (int i = 0; i < SIZE; i++) {
+				classes[i] = Files.readAllBytes(paths.get(i));
+			}
+			return classes;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Opcodes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.mebigfatguy.asmdelegate.DelegatingClassVisitor;
+import com.mebigfatguy.asmdelegate.FusedDelegatorFactory;
+
+/**
+ * what it costs to visit a class with N children through the delegators,
+ * compared with N separate ClassReader passes. Scores are per class; run with
+ * -prof gc to also get gc.alloc.rate.norm, the bytes allocated per class.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+@OperationsPerInvocation(Corpus.SIZE)
+public class DelegationBenchmark {
+
+	@Param({ "1", "4", "16" })
+	int children;
+
+	@Param({ "SPARSE", "DENSE" })
+	Children.Density density;
+
+	@Param({ "NONE", "SKIP_DEBUG_FRAMES", "SKIP_CODE" })
+	String flags;
+
+	private byte[][] classes;
+	private List<ClassVisitor> visitors;
+	private int parsingOptions;
+	private DelegatingClassVisitor delegating;
+	private DelegatingClassVisitor pooled;
+	private ClassVisitor fused;
+
+	@Setup
+	public void setup() {
+		classes = Corpus.classes();
+
+		visitors = new ArrayList<>(children);
+		for (int i = 0; i < children; i++) {
+			visitors.add(Children.create(density));
+		}
+
+		switch (flags) {
+		case "SKIP_DEBUG_FRAMES":
+			parsingOptions = ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES;
+			break;
+		case "SKIP_CODE":
+			parsingOptions = ClassReader.SKIP_CODE;
+			break;
+		default:
+			parsingOptions = 0;
+			break;
+		}
+
+		delegating = new DelegatingClassVisitor(Opcodes.ASM9, visitors);
+		pooled = new DelegatingClassVisitor(Opcodes.ASM9, visitors, DelegatingClassVisitor.POOLED);
+		fused = FusedDelegatorFactory.newClassVisitor(Opcodes.ASM9, visitors);
+	}
+
+	@Benchmark
+	public void separatePasses(Blackhole bh) {
+		for (byte[] bytes : classes) {
+			ClassReader reader = new ClassReader(bytes);
+			for (ClassVisitor visitor : visitors) {
+				reader.accept(visitor, parsingOptions);
+			}
+			bh.consume(reader);
+		}
+	}
+
+	@Benchmark
+	public void delegating(Blackhole bh) {
+		accept(delegating, bh);
+	}
+
+	@Benchmark
+	public void pooled(Blackhole bh) {
+		accept(pooled, bh);
+	}
+
+	@Benchmark
+	public void fused(Blackhole bh) {
+		accept(fused, bh);
+	}
+
+	private void accept(ClassVisitor visitor, Blackhole bh) {
+		for (byte[] bytes : classes) {
+			ClassReader reader = new ClassReader(bytes);
+			reader.accept(visitor, parsingOptions);
+			bh.consume(reader);
+		}
+	}
+}
@@ -0,0 +1,377 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.objectweb.asm.Type;
+
+/**
+ * a compact index of the class, field, method, parameter and record component
+ * annotations, including type annotations on their signatures, of a set of
+ * classes, built by {@link AnnotationIndexer}s. Every name, descriptor and
+ * string value is stored once in a string table, and annotations and their
+ * values are stored as ints referring to it, so the index holds no objects per
+ * annotation. Queries return light views, {@link IndexedAnnotation}s, over
+ * those ints.
+ * <p>
+ * An index can be filled by indexers on several threads at once, and written
+ * to, and read back from, a file.
+ */
+public final class AnnotationIndex {
+
+	public static final int CLASS = 0;
+	public static final int FIELD = 1;
+	public static final int METHOD = 2;
+	public static final int PARAMETER = 3;
+	public static final int RECORD_COMPONENT = 4;
+
+	static final int VISIBLE = 1;
+	static final int TYPE = 2;
+
+	// the columns of an annotation row
+	static final int KIND = 0;
+	static final int OWNER = 1;
+	static final int NAME = 2;
+	static final int DESCRIPTOR = 3;
+	static final int PARAMETER_INDEX = 4;
+	static final int TYPE_REF = 5;
+	static final int TYPE_PATH = 6;
+	static final int ANNOTATION_TYPE = 7;
+	static final int FLAGS = 8;
+	static final int VALUES = 9;
+	static final int ROW_SIZE = 10;
+
+	private static final int MAGIC = 0x41444149;
+	private static final int FORMAT = 1;
+
+	private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+	private String[] strings;
+	private int numStrings;
+	private int[] rows;
+	private int numRows;
+	private int[] values;
+	private int numValues;
+
+	public AnnotationIndex() {
+		strings = new String[256];
+		rows = new int[ROW_SIZE * 64];
+		values = new int[256];
+	}
+
+	private AnnotationIndex(String[] strings, int[] rows, int[] values) {
+		this.strings = strings;
+		numStrings = strings.length;
+		for (int i = 0; i < numStrings; i++) {
+			ids.put(strings[i], Integer.valueOf(i));
+		}
+		this.rows = rows;
+		numRows = rows.length / ROW_SIZE;
+		this.values = values;
+		numValues = values.length;
+	}
+
+	/**
+	 * @return the number of annotations indexed, not counting nested ones
+	 */
+	public synchronized int size() {
+		return numRows;
+	}
+
+	/**
+	 * @param descriptor
+	 *            the descriptor of the annotation type, like Ljava/lang/Deprecated;
+	 * @return every annotation of that type, in the order they were indexed
+	 */
+	public synchronized List<IndexedAnnotation> getAnnotations(String descriptor) {
+		Integer type = ids.get(descriptor);
+		if (type == null) {
+			return Collections.emptyList();
+		}
+
+		int typeId = type.intValue();
+		List<IndexedAnnotation> annotations = new ArrayList<>();
+		for (int r = 0; r < numRows; r++) {
+			int row = r * ROW_SIZE;
+			if (rows[row + ANNOTATION_TYPE] == typeId) {
+				annotations.add(new IndexedAnnotation(this, row, typeId, rows[row + VALUES]));
+			}
+		}
+		return annotations;
+	}
+
+	/**
+	 * @return the annotations of the given type whose element of the given name
+	 *         has the given value, in the form {@link IndexedAnnotation#getValue}
+	 *         returns it
+	 */
+	public List<IndexedAnnotation> getAnnotations(String descriptor, String name, Object value) {
+		List<IndexedAnnotation> annotations = new ArrayList<>();
+		for (IndexedAnnotation annotation : getAnnotations(descriptor)) {
+			if (Objects.deepEquals(annotation.getValue(name), value)) {
+				annotations.add(annotation);
+			}
+		}
+		return annotations;
+	}
+
+	/**
+	 * writes the index to a file, that can be read back with
+	 * {@link #read(Path)}
+	 */
+	public synchronized void write(Path file) throws IOException {
+		byte[][] encoded = new byte[numStrings][];
+		int size = 24;
+		for (int i = 0; i < numStrings; i++) {
+			encoded[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+			size += 4 + encoded[i].length;
+		}
+		size += 4 * ((numRows * ROW_SIZE) + numValues);
+
+		ByteBuffer bb = ByteBuffer.allocate(size);
+		bb.putInt(MAGIC).putInt(FORMAT);
+		bb.putInt(numStrings);
+		for (byte[] string : encoded) {
+			bb.putInt(string.length).put(string);
+		}
+		bb.putInt(numRows);
+		bb.asIntBuffer().put(rows, 0, numRows * ROW_SIZE);
+		// moved through Buffer, as the ByteBuffer overrides of its setters are newer than Java 8
+		((Buffer) bb).position(bb.position() + (4 * numRows * ROW_SIZE));
+		bb.putInt(numValues);
+		bb.asIntBuffer().put(values, 0, numValues);
+		((Buffer) bb).position(bb.position() + (4 * numValues));
+		bb.putInt(MAGIC);
+		((Buffer) bb).flip();
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (bb.hasRemaining()) {
+				channel.write(bb);
+			}
+		}
+	}
+
+	/**
+	 * maps a file written by {@link #write(Path)} and copies its tables out in
+	 * bulk
+	 */
+	public static AnnotationIndex read(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer bb = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if ((bb.getInt() != MAGIC) || (bb.getInt() != FORMAT)) {
+				throw new IOException("Not an annotation index, or one of a different format: " + file);
+			}
+
+			String[] strings = new String[bb.getInt()];
+			byte[] scratch = new byte[256];
+			for (int i = 0; i < strings.length; i++) {
+				int length = bb.getInt();
+				if (scratch.length < length) {
+					scratch = new byte[length];
+				}
+				bb.get(scratch, 0, length);
+				strings[i] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+			}
+
+			int[] rows = new int[bb.getInt() * ROW_SIZE];
+			bb.asIntBuffer().get(rows);
+			((Buffer) bb).position(bb.position() + (4 * rows.length));
+			int[] values = new int[bb.getInt()];
+			bb.asIntBuffer().get(values);
+			((Buffer) bb).position(bb.position() + (4 * values.length));
+			if (bb.getInt() != MAGIC) {
+				throw new IOException("Annotation index is truncated: " + file);
+			}
+
+			return new AnnotationIndex(strings, rows, values);
+		}
+	}
+
+	/**
+	 * @return the id of the string in the string table, adding it if need be,
+	 *         or -1 for null
+	 */
+	int id(String string) {
+		if (string == null) {
+			return -1;
+		}
+
+		Integer id = ids.get(string);
+		if (id != null) {
+			return id.intValue();
+		}
+		synchronized (this) {
+			id = ids.get(string);
+			if (id == null) {
+				if (numStrings == strings.length) {
+					strings = Arrays.copyOf(strings, strings.length * 2);
+				}
+				strings[numStrings] = string;
+				id = Integer.valueOf(numStrings++);
+				ids.put(string, id);
+			}
+			return id.intValue();
+		}
+	}
+
+	/**
+	 * appends the annotations of one class, whose value offsets are relative to
+	 * the class's own values
+	 */
+	synchronized void add(int[] classRows, int numClassRows, int[] classValues, int numClassValues) {
+		int rowInts = numClassRows * ROW_SIZE;
+		int needed = (numRows * ROW_SIZE) + rowInts;
+		if (rows.length < needed) {
+			rows = Arrays.copyOf(rows, Math.max(needed, rows.length * 2));
+		}
+		if (values.length < (numValues + numClassValues)) {
+			values = Arrays.copyOf(values, Math.max(numValues + numClassValues, values.length * 2));
+		}
+
+		int base = numRows * ROW_SIZE;
+		System.arraycopy(classRows, 0, rows, base, rowInts);
+		for (int row = base; row < (base + rowInts); row += ROW_SIZE) {
+			rows[row + VALUES] += numValues;
+		}
+		System.arraycopy(classValues, 0, values, numValues, numClassValues);
+		numRows += numClassRows;
+		numValues += numClassValues;
+	}
+
+	synchronized String string(int id) {
+		return (id < 0) ? null : strings[id];
+	}
+
+	synchronized int row(int row, int column) {
+		return rows[row + column];
+	}
+
+	synchronized List<String> valueNames(int offset) {
+		int numPairs = values[offset++];
+		List<String> names = new ArrayList<>(numPairs);
+		for (int p = 0; p < numPairs; p++) {
+			names.add(strings[values[offset]]);
+			offset = skipValue(offset + 1);
+		}
+		return names;
+	}
+
+	synchronized Object value(IndexedAnnotation annotation, int offset, String name) {
+		Integer nameId = ids.get(name);
+		if (nameId == null) {
+			return null;
+		}
+
+		int numPairs = values[offset++];
+		for (int p = 0; p < numPairs; p++) {
+			if (values[offset] == nameId.intValue()) {
+				return readValue(annotation, offset + 1);
+			}
+			offset = skipValue(offset + 1);
+		}
+		return null;
+	}
+
+	private Object readValue(IndexedAnnotation annotation, int offset) {
+		int tag = values[offset];
+		switch (tag) {
+		case 'Z':
+			return Boolean.valueOf(values[offset + 1] != 0);
+		case 'B':
+			return Byte.valueOf((byte) values[offset + 1]);
+		case 'C':
+			return Character.valueOf((char) values[offset + 1]);
+		case 'S':
+			return Short.valueOf((short) values[offset + 1]);
+		case 'I':
+			return Integer.valueOf(values[offset + 1]);
+		case 'F':
+			return Float.valueOf(Float.intBitsToFloat(values[offset + 1]));
+		case 'J':
+			return Long.valueOf(readLong(offset + 1));
+		case 'D':
+			return Double.valueOf(Double.longBitsToDouble(readLong(offset + 1)));
+		case 's':
+			return strings[values[offset + 1]];
+		case 'c':
+			return Type.getType(strings[values[offset + 1]]);
+		case 'e':
+			return new String[] { strings[values[offset + 1]], strings[values[offset + 2]] };
+		case '@':
+			return new IndexedAnnotation(this, annotation.getRow(), values[offset + 1], offset + 2);
+		case '[':
+			int count = values[offset + 1];
+			List<Object> elements = new ArrayList<>(count);
+			offset += 2;
+			for (int e = 0; e < count; e++) {
+				elements.add(readValue(annotation, offset));
+				offset = skipValue(offset);
+			}
+			return elements;
+		default:
+			throw new IllegalStateException("Unknown value tag " + tag);
+		}
+	}
+
+	private long readLong(int offset) {
+		return ((long) values[offset] << 32) | (values[offset + 1] & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * @return the offset just past the value at the given offset
+	 */
+	private int skipValue(int offset) {
+		switch (values[offset]) {
+		case 'J':
+		case 'D':
+		case 'e':
+			return offset + 3;
+		case '@':
+			int numPairs = values[offset + 2];
+			offset += 3;
+			for (int p = 0; p < numPairs; p++) {
+				offset = skipValue(offset + 1);
+			}
+			return offset;
+		case '[':
+			int count = values[offset + 1];
+			offset += 2;
+			for (int e = 0; e < count; e++) {
+				offset = skipValue(offset);
+			}
+			return offset;
+		default:
+			return offset + 2;
+		}
+	}
+}
@@ -0,0 +1,397 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.util.Arrays;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.RecordComponentVisitor;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.TypePath;
+
+/**
+ * a child visitor that records every class, field, method, parameter and
+ * record component annotation, and the type annotations on them, into a shared
+ * {@link AnnotationIndex}. The annotations of a class are gathered locally and
+ * added to the index in one go at visitEnd. Method bodies aren't needed, so
+ * with no other children wanting them the class is parsed with SKIP_CODE, and
+ * type annotations inside code aren't indexed.
+ * <p>
+ * With a {@link ClassScanner}, give every indexer the same index; there is
+ * nothing left to merge.
+ */
+public class AnnotationIndexer extends ClassVisitor implements ParsingRequirements, Mergeable<AnnotationIndexer> {
+
+	private final AnnotationIndex index;
+	private int[] rows = new int[AnnotationIndex.ROW_SIZE * 16];
+	private int numRows;
+	private int[] values = new int[256];
+	private int numValues;
+	private int owner;
+	private MemberIndexer fieldIndexer;
+	private MemberIndexer methodIndexer;
+	private MemberIndexer recordComponentIndexer;
+
+	public AnnotationIndexer(int api, AnnotationIndex index) {
+		super(api);
+		this.index = index;
+	}
+
+	public AnnotationIndex getIndex() {
+		return index;
+	}
+
+	@Override
+	public int getParsingRequirements() {
+		return 0;
+	}
+
+	@Override
+	public void merge(AnnotationIndexer other) {
+		// the index is shared, so it already holds the other indexer's classes
+	}
+
+	@Override
+	public void visit(int version, int access, String name, String signature, String superName,
+			String[] interfaces) {
+		owner = index.id(name);
+		numRows = 0;
+		numValues = 0;
+	}
+
+	@Override
+	public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+		return annotation(AnnotationIndex.CLASS, -1, -1, -1, 0, 0, null, descriptor, visible);
+	}
+
+	@Override
+	public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+		return annotation(AnnotationIndex.CLASS, -1, -1, -1, AnnotationIndex.TYPE, typeRef, typePath, descriptor,
+				visible);
+	}
+
+	@Override
+	public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+		if (fieldIndexer == null) {
+			fieldIndexer = new MemberIndexer(AnnotationIndex.FIELD);
+		}
+		return fieldIndexer.field(name, descriptor);
+	}
+
+	@Override
+	public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+			String[] exceptions) {
+		if (methodIndexer == null) {
+			methodIndexer = new MemberIndexer(AnnotationIndex.METHOD);
+		}
+		return methodIndexer.method(name, descriptor);
+	}
+
+	@Override
+	public RecordComponentVisitor visitRecordComponent(String name, String descriptor, String signature) {
+		if (recordComponentIndexer == null) {
+			recordComponentIndexer = new MemberIndexer(AnnotationIndex.RECORD_COMPONENT);
+		}
+		return recordComponentIndexer.recordComponent(name, descriptor);
+	}
+
+	@Override
+	public void visitEnd() {
+		if (numRows > 0) {
+			index.add(rows, numRows, values, numValues);
+		}
+	}
+
+	private AnnotationVisitor annotation(int kind, int name, int descriptor, int parameter, int flags, int typeRef,
+			TypePath typePath, String annotationDescriptor, boolean visible) {
+		int row = numRows * AnnotationIndex.ROW_SIZE;
+		if (rows.length < (row + AnnotationIndex.ROW_SIZE)) {
+			rows = Arrays.copyOf(rows, rows.length * 2);
+		}
+		rows[row + AnnotationIndex.KIND] = kind;
+		rows[row + AnnotationIndex.OWNER] = owner;
+		rows[row + AnnotationIndex.NAME] = name;
+		rows[row + AnnotationIndex.DESCRIPTOR] = descriptor;
+		rows[row + AnnotationIndex.PARAMETER_INDEX] = parameter;
+		rows[row + AnnotationIndex.TYPE_REF] = typeRef;
+		rows[row + AnnotationIndex.TYPE_PATH] = (typePath == null) ? -1 : index.id(typePath.toString());
+		rows[row + AnnotationIndex.ANNOTATION_TYPE] = index.id(annotationDescriptor);
+		rows[row + AnnotationIndex.FLAGS] = flags | (visible ? AnnotationIndex.VISIBLE : 0);
+		rows[row + AnnotationIndex.VALUES] = numValues;
+		numRows++;
+
+		int count = numValues;
+		append(0);
+		return new ValueIndexer(count, true);
+	}
+
+	private void append(int value) {
+		if (numValues == values.length) {
+			values = Arrays.copyOf(values, values.length * 2);
+		}
+		values[numValues++] = value;
+	}
+
+	private void appendValue(Object value) {
+		if (value instanceof String) {
+			append('s');
+			append(index.id((String) value));
+		} else if (value instanceof Integer) {
+			append('I');
+			append(((Integer) value).intValue());
+		} else if (value instanceof Boolean) {
+			append('Z');
+			append(((Boolean) value).booleanValue() ? 1 : 0);
+		} else if (value instanceof Type) {
+			append('c');
+			append(index.id(((Type) value).getDescriptor()));
+		} else if (value instanceof Long) {
+			append('J');
+			appendLong(((Long) value).longValue());
+		} else if (value instanceof Character) {
+			append('C');
+			append(((Character) value).charValue());
+		} else if (value instanceof Byte) {
+			append('B');
+			append(((Byte) value).byteValue());
+		} else if (value instanceof Short) {
+			append('S');
+			append(((Short) value).shortValue());
+		} else if (value instanceof Float) {
+			append('F');
+			append(Float.floatToRawIntBits(((Float) value).floatValue()));
+		} else if (value instanceof Double) {
+			append('D');
+			appendLong(Double.doubleToRawLongBits(((Double) value).doubleValue()));
+		} else {
+			appendPrimitiveArray(value);
+		}
+	}
+
+	private void appendLong(long value) {
+		append((int) (value >>> 32));
+		append((int) value);
+	}
+
+	/**
+	 * ClassReader hands arrays of primitives over in one go
+	 */
+	private void appendPrimitiveArray(Object array) {
+		append('[');
+		if (array instanceof byte[]) {
+			byte[] a = (byte[]) array;
+			append(a.length);
+			for (byte b : a) {
+				appendValue(Byte.valueOf(b));
+			}
+		} else if (array instanceof boolean[]) {
+			boolean[] a = (boolean[]) array;
+			append(a.length);
+			for (boolean b : a) {
+				appendValue(Boolean.valueOf(b));
+			}
+		} else if (array instanceof short[]) {
+			short[] a = (short[]) array;
+			append(a.length);
+			for (short s : a) {
+				appendValue(Short.valueOf(s));
+			}
+		} else if (array instanceof char[]) {
+			char[] a = (char[]) array;
+			append(a.length);
+			for (char c : a) {
+				appendValue(Character.valueOf(c));
+			}
+		} else if (array instanceof int[]) {
+			int[] a = (int[]) array;
+			append(a.length);
+			for (int i : a) {
+				appendValue(Integer.valueOf(i));
+			}
+		} else if (array instanceof long[]) {
+			long[] a = (long[]) array;
+			append(a.length);
+			for (long l : a) {
+				appendValue(Long.valueOf(l));
+			}
+		} else if (array instanceof float[]) {
+			float[] a = (float[]) array;
+			append(a.length);
+			for (float f : a) {
+				appendValue(Float.valueOf(f));
+			}
+		} else if (array instanceof double[]) {
+			double[] a = (double[]) array;
+			append(a.length);
+			for (double d : a) {
+				appendValue(Double.valueOf(d));
+			}
+		} else {
+			throw new IllegalArgumentException("Unsupported annotation value " + array);
+		}
+	}
+
+	/**
+	 * appends the element values of an annotation, or of an array, bumping the
+	 * count in front of them for each one
+	 */
+	private class ValueIndexer extends AnnotationVisitor {
+		private final int count;
+		private final boolean named;
+
+		ValueIndexer(int count, boolean named) {
+			super(AnnotationIndexer.this.api);
+			this.count = count;
+			this.named = named;
+		}
+
+		private void element(String name) {
+			values[count]++;
+			if (named) {
+				append(index.id(name));
+			}
+		}
+
+		@Override
+		public void visit(String name, Object value) {
+			element(name);
+			appendValue(value);
+		}
+
+		@Override
+		public void visitEnum(String name, String descriptor, String value) {
+			element(name);
+			append('e');
+			append(index.id(descriptor));
+			append(index.id(value));
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotation(String name, String descriptor) {
+			element(name);
+			append('@');
+			append(index.id(descriptor));
+			int nestedCount = numValues;
+			append(0);
+			return new ValueIndexer(nestedCount, true);
+		}
+
+		@Override
+		public AnnotationVisitor visitArray(String name) {
+			element(name);
+			append('[');
+			int arrayCount = numValues;
+			append(0);
+			return new ValueIndexer(arrayCount, false);
+		}
+	}
+
+	/**
+	 * the field, method or record component visitor, reused for each member of
+	 * its kind as members are visited one at a time
+	 */
+	private class MemberIndexer {
+		private final int kind;
+		private int name;
+		private int descriptor;
+		private FieldVisitor fieldVisitor;
+		private MethodVisitor methodVisitor;
+		private RecordComponentVisitor recordComponentVisitor;
+
+		MemberIndexer(int kind) {
+			this.kind = kind;
+		}
+
+		private void member(String memberName, String memberDescriptor) {
+			name = index.id(memberName);
+			descriptor = index.id(memberDescriptor);
+		}
+
+		AnnotationVisitor annotation(int parameter, int flags, int typeRef, TypePath typePath,
+				String annotationDescriptor, boolean visible) {
+			return AnnotationIndexer.this.annotation((parameter >= 0) ? AnnotationIndex.PARAMETER : kind, name,
+					descriptor, parameter, flags, typeRef, typePath, annotationDescriptor, visible);
+		}
+
+		FieldVisitor field(String fieldName, String fieldDescriptor) {
+			member(fieldName, fieldDescriptor);
+			if (fieldVisitor == null) {
+				fieldVisitor = new FieldVisitor(api) {
+					@Override
+					public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+						return annotation(-1, 0, 0, null, desc, visible);
+					}
+
+					@Override
+					public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String desc,
+							boolean visible) {
+						return annotation(-1, AnnotationIndex.TYPE, typeRef, typePath, desc, visible);
+					}
+				};
+			}
+			return fieldVisitor;
+		}
+
+		MethodVisitor method(String methodName, String methodDescriptor) {
+			member(methodName, methodDescriptor);
+			if (methodVisitor == null) {
+				methodVisitor = new MethodVisitor(api) {
+					@Override
+					public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+						return annotation(-1, 0, 0, null, desc, visible);
+					}
+
+					@Override
+					public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String desc,
+							boolean visible) {
+						return annotation(-1, AnnotationIndex.TYPE, typeRef, typePath, desc, visible);
+					}
+
+					@Override
+					public AnnotationVisitor visitParameterAnnotation(int parameter, String desc, boolean visible) {
+						return annotation(parameter, 0, 0, null, desc, visible);
+					}
+				};
+			}
+			return methodVisitor;
+		}
+
+		RecordComponentVisitor recordComponent(String componentName, String componentDescriptor) {
+			member(componentName, componentDescriptor);
+			if (recordComponentVisitor == null) {
+				recordComponentVisitor = new RecordComponentVisitor(api) {
+					@Override
+					public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+						return annotation(-1, 0, 0, null, desc, visible);
+					}
+
+					@Override
+					public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String desc,
+							boolean visible) {
+						return annotation(-1, AnnotationIndex.TYPE, typeRef, typePath, desc, visible);
+					}
+				};
+			}
+			return recordComponentVisitor;
+		}
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+
+/**
+ * delegates to groups of visitors that each run on their own thread, so that
+ * one slow visitor doesn't hold up the others or the parsing. The parsing
+ * thread records each class into an {@link EventTape} and publishes it to an
+ * {@link EventRing}, and every group replays the whole class, through a
+ * {@link DelegatingClassVisitor}, on its thread. The visitors of a group are
+ * only ever called from that group's thread, so they need no synchronization,
+ * but their results must only be looked at after {@link #await()}.
+ */
+public class AsyncDelegatingClassVisitor extends EventRecorder implements Closeable {
+
+	private static final int DEFAULT_RING_SIZE = 1024;
+	private static final EventTape CLOSED = new EventTape(new int[0], new Object[0]);
+
+	private final EventRing ring;
+	private final Consumer[] consumers;
+	private final int parsingOptions;
+	private boolean closed;
+
+	/**
+	 * runs each visitor on its own thread
+	 */
+	public AsyncDelegatingClassVisitor(int api, List<ClassVisitor> visitors) {
+		this(api, singletonGroups(visitors), DEFAULT_RING_SIZE, 0);
+	}
+
+	/**
+	 * @param groups
+	 *            the groups of visitors, each run on its own thread
+	 * @param ringSize
+	 *            how many classes the parsing thread may get ahead of the
+	 *            slowest group, rounded up to a power of 2
+	 * @param options
+	 *            the {@link DelegatingClassVisitor} options each group is
+	 *            delegated to with
+	 */
+	public AsyncDelegatingClassVisitor(int api, List<List<ClassVisitor>> groups, int ringSize, int options) {
+		super(api);
+
+		List<ClassVisitor> all = new ArrayList<>();
+		for (List<ClassVisitor> group : groups) {
+			all.addAll(group);
+		}
+		parsingOptions = new DelegatingClassVisitor(api, all, options).getParsingOptions();
+
+		ring = new EventRing(ringSize, groups.size());
+		consumers = new Consumer[groups.size()];
+		for (int i = 0; i < consumers.length; i++) {
+			consumers[i] = new Consumer(i, new DelegatingClassVisitor(api, groups.get(i), options));
+			consumers[i].start();
+		}
+	}
+
+	/**
+	 * @see DelegatingClassVisitor#getParsingOptions()
+	 */
+	public int getParsingOptions() {
+		return parsingOptions;
+	}
+
+	/**
+	 * parses the class with {@link #getParsingOptions()} and publishes it to the
+	 * groups, returning without waiting for them
+	 */
+	public void accept(ClassReader reader) {
+		reader.accept(this, parsingOptions);
+	}
+
+	@Override
+	public void visitEnd() {
+		super.visitEnd();
+		ring.publish(getTape());
+	}
+
+	/**
+	 * waits until every group has visited every class published so far, after
+	 * which the results of the visitors can be read
+	 *
+	 * @throws IllegalStateException
+	 *             if a visitor failed, with that failure as the cause. The
+	 *             group of a failed visitor skips the rest of the classes.
+	 */
+	public void await() {
+		ring.drain();
+		for (Consumer consumer : consumers) {
+			if (consumer.failure != null) {
+				throw new IllegalStateException("Visitor failed on " + consumer.getName(), consumer.failure);
+			}
+		}
+	}
+
+	/**
+	 * lets the groups finish the classes published so far, and stops their
+	 * threads
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+
+		ring.publish(CLOSED);
+		boolean interrupted = false;
+		for (Consumer consumer : consumers) {
+			while (consumer.isAlive()) {
+				try {
+					consumer.join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static List<List<ClassVisitor>> singletonGroups(List<ClassVisitor> visitors) {
+		List<List<ClassVisitor>> groups = new ArrayList<>(visitors.size());
+		for (ClassVisitor visitor : visitors) {
+			groups.add(Collections.singletonList(visitor));
+		}
+		return groups;
+	}
+
+	private class Consumer extends Thread {
+
+		private final int index;
+		private final DelegatingClassVisitor delegator;
+		private volatile Throwable failure;
+
+		Consumer(int index, DelegatingClassVisitor delegator) {
+			super("asm-delegate-async-" + index);
+			this.index = index;
+			this.delegator = delegator;
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			for (long sequence = 0;; sequence++) {
+				EventTape tape = ring.take(sequence);
+				if (tape == CLOSED) {
+					ring.release(index, sequence);
+					return;
+				}
+
+				if (failure == null) {
+					try {
+						tape.accept(delegator);
+					} catch (VisitAbortedException e) {
+						// every visitor of the group detached from this class
+					} catch (RuntimeException | Error e) {
+						failure = e;
+					}
+				}
+				ring.release(index, sequence);
+			}
+		}
+	}
+}
@@ -0,0 +1,38 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+/**
+ * implemented by the method visitors children return, when they would rather
+ * get the instructions of a method in one {@link InstructionBlock} than one
+ * call at a time. A {@link DelegatingMethodVisitor} then leaves the visitor
+ * out of the instruction, label and line number events, and hands it the
+ * block of the whole method just before visitMaxs, or before visitEnd if
+ * visitMaxs isn't called. All the other events, such as frames, try catch
+ * blocks and local variables, are still delivered one by one.
+ */
+public interface BatchedInstructions {
+
+	/**
+	 * @param block
+	 *            the instructions of the method, which are only valid for the
+	 *            duration of the call
+	 */
+	void visitInstructions(InstructionBlock block);
+}
@@ -0,0 +1,52 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * implemented by child class visitors of a {@link DelegatingClassVisitor}
+ * whose results for a class only depend on the bytes of that class, so they
+ * can be kept in a {@link ResultCache}. When the cache already holds the
+ * results of a class for this version of the visitor, they are replayed with
+ * readResults and the visitor is left out of the parse, and when every child
+ * is replayed the class isn't parsed at all.
+ */
+public interface Cacheable {
+
+	/**
+	 * @return an id that must change whenever the results this visitor produces
+	 *         for the same class bytes would change
+	 */
+	String getCacheVersion();
+
+	/**
+	 * writes the results collected from the class that was just visited, and
+	 * only that class
+	 */
+	void writeResults(DataOutput out) throws IOException;
+
+	/**
+	 * adds the results written by writeResults for a class, as if that class
+	 * had just been visited
+	 */
+	void readResults(DataInput in) throws IOException;
+}
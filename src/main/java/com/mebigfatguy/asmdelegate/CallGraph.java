@@ -0,0 +1,253 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * a call graph built by a {@link CallGraphBuilder}, over dense method ids. The
+ * edges are held off heap in compressed sparse row form, in both directions:
+ * an offsets array per direction, indexed by method id, into one array of the
+ * callees, or callers, of every method, each list sorted and without
+ * duplicates. A graph written with {@link #write(Path)} is memory mapped by
+ * {@link #read(Path)}, so only the method table is read onto the heap.
+ * <p>
+ * The graph holds the calls as written in the byte code, so a virtual call is
+ * an edge to the method it names, not to its overrides.
+ */
+public final class CallGraph {
+
+	private static final int MAGIC = 0x41444347;
+	private static final int FORMAT = 1;
+
+	private final String[] strings;
+	private final int[] methods;
+	private final int numMethods;
+	private final int numEdges;
+	private final ByteBuffer edges;
+	private final IntBuffer csr;
+	private final int callersStart;
+	private final Map<String, Integer> stringIds = new HashMap<>();
+	private final Map<Long, Integer> signatureIds = new HashMap<>();
+	private final Map<Long, Integer> methodIds = new HashMap<>();
+
+	/**
+	 * @param methods
+	 *            the owner, name and descriptor of each method, as indexes into
+	 *            the strings
+	 * @param edges
+	 *            the callee offsets and callees, then the caller offsets and
+	 *            callers, as little endian ints
+	 */
+	CallGraph(String[] strings, int[] methods, int numEdges, ByteBuffer edges) {
+		this.strings = strings;
+		this.methods = methods;
+		numMethods = methods.length / 3;
+		this.numEdges = numEdges;
+		this.edges = edges;
+		csr = edges.asIntBuffer();
+		callersStart = numMethods + 1 + numEdges + numMethods + 1;
+
+		for (int i = 0; i < strings.length; i++) {
+			stringIds.put(strings[i], Integer.valueOf(i));
+		}
+		for (int m = 0; m < numMethods; m++) {
+			Long signature = Long.valueOf(pair(methods[(3 * m) + 1], methods[(3 * m) + 2]));
+			Integer signatureId = signatureIds.get(signature);
+			if (signatureId == null) {
+				signatureId = Integer.valueOf(signatureIds.size());
+				signatureIds.put(signature, signatureId);
+			}
+			methodIds.put(Long.valueOf(pair(methods[3 * m], signatureId.intValue())), Integer.valueOf(m));
+		}
+	}
+
+	static ByteBuffer allocate(int numMethods, int numEdges) {
+		long ints = (2L * (numMethods + 1)) + (2L * numEdges);
+		if ((4 * ints) > Integer.MAX_VALUE) {
+			throw new IllegalStateException("Call graph of " + numMethods + " methods and " + numEdges
+					+ " calls is too big");
+		}
+		return ByteBuffer.allocateDirect((int) (4 * ints)).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * @return the number of methods, whose ids run from 0 to size - 1
+	 */
+	public int size() {
+		return numMethods;
+	}
+
+	public int getEdgeCount() {
+		return numEdges;
+	}
+
+	/**
+	 * @return the id of the method, or -1 if it neither calls nor is called
+	 */
+	public int getMethodId(String owner, String name, String descriptor) {
+		Integer ownerId = stringIds.get(owner);
+		Integer nameId = stringIds.get(name);
+		Integer descriptorId = stringIds.get(descriptor);
+		if ((ownerId == null) || (nameId == null) || (descriptorId == null)) {
+			return -1;
+		}
+		Integer signatureId = signatureIds.get(Long.valueOf(pair(nameId.intValue(), descriptorId.intValue())));
+		if (signatureId == null) {
+			return -1;
+		}
+		Integer id = methodIds.get(Long.valueOf(pair(ownerId.intValue(), signatureId.intValue())));
+		return (id == null) ? -1 : id.intValue();
+	}
+
+	public String getOwner(int method) {
+		return strings[methods[3 * method]];
+	}
+
+	public String getName(int method) {
+		return strings[methods[(3 * method) + 1]];
+	}
+
+	public String getDescriptor(int method) {
+		return strings[methods[(3 * method) + 2]];
+	}
+
+	public int getCalleeCount(int method) {
+		return csr.get(method + 1) - csr.get(method);
+	}
+
+	/**
+	 * @return the ids of the methods the given method calls, in ascending order
+	 */
+	public int[] getCallees(int method) {
+		return slice(0, numMethods + 1, method);
+	}
+
+	public int getCallerCount(int method) {
+		int offsets = callersStart - (numMethods + 1);
+		return csr.get(offsets + method + 1) - csr.get(offsets + method);
+	}
+
+	/**
+	 * @return the ids of the methods that call the given method, in ascending
+	 *         order
+	 */
+	public int[] getCallers(int method) {
+		return slice(callersStart - (numMethods + 1), callersStart, method);
+	}
+
+	private int[] slice(int offsets, int targets, int method) {
+		int from = csr.get(offsets + method);
+		int[] slice = new int[csr.get(offsets + method + 1) - from];
+		for (int i = 0; i < slice.length; i++) {
+			slice[i] = csr.get(targets + from + i);
+		}
+		return slice;
+	}
+
+	/**
+	 * writes the graph to a file, that can be mapped back with
+	 * {@link #read(Path)}
+	 */
+	public void write(Path file) throws IOException {
+		byte[][] encoded = new byte[strings.length][];
+		int size = 16 + (4 * methods.length);
+		for (int i = 0; i < strings.length; i++) {
+			encoded[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+			size += 4 + encoded[i].length;
+		}
+
+		ByteBuffer header = ByteBuffer.allocate(size + 4).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC).putInt(FORMAT);
+		header.putInt(strings.length);
+		for (byte[] string : encoded) {
+			header.putInt(string.length).put(string);
+		}
+		header.putInt(numMethods);
+		header.asIntBuffer().put(methods);
+		// moved through Buffer, as the ByteBuffer overrides of its setters are newer than Java 8
+		((Buffer) header).position(header.position() + (4 * methods.length));
+		header.putInt(numEdges);
+		((Buffer) header).flip();
+
+		ByteBuffer trailer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0, MAGIC);
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			for (ByteBuffer bb : new ByteBuffer[] { header, edges.duplicate(), trailer }) {
+				while (bb.hasRemaining()) {
+					channel.write(bb);
+				}
+			}
+		}
+	}
+
+	/**
+	 * maps a file written by {@link #write(Path)}. The edges are read straight
+	 * from the mapping, which stays valid after the file is closed.
+	 */
+	public static CallGraph read(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer bb = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			bb.order(ByteOrder.LITTLE_ENDIAN);
+			if ((bb.getInt() != MAGIC) || (bb.getInt() != FORMAT)) {
+				throw new IOException("Not a call graph, or one of a different format: " + file);
+			}
+
+			String[] strings = new String[bb.getInt()];
+			byte[] scratch = new byte[256];
+			for (int i = 0; i < strings.length; i++) {
+				int length = bb.getInt();
+				if (scratch.length < length) {
+					scratch = new byte[length];
+				}
+				bb.get(scratch, 0, length);
+				strings[i] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+			}
+
+			int[] methods = new int[3 * bb.getInt()];
+			bb.asIntBuffer().get(methods);
+			((Buffer) bb).position(bb.position() + (4 * methods.length));
+			int numEdges = bb.getInt();
+
+			int numMethods = methods.length / 3;
+			int csrBytes = 4 * ((2 * (numMethods + 1)) + (2 * numEdges));
+			if ((bb.remaining() != (csrBytes + 4)) || (bb.getInt(bb.position() + csrBytes) != MAGIC)) {
+				throw new IOException("Call graph is truncated: " + file);
+			}
+			ByteBuffer edges = bb.slice().order(ByteOrder.LITTLE_ENDIAN);
+			((Buffer) edges).limit(csrBytes);
+			return new CallGraph(strings, methods, numEdges, edges);
+		}
+	}
+
+	private static long pair(int high, int low) {
+		return ((long) high << 32) | (low & 0xFFFFFFFFL);
+	}
+}
@@ -0,0 +1,241 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * collects the calls {@link CallGraphCollector}s find, from any number of
+ * threads at once, and compacts them into a {@link CallGraph}. Methods get a
+ * dense int id the first time they are seen, as caller or callee, and edges
+ * are buffered off heap, as a caller and callee id packed in a long, until
+ * {@link #build()}.
+ */
+public final class CallGraphBuilder {
+
+	private static final int MIN_CHUNK_EDGES = 4096;
+	private static final int MAX_CHUNK_EDGES = 1 << 20;
+
+	// the callees are bucketed in one int indexed buffer
+	private static final long MAX_EDGES = Integer.MAX_VALUE / 4;
+
+	private final SymbolTable symbols;
+	private final ConcurrentHashMap<Long, Integer> signatures = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<Long, Integer> methods = new ConcurrentHashMap<>();
+	private final AtomicInteger numSignatures = new AtomicInteger();
+	private final Object methodLock = new Object();
+	private int[] methodSymbols = new int[3 * 1024];
+	private int numMethods;
+	private final List<LongBuffer> chunks = new ArrayList<>();
+	private LongBuffer current;
+	private long numEdges;
+
+	public CallGraphBuilder() {
+		this(new SymbolTable());
+	}
+
+	/**
+	 * @param symbols
+	 *            the table to intern class names, method names and descriptors
+	 *            in, such as the one of a {@link ClassScanner}, to share them
+	 *            with other children
+	 */
+	public CallGraphBuilder(SymbolTable symbols) {
+		this.symbols = symbols;
+	}
+
+	/**
+	 * @return the id of the method, giving it the next one if it is new
+	 */
+	public int methodId(String owner, String name, String descriptor) {
+		int ownerId = symbols.id(owner);
+		int nameId = symbols.id(name);
+		int descriptorId = symbols.id(descriptor);
+
+		Long signatureKey = Long.valueOf(((long) nameId << 32) | (descriptorId & 0xFFFFFFFFL));
+		Integer signature = signatures.get(signatureKey);
+		if (signature == null) {
+			signature = signatures.computeIfAbsent(signatureKey, k -> Integer.valueOf(numSignatures.getAndIncrement()));
+		}
+
+		Long methodKey = Long.valueOf(((long) ownerId << 32) | (signature.intValue() & 0xFFFFFFFFL));
+		Integer method = methods.get(methodKey);
+		if (method == null) {
+			method = methods.computeIfAbsent(methodKey, k -> addMethod(ownerId, nameId, descriptorId));
+		}
+		return method.intValue();
+	}
+
+	/**
+	 * @return the number of methods seen so far
+	 */
+	public int size() {
+		synchronized (methodLock) {
+			return numMethods;
+		}
+	}
+
+	/**
+	 * appends edges, each a caller id shifted left by 32 over a callee id
+	 */
+	synchronized void addEdges(long[] edges, int count) {
+		int added = 0;
+		while (added < count) {
+			if ((current == null) || !current.hasRemaining()) {
+				int size = (current == null) ? MIN_CHUNK_EDGES : Math.min(current.capacity() * 2, MAX_CHUNK_EDGES);
+				current = ByteBuffer.allocateDirect(size * 8).order(ByteOrder.nativeOrder()).asLongBuffer();
+				chunks.add(current);
+			}
+			int n = Math.min(count - added, current.remaining());
+			current.put(edges, added, n);
+			added += n;
+		}
+		numEdges += count;
+	}
+
+	/**
+	 * compacts the edges seen so far into a graph, dropping duplicates. The
+	 * builder can carry on collecting afterwards.
+	 *
+	 * @throws IllegalStateException
+	 *             if there are more edges than one graph can index
+	 */
+	public synchronized CallGraph build() {
+		if (numEdges > MAX_EDGES) {
+			throw new IllegalStateException("Too many calls for one graph: " + numEdges);
+		}
+
+		int n;
+		int[] triples;
+		synchronized (methodLock) {
+			n = numMethods;
+			triples = Arrays.copyOf(methodSymbols, 3 * n);
+		}
+		String[] strings = localStrings(triples);
+
+		// bucket the callees by caller, then sort and dedupe each bucket in place
+		int[] calleeOffsets = new int[n + 1];
+		for (LongBuffer chunk : chunks) {
+			for (int i = 0; i < chunk.position(); i++) {
+				calleeOffsets[(int) (chunk.get(i) >>> 32) + 1]++;
+			}
+		}
+		for (int m = 0; m < n; m++) {
+			calleeOffsets[m + 1] += calleeOffsets[m];
+		}
+
+		IntBuffer callees = ByteBuffer.allocateDirect(4 * (int) Math.max(numEdges, 1)).order(ByteOrder.nativeOrder())
+				.asIntBuffer();
+		int[] cursor = Arrays.copyOf(calleeOffsets, n);
+		for (LongBuffer chunk : chunks) {
+			for (int i = 0; i < chunk.position(); i++) {
+				long edge = chunk.get(i);
+				callees.put(cursor[(int) (edge >>> 32)]++, (int) edge);
+			}
+		}
+
+		int[] row = new int[16];
+		int numUnique = 0;
+		for (int m = 0; m < n; m++) {
+			int from = calleeOffsets[m];
+			int length = calleeOffsets[m + 1] - from;
+			calleeOffsets[m] = numUnique;
+			if (row.length < length) {
+				row = new int[Math.max(length, row.length * 2)];
+			}
+			for (int i = 0; i < length; i++) {
+				row[i] = callees.get(from + i);
+			}
+			Arrays.sort(row, 0, length);
+			for (int i = 0; i < length; i++) {
+				if ((i == 0) || (row[i] != row[i - 1])) {
+					callees.put(numUnique++, row[i]);
+				}
+			}
+		}
+		calleeOffsets[n] = numUnique;
+
+		// walking the callers in order leaves each list of callers sorted too
+		int[] callerOffsets = new int[n + 1];
+		for (int e = 0; e < numUnique; e++) {
+			callerOffsets[callees.get(e) + 1]++;
+		}
+		for (int m = 0; m < n; m++) {
+			callerOffsets[m + 1] += callerOffsets[m];
+		}
+
+		ByteBuffer edges = CallGraph.allocate(n, numUnique);
+		IntBuffer csr = edges.asIntBuffer();
+		csr.put(calleeOffsets);
+		for (int e = 0; e < numUnique; e++) {
+			csr.put(callees.get(e));
+		}
+		csr.put(callerOffsets);
+		int callersStart = csr.position();
+		cursor = Arrays.copyOf(callerOffsets, n);
+		for (int m = 0; m < n; m++) {
+			for (int e = calleeOffsets[m]; e < calleeOffsets[m + 1]; e++) {
+				csr.put(callersStart + cursor[callees.get(e)]++, m);
+			}
+		}
+
+		return new CallGraph(strings, triples, numUnique, edges);
+	}
+
+	private Integer addMethod(int owner, int name, int descriptor) {
+		synchronized (methodLock) {
+			int id = numMethods;
+			if (methodSymbols.length < (3 * (id + 1))) {
+				methodSymbols = Arrays.copyOf(methodSymbols, methodSymbols.length * 2);
+			}
+			methodSymbols[3 * id] = owner;
+			methodSymbols[(3 * id) + 1] = name;
+			methodSymbols[(3 * id) + 2] = descriptor;
+			numMethods = id + 1;
+			return Integer.valueOf(id);
+		}
+	}
+
+	/**
+	 * renumbers the symbols of the methods into a string table of just those,
+	 * as the symbol table may be shared with other children
+	 */
+	private String[] localStrings(int[] triples) {
+		int[] local = new int[symbols.size()];
+		Arrays.fill(local, -1);
+		List<String> strings = new ArrayList<>();
+		for (int i = 0; i < triples.length; i++) {
+			int symbol = triples[i];
+			if (local[symbol] < 0) {
+				local[symbol] = strings.size();
+				strings.add(symbols.symbol(symbol));
+			}
+			triples[i] = local[symbol];
+		}
+		return strings.toArray(new String[0]);
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.util.Arrays;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * a child visitor that records the calls of every method into a shared
+ * {@link CallGraphBuilder}. The calls of a class are gathered locally, as
+ * caller and callee ids packed in longs, and added to the builder in one go at
+ * visitEnd. An invokedynamic is recorded as calls to the method handles among
+ * its bootstrap arguments, such as the implementation of a lambda, or to its
+ * bootstrap method if there are none.
+ * <p>
+ * With a {@link ClassScanner}, give every collector the same builder; there is
+ * nothing left to merge.
+ */
+public class CallGraphCollector extends ClassVisitor implements ParsingRequirements, Mergeable<CallGraphCollector> {
+
+	private final CallGraphBuilder builder;
+	private final CallRecorder recorder;
+	private String className;
+	private long[] edges = new long[64];
+	private int numEdges;
+
+	public CallGraphCollector(int api, CallGraphBuilder builder) {
+		super(api);
+		this.builder = builder;
+		recorder = new CallRecorder(api);
+	}
+
+	public CallGraphBuilder getBuilder() {
+		return builder;
+	}
+
+	@Override
+	public int getParsingRequirements() {
+		return CODE;
+	}
+
+	@Override
+	public void merge(CallGraphCollector other) {
+		// the builder is shared, so it already holds the other collector's calls
+	}
+
+	@Override
+	public void visit(int version, int access, String name, String signature, String superName,
+			String[] interfaces) {
+		className = name;
+		numEdges = 0;
+	}
+
+	@Override
+	public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+			String[] exceptions) {
+		if ((access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) != 0) {
+			return null;
+		}
+		// methods are visited one after the other, so one recorder does for all
+		recorder.caller = builder.methodId(className, name, descriptor);
+		return recorder;
+	}
+
+	@Override
+	public void visitEnd() {
+		if (numEdges > 0) {
+			builder.addEdges(edges, numEdges);
+		}
+	}
+
+	private void addEdge(int caller, int callee) {
+		if (numEdges == edges.length) {
+			edges = Arrays.copyOf(edges, numEdges * 2);
+		}
+		edges[numEdges++] = ((long) caller << 32) | (callee & 0xFFFFFFFFL);
+	}
+
+	private void addEdge(int caller, Handle handle) {
+		addEdge(caller, builder.methodId(handle.getOwner(), handle.getName(), handle.getDesc()));
+	}
+
+	private class CallRecorder extends MethodVisitor {
+		int caller;
+
+		CallRecorder(int api) {
+			super(api);
+		}
+
+		@Override
+		public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+			addEdge(caller, builder.methodId(owner, name, descriptor));
+		}
+
+		@Override
+		public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle,
+				Object... bootstrapMethodArguments) {
+			boolean found = false;
+			for (Object argument : bootstrapMethodArguments) {
+				if ((argument instanceof Handle) && (((Handle) argument).getTag() > Opcodes.H_PUTSTATIC)) {
+					addEdge(caller, (Handle) argument);
+					found = true;
+				}
+			}
+			if (!found) {
+				addEdge(caller, bootstrapMethodHandle);
+			}
+		}
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * the counters of one child in {@link DelegatingClassVisitor#METRICS} mode.
+ * Every event is counted, but only one in {@link #SAMPLE_INTERVAL} is timed,
+ * as System.nanoTime costs more than most events do. Only ever updated from
+ * the thread doing the visiting.
+ */
+final class ChildMetrics {
+
+	static final int CLASS = 0;
+	static final int MODULE = 1;
+	static final int ANNOTATION = 2;
+	static final int FIELD = 3;
+	static final int METHOD = 4;
+	static final int RECORD_COMPONENT = 5;
+	static final int MARKER = 6;
+
+	private static final Interests[] KINDS = { DelegatingClassVisitor.INTERESTS, DelegatingModuleVisitor.INTERESTS,
+			DelegatingAnnotationVisitor.INTERESTS, DelegatingFieldVisitor.INTERESTS, DelegatingMethodVisitor.INTERESTS,
+			DelegatingRecordComponentVisitor.INTERESTS, DelegatingMethodVisitor.MARKER_EVENTS };
+	private static final String[] KIND_NAMES = { "ClassVisitor", "ModuleVisitor", "AnnotationVisitor", "FieldVisitor",
+			"MethodVisitor", "RecordComponentVisitor", "MethodVisitor" };
+
+	private static final int SAMPLE_INTERVAL = 64;
+	private static final boolean JFR_AVAILABLE = isJfrAvailable();
+
+	private final String visitorClassName;
+	private final long[][] counts = new long[KINDS.length][];
+	private long invocations;
+	private int untilSample = SAMPLE_INTERVAL;
+	private long sampledNanos;
+	private long classesVisited;
+	private long subVisitorsCreated;
+	private long subVisitorsDeclined;
+	private Object classVisitEvent;
+	private long classStartInvocations;
+
+	ChildMetrics(Object visitor) {
+		visitorClassName = visitor.getClass().getName();
+		for (int k = 0; k < KINDS.length; k++) {
+			counts[k] = new long[KINDS[k].size()];
+		}
+	}
+
+	/**
+	 * @return the time the event started if it is sampled, or 0
+	 */
+	long enter(int kind, int event) {
+		counts[kind][event]++;
+		invocations++;
+		if (--untilSample == 0) {
+			untilSample = SAMPLE_INTERVAL;
+			return System.nanoTime();
+		}
+		return 0L;
+	}
+
+	void exit(long sample) {
+		if (sample != 0L) {
+			sampledNanos += System.nanoTime() - sample;
+		}
+	}
+
+	void subVisitor(Object visitor) {
+		if (visitor != null) {
+			subVisitorsCreated++;
+		} else {
+			subVisitorsDeclined++;
+		}
+	}
+
+	void classStarted(String className) {
+		classesVisited++;
+		classStartInvocations = invocations;
+		if (JFR_AVAILABLE) {
+			classVisitEvent = ClassVisitEvent.begin(className, visitorClassName);
+		}
+	}
+
+	void classEnded() {
+		if (classVisitEvent != null) {
+			ClassVisitEvent.commit(classVisitEvent, invocations - classStartInvocations);
+			classVisitEvent = null;
+		}
+	}
+
+	VisitorMetrics snapshot() {
+		Map<String, Long> eventCounts = new LinkedHashMap<>();
+		for (int k = 0; k < KINDS.length; k++) {
+			for (int e = 0; e < counts[k].length; e++) {
+				if (counts[k][e] != 0) {
+					eventCounts.put(KIND_NAMES[k] + "." + KINDS[k].nameOf(e), Long.valueOf(counts[k][e]));
+				}
+			}
+		}
+		return new VisitorMetrics(visitorClassName, classesVisited, invocations, eventCounts,
+				sampledNanos * SAMPLE_INTERVAL, subVisitorsCreated, subVisitorsDeclined);
+	}
+
+	private static boolean isJfrAvailable() {
+		try {
+			Class.forName("jdk.jfr.Event", false, ChildMetrics.class.getClassLoader());
+			return true;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+}
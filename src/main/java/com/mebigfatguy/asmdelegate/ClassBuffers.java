@@ -0,0 +1,164 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import org.objectweb.asm.ClassReader;
+
+/**
+ * per thread buffers that class files are read and inflated into. A buffer is
+ * only valid until the next class is read on the same thread, which is fine as
+ * ClassReader doesn't hold on to it past accept. A {@link ClassScanner}
+ * pipeline also keeps a pool of them, that are filled on one thread and parsed
+ * on another.
+ */
+final class ClassBuffers {
+
+	private static final ThreadLocal<ClassBuffers> BUFFERS = ThreadLocal.withInitial(ClassBuffers::new);
+
+	private byte[] data = new byte[64 * 1024];
+	private byte[] compressed = new byte[16 * 1024];
+	private int length;
+	private final Inflater inflater = new Inflater(true);
+
+	ClassBuffers() {
+	}
+
+	static ClassBuffers get() {
+		return BUFFERS.get();
+	}
+
+	/**
+	 * @return the size of the class last read into the data buffer
+	 */
+	int length() {
+		return length;
+	}
+
+	/**
+	 * frees the inflater of buffers that aren't thread local
+	 */
+	void end() {
+		inflater.end();
+	}
+
+	byte[] data(int size) {
+		if (data.length < size) {
+			data = new byte[Math.max(size, data.length * 2)];
+		}
+		return data;
+	}
+
+	/**
+	 * reads a class file straight into the data buffer through its channel
+	 */
+	ClassReader readFile(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("Class file too large: " + file);
+			}
+
+			byte[] buffer = data((int) size);
+			ByteBuffer bb = ByteBuffer.wrap(buffer, 0, (int) size);
+			while (bb.hasRemaining()) {
+				if (channel.read(bb) < 0) {
+					throw new EOFException("Unexpected end of " + file);
+				}
+			}
+			length = (int) size;
+			return new ClassReader(buffer, 0, length);
+		}
+	}
+
+	/**
+	 * reads a class from a stream whose size may not be known up front
+	 */
+	ClassReader readStream(InputStream is, long sizeHint) throws IOException {
+		byte[] buffer = data((sizeHint > 0) ? (int) sizeHint : 0);
+		int size = 0;
+		int read;
+		while ((read = is.read(buffer, size, buffer.length - size)) >= 0) {
+			size += read;
+			if (size == buffer.length) {
+				buffer = Arrays.copyOf(buffer, buffer.length * 2);
+				data = buffer;
+			}
+		}
+		length = size;
+		return new ClassReader(buffer, 0, size);
+	}
+
+	/**
+	 * copies a stored entry out of a mapped jar with a single bulk get
+	 */
+	ClassReader copy(ByteBuffer source, int offset, int size) {
+		byte[] buffer = data(size);
+		ByteBuffer view = source.duplicate();
+		// moved through Buffer, as the ByteBuffer override is newer than Java 8
+		((Buffer) view).position(offset);
+		view.get(buffer, 0, size);
+		length = size;
+		return new ClassReader(buffer, 0, size);
+	}
+
+	ClassReader inflate(ByteBuffer source, int offset, int compressedSize, int size) throws IOException {
+		// a raw inflater wants one extra dummy byte past the compressed data
+		if (compressed.length < (compressedSize + 1)) {
+			compressed = new byte[Math.max(compressedSize + 1, compressed.length * 2)];
+		}
+		ByteBuffer view = source.duplicate();
+		((Buffer) view).position(offset);
+		view.get(compressed, 0, compressedSize);
+		compressed[compressedSize] = 0;
+
+		byte[] buffer = data(size);
+		inflater.reset();
+		inflater.setInput(compressed, 0, compressedSize + 1);
+		try {
+			int length = 0;
+			while (length < size) {
+				int inflated = inflater.inflate(buffer, length, size - length);
+				if (inflated == 0) {
+					break;
+				}
+				length += inflated;
+			}
+			if (length != size) {
+				throw new ZipException("Inflated " + length + " bytes, expected " + size);
+			}
+		} catch (DataFormatException e) {
+			throw new ZipException(e.getMessage());
+		}
+		length = size;
+		return new ClassReader(buffer, 0, size);
+	}
+}
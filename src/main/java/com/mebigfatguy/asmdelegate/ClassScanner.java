@@ -0,0 +1,454 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+
+/**
+ * visits all the classes of a set of jars, directories and class files in
+ * parallel. Every class is visited by a {@link DelegatingClassVisitor} over
+ * fresh instances of the registered visitors, and the instances are then
+ * merged, see {@link Mergeable}, into one result per visitor.
+ * <p>
+ * Jars are memory mapped and class files are read through their channels, into
+ * buffers that are reused per thread, so no per class streams or arrays are
+ * created. By default each thread reads, inflates and then parses its classes,
+ * see {@link #setPipeline(int, int, int)} to read ahead on separate threads.
+ */
+public class ClassScanner {
+
+	private static final int BATCH_SIZE = 64;
+	private static final Prefetched END = new Prefetched(null, null);
+
+	private final int api;
+	private final int options;
+	private final ForkJoinPool pool;
+	private final List<Path> jars = new ArrayList<>();
+	private final List<Path> directories = new ArrayList<>();
+	private final List<Path> classFiles = new ArrayList<>();
+	private final List<Supplier<? extends ClassVisitor>> factories = new ArrayList<>();
+	private ResultCache cache;
+	private final SymbolTable symbols = new SymbolTable();
+	private final List<VisitorFailure> failures = Collections.synchronizedList(new ArrayList<>());
+	private int readers;
+	private int parsers;
+	private int prefetch;
+
+	public ClassScanner(int api) {
+		this(api, 0, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param options
+	 *            the {@link DelegatingClassVisitor} options to visit each class
+	 *            with
+	 * @param pool
+	 *            the pool to parse classes on
+	 */
+	public ClassScanner(int api, int options, ForkJoinPool pool) {
+		this.api = api;
+		this.options = options;
+		this.pool = pool;
+	}
+
+	public void addJar(Path jar) {
+		jars.add(jar);
+	}
+
+	public void addDirectory(Path directory) {
+		directories.add(directory);
+	}
+
+	public void addClassFile(Path classFile) {
+		classFiles.add(classFile);
+	}
+
+	public void addClassFiles(List<Path> files) {
+		classFiles.addAll(files);
+	}
+
+	/**
+	 * replays and stores the results of {@link Cacheable} visitors in the given
+	 * cache, so that unchanged classes aren't parsed again for them
+	 */
+	public void setResultCache(ResultCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * splits the scan into two stages on threads of their own: readers that read
+	 * and inflate classes into a pool of reusable buffers, and parsers that visit
+	 * them, so that I/O and inflation overlap with visiting instead of
+	 * alternating with it on each thread. The pool passed to the constructor
+	 * isn't used then. Results are merged in whatever order the parsers finish.
+	 *
+	 * @param readers
+	 *            the number of threads reading and inflating classes
+	 * @param parsers
+	 *            the number of threads visiting classes
+	 * @param prefetch
+	 *            the number of buffers in the pool, so how many classes the
+	 *            readers may get ahead of the parsers
+	 */
+	public void setPipeline(int readers, int parsers, int prefetch) {
+		if ((readers < 1) || (parsers < 1) || (prefetch < 1)) {
+			throw new IllegalArgumentException(
+					"Pipeline needs at least one reader, parser and buffer: " + readers + '/' + parsers + '/' + prefetch);
+		}
+		this.readers = readers;
+		this.parsers = parsers;
+		this.prefetch = prefetch;
+	}
+
+	/**
+	 * @return the symbol table shared by every class of the scan, to turn the ids
+	 *         {@link SymbolicInstructions} visitors got back into strings
+	 */
+	public SymbolTable getSymbolTable() {
+		return symbols;
+	}
+
+	public <V extends ClassVisitor & Mergeable<V>> void addVisitor(Supplier<V> factory) {
+		factories.add(factory);
+	}
+
+	/**
+	 * @return the failures caught while scanning, when the options include
+	 *         {@link DelegatingClassVisitor#ISOLATED}. A visitor that failed on a
+	 *         class still has its results from the rest of the scan merged.
+	 */
+	public List<VisitorFailure> getFailures() {
+		synchronized (failures) {
+			return new ArrayList<>(failures);
+		}
+	}
+
+	/**
+	 * @return the merged visitors, in the order their factories were added
+	 */
+	public List<ClassVisitor> scan() throws IOException {
+		List<Closeable> openJars = new ArrayList<>(jars.size());
+		try {
+			List<ClassInput> inputs = collectInputs(openJars);
+			ClassVisitor[] merged = (readers > 0) ? new Pipeline(inputs).run()
+					: pool.invoke(new ScanTask(inputs, 0, inputs.size()));
+			return Arrays.asList((merged != null) ? merged : newVisitors());
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			for (Closeable jar : openJars) {
+				jar.close();
+			}
+		}
+	}
+
+	private List<ClassInput> collectInputs(List<Closeable> openJars) throws IOException {
+		List<ClassInput> inputs = new ArrayList<>();
+
+		for (Path jar : jars) {
+			MappedJar mappedJar = MappedJar.open(jar);
+			if (mappedJar != null) {
+				openJars.add(mappedJar);
+				for (MappedJar.Entry entry : mappedJar.getEntries()) {
+					inputs.add(buffers -> mappedJar.read(entry, buffers));
+				}
+				continue;
+			}
+
+			// too big to map, or zip64, so let ZipFile deal with it
+			ZipFile zip = new ZipFile(jar.toFile());
+			openJars.add(zip);
+			Enumeration<? extends ZipEntry> entries = zip.entries();
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+				if (!entry.isDirectory() && entry.getName().endsWith(".class")) {
+					inputs.add(buffers -> {
+						try (InputStream is = zip.getInputStream(entry)) {
+							return buffers.readStream(is, entry.getSize());
+						}
+					});
+				}
+			}
+		}
+
+		for (Path directory : directories) {
+			List<Path> files;
+			try (Stream<Path> paths = Files.walk(directory)) {
+				files = paths.filter(p -> p.toString().endsWith(".class") && Files.isRegularFile(p))
+						.collect(Collectors.toList());
+			}
+			for (Path file : files) {
+				inputs.add(buffers -> buffers.readFile(file));
+			}
+		}
+
+		for (Path file : classFiles) {
+			inputs.add(buffers -> buffers.readFile(file));
+		}
+
+		return inputs;
+	}
+
+	private ClassVisitor[] newVisitors() {
+		ClassVisitor[] visitors = new ClassVisitor[factories.size()];
+		for (int i = 0; i < visitors.length; i++) {
+			visitors[i] = factories.get(i).get();
+		}
+		return visitors;
+	}
+
+	/**
+	 * visits one class with fresh visitors
+	 *
+	 * @param buffers
+	 *            the buffers the class was read into
+	 */
+	private ClassVisitor[] visit(ClassReader reader, ClassBuffers buffers) {
+		ClassVisitor[] visitors = newVisitors();
+		DelegatingClassVisitor dcv = new DelegatingClassVisitor(api, Arrays.asList(visitors), options);
+		dcv.setSymbolTable(symbols);
+		if (cache != null) {
+			int length = buffers.length();
+			dcv.accept(reader, ResultCache.digest(buffers.data(length), 0, length), cache);
+		} else {
+			dcv.accept(reader);
+		}
+		List<VisitorFailure> classFailures = dcv.getFailures();
+		if (!classFailures.isEmpty()) {
+			failures.addAll(classFailures);
+		}
+		return visitors;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static ClassVisitor[] merge(ClassVisitor[] merged, ClassVisitor[] visitors) {
+		if (merged == null) {
+			return visitors;
+		}
+		if (visitors == null) {
+			return merged;
+		}
+
+		for (int i = 0; i < merged.length; i++) {
+			((Mergeable<ClassVisitor>) merged[i]).merge(visitors[i]);
+		}
+		return merged;
+	}
+
+	interface ClassInput {
+		ClassReader open(ClassBuffers buffers) throws IOException;
+	}
+
+	static final class Prefetched {
+		final ClassReader reader;
+		final ClassBuffers buffers;
+
+		Prefetched(ClassReader reader, ClassBuffers buffers) {
+			this.reader = reader;
+			this.buffers = buffers;
+		}
+	}
+
+	private class ScanTask extends RecursiveTask<ClassVisitor[]> {
+
+		private static final long serialVersionUID = 4519744370235823165L;
+
+		private final List<ClassInput> inputs;
+		private final int from;
+		private final int to;
+
+		ScanTask(List<ClassInput> inputs, int from, int to) {
+			this.inputs = inputs;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected ClassVisitor[] compute() {
+			if ((to - from) > BATCH_SIZE) {
+				int mid = (from + to) >>> 1;
+				ScanTask left = new ScanTask(inputs, from, mid);
+				left.fork();
+				ClassVisitor[] right = new ScanTask(inputs, mid, to).compute();
+				return merge(left.join(), right);
+			}
+
+			ClassVisitor[] merged = null;
+			ClassBuffers buffers = ClassBuffers.get();
+			for (int i = from; i < to; i++) {
+				ClassReader reader;
+				try {
+					reader = inputs.get(i).open(buffers);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				merged = merge(merged, visit(reader, buffers));
+			}
+			return merged;
+		}
+	}
+
+	/**
+	 * readers take buffers from a bounded pool, fill them and queue them for the
+	 * parsers, which hand them back once the class is visited, so the readers
+	 * stall once they are prefetch classes ahead. After a failure the readers
+	 * stop and the parsers only drain what was queued.
+	 */
+	private class Pipeline {
+
+		private final List<ClassInput> inputs;
+		private final AtomicInteger next = new AtomicInteger();
+		private final AtomicInteger activeReaders = new AtomicInteger(readers);
+		private final BlockingQueue<ClassBuffers> pooled = new ArrayBlockingQueue<>(prefetch);
+		// room for every pooled buffer plus one END per parser, so puts never block
+		private final BlockingQueue<Prefetched> ready = new ArrayBlockingQueue<>(prefetch + parsers);
+		private final AtomicReference<Throwable> failure = new AtomicReference<>();
+		private final ClassVisitor[][] results = new ClassVisitor[parsers][];
+
+		Pipeline(List<ClassInput> inputs) {
+			this.inputs = inputs;
+			for (int i = 0; i < prefetch; i++) {
+				pooled.add(new ClassBuffers());
+			}
+		}
+
+		ClassVisitor[] run() throws IOException {
+			Thread[] threads = new Thread[readers + parsers];
+			for (int i = 0; i < readers; i++) {
+				threads[i] = new Thread(this::read, "asm-delegate-reader-" + i);
+			}
+			for (int i = 0; i < parsers; i++) {
+				int parser = i;
+				threads[readers + i] = new Thread(() -> results[parser] = parse(), "asm-delegate-parser-" + i);
+			}
+			for (Thread thread : threads) {
+				thread.setDaemon(true);
+				thread.start();
+			}
+
+			try {
+				for (Thread thread : threads) {
+					thread.join();
+				}
+			} catch (InterruptedException e) {
+				failure.compareAndSet(null, e);
+				for (Thread thread : threads) {
+					thread.interrupt();
+				}
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while scanning");
+			}
+
+			for (ClassBuffers buffers : pooled) {
+				buffers.end();
+			}
+
+			Throwable t = failure.get();
+			if (t instanceof IOException) {
+				throw (IOException) t;
+			}
+			if (t instanceof RuntimeException) {
+				throw (RuntimeException) t;
+			}
+			if (t instanceof Error) {
+				throw (Error) t;
+			}
+			if (t != null) {
+				throw new InterruptedIOException("Interrupted while scanning");
+			}
+
+			ClassVisitor[] merged = null;
+			for (ClassVisitor[] result : results) {
+				merged = merge(merged, result);
+			}
+			return merged;
+		}
+
+		private void read() {
+			try {
+				int i;
+				while ((failure.get() == null) && ((i = next.getAndIncrement()) < inputs.size())) {
+					ClassBuffers buffers = pooled.take();
+					ClassReader reader;
+					try {
+						reader = inputs.get(i).open(buffers);
+					} catch (IOException | RuntimeException | Error e) {
+						pooled.add(buffers);
+						throw e;
+					}
+					ready.add(new Prefetched(reader, buffers));
+				}
+			} catch (Throwable t) {
+				failure.compareAndSet(null, t);
+			} finally {
+				if (activeReaders.decrementAndGet() == 0) {
+					for (int p = 0; p < parsers; p++) {
+						ready.add(END);
+					}
+				}
+			}
+		}
+
+		private ClassVisitor[] parse() {
+			ClassVisitor[] merged = null;
+			try {
+				Prefetched prefetched;
+				while ((prefetched = ready.take()) != END) {
+					try {
+						if (failure.get() == null) {
+							merged = merge(merged, visit(prefetched.reader, prefetched.buffers));
+						}
+					} catch (Throwable t) {
+						failure.compareAndSet(null, t);
+					} finally {
+						pooled.add(prefetched.buffers);
+					}
+				}
+			} catch (InterruptedException e) {
+				failure.compareAndSet(null, e);
+			}
+			return merged;
+		}
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * the JFR event of one child visiting one class in
+ * {@link DelegatingClassVisitor#METRICS} mode. This is the only class that
+ * refers to jdk.jfr, and it is only loaded when that is available.
+ */
+@Name("com.mebigfatguy.asmdelegate.ClassVisit")
+@Label("Class Visit")
+@Category("asm-delegate")
+@Description("The events one child of a DelegatingClassVisitor received for one class")
+final class ClassVisitEvent extends Event {
+
+	// looked up once, so that disabled events cost a flag check rather than an allocation per class
+	private static final EventType TYPE = EventType.getEventType(ClassVisitEvent.class);
+
+	@Label("Class")
+	String className;
+
+	@Label("Visitor")
+	String visitorClassName;
+
+	@Label("Invocations")
+	long invocations;
+
+	/**
+	 * @return the started event, or null if the event isn't being recorded
+	 */
+	static Object begin(String className, String visitorClassName) {
+		if (!TYPE.isEnabled()) {
+			return null;
+		}
+		ClassVisitEvent event = new ClassVisitEvent();
+		event.className = className;
+		event.visitorClassName = visitorClassName;
+		event.begin();
+		return event;
+	}
+
+	static void commit(Object started, long invocations) {
+		ClassVisitEvent event = (ClassVisitEvent) started;
+		event.invocations = invocations;
+		event.commit();
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+/**
+ * implemented by child class visitors of a {@link DelegatingClassVisitor} to
+ * say, from the constant pool alone, whether a class is worth visiting.
+ * {@link DelegatingClassVisitor#accept(org.objectweb.asm.ClassReader)} scans
+ * the constant pool before parsing, and a child that accepts none of the
+ * entries is left out of the visit of that class. If no child is left, the
+ * class isn't parsed at all. Only the methods that are overridden get called.
+ */
+public interface ConstantPoolFilter {
+
+	/**
+	 * called for each class the constant pool names, which includes the class
+	 * itself and its super class
+	 *
+	 * @param internalName
+	 *            the internal name of the class, such as javax/crypto/Cipher
+	 */
+	default boolean acceptsClass(String internalName) {
+		return false;
+	}
+
+	/**
+	 * called for each field, method and interface method reference
+	 */
+	default boolean acceptsMemberReference(String owner, String name, String descriptor) {
+		return false;
+	}
+
+	/**
+	 * called for each string constant
+	 */
+	default boolean acceptsString(String value) {
+		return false;
+	}
+}
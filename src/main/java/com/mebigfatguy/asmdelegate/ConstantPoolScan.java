@@ -0,0 +1,162 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+
+/**
+ * runs the {@link ConstantPoolFilter} children of a delegator over the
+ * constant pool of a class. Entries are only decoded if some still undecided
+ * child filters on their kind, and the scan stops as soon as every child has
+ * accepted something. The strings decoded here are cached by the ClassReader,
+ * so the parse that follows doesn't decode them again.
+ */
+final class ConstantPoolScan {
+
+	static final Interests INTERESTS = new Interests(ConstantPoolFilter.class, "acceptsClass",
+			"acceptsMemberReference", "acceptsString");
+
+	private static final long CLASS = 1L << 0;
+	private static final long MEMBER_REFERENCE = 1L << 1;
+	private static final long STRING = 1L << 2;
+
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_STRING = 8;
+	private static final int CONSTANT_FIELDREF = 9;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_INTERFACE_METHODREF = 11;
+
+	private final ConstantPoolFilter[] filters;
+	private final int[] indices;
+	private final long[] masks;
+	private int numPending;
+	private long wanted;
+	private char[] charBuffer = new char[0];
+
+	ConstantPoolScan(int numChildren) {
+		filters = new ConstantPoolFilter[numChildren];
+		indices = new int[numChildren];
+		masks = new long[numChildren];
+	}
+
+	/**
+	 * @param rejected
+	 *            set for each child that is a filter and accepted nothing,
+	 *            cleared for the others
+	 * @return the number of children rejected
+	 */
+	int filter(ClassReader reader, ClassVisitor[] children, int numChildren, boolean[] rejected) {
+		numPending = 0;
+		wanted = 0;
+		for (int i = 0; i < numChildren; i++) {
+			rejected[i] = children[i] instanceof ConstantPoolFilter;
+			if (rejected[i]) {
+				filters[numPending] = (ConstantPoolFilter) children[i];
+				indices[numPending] = i;
+				masks[numPending] = INTERESTS.maskOf(children[i], null);
+				wanted |= masks[numPending++];
+			}
+		}
+
+		if (numPending > 0) {
+			scan(reader, rejected);
+		}
+
+		int numRejected = numPending;
+		for (int p = 0; p < numPending; p++) {
+			filters[p] = null;
+		}
+		numPending = 0;
+		return numRejected;
+	}
+
+	private void scan(ClassReader reader, boolean[] rejected) {
+		if (charBuffer.length < reader.getMaxStringLength()) {
+			charBuffer = new char[reader.getMaxStringLength()];
+		}
+
+		int itemCount = reader.getItemCount();
+		for (int item = 1; (item < itemCount) && (numPending > 0); item++) {
+			int offset = reader.getItem(item);
+			if (offset == 0) {
+				// the unused second slot of a long or double
+				continue;
+			}
+
+			switch (reader.readByte(offset - 1)) {
+			case CONSTANT_CLASS:
+				if ((wanted & CLASS) != 0) {
+					String name = reader.readUTF8(offset, charBuffer);
+					for (int p = numPending - 1; p >= 0; p--) {
+						if (((masks[p] & CLASS) != 0) && filters[p].acceptsClass(name)) {
+							accepted(p, rejected);
+						}
+					}
+				}
+				break;
+
+			case CONSTANT_FIELDREF:
+			case CONSTANT_METHODREF:
+			case CONSTANT_INTERFACE_METHODREF:
+				if ((wanted & MEMBER_REFERENCE) != 0) {
+					String owner = reader.readClass(offset, charBuffer);
+					int nameAndType = reader.getItem(reader.readUnsignedShort(offset + 2));
+					String name = reader.readUTF8(nameAndType, charBuffer);
+					String descriptor = reader.readUTF8(nameAndType + 2, charBuffer);
+					for (int p = numPending - 1; p >= 0; p--) {
+						if (((masks[p] & MEMBER_REFERENCE) != 0)
+								&& filters[p].acceptsMemberReference(owner, name, descriptor)) {
+							accepted(p, rejected);
+						}
+					}
+				}
+				break;
+
+			case CONSTANT_STRING:
+				if ((wanted & STRING) != 0) {
+					String value = reader.readUTF8(offset, charBuffer);
+					for (int p = numPending - 1; p >= 0; p--) {
+						if (((masks[p] & STRING) != 0) && filters[p].acceptsString(value)) {
+							accepted(p, rejected);
+						}
+					}
+				}
+				break;
+
+			default:
+				break;
+			}
+		}
+	}
+
+	private void accepted(int p, boolean[] rejected) {
+		rejected[indices[p]] = false;
+		int last = --numPending;
+		filters[p] = filters[last];
+		indices[p] = indices[last];
+		masks[p] = masks[last];
+		filters[last] = null;
+
+		wanted = 0;
+		for (int i = 0; i < numPending; i++) {
+			wanted |= masks[i];
+		}
+	}
+}
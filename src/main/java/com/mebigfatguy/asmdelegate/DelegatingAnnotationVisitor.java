@@ -18,81 +18,223 @@
  */
 package com.mebigfatguy.asmdelegate;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.objectweb.asm.AnnotationVisitor;
 
 public class DelegatingAnnotationVisitor extends AnnotationVisitor {
 
-	private List<AnnotationVisitor> annotationVisitors;
+	static final Interests INTERESTS = new Interests(AnnotationVisitor.class, "visit", "visitEnum",
+			"visitAnnotation", "visitArray", "visitEnd");
+
+	static final int VISIT = 0;
+	static final int ENUM = 1;
+	static final int ANNOTATION = 2;
+	static final int ARRAY = 3;
+	static final int END = 4;
+
+	private static final AnnotationVisitor[] NO_CHILDREN = new AnnotationVisitor[0];
+	private static final long[] NO_MASKS = new long[0];
+	private static final int[] NO_ORIGINS = new int[0];
+
+	private final int options;
+	private DelegationContext context;
+	private AnnotationVisitor[] children = NO_CHILDREN;
+	private long[] masks = NO_MASKS;
+	private int[] origins = NO_ORIGINS;
+	private int numChildren;
+	private AnnotationVisitor[][] annotationVisitors;
+	private int[][] dispatchOrigins;
+	private SubVisitors subVisitors;
 
 	public DelegatingAnnotationVisitor(int api, List<AnnotationVisitor> visitors) {
+		this(api, 0);
+		SubVisitors initial = new SubVisitors().clear(visitors.size());
+		for (int i = 0; i < visitors.size(); i++) {
+			initial.add(visitors.get(i), i);
+		}
+		reset(null, initial);
+	}
+
+	DelegatingAnnotationVisitor(int api, int options) {
 		super(api);
-		annotationVisitors = visitors;
+		this.options = options;
+	}
+
+	boolean isReusableFor(int api, int options) {
+		return (this.api == api) && (this.options == options);
+	}
+
+	void reset(DelegationContext context, SubVisitors visitors) {
+		this.context = context;
+		int count = visitors.size();
+		if (children.length < count) {
+			children = new AnnotationVisitor[count];
+			masks = new long[count];
+			origins = new int[count];
+		}
+
+		numChildren = 0;
+		for (int i = 0; i < count; i++) {
+			AnnotationVisitor visitor = (AnnotationVisitor) visitors.get(i);
+			if (visitor != null) {
+				children[numChildren] = visitor;
+				masks[numChildren] = INTERESTS.maskOf(visitor, visitor.getDelegate());
+				origins[numChildren++] = visitors.originOf(i);
+			}
+		}
+		annotationVisitors = INTERESTS.buildDispatch(children, numChildren, masks, annotationVisitors);
+		dispatchOrigins = INTERESTS.buildOrigins(origins, numChildren, masks, dispatchOrigins);
+
+		if (context != null) {
+			context.register(this);
+		}
+	}
+
+	/**
+	 * drops the children that came from the given root child. The dispatch table
+	 * is rebuilt rather than updated, as an event may be iterating it right now.
+	 */
+	void detach(int origin) {
+		int remaining = 0;
+		for (int i = 0; i < numChildren; i++) {
+			if (origins[i] != origin) {
+				children[remaining] = children[i];
+				masks[remaining] = masks[i];
+				origins[remaining++] = origins[i];
+			}
+		}
+
+		if (remaining != numChildren) {
+			Arrays.fill(children, remaining, numChildren, null);
+			numChildren = remaining;
+			annotationVisitors = INTERESTS.buildDispatch(children, numChildren, masks, null);
+			dispatchOrigins = INTERESTS.buildOrigins(origins, numChildren, masks, null);
+		}
+	}
+
+	private int attached(int origin) {
+		return (context != null) ? context.attached(origin) : origin;
+	}
+
+	// only failures search for the origin, events use the dispatch origins
+	private int originOf(AnnotationVisitor child) {
+		for (int i = 0; i < numChildren; i++) {
+			if (children[i] == child) {
+				return origins[i];
+			}
+		}
+		return -1;
+	}
+
+	private void failed(AnnotationVisitor child, RuntimeException e) {
+		if (context == null) {
+			throw e;
+		}
+		context.failed(originOf(child), e);
+	}
+
+	private void release() {
+		Arrays.fill(children, 0, numChildren, null);
+		numChildren = 0;
+		context = null;
+		INTERESTS.clearDispatch(annotationVisitors);
+		DelegatorPool.release(this);
+	}
+
+	private SubVisitors subVisitors(int size) {
+		if (subVisitors == null) {
+			subVisitors = new SubVisitors();
+		}
+		return subVisitors.clear(size);
 	}
 
 	@Override
 	public void visit(String name, Object value) {
-		for (AnnotationVisitor av : annotationVisitors) {
-			if (av != null) {
+		for (AnnotationVisitor av : annotationVisitors[VISIT]) {
+			try {
 				av.visit(name, value);
+			} catch (RuntimeException e) {
+				failed(av, e);
 			}
 		}
 	}
 
 	@Override
 	public void visitEnum(String name, String descriptor, String value) {
-		for (AnnotationVisitor av : annotationVisitors) {
-			if (av != null) {
+		for (AnnotationVisitor av : annotationVisitors[ENUM]) {
+			try {
 				av.visitEnum(name, descriptor, value);
+			} catch (RuntimeException e) {
+				failed(av, e);
 			}
 		}
 	}
 
 	@Override
 	public AnnotationVisitor visitAnnotation(String name, String descriptor) {
-		List<AnnotationVisitor> subAnnotationVisitors = new ArrayList(annotationVisitors.size());
-		for (AnnotationVisitor av : annotationVisitors) {
-			if (av != null) {
+		AnnotationVisitor[] targets = annotationVisitors[ANNOTATION];
+		if (targets.length == 0) {
+			return null;
+		}
+
+		SubVisitors subAnnotationVisitors = subVisitors(targets.length);
+		int[] targetOrigins = dispatchOrigins[ANNOTATION];
+		for (int t = 0; t < targets.length; t++) {
+			AnnotationVisitor av = targets[t];
+			try {
 				AnnotationVisitor sav = av.visitAnnotation(name, descriptor);
 				if (sav != null) {
-					subAnnotationVisitors.add(sav);
+					subAnnotationVisitors.add(sav, attached(targetOrigins[t]));
 				}
+			} catch (RuntimeException e) {
+				failed(av, e);
 			}
 		}
 
-		if (subAnnotationVisitors.isEmpty()) {
-			return null;
-		}
-		return new DelegatingAnnotationVisitor(api, subAnnotationVisitors);
+		return DelegatorPool.annotationVisitor(api, options, context, subAnnotationVisitors);
 	}
 
 	@Override
 	public AnnotationVisitor visitArray(String name) {
-		List<AnnotationVisitor> arrayAnnotationVisitors = new ArrayList(annotationVisitors.size());
-		int i = 0;
-		for (AnnotationVisitor av : annotationVisitors) {
-			if (av != null) {
+		AnnotationVisitor[] targets = annotationVisitors[ARRAY];
+		if (targets.length == 0) {
+			return null;
+		}
+
+		SubVisitors arrayAnnotationVisitors = subVisitors(targets.length);
+		int[] targetOrigins = dispatchOrigins[ARRAY];
+		for (int t = 0; t < targets.length; t++) {
+			AnnotationVisitor av = targets[t];
+			try {
 				AnnotationVisitor aav = av.visitArray(name);
 				if (aav != null) {
-					arrayAnnotationVisitors.add(aav);
+					arrayAnnotationVisitors.add(aav, attached(targetOrigins[t]));
 				}
+			} catch (RuntimeException e) {
+				failed(av, e);
 			}
 		}
 
-		if (arrayAnnotationVisitors.isEmpty()) {
-			return null;
-		}
-		return new DelegatingAnnotationVisitor(api, arrayAnnotationVisitors);
+		return DelegatorPool.annotationVisitor(api, options, context, arrayAnnotationVisitors);
 	}
 
 	@Override
 	public void visitEnd() {
-		for (AnnotationVisitor av : annotationVisitors) {
-			if (av != null) {
+		for (AnnotationVisitor av : annotationVisitors[END]) {
+			try {
 				av.visitEnd();
+			} catch (RuntimeException e) {
+				failed(av, e);
 			}
 		}
+
+		if (context != null) {
+			context.unregister(this);
+		}
+		if (DelegatorPool.isPooled(options)) {
+			release();
+		}
 	}
 }
@@ -18,215 +18,943 @@
  */
 package com.mebigfatguy.asmdelegate;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.objectweb.asm.AnnotationVisitor;
 import org.objectweb.asm.Attribute;
+import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.FieldVisitor;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.ModuleVisitor;
 import org.objectweb.asm.RecordComponentVisitor;
 import org.objectweb.asm.TypePath;
+import org.objectweb.asm.tree.ClassNode;
 
 public class DelegatingClassVisitor extends ClassVisitor {
 
-	private List<ClassVisitor> classVisitors;
+	/**
+	 * reuse the nested method, field, annotation, record component and module
+	 * delegators from a per thread pool. A nested delegator goes back to the pool
+	 * once visitEnd has been called on it, and a member that only one child is
+	 * interested in gets that child's visitor directly.
+	 */
+	public static final int POOLED = 1;
+
+	/**
+	 * count, and sample the time of, the events each child and its sub visitors
+	 * receive, see {@link #getMetrics()}, and emit a JFR event per child and
+	 * class when JFR is recording. Without this option no metrics are kept.
+	 */
+	public static final int METRICS = 2;
+
+	/**
+	 * catch the runtime exceptions children and their sub visitors throw, rather
+	 * than letting them abort the parse. A failing child is detached from the
+	 * rest of the class, as with {@link #detach(ClassVisitor)}, and the failure
+	 * is kept for {@link #getFailures()}, while the other children carry on. The
+	 * child is reattached at the next class. A failing writer child still aborts
+	 * the parse, as its output would be left incomplete.
+	 */
+	public static final int ISOLATED = 4;
+
+	static final Interests INTERESTS = new Interests(ClassVisitor.class, "visit", "visitSource", "visitModule",
+			"visitNestHost", "visitOuterClass", "visitAnnotation", "visitTypeAnnotation", "visitAttribute",
+			"visitNestMember", "visitInnerClass", "visitField", "visitMethod", "visitPermittedSubclass",
+			"visitRecordComponent", "visitEnd");
+
+	static final int VISIT = 0;
+	static final int SOURCE = 1;
+	static final int MODULE = 2;
+	static final int NEST_HOST = 3;
+	static final int OUTER_CLASS = 4;
+	static final int ANNOTATION = 5;
+	static final int TYPE_ANNOTATION = 6;
+	static final int ATTRIBUTE = 7;
+	static final int NEST_MEMBER = 8;
+	static final int INNER_CLASS = 9;
+	static final int FIELD = 10;
+	static final int METHOD = 11;
+	static final int PERMITTED_SUBCLASS = 12;
+	static final int RECORD_COMPONENT = 13;
+	static final int END = 14;
+
+	private static final int[] MEMBER_EVENTS = { FIELD, METHOD, RECORD_COMPONENT };
+
+	private final int options;
+	private final DelegationContext context;
+	private ClassVisitor[] children;
+	private ClassVisitor[] targets;
+	private ChildMetrics[] metrics;
+	private long[] masks;
+	private boolean[] detached;
+	private int numChildren;
+	private int numAttached;
+	private ClassVisitor[][] classVisitors;
+	private int[] indices;
+	private int[][] classOrigins;
+	private SubVisitors subVisitors;
+	private ConstantPoolScan constantPoolScan;
+	private boolean[] filtered;
+	private int numFiltered;
+	private MemberMatcher[][] childMatchers;
+	private MemberMatcher[][] memberMatchers;
+	private int writer = -1;
+	private String className;
+	private List<VisitorFailure> failures;
+	private String[] cacheVersions;
+	private boolean[] consumers;
+	private ClassVisitor tree;
 
 	public DelegatingClassVisitor(int api, List<ClassVisitor> visitors) {
+		this(api, visitors, 0);
+	}
+
+	/**
+	 * @param options
+	 *            a combination of {@link #POOLED}, {@link #METRICS} and
+	 *            {@link #ISOLATED}, or 0
+	 */
+	public DelegatingClassVisitor(int api, List<ClassVisitor> visitors, int options) {
 		super(api);
-		this.classVisitors = visitors;
+		this.options = options;
+		context = new DelegationContext(((options & ISOLATED) != 0) ? this : null);
+		children = new ClassVisitor[visitors.size()];
+		masks = new long[children.length];
+		for (ClassVisitor cv : visitors) {
+			if (cv != null) {
+				children[numChildren] = cv;
+				masks[numChildren++] = INTERESTS.maskOf(cv, cv.getDelegate());
+			}
+		}
+		detached = new boolean[numChildren];
+		numAttached = numChildren;
+		context.setDetached(detached);
+		indices = new int[numChildren];
+		for (int i = 0; i < numChildren; i++) {
+			indices[i] = i;
+		}
+
+		targets = children;
+		if ((options & METRICS) != 0) {
+			metrics = new ChildMetrics[numChildren];
+			targets = new ClassVisitor[numChildren];
+			for (int i = 0; i < numChildren; i++) {
+				metrics[i] = new ChildMetrics(children[i]);
+				targets[i] = new MeteredVisitors.MeteredClassVisitor(api, children[i], metrics[i]);
+			}
+		}
+		classVisitors = INTERESTS.buildDispatch(targets, numChildren, masks, null);
+		classOrigins = INTERESTS.buildOrigins(indices, numChildren, masks, null);
+
+		for (int i = 0; i < numChildren; i++) {
+			if (children[i] instanceof ConstantPoolFilter) {
+				constantPoolScan = new ConstantPoolScan(numChildren);
+				filtered = new boolean[numChildren];
+				break;
+			}
+		}
+
+		for (int i = 0; i < numChildren; i++) {
+			if (children[i] instanceof Cacheable) {
+				if (cacheVersions == null) {
+					cacheVersions = new String[numChildren];
+					if (filtered == null) {
+						filtered = new boolean[numChildren];
+					}
+				}
+				cacheVersions[i] = children[i].getClass().getName() + '/'
+						+ ((Cacheable) children[i]).getCacheVersion();
+			}
+		}
+
+		for (int i = 0; i < numChildren; i++) {
+			if (children[i] instanceof TreeConsumer) {
+				if (consumers == null) {
+					consumers = new boolean[numChildren];
+				}
+				consumers[i] = true;
+			}
+		}
+
+		for (int i = 0; i < numChildren; i++) {
+			if (children[i] instanceof MemberFilter) {
+				if (childMatchers == null) {
+					childMatchers = new MemberMatcher[INTERESTS.size()][];
+					for (int event : MEMBER_EVENTS) {
+						childMatchers[event] = new MemberMatcher[numChildren];
+					}
+				}
+				MemberFilter filter = (MemberFilter) children[i];
+				childMatchers[FIELD][i] = matcherOrNull(filter.getFieldMatcher());
+				childMatchers[METHOD][i] = matcherOrNull(filter.getMethodMatcher());
+				childMatchers[RECORD_COMPONENT][i] = matcherOrNull(filter.getRecordComponentMatcher());
+			}
+		}
+		buildMemberMatchers();
+
+		for (int i = 0; i < numChildren; i++) {
+			if (children[i] instanceof Detachable) {
+				((Detachable) children[i]).setDelegator(this);
+			}
+		}
+	}
+
+	/**
+	 * builds a delegator that writes through one child and only lets the others
+	 * look. When the writer is, or passes its methods straight on to, a
+	 * ClassWriter constructed from the ClassReader being accepted, methods that
+	 * none of the analyzers want are handed to the ClassWriter undelegated, so
+	 * ASM copies their bytes as is instead of parsing and re-encoding them. Use
+	 * a {@link MemberFilter} on the analyzers to decline methods cheaply.
+	 *
+	 * @param writer
+	 *            the child whose output is kept, it sees every event first
+	 * @param analyzers
+	 *            children that only read the class, and are not expected to
+	 *            change what the writer sees
+	 * @param options
+	 *            a combination of {@link #POOLED}, {@link #METRICS} and
+	 *            {@link #ISOLATED}, or 0.
+	 *            With {@link #METRICS} the writer's methods are metered too, and
+	 *            so never copied. With {@link #ISOLATED} only the analyzers
+	 *            are isolated, the writer's failures are rethrown.
+	 */
+	public DelegatingClassVisitor(int api, ClassVisitor writer, List<ClassVisitor> analyzers, int options) {
+		this(api, withWriter(writer, analyzers), options);
+		this.writer = 0;
+	}
+
+	private static List<ClassVisitor> withWriter(ClassVisitor writer, List<ClassVisitor> analyzers) {
+		if (writer == null) {
+			throw new IllegalArgumentException("A writer child is required");
+		}
+		List<ClassVisitor> visitors = new ArrayList<>(analyzers.size() + 1);
+		visitors.add(writer);
+		visitors.addAll(analyzers);
+		return visitors;
+	}
+
+	/**
+	 * @return a snapshot of the metrics of each child, in the order they were
+	 *         given, or an empty list if this delegator wasn't built with
+	 *         {@link #METRICS}
+	 */
+	public List<VisitorMetrics> getMetrics() {
+		if (metrics == null) {
+			return Collections.emptyList();
+		}
+
+		List<VisitorMetrics> snapshots = new ArrayList<>(metrics.length);
+		for (ChildMetrics m : metrics) {
+			snapshots.add(m.snapshot());
+		}
+		return snapshots;
+	}
+
+	/**
+	 * shares a symbol table with other delegators, typically all those of one
+	 * scan, so that {@link SymbolicInstructions} visitors get the same ids for
+	 * the same strings across them
+	 */
+	public void setSymbolTable(SymbolTable symbols) {
+		context.setSymbols(symbols);
+	}
+
+	/**
+	 * @return the table {@link SymbolicInstructions} visitors get their ids from,
+	 *         created on first use if none was set
+	 */
+	public SymbolTable getSymbolTable() {
+		return context.symbols();
+	}
+
+	/**
+	 * @return the failures of children caught in {@link #ISOLATED} mode, in the
+	 *         order they happened, over all the classes visited so far
+	 */
+	public List<VisitorFailure> getFailures() {
+		if (failures == null) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(new ArrayList<>(failures));
+	}
+
+	/**
+	 * works out the cheapest ClassReader parsing options that still give every
+	 * child what it needs, see {@link ParsingRequirements}.
+	 */
+	public int getParsingOptions() {
+		int requirements = 0;
+		for (int i = 0; i < numChildren; i++) {
+			if (isFiltered(i)) {
+				continue;
+			}
+			if (children[i] instanceof ParsingRequirements) {
+				requirements |= ((ParsingRequirements) children[i]).getParsingRequirements();
+			} else {
+				if (((masks[i] & (1L << METHOD)) != 0) || isConsumer(i)) {
+					requirements |= ParsingRequirements.CODE | ParsingRequirements.DEBUG
+							| ParsingRequirements.FRAMES;
+				}
+				if ((masks[i] & (1L << SOURCE)) != 0) {
+					requirements |= ParsingRequirements.DEBUG;
+				}
+			}
+		}
+
+		int parsingOptions = 0;
+		if ((requirements & (ParsingRequirements.CODE | ParsingRequirements.FRAMES
+				| ParsingRequirements.EXPANDED_FRAMES)) == 0) {
+			parsingOptions |= ClassReader.SKIP_CODE;
+		}
+		if ((requirements & ParsingRequirements.DEBUG) == 0) {
+			parsingOptions |= ClassReader.SKIP_DEBUG;
+		}
+		if ((requirements & ParsingRequirements.EXPANDED_FRAMES) != 0) {
+			parsingOptions |= ClassReader.EXPAND_FRAMES;
+		} else if ((requirements & ParsingRequirements.FRAMES) == 0) {
+			parsingOptions |= ClassReader.SKIP_FRAMES;
+		}
+		return parsingOptions;
+	}
+
+	/**
+	 * parses the class with {@link #getParsingOptions()}, or not at all if no
+	 * child is interested in any event. Children that are
+	 * {@link ConstantPoolFilter}s and accept nothing in the constant pool are left
+	 * out of the visit. Parsing stops early if every child detaches.
+	 */
+	public void accept(ClassReader reader) {
+		accept(reader, null, null);
+	}
+
+	/**
+	 * like {@link #accept(ClassReader)}, but the results the cache holds for
+	 * this class are first replayed into the {@link Cacheable} children, which
+	 * are then left out of the visit. The results of the Cacheable children
+	 * that did visit the class are stored in the cache afterwards, unless they
+	 * failed in {@link #ISOLATED} mode.
+	 */
+	public void accept(byte[] classFile, int offset, int length, ResultCache cache) {
+		accept(new ClassReader(classFile, offset, length), ResultCache.digest(classFile, offset, length), cache);
+	}
+
+	void accept(ClassReader reader, byte[] digest, ResultCache cache) {
+		boolean cached = (cache != null) && (cacheVersions != null);
+		int numFailures = (failures == null) ? 0 : failures.size();
+		try {
+			if (constantPoolScan != null) {
+				numFiltered = constantPoolScan.filter(reader, children, numChildren, filtered);
+			}
+			if (cached) {
+				numFiltered += replay(digest, cache);
+			}
+			if (isInterested()) {
+				try {
+					reader.accept(this, getParsingOptions());
+				} catch (VisitAbortedException e) {
+					// every child has detached, so there is nothing left to visit
+				}
+				if (cached) {
+					store(digest, cache, numFailures);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			numFiltered = 0;
+		}
+	}
+
+	/**
+	 * replays the cached results of the Cacheable children that the constant
+	 * pool didn't already filter out, and marks them filtered
+	 *
+	 * @return the number of children replayed
+	 */
+	private int replay(byte[] digest, ResultCache cache) throws IOException {
+		if (numFiltered == 0) {
+			Arrays.fill(filtered, false);
+		}
+
+		int numReplayed = 0;
+		for (int i = 0; i < numChildren; i++) {
+			if ((cacheVersions[i] != null) && !filtered[i]) {
+				byte[] results = cache.get(digest, cacheVersions[i]);
+				if (results != null) {
+					((Cacheable) children[i]).readResults(new DataInputStream(new ByteArrayInputStream(results)));
+					filtered[i] = true;
+					numReplayed++;
+				}
+			}
+		}
+		return numReplayed;
+	}
+
+	private void store(byte[] digest, ResultCache cache, int numFailures) throws IOException {
+		for (int i = 0; i < numChildren; i++) {
+			if ((cacheVersions[i] != null) && !isFiltered(i) && !hasFailed(children[i], numFailures)) {
+				ByteArrayOutputStream results = new ByteArrayOutputStream();
+				((Cacheable) children[i]).writeResults(new DataOutputStream(results));
+				cache.put(digest, cacheVersions[i], results.toByteArray());
+			}
+		}
+	}
+
+	private boolean hasFailed(ClassVisitor child, int since) {
+		if (failures != null) {
+			for (int f = since; f < failures.size(); f++) {
+				if (failures.get(f).getVisitor() == child) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * stops delivering events of the current class to the given child, including
+	 * the events of any method, field, annotation, record component or module
+	 * being visited right now. Children are reattached at the next call to visit.
+	 * When the last attached child detaches, a {@link VisitAbortedException} is
+	 * thrown to stop the ClassReader, so this method does not return. Children
+	 * that aren't handed their delegator can get it by being {@link Detachable}.
+	 */
+	public void detach(ClassVisitor child) {
+		for (int i = 0; i < numChildren; i++) {
+			if ((children[i] == child) && !detached[i]) {
+				detach(i);
+				return;
+			}
+		}
+	}
+
+	private void detach(int child) {
+		detached[child] = true;
+		numAttached--;
+
+		rebuildDispatch();
+		context.detach(child);
+
+		if (numAttached == 0) {
+			throw VisitAbortedException.INSTANCE;
+		}
+	}
+
+	/**
+	 * records the failure of a child and detaches it from the rest of the class,
+	 * except for the writer, whose output would silently be left half written
+	 */
+	void quarantine(int child, RuntimeException e) {
+		if ((child == numChildren) || (child == writer)) {
+			// building the tree failed, which isn't any one child's fault, or the
+			// class being written is broken
+			throw e;
+		}
+		if (failures == null) {
+			failures = new ArrayList<>();
+		}
+		failures.add(new VisitorFailure(children[child], className, e));
+
+		if (!detached[child]) {
+			detach(child);
+		}
+	}
+
+	private void failed(ClassVisitor target, RuntimeException e) {
+		context.failed(originOf(target), e);
+	}
+
+	/**
+	 * reattaches every child but the ones the constant pool filtered out of the
+	 * class being accepted
+	 */
+	private void reattach() {
+		numAttached = numChildren;
+		for (int i = 0; i < numChildren; i++) {
+			detached[i] = isFiltered(i);
+			if (detached[i]) {
+				numAttached--;
+			}
+		}
+		rebuildDispatch();
+	}
+
+	private void rebuildDispatch() {
+		long[] attachedMasks = masks;
+		if (numAttached != numChildren) {
+			attachedMasks = masks.clone();
+			for (int i = 0; i < numChildren; i++) {
+				if (detached[i]) {
+					attachedMasks[i] = 0;
+				}
+			}
+		}
+		classVisitors = INTERESTS.buildDispatch(targets, numChildren, attachedMasks, null);
+		classOrigins = INTERESTS.buildOrigins(indices, numChildren, attachedMasks, null);
+		buildMemberMatchers();
+	}
+
+	/**
+	 * lines the matchers of the {@link MemberFilter} children up with the member
+	 * dispatch arrays, leaving null for children that match everything
+	 */
+	private void buildMemberMatchers() {
+		if (childMatchers == null) {
+			return;
+		}
+
+		MemberMatcher[][] matchers = new MemberMatcher[INTERESTS.size()][];
+		for (int event : MEMBER_EVENTS) {
+			int[] origins = classOrigins[event];
+			matchers[event] = new MemberMatcher[origins.length];
+			for (int t = 0; t < origins.length; t++) {
+				matchers[event][t] = childMatchers[event][origins[t]];
+			}
+		}
+		memberMatchers = matchers;
+	}
+
+	private static MemberMatcher matcherOrNull(MemberMatcher matcher) {
+		return (matcher == MemberMatcher.ANY) ? null : matcher;
+	}
+
+	private static boolean isSkipped(MemberMatcher[] matchers, int target, int access, String name,
+			String descriptor) {
+		return (matchers != null) && (matchers[target] != null) && !matchers[target].matches(access, name, descriptor);
+	}
+
+	private boolean isFiltered(int child) {
+		return (numFiltered > 0) && filtered[child];
+	}
+
+	/**
+	 * @return the origin, or -1 if the child detached while the current event was
+	 *         being dispatched
+	 */
+	private int attached(int origin) {
+		return detached[origin] ? -1 : origin;
+	}
+
+	// only failures search for the origin, events use the class origins
+	private int originOf(ClassVisitor target) {
+		for (int i = 0; i < numChildren; i++) {
+			if (targets[i] == target) {
+				return detached[i] ? -1 : i;
+			}
+		}
+		return -1;
+	}
+
+	private boolean isInterested() {
+		for (int i = 0; i < numChildren; i++) {
+			if (((masks[i] != 0) || isConsumer(i)) && !isFiltered(i)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean isConsumer(int child) {
+		return (consumers != null) && consumers[child];
+	}
+
+	/**
+	 * @return whether an attached {@link TreeConsumer} matches the given member,
+	 *         so the tree should hold it
+	 */
+	private boolean treeWants(int event, int access, String name, String descriptor) {
+		for (int i = 0; i < numChildren; i++) {
+			if (consumers[i] && !detached[i]) {
+				MemberMatcher matcher = (childMatchers != null) ? childMatchers[event][i] : null;
+				if ((matcher == null) || matcher.matches(access, name, descriptor)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private void startTree() {
+		tree = null;
+		for (int i = 0; i < numChildren; i++) {
+			if (consumers[i] && !detached[i]) {
+				tree = SharedClassNode.create(api);
+				return;
+			}
+		}
+	}
+
+	private void deliverTree() {
+		ClassVisitor classTree = tree;
+		tree = null;
+		classTree.visitEnd();
+		for (int i = 0; i < numChildren; i++) {
+			if (consumers[i] && !detached[i]) {
+				try {
+					((TreeConsumer) children[i]).visitTree((ClassNode) classTree);
+				} catch (RuntimeException e) {
+					failed(targets[i], e);
+				}
+			}
+		}
+	}
+
+	private SubVisitors subVisitors(int size) {
+		if (subVisitors == null) {
+			subVisitors = new SubVisitors();
+		}
+		return subVisitors.clear(size);
 	}
 
 	@Override
 	public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
-		for (ClassVisitor cv : classVisitors) {
-			if (cv != null) {
+		className = name;
+		context.clear();
+		if ((numAttached != numChildren) || (numFiltered > 0)) {
+			reattach();
+		}
+
+		if (metrics != null) {
+			for (ChildMetrics m : metrics) {
+				m.classStarted(name);
+			}
+		}
+
+		if (consumers != null) {
+			startTree();
+			if (tree != null) {
+				tree.visit(version, access, name, signature, superName, interfaces);
+			}
+		}
+
+		for (ClassVisitor cv : classVisitors[VISIT]) {
+			try {
 				cv.visit(version, access, name, signature, superName, interfaces);
+			} catch (RuntimeException e) {
+				failed(cv, e);
 			}
 		}
 	}
 
 	@Override
 	public void visitSource(String source, String debug) {
-		for (ClassVisitor cv : classVisitors) {
-			if (cv != null) {
+		if (tree != null) {
+			tree.visitSource(source, debug);
+		}
+		for (ClassVisitor cv : classVisitors[SOURCE]) {
+			try {
 				cv.visitSource(source, debug);
+			} catch (RuntimeException e) {
+				failed(cv, e);
 			}
 		}
 	}
 
 	@Override
 	public ModuleVisitor visitModule(String name, int access, String version) {
-		List<ModuleVisitor> moduleVisitors = new ArrayList<>(classVisitors.size());
-		for (ClassVisitor cv : classVisitors) {
-			if (cv != null) {
+		ClassVisitor[] targets = classVisitors[MODULE];
+		if ((targets.length == 0) && (tree == null)) {
+			return null;
+		}
+
+		SubVisitors moduleVisitors = subVisitors(targets.length + 1);
+		int[] origins = classOrigins[MODULE];
+		for (int t = 0; t < targets.length; t++) {
+			ClassVisitor cv = targets[t];
+			try {
 				ModuleVisitor mv = cv.visitModule(name, access, version);
 				if (mv != null) {
-					moduleVisitors.add(mv);
+					moduleVisitors.add(mv, attached(origins[t]));
 				}
+			} catch (RuntimeException e) {
+				failed(cv, e);
 			}
 		}
 
-		if (moduleVisitors.isEmpty()) {
-			return null;
+		// the tree's sub visitor goes in with an origin past the children, which never detaches
+		if (tree != null) {
+			moduleVisitors.add(tree.visitModule(name, access, version), numChildren);
 		}
-		return new DelegatingModuleVisitor(api, moduleVisitors);
+
+		return DelegatorPool.moduleVisitor(api, options, context, moduleVisitors);
 	}
 
 	@Override
 	public void visitNestHost(String nestHost) {
-		for (ClassVisitor cv : classVisitors) {
-			if (cv != null) {
-				if (cv != null) {
-					cv.visitNestHost(nestHost);
-				}
+		if (tree != null) {
+			tree.visitNestHost(nestHost);
+		}
+		for (ClassVisitor cv : classVisitors[NEST_HOST]) {
+			try {
+				cv.visitNestHost(nestHost);
+			} catch (RuntimeException e) {
+				failed(cv, e);
 			}
 		}
 	}
 
 	@Override
 	public void visitOuterClass(String owner, String name, String descriptor) {
-		for (ClassVisitor cv : classVisitors) {
-			if (cv != null) {
+		if (tree != null) {
+			tree.visitOuterClass(owner, name, descriptor);
+		}
+		for (ClassVisitor cv : classVisitors[OUTER_CLASS]) {
+			try {
 				cv.visitOuterClass(owner, name, descriptor);
+			} catch (RuntimeException e) {
+				failed(cv, e);
 			}
 		}
 	}
 
 	@Override
 	public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
-		List<AnnotationVisitor> annotationVisitors = new ArrayList<>(classVisitors.size());
-		for (ClassVisitor cv : classVisitors) {
-			if (cv != null) {
+		ClassVisitor[] targets = classVisitors[ANNOTATION];
+		if ((targets.length == 0) && (tree == null)) {
+			return null;
+		}
+
+		SubVisitors annotationVisitors = subVisitors(targets.length + 1);
+		int[] origins = classOrigins[ANNOTATION];
+		for (int t = 0; t < targets.length; t++) {
+			ClassVisitor cv = targets[t];
+			try {
 				AnnotationVisitor av = cv.visitAnnotation(descriptor, visible);
 				if (av != null) {
-					annotationVisitors.add(av);
+					annotationVisitors.add(av, attached(origins[t]));
 				}
+			} catch (RuntimeException e) {
+				failed(cv, e);
 			}
 		}
 
-		if (annotationVisitors.isEmpty()) {
-			return null;
+		if (tree != null) {
+			annotationVisitors.add(tree.visitAnnotation(descriptor, visible), numChildren);
 		}
-		return new DelegatingAnnotationVisitor(api, annotationVisitors);
+
+		return DelegatorPool.annotationVisitor(api, options, context, annotationVisitors);
 	}
 
 	@Override
 	public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
-		List<AnnotationVisitor> annotationVisitors = new ArrayList<>(classVisitors.size());
-		for (ClassVisitor cv : classVisitors) {
-			if (cv != null) {
+		ClassVisitor[] targets = classVisitors[TYPE_ANNOTATION];
+		if ((targets.length == 0) && (tree == null)) {
+			return null;
+		}
+
+		SubVisitors annotationVisitors = subVisitors(targets.length + 1);
+		int[] origins = classOrigins[TYPE_ANNOTATION];
+		for (int t = 0; t < targets.length; t++) {
+			ClassVisitor cv = targets[t];
+			try {
 				AnnotationVisitor av = cv.visitTypeAnnotation(typeRef, typePath, descriptor, visible);
 				if (av != null) {
-					annotationVisitors.add(av);
+					annotationVisitors.add(av, attached(origins[t]));
 				}
+			} catch (RuntimeException e) {
+				failed(cv, e);
 			}
 		}
 
-		if (annotationVisitors.isEmpty()) {
-			return null;
+		if (tree != null) {
+			annotationVisitors.add(tree.visitTypeAnnotation(typeRef, typePath, descriptor, visible), numChildren);
 		}
-		return new DelegatingAnnotationVisitor(api, annotationVisitors);
+
+		return DelegatorPool.annotationVisitor(api, options, context, annotationVisitors);
 	}
 
 	@Override
 	public void visitAttribute(Attribute attribute) {
-		for (ClassVisitor cv : classVisitors) {
-			if (cv != null) {
+		if (tree != null) {
+			tree.visitAttribute(attribute);
+		}
+		for (ClassVisitor cv : classVisitors[ATTRIBUTE]) {
+			try {
 				cv.visitAttribute(attribute);
+			} catch (RuntimeException e) {
+				failed(cv, e);
 			}
 		}
 	}
 
 	@Override
 	public void visitNestMember(String nestMember) {
-		for (ClassVisitor cv : classVisitors) {
-			if (cv != null) {
+		if (tree != null) {
+			tree.visitNestMember(nestMember);
+		}
+		for (ClassVisitor cv : classVisitors[NEST_MEMBER]) {
+			try {
 				cv.visitNestMember(nestMember);
+			} catch (RuntimeException e) {
+				failed(cv, e);
 			}
 		}
 	}
 
 	@Override
 	public void visitInnerClass(String name, String outerName, String innerName, int access) {
-		for (ClassVisitor cv : classVisitors) {
-			if (cv != null) {
+		if (tree != null) {
+			tree.visitInnerClass(name, outerName, innerName, access);
+		}
+		for (ClassVisitor cv : classVisitors[INNER_CLASS]) {
+			try {
 				cv.visitInnerClass(name, outerName, innerName, access);
+			} catch (RuntimeException e) {
+				failed(cv, e);
 			}
 		}
 	}
 
 	@Override
 	public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
-		List<FieldVisitor> fieldVisitors = new ArrayList(classVisitors.size());
-		for (ClassVisitor cv : classVisitors) {
-			if (cv != null) {
+		ClassVisitor[] targets = classVisitors[FIELD];
+		boolean inTree = (tree != null) && treeWants(FIELD, access, name, descriptor);
+		if ((targets.length == 0) && !inTree) {
+			return null;
+		}
+
+		MemberMatcher[] matchers = (memberMatchers != null) ? memberMatchers[FIELD] : null;
+		int[] origins = classOrigins[FIELD];
+		SubVisitors fieldVisitors = subVisitors(targets.length + 1);
+		for (int t = 0; t < targets.length; t++) {
+			if (isSkipped(matchers, t, access, name, descriptor)) {
+				continue;
+			}
+			ClassVisitor cv = targets[t];
+			try {
 				FieldVisitor fv = cv.visitField(access, name, descriptor, signature, value);
 				if (fv != null) {
-					fieldVisitors.add(fv);
+					fieldVisitors.add(fv, attached(origins[t]));
 				}
+			} catch (RuntimeException e) {
+				failed(cv, e);
 			}
 		}
 
-		if (fieldVisitors.isEmpty()) {
-			return null;
+		if (inTree) {
+			fieldVisitors.add(tree.visitField(access, name, descriptor, signature, value), numChildren);
 		}
-		return new DelegatingFieldVisitor(api, fieldVisitors);
+
+		return DelegatorPool.fieldVisitor(api, options, context, fieldVisitors);
 	}
 
 	@Override
 	public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
 			String[] exceptions) {
-		List<MethodVisitor> methodVisitors = new ArrayList<>(classVisitors.size());
-		for (ClassVisitor cv : classVisitors) {
-			if (cv != null) {
+		ClassVisitor[] targets = classVisitors[METHOD];
+		boolean inTree = (tree != null) && treeWants(METHOD, access, name, descriptor);
+		if ((targets.length == 0) && !inTree) {
+			return null;
+		}
+
+		MemberMatcher[] matchers = (memberMatchers != null) ? memberMatchers[METHOD] : null;
+		int[] origins = classOrigins[METHOD];
+		SubVisitors methodVisitors = subVisitors(targets.length + 1);
+		for (int t = 0; t < targets.length; t++) {
+			if (isSkipped(matchers, t, access, name, descriptor)) {
+				continue;
+			}
+			ClassVisitor cv = targets[t];
+			try {
 				MethodVisitor mv = cv.visitMethod(access, name, descriptor, signature, exceptions);
 				if (mv != null) {
-					methodVisitors.add(mv);
+					methodVisitors.add(mv, attached(origins[t]));
 				}
+			} catch (RuntimeException e) {
+				failed(cv, e);
 			}
 		}
 
-		if (methodVisitors.isEmpty()) {
-			return null;
+		if (inTree) {
+			methodVisitors.add(tree.visitMethod(access, name, descriptor, signature, exceptions), numChildren);
 		}
-		return new DelegatingMethodVisitor(api, methodVisitors);
+
+		// returning the writer's own visitor lets a MethodWriter copy the method
+		if ((writer >= 0) && (methodVisitors.size() == 1) && (methodVisitors.originOf(0) == writer)) {
+			return (MethodVisitor) methodVisitors.takeOnly();
+		}
+		MethodVisitor mv = DelegatorPool.methodVisitor(api, options, context, methodVisitors);
+		if (mv instanceof DelegatingMethodVisitor) {
+			((DelegatingMethodVisitor) mv).setMethod(className, access, name, descriptor, signature, exceptions);
+		}
+		return mv;
 	}
 
 	@Override
 	public void visitPermittedSubclass(String permittedSubclass) {
-		for (ClassVisitor cv : classVisitors) {
-			if (cv != null) {
+		if (tree != null) {
+			tree.visitPermittedSubclass(permittedSubclass);
+		}
+		for (ClassVisitor cv : classVisitors[PERMITTED_SUBCLASS]) {
+			try {
 				cv.visitPermittedSubclass(permittedSubclass);
+			} catch (RuntimeException e) {
+				failed(cv, e);
 			}
 		}
 	}
 
 	@Override
 	public RecordComponentVisitor visitRecordComponent(String name, String descriptor, String signature) {
-		List<RecordComponentVisitor> recordComponentVisitors = new ArrayList<>(classVisitors.size());
-		for (ClassVisitor cv : classVisitors) {
-			if (cv != null) {
+		ClassVisitor[] targets = classVisitors[RECORD_COMPONENT];
+		boolean inTree = (tree != null) && treeWants(RECORD_COMPONENT, 0, name, descriptor);
+		if ((targets.length == 0) && !inTree) {
+			return null;
+		}
+
+		MemberMatcher[] matchers = (memberMatchers != null) ? memberMatchers[RECORD_COMPONENT] : null;
+		int[] origins = classOrigins[RECORD_COMPONENT];
+		SubVisitors recordComponentVisitors = subVisitors(targets.length + 1);
+		for (int t = 0; t < targets.length; t++) {
+			if (isSkipped(matchers, t, 0, name, descriptor)) {
+				continue;
+			}
+			ClassVisitor cv = targets[t];
+			try {
 				RecordComponentVisitor rcv = cv.visitRecordComponent(name, descriptor, signature);
 				if (rcv != null) {
-					recordComponentVisitors.add(rcv);
+					recordComponentVisitors.add(rcv, attached(origins[t]));
 				}
+			} catch (RuntimeException e) {
+				failed(cv, e);
 			}
 		}
 
-		if (recordComponentVisitors.isEmpty()) {
-			return null;
+		if (inTree) {
+			recordComponentVisitors.add(tree.visitRecordComponent(name, descriptor, signature), numChildren);
 		}
-		return new DelegatingRecordComponentVisitor(api, recordComponentVisitors);
+
+		return DelegatorPool.recordComponentVisitor(api, options, context, recordComponentVisitors);
 	}
 
 	@Override
 	public void visitEnd() {
-		for (ClassVisitor cv : classVisitors) {
-			if (cv != null) {
+		if (tree != null) {
+			deliverTree();
+		}
+
+		for (ClassVisitor cv : classVisitors[END]) {
+			try {
 				cv.visitEnd();
+			} catch (RuntimeException e) {
+				failed(cv, e);
+			}
+		}
+
+		if (metrics != null) {
+			for (ChildMetrics m : metrics) {
+				m.classEnded();
 			}
 		}
 	}
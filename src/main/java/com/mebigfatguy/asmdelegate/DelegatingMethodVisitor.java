@@ -18,7 +18,7 @@
  */
 package com.mebigfatguy.asmdelegate;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.objectweb.asm.AnnotationVisitor;
@@ -26,173 +26,644 @@ import org.objectweb.asm.Attribute;
 import org.objectweb.asm.Handle;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.TypePath;
 
 public class DelegatingMethodVisitor extends MethodVisitor {
 
-	private List<MethodVisitor> methodVisitors;
+	static final Interests INTERESTS = new Interests(MethodVisitor.class, "visitParameter", "visitAnnotationDefault",
+			"visitAnnotation", "visitTypeAnnotation", "visitAnnotableParameterCount", "visitParameterAnnotation",
+			"visitAttribute", "visitCode", "visitFrame", "visitInsn", "visitIntInsn", "visitVarInsn", "visitTypeInsn",
+			"visitFieldInsn", "visitMethodInsn", "visitInvokeDynamicInsn", "visitJumpInsn", "visitLabel",
+			"visitLdcInsn", "visitIincInsn", "visitTableSwitchInsn", "visitLookupSwitchInsn",
+			"visitMultiANewArrayInsn", "visitInsnAnnotation", "visitTryCatchBlock", "visitTryCatchAnnotation",
+			"visitLocalVariable", "visitLocalVariableAnnotation", "visitLineNumber", "visitMaxs", "visitEnd");
+
+	static final int PARAMETER = 0;
+	static final int ANNOTATION_DEFAULT = 1;
+	static final int ANNOTATION = 2;
+	static final int TYPE_ANNOTATION = 3;
+	static final int ANNOTABLE_PARAMETER_COUNT = 4;
+	static final int PARAMETER_ANNOTATION = 5;
+	static final int ATTRIBUTE = 6;
+	static final int CODE = 7;
+	static final int FRAME = 8;
+	static final int INSN = 9;
+	static final int INT_INSN = 10;
+	static final int VAR_INSN = 11;
+	static final int TYPE_INSN = 12;
+	static final int FIELD_INSN = 13;
+	static final int METHOD_INSN = 14;
+	static final int INVOKE_DYNAMIC_INSN = 15;
+	static final int JUMP_INSN = 16;
+	static final int LABEL = 17;
+	static final int LDC_INSN = 18;
+	static final int IINC_INSN = 19;
+	static final int TABLE_SWITCH_INSN = 20;
+	static final int LOOKUP_SWITCH_INSN = 21;
+	static final int MULTI_ANEW_ARRAY_INSN = 22;
+	static final int INSN_ANNOTATION = 23;
+	static final int TRY_CATCH_BLOCK = 24;
+	static final int TRY_CATCH_ANNOTATION = 25;
+	static final int LOCAL_VARIABLE = 26;
+	static final int LOCAL_VARIABLE_ANNOTATION = 27;
+	static final int LINE_NUMBER = 28;
+	static final int MAXS = 29;
+	static final int END = 30;
+
+	// the events only a delegator makes, for its marker interface children,
+	// named so that METRICS mode can count them
+	static final Interests MARKER_EVENTS = new Interests(MethodVisitor.class, "visitInstructions", "visitAnalysis",
+			"visitTypeInsnIds", "visitFieldInsnIds", "visitMethodInsnIds", "visitMultiANewArrayInsnIds");
+
+	static final int INSTRUCTIONS = 0;
+	static final int ANALYSIS = 1;
+	static final int TYPE_INSN_IDS = 2;
+	static final int FIELD_INSN_IDS = 3;
+	static final int METHOD_INSN_IDS = 4;
+	static final int MULTI_ANEW_ARRAY_INSN_IDS = 5;
+
+	// the events a BatchedInstructions child gets in its InstructionBlock instead
+	private static final long BATCHED_EVENTS = ((1L << (MULTI_ANEW_ARRAY_INSN + 1)) - (1L << INSN))
+			| (1L << LINE_NUMBER);
+
+	private static final MethodVisitor[] NO_CHILDREN = new MethodVisitor[0];
+	private static final long[] NO_MASKS = new long[0];
+	private static final int[] NO_ORIGINS = new int[0];
+
+	private final int options;
+	private DelegationContext context;
+	private MethodVisitor[] children = NO_CHILDREN;
+	private long[] masks = NO_MASKS;
+	private int[] origins = NO_ORIGINS;
+	private int numChildren;
+	private MethodVisitor[][] methodVisitors;
+	private int[][] dispatchOrigins;
+	private SubVisitors subVisitors;
+	private MethodVisitor[] batched = NO_CHILDREN;
+	private int numBatched;
+	private InstructionBlock block;
+	private boolean delivered;
+	private MethodVisitor[] analyzed = NO_CHILDREN;
+	private MethodVisitor[] symbolic = NO_CHILDREN;
+	private SymbolTable symbols;
+	private SymbolTable ownSymbols;
+	private MethodAnalysis analysis;
+	private MethodVisitor recorder;
 
 	public DelegatingMethodVisitor(int api, List<MethodVisitor> visitors) {
+		this(api, 0);
+		SubVisitors initial = new SubVisitors().clear(visitors.size());
+		for (int i = 0; i < visitors.size(); i++) {
+			initial.add(visitors.get(i), i);
+		}
+		reset(null, initial);
+	}
+
+	DelegatingMethodVisitor(int api, int options) {
 		super(api);
-		methodVisitors = visitors;
+		this.options = options;
+	}
+
+	/**
+	 * shares a symbol table with other directly built delegators, so that
+	 * {@link SymbolicInstructions} visitors get the same ids for the same strings
+	 * across methods. Without one, each such delegator has a table of its own.
+	 * Under a {@link DelegatingClassVisitor} its table is used instead, see
+	 * {@link DelegatingClassVisitor#setSymbolTable(SymbolTable)}.
+	 */
+	public void setSymbolTable(SymbolTable symbols) {
+		ownSymbols = symbols;
+		if ((context == null) && (this.symbols != null)) {
+			this.symbols = symbols;
+		}
+	}
+
+	/**
+	 * @return the table {@link SymbolicInstructions} visitors get their ids from,
+	 *         created on first use if none was set
+	 */
+	public SymbolTable getSymbolTable() {
+		return (context != null) ? context.symbols() : ownSymbols();
+	}
+
+	boolean isReusableFor(int api, int options) {
+		return (this.api == api) && (this.options == options);
+	}
+
+	void reset(DelegationContext context, SubVisitors visitors) {
+		this.context = context;
+		symbols = null;
+		if (block != null) {
+			block.clear();
+		}
+		delivered = false;
+		analysis = null;
+		recorder = null;
+		int count = visitors.size();
+		if (children.length < count) {
+			children = new MethodVisitor[count];
+			masks = new long[count];
+			origins = new int[count];
+		}
+
+		numChildren = 0;
+		for (int i = 0; i < count; i++) {
+			MethodVisitor visitor = (MethodVisitor) visitors.get(i);
+			if (visitor != null) {
+				children[numChildren] = visitor;
+				masks[numChildren] = INTERESTS.maskOf(visitor, visitor.getDelegate());
+				if (MeteredVisitors.unmetered(visitor) instanceof BatchedInstructions) {
+					masks[numChildren] &= ~BATCHED_EVENTS;
+				}
+				origins[numChildren++] = visitors.originOf(i);
+			}
+		}
+		methodVisitors = INTERESTS.buildDispatch(children, numChildren, masks, methodVisitors);
+		dispatchOrigins = INTERESTS.buildOrigins(origins, numChildren, masks, dispatchOrigins);
+		collectBatched();
+		collectAnalyzed();
+		collectSymbolic();
+
+		if (context != null) {
+			context.register(this);
+		}
+	}
+
+	/**
+	 * drops the children that came from the given root child. The dispatch table
+	 * is rebuilt rather than updated, as an event may be iterating it right now.
+	 */
+	void detach(int origin) {
+		int remaining = 0;
+		for (int i = 0; i < numChildren; i++) {
+			if (origins[i] != origin) {
+				children[remaining] = children[i];
+				masks[remaining] = masks[i];
+				origins[remaining++] = origins[i];
+			}
+		}
+
+		if (remaining != numChildren) {
+			Arrays.fill(children, remaining, numChildren, null);
+			numChildren = remaining;
+			methodVisitors = INTERESTS.buildDispatch(children, numChildren, masks, null);
+			dispatchOrigins = INTERESTS.buildOrigins(origins, numChildren, masks, null);
+			collectBatched();
+			collectAnalyzed();
+			collectSymbolic();
+			if (analyzed.length == 0) {
+				recorder = null;
+			}
+		}
+	}
+
+	/**
+	 * starts recording the method for a shared analysis, if any child wants one
+	 */
+	void setMethod(String owner, int access, String name, String descriptor, String signature,
+			String[] exceptions) {
+		if (analyzed.length > 0) {
+			analysis = new MethodAnalysis(api, owner, access, name, descriptor, signature, exceptions);
+			recorder = analysis.recorder();
+		}
+	}
+
+	/**
+	 * finds the children that want the instructions in a block, looking through
+	 * the metering wrappers. The array is replaced rather than updated, as the
+	 * block may be being delivered right now.
+	 */
+	private void collectBatched() {
+		int count = 0;
+		for (int i = 0; i < numChildren; i++) {
+			if (MeteredVisitors.unmetered(children[i]) instanceof BatchedInstructions) {
+				count++;
+			}
+		}
+
+		if (count == 0) {
+			batched = NO_CHILDREN;
+		} else {
+			batched = new MethodVisitor[count];
+			count = 0;
+			for (int i = 0; i < numChildren; i++) {
+				if (MeteredVisitors.unmetered(children[i]) instanceof BatchedInstructions) {
+					batched[count++] = children[i];
+				}
+			}
+			if (block == null) {
+				block = new InstructionBlock();
+			}
+		}
+		numBatched = count;
+	}
+
+	private void collectAnalyzed() {
+		int count = 0;
+		for (int i = 0; i < numChildren; i++) {
+			if (MeteredVisitors.unmetered(children[i]) instanceof SharedAnalysis) {
+				count++;
+			}
+		}
+
+		if (count == 0) {
+			analyzed = NO_CHILDREN;
+		} else {
+			analyzed = new MethodVisitor[count];
+			count = 0;
+			for (int i = 0; i < numChildren; i++) {
+				if (MeteredVisitors.unmetered(children[i]) instanceof SharedAnalysis) {
+					analyzed[count++] = children[i];
+				}
+			}
+		}
+	}
+
+	private void collectSymbolic() {
+		int count = 0;
+		for (int i = 0; i < numChildren; i++) {
+			if (MeteredVisitors.unmetered(children[i]) instanceof SymbolicInstructions) {
+				count++;
+			}
+		}
+
+		if (count == 0) {
+			symbolic = NO_CHILDREN;
+		} else {
+			symbolic = new MethodVisitor[count];
+			count = 0;
+			for (int i = 0; i < numChildren; i++) {
+				if (MeteredVisitors.unmetered(children[i]) instanceof SymbolicInstructions) {
+					symbolic[count++] = children[i];
+				}
+			}
+			if (symbols == null) {
+				symbols = getSymbolTable();
+			}
+		}
+	}
+
+	private SymbolTable ownSymbols() {
+		if (ownSymbols == null) {
+			ownSymbols = new SymbolTable();
+		}
+		return ownSymbols;
+	}
+
+	private void methodInsnIds(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+		int ownerId = symbols.id(owner);
+		int nameId = symbols.id(name);
+		int descriptorId = symbols.id(descriptor);
+		for (MethodVisitor mv : symbolic) {
+			try {
+				((SymbolicInstructions) mv).visitMethodInsnIds(opcode, ownerId, nameId, descriptorId, isInterface);
+			} catch (RuntimeException e) {
+				failed(mv, e);
+			}
+		}
+	}
+
+	private void recordMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+		block.add(opcode, block.push(owner));
+		block.push(name);
+		block.push(descriptor);
+		block.push(Boolean.valueOf(isInterface));
+	}
+
+	private void deliverInstructions() {
+		if ((numBatched == 0) || delivered || (block.size() == 0)) {
+			return;
+		}
+
+		delivered = true;
+		for (MethodVisitor mv : batched) {
+			try {
+				((BatchedInstructions) mv).visitInstructions(block);
+			} catch (RuntimeException e) {
+				failed(mv, e);
+			}
+		}
+	}
+
+	private void deliverAnalysis() {
+		if (recorder == null) {
+			return;
+		}
+
+		recorder = null;
+		for (MethodVisitor mv : analyzed) {
+			try {
+				((SharedAnalysis) mv).visitAnalysis(analysis);
+			} catch (RuntimeException e) {
+				failed(mv, e);
+			}
+		}
+		analysis = null;
+	}
+
+	private int attached(int origin) {
+		return (context != null) ? context.attached(origin) : origin;
+	}
+
+	// only failures search for the origin, events use the dispatch origins
+	private int originOf(MethodVisitor child) {
+		for (int i = 0; i < numChildren; i++) {
+			if (children[i] == child) {
+				return origins[i];
+			}
+		}
+		return -1;
+	}
+
+	private void failed(MethodVisitor child, RuntimeException e) {
+		if (context == null) {
+			throw e;
+		}
+		context.failed(originOf(child), e);
+	}
+
+	private void release() {
+		Arrays.fill(children, 0, numChildren, null);
+		numChildren = 0;
+		batched = NO_CHILDREN;
+		numBatched = 0;
+		analyzed = NO_CHILDREN;
+		analysis = null;
+		recorder = null;
+		symbolic = NO_CHILDREN;
+		symbols = null;
+		context = null;
+		INTERESTS.clearDispatch(methodVisitors);
+		DelegatorPool.release(this);
+	}
+
+	private SubVisitors subVisitors(int size) {
+		if (subVisitors == null) {
+			subVisitors = new SubVisitors();
+		}
+		return subVisitors.clear(size);
 	}
 
 	@Override
 	public void visitParameter(String name, int access) {
-		for (MethodVisitor mv : methodVisitors) {
-			if (mv != null) {
+		for (MethodVisitor mv : methodVisitors[PARAMETER]) {
+			try {
 				mv.visitParameter(name, access);
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
 	}
 
 	@Override
 	public AnnotationVisitor visitAnnotationDefault() {
-		List<AnnotationVisitor> annotationVisitors = new ArrayList(methodVisitors.size());
-		for (MethodVisitor mv : methodVisitors) {
-			if (mv != null) {
+		MethodVisitor[] targets = methodVisitors[ANNOTATION_DEFAULT];
+		if (targets.length == 0) {
+			return null;
+		}
+
+		SubVisitors annotationVisitors = subVisitors(targets.length);
+		int[] targetOrigins = dispatchOrigins[ANNOTATION_DEFAULT];
+		for (int t = 0; t < targets.length; t++) {
+			MethodVisitor mv = targets[t];
+			try {
 				AnnotationVisitor av = mv.visitAnnotationDefault();
-				annotationVisitors.add(av);
+				if (av != null) {
+					annotationVisitors.add(av, attached(targetOrigins[t]));
+				}
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
 
-		if (annotationVisitors.isEmpty()) {
-			return null;
-		}
-		return new DelegatingAnnotationVisitor(api, annotationVisitors);
+		return DelegatorPool.annotationVisitor(api, options, context, annotationVisitors);
 	}
 
 	@Override
 	public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
-		List<AnnotationVisitor> annotationVisitors = new ArrayList(methodVisitors.size());
-		for (MethodVisitor mv : methodVisitors) {
-			if (mv != null) {
+		MethodVisitor[] targets = methodVisitors[ANNOTATION];
+		if (targets.length == 0) {
+			return null;
+		}
+
+		SubVisitors annotationVisitors = subVisitors(targets.length);
+		int[] targetOrigins = dispatchOrigins[ANNOTATION];
+		for (int t = 0; t < targets.length; t++) {
+			MethodVisitor mv = targets[t];
+			try {
 				AnnotationVisitor av = mv.visitAnnotation(descriptor, visible);
 				if (av != null) {
-					annotationVisitors.add(av);
+					annotationVisitors.add(av, attached(targetOrigins[t]));
 				}
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
 
-		if (annotationVisitors.isEmpty()) {
-			return null;
-		}
-		return new DelegatingAnnotationVisitor(api, annotationVisitors);
+		return DelegatorPool.annotationVisitor(api, options, context, annotationVisitors);
 	}
 
 	@Override
 	public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
-		List<AnnotationVisitor> annotationVisitors = new ArrayList(methodVisitors.size());
-		for (MethodVisitor mv : methodVisitors) {
-			if (mv != null) {
+		MethodVisitor[] targets = methodVisitors[TYPE_ANNOTATION];
+		if (targets.length == 0) {
+			return null;
+		}
+
+		SubVisitors annotationVisitors = subVisitors(targets.length);
+		int[] targetOrigins = dispatchOrigins[TYPE_ANNOTATION];
+		for (int t = 0; t < targets.length; t++) {
+			MethodVisitor mv = targets[t];
+			try {
 				AnnotationVisitor av = mv.visitTypeAnnotation(typeRef, typePath, descriptor, visible);
 				if (av != null) {
-					annotationVisitors.add(av);
+					annotationVisitors.add(av, attached(targetOrigins[t]));
 				}
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
 
-		if (annotationVisitors.isEmpty()) {
-			return null;
-		}
-		return new DelegatingAnnotationVisitor(api, annotationVisitors);
+		return DelegatorPool.annotationVisitor(api, options, context, annotationVisitors);
 	}
 
 	@Override
 	public void visitAnnotableParameterCount(int parameterCount, boolean visible) {
-		for (MethodVisitor mv : methodVisitors) {
-			if (mv != null) {
+		for (MethodVisitor mv : methodVisitors[ANNOTABLE_PARAMETER_COUNT]) {
+			try {
 				mv.visitAnnotableParameterCount(parameterCount, visible);
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
 	}
 
 	@Override
 	public AnnotationVisitor visitParameterAnnotation(int parameter, String descriptor, boolean visible) {
-		List<AnnotationVisitor> annotationVisitors = new ArrayList(methodVisitors.size());
-		for (MethodVisitor mv : methodVisitors) {
-			if (mv != null) {
+		MethodVisitor[] targets = methodVisitors[PARAMETER_ANNOTATION];
+		if (targets.length == 0) {
+			return null;
+		}
+
+		SubVisitors annotationVisitors = subVisitors(targets.length);
+		int[] targetOrigins = dispatchOrigins[PARAMETER_ANNOTATION];
+		for (int t = 0; t < targets.length; t++) {
+			MethodVisitor mv = targets[t];
+			try {
 				AnnotationVisitor av = mv.visitParameterAnnotation(parameter, descriptor, visible);
 				if (av != null) {
-					annotationVisitors.add(av);
+					annotationVisitors.add(av, attached(targetOrigins[t]));
 				}
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
 
-		if (annotationVisitors.isEmpty()) {
-			return null;
-		}
-		return new DelegatingAnnotationVisitor(api, annotationVisitors);
+		return DelegatorPool.annotationVisitor(api, options, context, annotationVisitors);
 	}
 
 	@Override
 	public void visitAttribute(Attribute attribute) {
-		for (MethodVisitor mv : methodVisitors) {
-			if (mv != null) {
+		for (MethodVisitor mv : methodVisitors[ATTRIBUTE]) {
+			try {
 				mv.visitAttribute(attribute);
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
 	}
 
 	@Override
 	public void visitCode() {
-		for (MethodVisitor mv : methodVisitors) {
-			if (mv != null) {
+		for (MethodVisitor mv : methodVisitors[CODE]) {
+			try {
 				mv.visitCode();
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
 	}
 
 	@Override
 	public void visitFrame(int type, int numLocal, Object[] local, int numStack, Object[] stack) {
-		for (MethodVisitor mv : methodVisitors) {
-			if (mv != null) {
+		if (recorder != null) {
+			recorder.visitFrame(type, numLocal, local, numStack, stack);
+		}
+		for (MethodVisitor mv : methodVisitors[FRAME]) {
+			try {
 				mv.visitFrame(type, numLocal, local, numStack, stack);
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
 	}
 
 	@Override
 	public void visitInsn(int opcode) {
-		for (MethodVisitor mv : methodVisitors) {
-			if (mv != null) {
+		if (numBatched > 0) {
+			block.add(opcode, 0);
+		}
+		if (recorder != null) {
+			recorder.visitInsn(opcode);
+		}
+		for (MethodVisitor mv : methodVisitors[INSN]) {
+			try {
 				mv.visitInsn(opcode);
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
 	}
 
 	@Override
 	public void visitIntInsn(int opcode, int operand) {
-		for (MethodVisitor mv : methodVisitors) {
-			if (mv != null) {
+		if (numBatched > 0) {
+			block.add(opcode, operand);
+		}
+		if (recorder != null) {
+			recorder.visitIntInsn(opcode, operand);
+		}
+		for (MethodVisitor mv : methodVisitors[INT_INSN]) {
+			try {
 				mv.visitIntInsn(opcode, operand);
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
 	}
 
 	@Override
 	public void visitVarInsn(int opcode, int var) {
-		for (MethodVisitor mv : methodVisitors) {
-			if (mv != null) {
+		if (numBatched > 0) {
+			block.add(opcode, var);
+		}
+		if (recorder != null) {
+			recorder.visitVarInsn(opcode, var);
+		}
+		for (MethodVisitor mv : methodVisitors[VAR_INSN]) {
+			try {
 				mv.visitVarInsn(opcode, var);
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
 	}
 
 	@Override
 	public void visitTypeInsn(int opcode, String type) {
-		for (MethodVisitor mv : methodVisitors) {
-			if (mv != null) {
+		if (numBatched > 0) {
+			block.add(opcode, block.push(type));
+		}
+		if (recorder != null) {
+			recorder.visitTypeInsn(opcode, type);
+		}
+		for (MethodVisitor mv : methodVisitors[TYPE_INSN]) {
+			try {
 				mv.visitTypeInsn(opcode, type);
+			} catch (RuntimeException e) {
+				failed(mv, e);
+			}
+		}
+		if (symbolic.length > 0) {
+			int typeId = symbols.id(type);
+			for (MethodVisitor mv : symbolic) {
+				try {
+					((SymbolicInstructions) mv).visitTypeInsnIds(opcode, typeId);
+				} catch (RuntimeException e) {
+					failed(mv, e);
+				}
 			}
 		}
 	}
 
 	@Override
 	public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
-		for (MethodVisitor mv : methodVisitors) {
-			if (mv != null) {
+		if (numBatched > 0) {
+			block.add(opcode, block.push(owner));
+			block.push(name);
+			block.push(descriptor);
+		}
+		if (recorder != null) {
+			recorder.visitFieldInsn(opcode, owner, name, descriptor);
+		}
+		for (MethodVisitor mv : methodVisitors[FIELD_INSN]) {
+			try {
 				mv.visitFieldInsn(opcode, owner, name, descriptor);
+			} catch (RuntimeException e) {
+				failed(mv, e);
+			}
+		}
+		if (symbolic.length > 0) {
+			int ownerId = symbols.id(owner);
+			int nameId = symbols.id(name);
+			int descriptorId = symbols.id(descriptor);
+			for (MethodVisitor mv : symbolic) {
+				try {
+					((SymbolicInstructions) mv).visitFieldInsnIds(opcode, ownerId, nameId, descriptorId);
+				} catch (RuntimeException e) {
+					failed(mv, e);
+				}
 			}
 		}
 	}
@@ -200,119 +671,234 @@ public class DelegatingMethodVisitor extends MethodVisitor {
 	@Override
 	@Deprecated
 	public void visitMethodInsn(int opcode, String owner, String name, String descriptor) {
-		for (MethodVisitor mv : methodVisitors) {
-			if (mv != null) {
+		if (numBatched > 0) {
+			recordMethodInsn(opcode, owner, name, descriptor, opcode == Opcodes.INVOKEINTERFACE);
+		}
+		if (recorder != null) {
+			recorder.visitMethodInsn(opcode, owner, name, descriptor, opcode == Opcodes.INVOKEINTERFACE);
+		}
+		for (MethodVisitor mv : methodVisitors[METHOD_INSN]) {
+			try {
 				mv.visitMethodInsn(opcode, owner, name, descriptor);
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
+		if (symbolic.length > 0) {
+			methodInsnIds(opcode, owner, name, descriptor, opcode == Opcodes.INVOKEINTERFACE);
+		}
 	}
 
 	@Override
 	public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
-		for (MethodVisitor mv : methodVisitors) {
-			if (mv != null) {
+		if (numBatched > 0) {
+			recordMethodInsn(opcode, owner, name, descriptor, isInterface);
+		}
+		if (recorder != null) {
+			recorder.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+		}
+		for (MethodVisitor mv : methodVisitors[METHOD_INSN]) {
+			try {
 				mv.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
+		if (symbolic.length > 0) {
+			methodInsnIds(opcode, owner, name, descriptor, isInterface);
+		}
 	}
 
 	@Override
 	public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle,
 			Object... bootstrapMethodArguments) {
-		for (MethodVisitor mv : methodVisitors) {
-			if (mv != null) {
+		if (numBatched > 0) {
+			block.add(Opcodes.INVOKEDYNAMIC, block.push(name));
+			block.push(descriptor);
+			block.push(bootstrapMethodHandle);
+			block.push(bootstrapMethodArguments);
+		}
+		if (recorder != null) {
+			recorder.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
+		}
+		for (MethodVisitor mv : methodVisitors[INVOKE_DYNAMIC_INSN]) {
+			try {
 				mv.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
 	}
 
 	@Override
 	public void visitJumpInsn(int opcode, Label label) {
-		for (MethodVisitor mv : methodVisitors) {
-			if (mv != null) {
+		if (numBatched > 0) {
+			block.add(opcode, block.push(label));
+		}
+		if (recorder != null) {
+			recorder.visitJumpInsn(opcode, label);
+		}
+		for (MethodVisitor mv : methodVisitors[JUMP_INSN]) {
+			try {
 				mv.visitJumpInsn(opcode, label);
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
 	}
 
 	@Override
 	public void visitLabel(Label label) {
-		for (MethodVisitor mv : methodVisitors) {
-			if (mv != null) {
+		if (numBatched > 0) {
+			block.add(InstructionBlock.LABEL, block.push(label));
+		}
+		if (recorder != null) {
+			recorder.visitLabel(label);
+		}
+		for (MethodVisitor mv : methodVisitors[LABEL]) {
+			try {
 				mv.visitLabel(label);
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
 	}
 
 	@Override
 	public void visitLdcInsn(Object value) {
-		for (MethodVisitor mv : methodVisitors) {
-			if (mv != null) {
+		if (numBatched > 0) {
+			block.add(Opcodes.LDC, block.push(value));
+		}
+		if (recorder != null) {
+			recorder.visitLdcInsn(value);
+		}
+		for (MethodVisitor mv : methodVisitors[LDC_INSN]) {
+			try {
 				mv.visitLdcInsn(value);
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
 	}
 
 	@Override
 	public void visitIincInsn(int var, int increment) {
-		for (MethodVisitor mv : methodVisitors) {
-			if (mv != null) {
+		if (numBatched > 0) {
+			block.add(Opcodes.IINC, (increment << 16) | (var & 0xFFFF));
+		}
+		if (recorder != null) {
+			recorder.visitIincInsn(var, increment);
+		}
+		for (MethodVisitor mv : methodVisitors[IINC_INSN]) {
+			try {
 				mv.visitIincInsn(var, increment);
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
 	}
 
 	@Override
 	public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
-		for (MethodVisitor mv : methodVisitors) {
-			if (mv != null) {
+		if (numBatched > 0) {
+			block.add(Opcodes.TABLESWITCH, block.push(Integer.valueOf(min)));
+			block.push(Integer.valueOf(max));
+			block.push(dflt);
+			block.push(labels);
+		}
+		if (recorder != null) {
+			recorder.visitTableSwitchInsn(min, max, dflt, labels);
+		}
+		for (MethodVisitor mv : methodVisitors[TABLE_SWITCH_INSN]) {
+			try {
 				mv.visitTableSwitchInsn(min, max, dflt, labels);
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
 	}
 
 	@Override
 	public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
-		for (MethodVisitor mv : methodVisitors) {
-			if (mv != null) {
+		if (numBatched > 0) {
+			block.add(Opcodes.LOOKUPSWITCH, block.push(dflt));
+			block.push(keys);
+			block.push(labels);
+		}
+		if (recorder != null) {
+			recorder.visitLookupSwitchInsn(dflt, keys, labels);
+		}
+		for (MethodVisitor mv : methodVisitors[LOOKUP_SWITCH_INSN]) {
+			try {
 				mv.visitLookupSwitchInsn(dflt, keys, labels);
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
 	}
 
 	@Override
 	public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
-		for (MethodVisitor mv : methodVisitors) {
-			if (mv != null) {
+		if (numBatched > 0) {
+			block.add(Opcodes.MULTIANEWARRAY, block.push(descriptor));
+			block.push(Integer.valueOf(numDimensions));
+		}
+		if (recorder != null) {
+			recorder.visitMultiANewArrayInsn(descriptor, numDimensions);
+		}
+		for (MethodVisitor mv : methodVisitors[MULTI_ANEW_ARRAY_INSN]) {
+			try {
 				mv.visitMultiANewArrayInsn(descriptor, numDimensions);
+			} catch (RuntimeException e) {
+				failed(mv, e);
+			}
+		}
+		if (symbolic.length > 0) {
+			int descriptorId = symbols.id(descriptor);
+			for (MethodVisitor mv : symbolic) {
+				try {
+					((SymbolicInstructions) mv).visitMultiANewArrayInsnIds(descriptorId, numDimensions);
+				} catch (RuntimeException e) {
+					failed(mv, e);
+				}
 			}
 		}
 	}
 
 	@Override
 	public AnnotationVisitor visitInsnAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
-		List<AnnotationVisitor> annotationVisitors = new ArrayList(methodVisitors.size());
-		int i = 0;
-		for (MethodVisitor mv : methodVisitors) {
-			if (mv != null) {
+		MethodVisitor[] targets = methodVisitors[INSN_ANNOTATION];
+		if (targets.length == 0) {
+			return null;
+		}
+
+		SubVisitors annotationVisitors = subVisitors(targets.length);
+		int[] targetOrigins = dispatchOrigins[INSN_ANNOTATION];
+		for (int t = 0; t < targets.length; t++) {
+			MethodVisitor mv = targets[t];
+			try {
 				AnnotationVisitor av = mv.visitInsnAnnotation(typeRef, typePath, descriptor, visible);
 				if (av != null) {
-					annotationVisitors.add(av);
+					annotationVisitors.add(av, attached(targetOrigins[t]));
 				}
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
 
-		if (annotationVisitors.isEmpty()) {
-			return null;
-		}
-		return new DelegatingAnnotationVisitor(api, annotationVisitors);
+		return DelegatorPool.annotationVisitor(api, options, context, annotationVisitors);
 	}
 
 	@Override
 	public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
-		for (MethodVisitor mv : methodVisitors) {
-			if (mv != null) {
+		if (recorder != null) {
+			recorder.visitTryCatchBlock(start, end, handler, type);
+		}
+		for (MethodVisitor mv : methodVisitors[TRY_CATCH_BLOCK]) {
+			try {
 				mv.visitTryCatchBlock(start, end, handler, type);
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
 	}
@@ -320,28 +906,39 @@ public class DelegatingMethodVisitor extends MethodVisitor {
 	@Override
 	public AnnotationVisitor visitTryCatchAnnotation(int typeRef, TypePath typePath, String descriptor,
 			boolean visible) {
-		List<AnnotationVisitor> annotationVisitors = new ArrayList(methodVisitors.size());
-		for (MethodVisitor mv : methodVisitors) {
-			if (mv != null) {
+		MethodVisitor[] targets = methodVisitors[TRY_CATCH_ANNOTATION];
+		if (targets.length == 0) {
+			return null;
+		}
+
+		SubVisitors annotationVisitors = subVisitors(targets.length);
+		int[] targetOrigins = dispatchOrigins[TRY_CATCH_ANNOTATION];
+		for (int t = 0; t < targets.length; t++) {
+			MethodVisitor mv = targets[t];
+			try {
 				AnnotationVisitor av = mv.visitTryCatchAnnotation(typeRef, typePath, descriptor, visible);
 				if (av != null) {
-					annotationVisitors.add(av);
+					annotationVisitors.add(av, attached(targetOrigins[t]));
 				}
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
 
-		if (annotationVisitors.isEmpty()) {
-			return null;
-		}
-		return new DelegatingAnnotationVisitor(api, annotationVisitors);
+		return DelegatorPool.annotationVisitor(api, options, context, annotationVisitors);
 	}
 
 	@Override
 	public void visitLocalVariable(String name, String descriptor, String signature, Label start, Label end,
 			int index) {
-		for (MethodVisitor mv : methodVisitors) {
-			if (mv != null) {
+		if (recorder != null) {
+			recorder.visitLocalVariable(name, descriptor, signature, start, end, index);
+		}
+		for (MethodVisitor mv : methodVisitors[LOCAL_VARIABLE]) {
+			try {
 				mv.visitLocalVariable(name, descriptor, signature, start, end, index);
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
 	}
@@ -349,49 +946,80 @@ public class DelegatingMethodVisitor extends MethodVisitor {
 	@Override
 	public AnnotationVisitor visitLocalVariableAnnotation(int typeRef, TypePath typePath, Label[] start, Label[] end,
 			int[] index, String descriptor, boolean visible) {
-		List<AnnotationVisitor> annotationVisitors = new ArrayList(methodVisitors.size());
-		for (MethodVisitor mv : methodVisitors) {
-			if (mv != null) {
+		MethodVisitor[] targets = methodVisitors[LOCAL_VARIABLE_ANNOTATION];
+		if (targets.length == 0) {
+			return null;
+		}
+
+		SubVisitors annotationVisitors = subVisitors(targets.length);
+		int[] targetOrigins = dispatchOrigins[LOCAL_VARIABLE_ANNOTATION];
+		for (int t = 0; t < targets.length; t++) {
+			MethodVisitor mv = targets[t];
+			try {
 				AnnotationVisitor av = mv.visitLocalVariableAnnotation(typeRef, typePath, start, end, index, descriptor,
 						visible);
 				if (av != null) {
-					annotationVisitors.add(av);
+					annotationVisitors.add(av, attached(targetOrigins[t]));
 				}
-
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
 
-		if (annotationVisitors.isEmpty()) {
-			return null;
-		}
-		return new DelegatingAnnotationVisitor(api, annotationVisitors);
+		return DelegatorPool.annotationVisitor(api, options, context, annotationVisitors);
 	}
 
 	@Override
 	public void visitLineNumber(int line, Label start) {
-		for (MethodVisitor mv : methodVisitors) {
-			if (mv != null) {
+		if (numBatched > 0) {
+			block.add(InstructionBlock.LINE_NUMBER, block.push(Integer.valueOf(line)));
+			block.push(start);
+		}
+		if (recorder != null) {
+			recorder.visitLineNumber(line, start);
+		}
+		for (MethodVisitor mv : methodVisitors[LINE_NUMBER]) {
+			try {
 				mv.visitLineNumber(line, start);
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
 	}
 
 	@Override
 	public void visitMaxs(int maxStack, int maxLocals) {
-		for (MethodVisitor mv : methodVisitors) {
-			if (mv != null) {
+		deliverInstructions();
+		if (recorder != null) {
+			recorder.visitMaxs(maxStack, maxLocals);
+			deliverAnalysis();
+		}
+		for (MethodVisitor mv : methodVisitors[MAXS]) {
+			try {
 				mv.visitMaxs(maxStack, maxLocals);
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
 	}
 
 	@Override
 	public void visitEnd() {
-		for (MethodVisitor mv : methodVisitors) {
-			if (mv != null) {
+		deliverInstructions();
+		for (MethodVisitor mv : methodVisitors[END]) {
+			try {
 				mv.visitEnd();
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
+
+		if (context != null) {
+			context.unregister(this);
+		}
+		if (DelegatorPool.isPooled(options)) {
+			release();
+		}
 	}
 
 }
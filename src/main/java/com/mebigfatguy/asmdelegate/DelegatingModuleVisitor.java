@@ -18,6 +18,7 @@
  */
 package com.mebigfatguy.asmdelegate;
 
+import java.util.Arrays;
 import java.util.List;
 
 import org.objectweb.asm.ModuleVisitor;
@@ -42,83 +43,219 @@ import org.objectweb.asm.ModuleVisitor;
  */
 public class DelegatingModuleVisitor extends ModuleVisitor {
 
-	private List<ModuleVisitor> moduleVisitors;
+	static final Interests INTERESTS = new Interests(ModuleVisitor.class, "visitMainClass", "visitPackage",
+			"visitRequire", "visitExport", "visitOpen", "visitUse", "visitProvide", "visitEnd");
+
+	static final int MAIN_CLASS = 0;
+	static final int PACKAGE = 1;
+	static final int REQUIRE = 2;
+	static final int EXPORT = 3;
+	static final int OPEN = 4;
+	static final int USE = 5;
+	static final int PROVIDE = 6;
+	static final int END = 7;
+
+	private static final ModuleVisitor[] NO_CHILDREN = new ModuleVisitor[0];
+	private static final long[] NO_MASKS = new long[0];
+	private static final int[] NO_ORIGINS = new int[0];
+
+	private final int options;
+	private DelegationContext context;
+	private ModuleVisitor[] children = NO_CHILDREN;
+	private long[] masks = NO_MASKS;
+	private int[] origins = NO_ORIGINS;
+	private int numChildren;
+	private ModuleVisitor[][] moduleVisitors;
+	private SubVisitors subVisitors;
 
 	public DelegatingModuleVisitor(int api, List<ModuleVisitor> visitors) {
+		this(api, 0);
+		SubVisitors initial = new SubVisitors().clear(visitors.size());
+		for (int i = 0; i < visitors.size(); i++) {
+			initial.add(visitors.get(i), i);
+		}
+		reset(null, initial);
+	}
+
+	DelegatingModuleVisitor(int api, int options) {
 		super(api);
-		moduleVisitors = visitors;
+		this.options = options;
+	}
+
+	boolean isReusableFor(int api, int options) {
+		return (this.api == api) && (this.options == options);
+	}
+
+	void reset(DelegationContext context, SubVisitors visitors) {
+		this.context = context;
+		int count = visitors.size();
+		if (children.length < count) {
+			children = new ModuleVisitor[count];
+			masks = new long[count];
+			origins = new int[count];
+		}
+
+		numChildren = 0;
+		for (int i = 0; i < count; i++) {
+			ModuleVisitor visitor = (ModuleVisitor) visitors.get(i);
+			if (visitor != null) {
+				children[numChildren] = visitor;
+				masks[numChildren] = INTERESTS.maskOf(visitor, visitor.getDelegate());
+				origins[numChildren++] = visitors.originOf(i);
+			}
+		}
+		moduleVisitors = INTERESTS.buildDispatch(children, numChildren, masks, moduleVisitors);
+
+		if (context != null) {
+			context.register(this);
+		}
+	}
+
+	/**
+	 * drops the children that came from the given root child. The dispatch table
+	 * is rebuilt rather than updated, as an event may be iterating it right now.
+	 */
+	void detach(int origin) {
+		int remaining = 0;
+		for (int i = 0; i < numChildren; i++) {
+			if (origins[i] != origin) {
+				children[remaining] = children[i];
+				masks[remaining] = masks[i];
+				origins[remaining++] = origins[i];
+			}
+		}
+
+		if (remaining != numChildren) {
+			Arrays.fill(children, remaining, numChildren, null);
+			numChildren = remaining;
+			moduleVisitors = INTERESTS.buildDispatch(children, numChildren, masks, null);
+		}
+	}
+
+	private int originOf(ModuleVisitor child) {
+		for (int i = 0; i < numChildren; i++) {
+			if (children[i] == child) {
+				return origins[i];
+			}
+		}
+		return -1;
+	}
+
+	private void failed(ModuleVisitor child, RuntimeException e) {
+		if (context == null) {
+			throw e;
+		}
+		context.failed(originOf(child), e);
+	}
+
+	private void release() {
+		Arrays.fill(children, 0, numChildren, null);
+		numChildren = 0;
+		context = null;
+		INTERESTS.clearDispatch(moduleVisitors);
+		DelegatorPool.release(this);
+	}
+
+	private SubVisitors subVisitors(int size) {
+		if (subVisitors == null) {
+			subVisitors = new SubVisitors();
+		}
+		return subVisitors.clear(size);
 	}
 
 	@Override
 	public void visitMainClass(String mainClass) {
-		for (ModuleVisitor mv : moduleVisitors) {
-			if (mv != null) {
+		for (ModuleVisitor mv : moduleVisitors[MAIN_CLASS]) {
+			try {
 				mv.visitMainClass(mainClass);
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
 	}
 
 	@Override
 	public void visitPackage(String packaze) {
-		for (ModuleVisitor mv : moduleVisitors) {
-			if (mv != null) {
+		for (ModuleVisitor mv : moduleVisitors[PACKAGE]) {
+			try {
 				mv.visitPackage(packaze);
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
 	}
 
 	@Override
 	public void visitRequire(String module, int access, String version) {
-		for (ModuleVisitor mv : moduleVisitors) {
-			if (mv != null) {
+		for (ModuleVisitor mv : moduleVisitors[REQUIRE]) {
+			try {
 				mv.visitRequire(module, access, version);
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
 	}
 
 	@Override
 	public void visitExport(String packaze, int access, String... modules) {
-		for (ModuleVisitor mv : moduleVisitors) {
-			if (mv != null) {
+		for (ModuleVisitor mv : moduleVisitors[EXPORT]) {
+			try {
 				mv.visitExport(packaze, access, modules);
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
 	}
 
 	@Override
 	public void visitOpen(String packaze, int access, String... modules) {
-		for (ModuleVisitor mv : moduleVisitors) {
-			if (mv != null) {
+		for (ModuleVisitor mv : moduleVisitors[OPEN]) {
+			try {
 				mv.visitOpen(packaze, access, modules);
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
 	}
 
 	@Override
 	public void visitUse(String service) {
-		for (ModuleVisitor mv : moduleVisitors) {
-			if (mv != null) {
+		for (ModuleVisitor mv : moduleVisitors[USE]) {
+			try {
 				mv.visitUse(service);
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
 	}
 
 	@Override
 	public void visitProvide(String service, String... providers) {
-		for (ModuleVisitor mv : moduleVisitors) {
-			if (mv != null) {
+		for (ModuleVisitor mv : moduleVisitors[PROVIDE]) {
+			try {
 				mv.visitProvide(service, providers);
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
 	}
 
 	@Override
 	public void visitEnd() {
-		for (ModuleVisitor mv : moduleVisitors) {
-			if (mv != null) {
+		for (ModuleVisitor mv : moduleVisitors[END]) {
+			try {
 				mv.visitEnd();
+			} catch (RuntimeException e) {
+				failed(mv, e);
 			}
 		}
+
+		if (context != null) {
+			context.unregister(this);
+		}
+		if (DelegatorPool.isPooled(options)) {
+			release();
+		}
 	}
 
 }
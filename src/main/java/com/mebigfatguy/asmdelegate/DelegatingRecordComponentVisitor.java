@@ -1,6 +1,6 @@
 package com.mebigfatguy.asmdelegate;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.objectweb.asm.AnnotationVisitor;
@@ -10,56 +10,204 @@ import org.objectweb.asm.TypePath;
 
 public class DelegatingRecordComponentVisitor extends RecordComponentVisitor {
 
-	private List<RecordComponentVisitor> recordComponentVisitors;
+	static final Interests INTERESTS = new Interests(RecordComponentVisitor.class, "visitAnnotation",
+			"visitTypeAnnotation", "visitAttribute", "visitEnd");
+
+	static final int ANNOTATION = 0;
+	static final int TYPE_ANNOTATION = 1;
+	static final int ATTRIBUTE = 2;
+	static final int END = 3;
+
+	private static final RecordComponentVisitor[] NO_CHILDREN = new RecordComponentVisitor[0];
+	private static final long[] NO_MASKS = new long[0];
+	private static final int[] NO_ORIGINS = new int[0];
+
+	private final int options;
+	private DelegationContext context;
+	private RecordComponentVisitor[] children = NO_CHILDREN;
+	private long[] masks = NO_MASKS;
+	private int[] origins = NO_ORIGINS;
+	private int numChildren;
+	private RecordComponentVisitor[][] recordComponentVisitors;
+	private int[][] dispatchOrigins;
+	private SubVisitors subVisitors;
 
 	public DelegatingRecordComponentVisitor(int api, List<RecordComponentVisitor> visitors) {
+		this(api, 0);
+		SubVisitors initial = new SubVisitors().clear(visitors.size());
+		for (int i = 0; i < visitors.size(); i++) {
+			initial.add(visitors.get(i), i);
+		}
+		reset(null, initial);
+	}
+
+	DelegatingRecordComponentVisitor(int api, int options) {
 		super(api);
-		recordComponentVisitors = visitors;
+		this.options = options;
 	}
 
-	@Override
-	public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
-		List<AnnotationVisitor> annotationVisitors = new ArrayList<>(recordComponentVisitors.size());
-		for (RecordComponentVisitor rcv : recordComponentVisitors) {
-			AnnotationVisitor av = rcv.visitAnnotation(descriptor, visible);
-			if (av != null) {
-				annotationVisitors.add(av);
+	boolean isReusableFor(int api, int options) {
+		return (this.api == api) && (this.options == options);
+	}
+
+	void reset(DelegationContext context, SubVisitors visitors) {
+		this.context = context;
+		int count = visitors.size();
+		if (children.length < count) {
+			children = new RecordComponentVisitor[count];
+			masks = new long[count];
+			origins = new int[count];
+		}
+
+		numChildren = 0;
+		for (int i = 0; i < count; i++) {
+			RecordComponentVisitor visitor = (RecordComponentVisitor) visitors.get(i);
+			if (visitor != null) {
+				children[numChildren] = visitor;
+				masks[numChildren] = INTERESTS.maskOf(visitor, visitor.getDelegate());
+				origins[numChildren++] = visitors.originOf(i);
 			}
 		}
+		recordComponentVisitors = INTERESTS.buildDispatch(children, numChildren, masks, recordComponentVisitors);
+		dispatchOrigins = INTERESTS.buildOrigins(origins, numChildren, masks, dispatchOrigins);
 
-		if (annotationVisitors.isEmpty()) {
-			return null;
+		if (context != null) {
+			context.register(this);
 		}
-		return new DelegatingAnnotationVisitor(api, annotationVisitors);
+	}
+
+	/**
+	 * drops the children that came from the given root child. The dispatch table
+	 * is rebuilt rather than updated, as an event may be iterating it right now.
+	 */
+	void detach(int origin) {
+		int remaining = 0;
+		for (int i = 0; i < numChildren; i++) {
+			if (origins[i] != origin) {
+				children[remaining] = children[i];
+				masks[remaining] = masks[i];
+				origins[remaining++] = origins[i];
+			}
+		}
+
+		if (remaining != numChildren) {
+			Arrays.fill(children, remaining, numChildren, null);
+			numChildren = remaining;
+			recordComponentVisitors = INTERESTS.buildDispatch(children, numChildren, masks, null);
+			dispatchOrigins = INTERESTS.buildOrigins(origins, numChildren, masks, null);
+		}
+	}
+
+	private int attached(int origin) {
+		return (context != null) ? context.attached(origin) : origin;
+	}
+
+	// only failures search for the origin, events use the dispatch origins
+	private int originOf(RecordComponentVisitor child) {
+		for (int i = 0; i < numChildren; i++) {
+			if (children[i] == child) {
+				return origins[i];
+			}
+		}
+		return -1;
+	}
+
+	private void failed(RecordComponentVisitor child, RuntimeException e) {
+		if (context == null) {
+			throw e;
+		}
+		context.failed(originOf(child), e);
+	}
+
+	private void release() {
+		Arrays.fill(children, 0, numChildren, null);
+		numChildren = 0;
+		context = null;
+		INTERESTS.clearDispatch(recordComponentVisitors);
+		DelegatorPool.release(this);
+	}
+
+	private SubVisitors subVisitors(int size) {
+		if (subVisitors == null) {
+			subVisitors = new SubVisitors();
+		}
+		return subVisitors.clear(size);
 	}
 
 	@Override
-	public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
-		List<AnnotationVisitor> annotationVisitors = new ArrayList<>(recordComponentVisitors.size());
-		for (RecordComponentVisitor rcv : recordComponentVisitors) {
-			AnnotationVisitor av = rcv.visitTypeAnnotation(typeRef, typePath, descriptor, visible);
-			if (av != null) {
-				annotationVisitors.add(av);
+	public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+		RecordComponentVisitor[] targets = recordComponentVisitors[ANNOTATION];
+		if (targets.length == 0) {
+			return null;
+		}
+
+		SubVisitors annotationVisitors = subVisitors(targets.length);
+		int[] targetOrigins = dispatchOrigins[ANNOTATION];
+		for (int t = 0; t < targets.length; t++) {
+			RecordComponentVisitor rcv = targets[t];
+			try {
+				AnnotationVisitor av = rcv.visitAnnotation(descriptor, visible);
+				if (av != null) {
+					annotationVisitors.add(av, attached(targetOrigins[t]));
+				}
+			} catch (RuntimeException e) {
+				failed(rcv, e);
 			}
 		}
 
-		if (annotationVisitors.isEmpty()) {
+		return DelegatorPool.annotationVisitor(api, options, context, annotationVisitors);
+	}
+
+	@Override
+	public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+		RecordComponentVisitor[] targets = recordComponentVisitors[TYPE_ANNOTATION];
+		if (targets.length == 0) {
 			return null;
 		}
-		return new DelegatingAnnotationVisitor(api, annotationVisitors);
+
+		SubVisitors annotationVisitors = subVisitors(targets.length);
+		int[] targetOrigins = dispatchOrigins[TYPE_ANNOTATION];
+		for (int t = 0; t < targets.length; t++) {
+			RecordComponentVisitor rcv = targets[t];
+			try {
+				AnnotationVisitor av = rcv.visitTypeAnnotation(typeRef, typePath, descriptor, visible);
+				if (av != null) {
+					annotationVisitors.add(av, attached(targetOrigins[t]));
+				}
+			} catch (RuntimeException e) {
+				failed(rcv, e);
+			}
+		}
+
+		return DelegatorPool.annotationVisitor(api, options, context, annotationVisitors);
 	}
 
 	@Override
 	public void visitAttribute(Attribute attribute) {
-		for (RecordComponentVisitor rcv : recordComponentVisitors) {
-			rcv.visitAttribute(attribute);
+		for (RecordComponentVisitor rcv : recordComponentVisitors[ATTRIBUTE]) {
+			try {
+				rcv.visitAttribute(attribute);
+			} catch (RuntimeException e) {
+				failed(rcv, e);
+			}
 		}
 	}
 
 	@Override
 	public void visitEnd() {
-		for (RecordComponentVisitor rcv : recordComponentVisitors) {
-			rcv.visitEnd();
+		for (RecordComponentVisitor rcv : recordComponentVisitors[END]) {
+			try {
+				rcv.visitEnd();
+			} catch (RuntimeException e) {
+				failed(rcv, e);
+			}
+		}
+
+		if (context != null) {
+			context.unregister(this);
+		}
+		if (DelegatorPool.isPooled(options)) {
+			release();
 		}
 	}
 }
@@ -0,0 +1,123 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * state shared by a {@link DelegatingClassVisitor} and all the nested
+ * delegators created below it while a class is being visited.
+ */
+final class DelegationContext {
+
+	private final List<Object> live = new ArrayList<>();
+	private final DelegatingClassVisitor isolator;
+	private SymbolTable symbols;
+	private boolean[] detached;
+
+	/**
+	 * @param isolator
+	 *            the delegator that quarantines failing children, or null to let
+	 *            failures propagate
+	 */
+	DelegationContext(DelegatingClassVisitor isolator) {
+		this.isolator = isolator;
+	}
+
+	/**
+	 * @return the table symbol ids are handed out from, which is created on
+	 *         first use unless one was set
+	 */
+	SymbolTable symbols() {
+		if (symbols == null) {
+			symbols = new SymbolTable();
+		}
+		return symbols;
+	}
+
+	void setSymbols(SymbolTable symbols) {
+		this.symbols = symbols;
+	}
+
+	/**
+	 * @param detached
+	 *            the root delegator's detached flags, which it keeps up to date
+	 */
+	void setDetached(boolean[] detached) {
+		this.detached = detached;
+	}
+
+	/**
+	 * @return the origin, or -1 if that child was detached from the class, maybe
+	 *         while the current event was being dispatched
+	 */
+	int attached(int origin) {
+		return ((detached != null) && (origin < detached.length) && detached[origin]) ? -1 : origin;
+	}
+
+	void register(Object delegator) {
+		live.add(delegator);
+	}
+
+	void unregister(Object delegator) {
+		for (int i = live.size() - 1; i >= 0; i--) {
+			if (live.get(i) == delegator) {
+				live.remove(i);
+				return;
+			}
+		}
+	}
+
+	void detach(int origin) {
+		for (Object delegator : live) {
+			if (delegator instanceof DelegatingMethodVisitor) {
+				((DelegatingMethodVisitor) delegator).detach(origin);
+			} else if (delegator instanceof DelegatingAnnotationVisitor) {
+				((DelegatingAnnotationVisitor) delegator).detach(origin);
+			} else if (delegator instanceof DelegatingFieldVisitor) {
+				((DelegatingFieldVisitor) delegator).detach(origin);
+			} else if (delegator instanceof DelegatingRecordComponentVisitor) {
+				((DelegatingRecordComponentVisitor) delegator).detach(origin);
+			} else if (delegator instanceof DelegatingModuleVisitor) {
+				((DelegatingModuleVisitor) delegator).detach(origin);
+			}
+		}
+	}
+
+	/**
+	 * called when a child, or one of its sub visitors, throws while being
+	 * dispatched to. Without isolation the exception is rethrown, otherwise the
+	 * child is quarantined for the rest of the class. An origin of -1 means the
+	 * child was already detached while the event was being dispatched, so there
+	 * is nothing left to do.
+	 */
+	void failed(int origin, RuntimeException e) {
+		if ((isolator == null) || (e instanceof VisitAbortedException)) {
+			throw e;
+		}
+		if (origin >= 0) {
+			isolator.quarantine(origin, e);
+		}
+	}
+
+	void clear() {
+		live.clear();
+	}
+}
@@ -0,0 +1,205 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.util.ArrayDeque;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.ModuleVisitor;
+import org.objectweb.asm.RecordComponentVisitor;
+
+/**
+ * builds the nested delegators from the sub visitors the children returned. In
+ * {@link DelegatingClassVisitor#POOLED} mode the delegators come from, and
+ * return to at visitEnd, a per thread pool, and a lone sub visitor is handed
+ * back undelegated, unless {@link DelegatingClassVisitor#ISOLATED} needs a
+ * delegator to catch what it throws.
+ */
+final class DelegatorPool {
+
+	private static final int MAX_POOLED = 64;
+	private static final ThreadLocal<DelegatorPool> POOLS = ThreadLocal.withInitial(DelegatorPool::new);
+
+	private final ArrayDeque<DelegatingAnnotationVisitor> annotationVisitors = new ArrayDeque<>();
+	private final ArrayDeque<DelegatingFieldVisitor> fieldVisitors = new ArrayDeque<>();
+	private final ArrayDeque<DelegatingMethodVisitor> methodVisitors = new ArrayDeque<>();
+	private final ArrayDeque<DelegatingModuleVisitor> moduleVisitors = new ArrayDeque<>();
+	private final ArrayDeque<DelegatingRecordComponentVisitor> recordComponentVisitors = new ArrayDeque<>();
+
+	private DelegatorPool() {
+	}
+
+	static boolean isPooled(int options) {
+		return (options & DelegatingClassVisitor.POOLED) != 0;
+	}
+
+	static boolean isIsolated(int options) {
+		return (options & DelegatingClassVisitor.ISOLATED) != 0;
+	}
+
+	static AnnotationVisitor annotationVisitor(int api, int options, DelegationContext context,
+			SubVisitors subVisitors) {
+		if (subVisitors.size() == 0) {
+			return null;
+		}
+
+		DelegatingAnnotationVisitor dav;
+		if (isPooled(options)) {
+			if ((subVisitors.size() == 1) && !isIsolated(options)) {
+				return (AnnotationVisitor) subVisitors.takeOnly();
+			}
+			dav = POOLS.get().annotationVisitors.pollLast();
+			if ((dav == null) || !dav.isReusableFor(api, options)) {
+				dav = new DelegatingAnnotationVisitor(api, options);
+			}
+		} else {
+			dav = new DelegatingAnnotationVisitor(api, options);
+		}
+		dav.reset(context, subVisitors);
+		subVisitors.release();
+		return dav;
+	}
+
+	static FieldVisitor fieldVisitor(int api, int options, DelegationContext context, SubVisitors subVisitors) {
+		if (subVisitors.size() == 0) {
+			return null;
+		}
+
+		DelegatingFieldVisitor dfv;
+		if (isPooled(options)) {
+			if ((subVisitors.size() == 1) && !isIsolated(options)) {
+				return (FieldVisitor) subVisitors.takeOnly();
+			}
+			dfv = POOLS.get().fieldVisitors.pollLast();
+			if ((dfv == null) || !dfv.isReusableFor(api, options)) {
+				dfv = new DelegatingFieldVisitor(api, options);
+			}
+		} else {
+			dfv = new DelegatingFieldVisitor(api, options);
+		}
+		dfv.reset(context, subVisitors);
+		subVisitors.release();
+		return dfv;
+	}
+
+	static MethodVisitor methodVisitor(int api, int options, DelegationContext context, SubVisitors subVisitors) {
+		if (subVisitors.size() == 0) {
+			return null;
+		}
+
+		DelegatingMethodVisitor dmv;
+		if (isPooled(options)) {
+			if ((subVisitors.size() == 1) && !isIsolated(options) && !needsDelegator(subVisitors.get(0))) {
+				return (MethodVisitor) subVisitors.takeOnly();
+			}
+			dmv = POOLS.get().methodVisitors.pollLast();
+			if ((dmv == null) || !dmv.isReusableFor(api, options)) {
+				dmv = new DelegatingMethodVisitor(api, options);
+			}
+		} else {
+			dmv = new DelegatingMethodVisitor(api, options);
+		}
+		dmv.reset(context, subVisitors);
+		subVisitors.release();
+		return dmv;
+	}
+
+	static ModuleVisitor moduleVisitor(int api, int options, DelegationContext context, SubVisitors subVisitors) {
+		if (subVisitors.size() == 0) {
+			return null;
+		}
+
+		DelegatingModuleVisitor dmv;
+		if (isPooled(options)) {
+			if ((subVisitors.size() == 1) && !isIsolated(options)) {
+				return (ModuleVisitor) subVisitors.takeOnly();
+			}
+			dmv = POOLS.get().moduleVisitors.pollLast();
+			if ((dmv == null) || !dmv.isReusableFor(api, options)) {
+				dmv = new DelegatingModuleVisitor(api, options);
+			}
+		} else {
+			dmv = new DelegatingModuleVisitor(api, options);
+		}
+		dmv.reset(context, subVisitors);
+		subVisitors.release();
+		return dmv;
+	}
+
+	static RecordComponentVisitor recordComponentVisitor(int api, int options, DelegationContext context,
+			SubVisitors subVisitors) {
+		if (subVisitors.size() == 0) {
+			return null;
+		}
+
+		DelegatingRecordComponentVisitor drcv;
+		if (isPooled(options)) {
+			if ((subVisitors.size() == 1) && !isIsolated(options)) {
+				return (RecordComponentVisitor) subVisitors.takeOnly();
+			}
+			drcv = POOLS.get().recordComponentVisitors.pollLast();
+			if ((drcv == null) || !drcv.isReusableFor(api, options)) {
+				drcv = new DelegatingRecordComponentVisitor(api, options);
+			}
+		} else {
+			drcv = new DelegatingRecordComponentVisitor(api, options);
+		}
+		drcv.reset(context, subVisitors);
+		subVisitors.release();
+		return drcv;
+	}
+
+	/**
+	 * batched, analyzing and symbolic method visitors get things only a
+	 * delegator makes, so even a lone one is delegated, metered or not
+	 */
+	private static boolean needsDelegator(Object metered) {
+		Object visitor = MeteredVisitors.unmetered(metered);
+		return (visitor instanceof BatchedInstructions) || (visitor instanceof SharedAnalysis)
+				|| (visitor instanceof SymbolicInstructions);
+	}
+
+	static void release(DelegatingAnnotationVisitor dav) {
+		offer(POOLS.get().annotationVisitors, dav);
+	}
+
+	static void release(DelegatingFieldVisitor dfv) {
+		offer(POOLS.get().fieldVisitors, dfv);
+	}
+
+	static void release(DelegatingMethodVisitor dmv) {
+		offer(POOLS.get().methodVisitors, dmv);
+	}
+
+	static void release(DelegatingModuleVisitor dmv) {
+		offer(POOLS.get().moduleVisitors, dmv);
+	}
+
+	static void release(DelegatingRecordComponentVisitor drcv) {
+		offer(POOLS.get().recordComponentVisitors, drcv);
+	}
+
+	private static <T> void offer(ArrayDeque<T> pool, T delegator) {
+		if (pool.size() < MAX_POOLED) {
+			pool.addLast(delegator);
+		}
+	}
+}
@@ -0,0 +1,37 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+/**
+ * implemented by child class visitors of a {@link DelegatingClassVisitor} that
+ * may stop caring about a class part way through it. The delegator hands
+ * itself to the child when it is built, so that children which are built for
+ * it, by a {@link ClassScanner} supplier or for an
+ * {@link AsyncDelegatingClassVisitor} group, can still call
+ * {@link DelegatingClassVisitor#detach(org.objectweb.asm.ClassVisitor)}.
+ */
+public interface Detachable {
+
+	/**
+	 * called by each delegator built over this child, before any event is
+	 * delivered. A child given to more than one delegator should detach from
+	 * the last one it was handed.
+	 */
+	void setDelegator(DelegatingClassVisitor delegator);
+}
@@ -0,0 +1,685 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.Attribute;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.ModuleVisitor;
+import org.objectweb.asm.RecordComponentVisitor;
+import org.objectweb.asm.TypePath;
+
+/**
+ * a visitor, typically a child of a {@link DelegatingClassVisitor}, that
+ * records every event of a class, including those of its methods, fields,
+ * annotations, record components and module, into an {@link EventTape} that
+ * can be replayed into other visitors without parsing the class again.
+ */
+public class EventRecorder extends ClassVisitor {
+
+	private int[] events = new int[1024];
+	private int size;
+	private final Map<Object, Integer> refs = new HashMap<>();
+	private final List<Object> objects = new ArrayList<>();
+	private final Map<Label, Integer> labels = new IdentityHashMap<>();
+	private EventTape tape;
+
+	private final AnnotationRecorder annotationRecorder;
+	private final FieldRecorder fieldRecorder;
+	private final MethodRecorder methodRecorder;
+	private final ModuleRecorder moduleRecorder;
+	private final RecordComponentRecorder recordComponentRecorder;
+
+	public EventRecorder(int api) {
+		super(api);
+		annotationRecorder = new AnnotationRecorder(api);
+		fieldRecorder = new FieldRecorder(api);
+		methodRecorder = new MethodRecorder(api);
+		moduleRecorder = new ModuleRecorder(api);
+		recordComponentRecorder = new RecordComponentRecorder(api);
+	}
+
+	/**
+	 * @return the tape of the last class recorded, or null if no class has been
+	 *         recorded to its visitEnd yet
+	 */
+	public EventTape getTape() {
+		return tape;
+	}
+
+	@Override
+	public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+		size = 0;
+		refs.clear();
+		objects.clear();
+		tape = null;
+
+		write(EventTape.VISIT, version, access);
+		ref(name);
+		ref(signature);
+		ref(superName);
+		strings(interfaces);
+	}
+
+	@Override
+	public void visitSource(String source, String debug) {
+		write(EventTape.SOURCE);
+		ref(source);
+		ref(debug);
+	}
+
+	@Override
+	public ModuleVisitor visitModule(String name, int access, String version) {
+		write(EventTape.MODULE);
+		ref(name);
+		write(access);
+		ref(version);
+		return moduleRecorder;
+	}
+
+	@Override
+	public void visitNestHost(String nestHost) {
+		write(EventTape.NEST_HOST);
+		ref(nestHost);
+	}
+
+	@Override
+	public void visitOuterClass(String owner, String name, String descriptor) {
+		write(EventTape.OUTER_CLASS);
+		ref(owner);
+		ref(name);
+		ref(descriptor);
+	}
+
+	@Override
+	public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+		return annotation(descriptor, visible);
+	}
+
+	@Override
+	public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+		return typeAnnotation(EventTape.TYPE_ANNOTATION, typeRef, typePath, descriptor, visible);
+	}
+
+	@Override
+	public void visitAttribute(Attribute attribute) {
+		attribute(attribute);
+	}
+
+	@Override
+	public void visitNestMember(String nestMember) {
+		write(EventTape.NEST_MEMBER);
+		ref(nestMember);
+	}
+
+	@Override
+	public void visitInnerClass(String name, String outerName, String innerName, int access) {
+		write(EventTape.INNER_CLASS);
+		ref(name);
+		ref(outerName);
+		ref(innerName);
+		write(access);
+	}
+
+	@Override
+	public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+		write(EventTape.FIELD, access);
+		ref(name);
+		ref(descriptor);
+		ref(signature);
+		ref(value);
+		return fieldRecorder;
+	}
+
+	@Override
+	public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+			String[] exceptions) {
+		labels.clear();
+		write(EventTape.METHOD, access);
+		ref(name);
+		ref(descriptor);
+		ref(signature);
+		strings(exceptions);
+		return methodRecorder;
+	}
+
+	@Override
+	public void visitPermittedSubclass(String permittedSubclass) {
+		write(EventTape.PERMITTED_SUBCLASS);
+		ref(permittedSubclass);
+	}
+
+	@Override
+	public RecordComponentVisitor visitRecordComponent(String name, String descriptor, String signature) {
+		write(EventTape.RECORD_COMPONENT);
+		ref(name);
+		ref(descriptor);
+		ref(signature);
+		return recordComponentRecorder;
+	}
+
+	@Override
+	public void visitEnd() {
+		write(EventTape.END);
+		tape = new EventTape(Arrays.copyOf(events, size), objects.toArray());
+		refs.clear();
+		objects.clear();
+		labels.clear();
+	}
+
+	private AnnotationVisitor annotation(String descriptor, boolean visible) {
+		write(EventTape.ANNOTATION);
+		ref(descriptor);
+		write(visible ? 1 : 0);
+		return annotationRecorder;
+	}
+
+	private AnnotationVisitor typeAnnotation(int event, int typeRef, TypePath typePath, String descriptor,
+			boolean visible) {
+		write(event, typeRef);
+		ref(typePath);
+		ref(descriptor);
+		write(visible ? 1 : 0);
+		return annotationRecorder;
+	}
+
+	private void attribute(Attribute attribute) {
+		write(EventTape.ATTRIBUTE);
+		ref(attribute);
+	}
+
+	private void write(int value) {
+		if (size == events.length) {
+			events = Arrays.copyOf(events, size * 2);
+		}
+		events[size++] = value;
+	}
+
+	private void write(int value1, int value2) {
+		write(value1);
+		write(value2);
+	}
+
+	private void write(int value1, int value2, int value3) {
+		write(value1);
+		write(value2);
+		write(value3);
+	}
+
+	/**
+	 * writes a reference to the object table, 0 for null, adding the object if
+	 * an equal one isn't there yet
+	 */
+	private void ref(Object value) {
+		if (value == null) {
+			write(0);
+			return;
+		}
+
+		Integer ref = refs.get(value);
+		if (ref == null) {
+			objects.add(value);
+			ref = Integer.valueOf(objects.size());
+			refs.put(value, ref);
+		}
+		write(ref.intValue());
+	}
+
+	private void strings(String[] values) {
+		if (values == null) {
+			write(-1);
+			return;
+		}
+		write(values.length);
+		for (String value : values) {
+			ref(value);
+		}
+	}
+
+	private void label(Label label) {
+		Integer id = labels.get(label);
+		if (id == null) {
+			id = Integer.valueOf(labels.size());
+			labels.put(label, id);
+		}
+		write(id.intValue());
+	}
+
+	private void labels(Label[] values) {
+		write(values.length);
+		for (Label value : values) {
+			label(value);
+		}
+	}
+
+	private void integers(int[] values) {
+		write(values.length);
+		for (int value : values) {
+			write(value);
+		}
+	}
+
+	private void frameItems(int count, Object[] items) {
+		if (items == null) {
+			write(-1);
+			return;
+		}
+		write(count);
+		for (int i = 0; i < count; i++) {
+			if (items[i] instanceof Label) {
+				write(EventTape.FRAME_LABEL);
+				label((Label) items[i]);
+			} else {
+				write(EventTape.FRAME_OBJECT);
+				ref(items[i]);
+			}
+		}
+	}
+
+	private class AnnotationRecorder extends AnnotationVisitor {
+
+		AnnotationRecorder(int api) {
+			super(api);
+		}
+
+		@Override
+		public void visit(String name, Object value) {
+			write(EventTape.VALUE);
+			ref(name);
+			ref(value);
+		}
+
+		@Override
+		public void visitEnum(String name, String descriptor, String value) {
+			write(EventTape.ENUM);
+			ref(name);
+			ref(descriptor);
+			ref(value);
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotation(String name, String descriptor) {
+			write(EventTape.NESTED_ANNOTATION);
+			ref(name);
+			ref(descriptor);
+			return this;
+		}
+
+		@Override
+		public AnnotationVisitor visitArray(String name) {
+			write(EventTape.ARRAY);
+			ref(name);
+			return this;
+		}
+
+		@Override
+		public void visitEnd() {
+			write(EventTape.END);
+		}
+	}
+
+	private class FieldRecorder extends FieldVisitor {
+
+		FieldRecorder(int api) {
+			super(api);
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+			return annotation(descriptor, visible);
+		}
+
+		@Override
+		public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor,
+				boolean visible) {
+			return typeAnnotation(EventTape.TYPE_ANNOTATION, typeRef, typePath, descriptor, visible);
+		}
+
+		@Override
+		public void visitAttribute(Attribute attribute) {
+			attribute(attribute);
+		}
+
+		@Override
+		public void visitEnd() {
+			write(EventTape.END);
+		}
+	}
+
+	private class RecordComponentRecorder extends RecordComponentVisitor {
+
+		RecordComponentRecorder(int api) {
+			super(api);
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+			return annotation(descriptor, visible);
+		}
+
+		@Override
+		public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor,
+				boolean visible) {
+			return typeAnnotation(EventTape.TYPE_ANNOTATION, typeRef, typePath, descriptor, visible);
+		}
+
+		@Override
+		public void visitAttribute(Attribute attribute) {
+			attribute(attribute);
+		}
+
+		@Override
+		public void visitEnd() {
+			write(EventTape.END);
+		}
+	}
+
+	private class ModuleRecorder extends ModuleVisitor {
+
+		ModuleRecorder(int api) {
+			super(api);
+		}
+
+		@Override
+		public void visitMainClass(String mainClass) {
+			write(EventTape.MAIN_CLASS);
+			ref(mainClass);
+		}
+
+		@Override
+		public void visitPackage(String packaze) {
+			write(EventTape.PACKAGE);
+			ref(packaze);
+		}
+
+		@Override
+		public void visitRequire(String module, int access, String version) {
+			write(EventTape.REQUIRE);
+			ref(module);
+			write(access);
+			ref(version);
+		}
+
+		@Override
+		public void visitExport(String packaze, int access, String... modules) {
+			write(EventTape.EXPORT);
+			ref(packaze);
+			write(access);
+			strings(modules);
+		}
+
+		@Override
+		public void visitOpen(String packaze, int access, String... modules) {
+			write(EventTape.OPEN);
+			ref(packaze);
+			write(access);
+			strings(modules);
+		}
+
+		@Override
+		public void visitUse(String service) {
+			write(EventTape.USE);
+			ref(service);
+		}
+
+		@Override
+		public void visitProvide(String service, String... providers) {
+			write(EventTape.PROVIDE);
+			ref(service);
+			strings(providers);
+		}
+
+		@Override
+		public void visitEnd() {
+			write(EventTape.END);
+		}
+	}
+
+	private class MethodRecorder extends MethodVisitor {
+
+		MethodRecorder(int api) {
+			super(api);
+		}
+
+		@Override
+		public void visitParameter(String name, int access) {
+			write(EventTape.PARAMETER);
+			ref(name);
+			write(access);
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotationDefault() {
+			write(EventTape.ANNOTATION_DEFAULT);
+			return annotationRecorder;
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+			return annotation(descriptor, visible);
+		}
+
+		@Override
+		public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor,
+				boolean visible) {
+			return typeAnnotation(EventTape.TYPE_ANNOTATION, typeRef, typePath, descriptor, visible);
+		}
+
+		@Override
+		public void visitAnnotableParameterCount(int parameterCount, boolean visible) {
+			write(EventTape.ANNOTABLE_PARAMETER_COUNT, parameterCount, visible ? 1 : 0);
+		}
+
+		@Override
+		public AnnotationVisitor visitParameterAnnotation(int parameter, String descriptor, boolean visible) {
+			write(EventTape.PARAMETER_ANNOTATION, parameter);
+			ref(descriptor);
+			write(visible ? 1 : 0);
+			return annotationRecorder;
+		}
+
+		@Override
+		public void visitAttribute(Attribute attribute) {
+			attribute(attribute);
+		}
+
+		@Override
+		public void visitCode() {
+			write(EventTape.CODE);
+		}
+
+		@Override
+		public void visitFrame(int type, int numLocal, Object[] local, int numStack, Object[] stack) {
+			write(EventTape.FRAME, type, numLocal);
+			frameItems(numLocal, local);
+			write(numStack);
+			frameItems(numStack, stack);
+		}
+
+		@Override
+		public void visitInsn(int opcode) {
+			write(EventTape.INSN, opcode);
+		}
+
+		@Override
+		public void visitIntInsn(int opcode, int operand) {
+			write(EventTape.INT_INSN, opcode, operand);
+		}
+
+		@Override
+		public void visitVarInsn(int opcode, int var) {
+			write(EventTape.VAR_INSN, opcode, var);
+		}
+
+		@Override
+		public void visitTypeInsn(int opcode, String type) {
+			write(EventTape.TYPE_INSN, opcode);
+			ref(type);
+		}
+
+		@Override
+		public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+			write(EventTape.FIELD_INSN, opcode);
+			ref(owner);
+			ref(name);
+			ref(descriptor);
+		}
+
+		@Override
+		public void visitMethodInsn(int opcode, String owner, String name, String descriptor,
+				boolean isInterface) {
+			write(EventTape.METHOD_INSN, opcode);
+			ref(owner);
+			ref(name);
+			ref(descriptor);
+			write(isInterface ? 1 : 0);
+		}
+
+		@Override
+		public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle,
+				Object... bootstrapMethodArguments) {
+			write(EventTape.INVOKE_DYNAMIC_INSN);
+			ref(name);
+			ref(descriptor);
+			ref(bootstrapMethodHandle);
+			write(bootstrapMethodArguments.length);
+			for (Object argument : bootstrapMethodArguments) {
+				ref(argument);
+			}
+		}
+
+		@Override
+		public void visitJumpInsn(int opcode, Label label) {
+			write(EventTape.JUMP_INSN, opcode);
+			label(label);
+		}
+
+		@Override
+		public void visitLabel(Label label) {
+			write(EventTape.LABEL);
+			label(label);
+		}
+
+		@Override
+		public void visitLdcInsn(Object value) {
+			write(EventTape.LDC_INSN);
+			ref(value);
+		}
+
+		@Override
+		public void visitIincInsn(int var, int increment) {
+			write(EventTape.IINC_INSN, var, increment);
+		}
+
+		@Override
+		public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+			write(EventTape.TABLE_SWITCH_INSN, min, max);
+			label(dflt);
+			labels(labels);
+		}
+
+		@Override
+		public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+			write(EventTape.LOOKUP_SWITCH_INSN);
+			label(dflt);
+			integers(keys);
+			labels(labels);
+		}
+
+		@Override
+		public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+			write(EventTape.MULTI_ANEW_ARRAY_INSN);
+			ref(descriptor);
+			write(numDimensions);
+		}
+
+		@Override
+		public AnnotationVisitor visitInsnAnnotation(int typeRef, TypePath typePath, String descriptor,
+				boolean visible) {
+			return typeAnnotation(EventTape.INSN_ANNOTATION, typeRef, typePath, descriptor, visible);
+		}
+
+		@Override
+		public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+			write(EventTape.TRY_CATCH_BLOCK);
+			label(start);
+			label(end);
+			label(handler);
+			ref(type);
+		}
+
+		@Override
+		public AnnotationVisitor visitTryCatchAnnotation(int typeRef, TypePath typePath, String descriptor,
+				boolean visible) {
+			return typeAnnotation(EventTape.TRY_CATCH_ANNOTATION, typeRef, typePath, descriptor, visible);
+		}
+
+		@Override
+		public void visitLocalVariable(String name, String descriptor, String signature, Label start, Label end,
+				int index) {
+			write(EventTape.LOCAL_VARIABLE);
+			ref(name);
+			ref(descriptor);
+			ref(signature);
+			label(start);
+			label(end);
+			write(index);
+		}
+
+		@Override
+		public AnnotationVisitor visitLocalVariableAnnotation(int typeRef, TypePath typePath, Label[] start,
+				Label[] end, int[] index, String descriptor, boolean visible) {
+			write(EventTape.LOCAL_VARIABLE_ANNOTATION, typeRef);
+			ref(typePath);
+			labels(start);
+			labels(end);
+			integers(index);
+			ref(descriptor);
+			write(visible ? 1 : 0);
+			return annotationRecorder;
+		}
+
+		@Override
+		public void visitLineNumber(int line, Label start) {
+			write(EventTape.LINE_NUMBER, line);
+			label(start);
+		}
+
+		@Override
+		public void visitMaxs(int maxStack, int maxLocals) {
+			write(EventTape.MAXS, maxStack, maxLocals);
+		}
+
+		@Override
+		public void visitEnd() {
+			write(EventTape.END);
+		}
+	}
+}
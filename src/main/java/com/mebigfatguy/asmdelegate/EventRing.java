@@ -0,0 +1,174 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * a preallocated single producer, multiple consumer ring of class tapes in the
+ * style of the Disruptor. The producer claims slots by sequence number and
+ * only waits when the slowest consumer is a full ring behind; each consumer
+ * tracks its own sequence and never waits on the others. Waiting spins, then
+ * yields, then blocks until the other side moves, so an idle ring costs no
+ * cpu. A lock is only taken once a thread blocks, or to wake one that has.
+ * The last consumer to release a slot clears it, so tapes aren't held past
+ * their visit.
+ */
+final class EventRing {
+
+	// consumer sequences are spread out so that they don't share cache lines
+	private static final int STRIDE = 16;
+	private static final int SPINS = 100;
+	private static final int YIELDS = 100;
+
+	private final EventTape[] slots;
+	private final AtomicIntegerArray remaining;
+	private final int mask;
+	private final AtomicLong published = new AtomicLong(-1);
+	private final AtomicLongArray consumed;
+	private final int numConsumers;
+	private long cachedMinConsumed = -1;
+	private final Object lock = new Object();
+	private final AtomicInteger blocked = new AtomicInteger();
+
+	EventRing(int size, int numConsumers) {
+		int capacity = Integer.highestOneBit(Math.max(size - 1, 1)) << 1;
+		slots = new EventTape[capacity];
+		remaining = new AtomicIntegerArray(capacity);
+		mask = capacity - 1;
+		this.numConsumers = numConsumers;
+		consumed = new AtomicLongArray(numConsumers * STRIDE);
+		for (int c = 0; c < numConsumers; c++) {
+			consumed.set(c * STRIDE, -1);
+		}
+	}
+
+	/**
+	 * only to be called from the one producer thread
+	 */
+	void publish(EventTape tape) {
+		long sequence = published.get() + 1;
+		long wrapPoint = sequence - slots.length;
+		if (cachedMinConsumed < wrapPoint) {
+			awaitConsumed(wrapPoint);
+			cachedMinConsumed = minConsumed();
+		}
+		int slot = (int) sequence & mask;
+		remaining.set(slot, numConsumers);
+		slots[slot] = tape;
+		published.set(sequence);
+		wake();
+	}
+
+	/**
+	 * waits for, and returns, the tape with the given sequence number
+	 */
+	EventTape take(long sequence) {
+		int idle = 0;
+		while (published.get() < sequence) {
+			if (idle < (SPINS + YIELDS)) {
+				idle = idle(idle);
+			} else {
+				block(sequence, true);
+			}
+		}
+		return slots[(int) sequence & mask];
+	}
+
+	void release(int consumer, long sequence) {
+		int slot = (int) sequence & mask;
+		if (remaining.decrementAndGet(slot) == 0) {
+			slots[slot] = null;
+		}
+		consumed.set(consumer * STRIDE, sequence);
+		wake();
+	}
+
+	/**
+	 * waits until every consumer has released everything published so far
+	 */
+	void drain() {
+		awaitConsumed(published.get());
+	}
+
+	private void awaitConsumed(long target) {
+		int idle = 0;
+		while (minConsumed() < target) {
+			if (idle < (SPINS + YIELDS)) {
+				idle = idle(idle);
+			} else {
+				block(target, false);
+			}
+		}
+	}
+
+	private long minConsumed() {
+		long min = Long.MAX_VALUE;
+		for (int c = 0; c < numConsumers; c++) {
+			min = Math.min(min, consumed.get(c * STRIDE));
+		}
+		return min;
+	}
+
+	private static int idle(int idle) {
+		if (idle >= SPINS) {
+			Thread.yield();
+		}
+		return idle + 1;
+	}
+
+	/**
+	 * blocks until the given sequence is published, or consumed by every
+	 * consumer. The blocked count is raised before the sequence is checked
+	 * again, and publish and release update theirs before looking at the
+	 * count, so one of the two always sees the other and no wake up is lost.
+	 * Interrupts don't stop the wait, but are kept for the caller.
+	 */
+	private void block(long sequence, boolean toPublish) {
+		boolean interrupted = false;
+		synchronized (lock) {
+			blocked.incrementAndGet();
+			try {
+				while ((toPublish ? published.get() : minConsumed()) < sequence) {
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+			} finally {
+				blocked.decrementAndGet();
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void wake() {
+		if (blocked.get() > 0) {
+			synchronized (lock) {
+				lock.notifyAll();
+			}
+		}
+	}
+}
@@ -0,0 +1,732 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.util.Arrays;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.Attribute;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.ModuleVisitor;
+import org.objectweb.asm.RecordComponentVisitor;
+import org.objectweb.asm.TypePath;
+
+/**
+ * the events of one class visit, as recorded by an {@link EventRecorder}. Each
+ * event is an int op followed by its int operands in one array, with strings
+ * and other constants stored once in a table and referred to by index, so a
+ * tape is much smaller than a ClassNode and replays without any parsing.
+ */
+public final class EventTape {
+
+	// events that apply to whatever visitor is being visited
+	static final int ANNOTATION = 0;
+	static final int TYPE_ANNOTATION = 1;
+	static final int ATTRIBUTE = 2;
+	static final int END = 3;
+
+	// class events
+	static final int VISIT = 4;
+	static final int SOURCE = 5;
+	static final int MODULE = 6;
+	static final int NEST_HOST = 7;
+	static final int OUTER_CLASS = 8;
+	static final int NEST_MEMBER = 9;
+	static final int INNER_CLASS = 10;
+	static final int FIELD = 11;
+	static final int METHOD = 12;
+	static final int PERMITTED_SUBCLASS = 13;
+	static final int RECORD_COMPONENT = 14;
+
+	// module events
+	static final int MAIN_CLASS = 15;
+	static final int PACKAGE = 16;
+	static final int REQUIRE = 17;
+	static final int EXPORT = 18;
+	static final int OPEN = 19;
+	static final int USE = 20;
+	static final int PROVIDE = 21;
+
+	// annotation events
+	static final int VALUE = 22;
+	static final int ENUM = 23;
+	static final int NESTED_ANNOTATION = 24;
+	static final int ARRAY = 25;
+
+	// method events
+	static final int PARAMETER = 26;
+	static final int ANNOTATION_DEFAULT = 27;
+	static final int ANNOTABLE_PARAMETER_COUNT = 28;
+	static final int PARAMETER_ANNOTATION = 29;
+	static final int CODE = 30;
+	static final int FRAME = 31;
+	static final int INSN = 32;
+	static final int INT_INSN = 33;
+	static final int VAR_INSN = 34;
+	static final int TYPE_INSN = 35;
+	static final int FIELD_INSN = 36;
+	static final int METHOD_INSN = 37;
+	static final int INVOKE_DYNAMIC_INSN = 38;
+	static final int JUMP_INSN = 39;
+	static final int LABEL = 40;
+	static final int LDC_INSN = 41;
+	static final int IINC_INSN = 42;
+	static final int TABLE_SWITCH_INSN = 43;
+	static final int LOOKUP_SWITCH_INSN = 44;
+	static final int MULTI_ANEW_ARRAY_INSN = 45;
+	static final int INSN_ANNOTATION = 46;
+	static final int TRY_CATCH_BLOCK = 47;
+	static final int TRY_CATCH_ANNOTATION = 48;
+	static final int LOCAL_VARIABLE = 49;
+	static final int LOCAL_VARIABLE_ANNOTATION = 50;
+	static final int LINE_NUMBER = 51;
+	static final int MAXS = 52;
+
+	// how frame items are stored
+	static final int FRAME_OBJECT = 0;
+	static final int FRAME_LABEL = 1;
+
+	private final int[] events;
+	private final Object[] objects;
+
+	EventTape(int[] events, Object[] objects) {
+		this.events = events;
+		this.objects = objects;
+	}
+
+	/**
+	 * replays the recorded events into the given visitor, and into whatever
+	 * sub visitors it returns. Events of members whose sub visitor was null are
+	 * skipped.
+	 */
+	public void accept(ClassVisitor cv) {
+		new Player(cv).play();
+	}
+
+	private final class Player {
+
+		private Object[] stack = new Object[8];
+		private int depth;
+		private int pos;
+		private Label[] labels = new Label[16];
+		private int numLabels;
+
+		Player(ClassVisitor cv) {
+			stack[0] = cv;
+			depth = 1;
+		}
+
+		void play() {
+			while (pos < events.length) {
+				int event = events[pos++];
+				Object target = stack[depth - 1];
+				switch (event) {
+				case ANNOTATION: {
+					String descriptor = string();
+					boolean visible = bool();
+					push((target == null) ? null : annotation(target, descriptor, visible));
+					break;
+				}
+				case TYPE_ANNOTATION: {
+					int typeRef = integer();
+					TypePath typePath = (TypePath) object();
+					String descriptor = string();
+					boolean visible = bool();
+					push((target == null) ? null : typeAnnotation(target, typeRef, typePath, descriptor, visible));
+					break;
+				}
+				case ATTRIBUTE: {
+					Attribute attribute = (Attribute) object();
+					if (target != null) {
+						attribute(target, attribute);
+					}
+					break;
+				}
+				case END:
+					if (target != null) {
+						end(target);
+					}
+					stack[--depth] = null;
+					break;
+
+				case VISIT: {
+					int version = integer();
+					int access = integer();
+					String name = string();
+					String signature = string();
+					String superName = string();
+					String[] interfaces = strings();
+					((ClassVisitor) target).visit(version, access, name, signature, superName, interfaces);
+					break;
+				}
+				case SOURCE: {
+					String source = string();
+					String debug = string();
+					((ClassVisitor) target).visitSource(source, debug);
+					break;
+				}
+				case MODULE: {
+					String name = string();
+					int access = integer();
+					String version = string();
+					push(((ClassVisitor) target).visitModule(name, access, version));
+					break;
+				}
+				case NEST_HOST:
+					((ClassVisitor) target).visitNestHost(string());
+					break;
+				case OUTER_CLASS: {
+					String owner = string();
+					String name = string();
+					String descriptor = string();
+					((ClassVisitor) target).visitOuterClass(owner, name, descriptor);
+					break;
+				}
+				case NEST_MEMBER:
+					((ClassVisitor) target).visitNestMember(string());
+					break;
+				case INNER_CLASS: {
+					String name = string();
+					String outerName = string();
+					String innerName = string();
+					int access = integer();
+					((ClassVisitor) target).visitInnerClass(name, outerName, innerName, access);
+					break;
+				}
+				case FIELD: {
+					int access = integer();
+					String name = string();
+					String descriptor = string();
+					String signature = string();
+					Object value = object();
+					push(((ClassVisitor) target).visitField(access, name, descriptor, signature, value));
+					break;
+				}
+				case METHOD: {
+					int access = integer();
+					String name = string();
+					String descriptor = string();
+					String signature = string();
+					String[] exceptions = strings();
+					Arrays.fill(labels, 0, numLabels, null);
+					numLabels = 0;
+					push(((ClassVisitor) target).visitMethod(access, name, descriptor, signature, exceptions));
+					break;
+				}
+				case PERMITTED_SUBCLASS:
+					((ClassVisitor) target).visitPermittedSubclass(string());
+					break;
+				case RECORD_COMPONENT: {
+					String name = string();
+					String descriptor = string();
+					String signature = string();
+					push(((ClassVisitor) target).visitRecordComponent(name, descriptor, signature));
+					break;
+				}
+
+				default:
+					if (event < VALUE) {
+						playModule(event, (ModuleVisitor) target);
+					} else if (event < PARAMETER) {
+						playAnnotation(event, (AnnotationVisitor) target);
+					} else {
+						playMethod(event, (MethodVisitor) target);
+					}
+					break;
+				}
+			}
+		}
+
+		private void playModule(int event, ModuleVisitor mv) {
+			switch (event) {
+			case MAIN_CLASS: {
+				String mainClass = string();
+				if (mv != null) {
+					mv.visitMainClass(mainClass);
+				}
+				break;
+			}
+			case PACKAGE: {
+				String packaze = string();
+				if (mv != null) {
+					mv.visitPackage(packaze);
+				}
+				break;
+			}
+			case REQUIRE: {
+				String module = string();
+				int access = integer();
+				String version = string();
+				if (mv != null) {
+					mv.visitRequire(module, access, version);
+				}
+				break;
+			}
+			case EXPORT: {
+				String packaze = string();
+				int access = integer();
+				String[] modules = strings();
+				if (mv != null) {
+					mv.visitExport(packaze, access, modules);
+				}
+				break;
+			}
+			case OPEN: {
+				String packaze = string();
+				int access = integer();
+				String[] modules = strings();
+				if (mv != null) {
+					mv.visitOpen(packaze, access, modules);
+				}
+				break;
+			}
+			case USE: {
+				String service = string();
+				if (mv != null) {
+					mv.visitUse(service);
+				}
+				break;
+			}
+			case PROVIDE: {
+				String service = string();
+				String[] providers = strings();
+				if (mv != null) {
+					mv.visitProvide(service, providers);
+				}
+				break;
+			}
+			default:
+				throw new IllegalStateException("Unknown module event " + event);
+			}
+		}
+
+		private void playAnnotation(int event, AnnotationVisitor av) {
+			switch (event) {
+			case VALUE: {
+				String name = string();
+				Object value = object();
+				if (av != null) {
+					av.visit(name, value);
+				}
+				break;
+			}
+			case ENUM: {
+				String name = string();
+				String descriptor = string();
+				String value = string();
+				if (av != null) {
+					av.visitEnum(name, descriptor, value);
+				}
+				break;
+			}
+			case NESTED_ANNOTATION: {
+				String name = string();
+				String descriptor = string();
+				push((av == null) ? null : av.visitAnnotation(name, descriptor));
+				break;
+			}
+			case ARRAY: {
+				String name = string();
+				push((av == null) ? null : av.visitArray(name));
+				break;
+			}
+			default:
+				throw new IllegalStateException("Unknown annotation event " + event);
+			}
+		}
+
+		private void playMethod(int event, MethodVisitor mv) {
+			switch (event) {
+			case PARAMETER: {
+				String name = string();
+				int access = integer();
+				if (mv != null) {
+					mv.visitParameter(name, access);
+				}
+				break;
+			}
+			case ANNOTATION_DEFAULT:
+				push((mv == null) ? null : mv.visitAnnotationDefault());
+				break;
+			case ANNOTABLE_PARAMETER_COUNT: {
+				int parameterCount = integer();
+				boolean visible = bool();
+				if (mv != null) {
+					mv.visitAnnotableParameterCount(parameterCount, visible);
+				}
+				break;
+			}
+			case PARAMETER_ANNOTATION: {
+				int parameter = integer();
+				String descriptor = string();
+				boolean visible = bool();
+				push((mv == null) ? null : mv.visitParameterAnnotation(parameter, descriptor, visible));
+				break;
+			}
+			case CODE:
+				if (mv != null) {
+					mv.visitCode();
+				}
+				break;
+			case FRAME: {
+				int type = integer();
+				int numLocal = integer();
+				Object[] local = frameItems();
+				int numStack = integer();
+				Object[] stackItems = frameItems();
+				if (mv != null) {
+					mv.visitFrame(type, numLocal, local, numStack, stackItems);
+				}
+				break;
+			}
+			case INSN: {
+				int opcode = integer();
+				if (mv != null) {
+					mv.visitInsn(opcode);
+				}
+				break;
+			}
+			case INT_INSN: {
+				int opcode = integer();
+				int operand = integer();
+				if (mv != null) {
+					mv.visitIntInsn(opcode, operand);
+				}
+				break;
+			}
+			case VAR_INSN: {
+				int opcode = integer();
+				int var = integer();
+				if (mv != null) {
+					mv.visitVarInsn(opcode, var);
+				}
+				break;
+			}
+			case TYPE_INSN: {
+				int opcode = integer();
+				String type = string();
+				if (mv != null) {
+					mv.visitTypeInsn(opcode, type);
+				}
+				break;
+			}
+			case FIELD_INSN: {
+				int opcode = integer();
+				String owner = string();
+				String name = string();
+				String descriptor = string();
+				if (mv != null) {
+					mv.visitFieldInsn(opcode, owner, name, descriptor);
+				}
+				break;
+			}
+			case METHOD_INSN: {
+				int opcode = integer();
+				String owner = string();
+				String name = string();
+				String descriptor = string();
+				boolean isInterface = bool();
+				if (mv != null) {
+					mv.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+				}
+				break;
+			}
+			case INVOKE_DYNAMIC_INSN: {
+				String name = string();
+				String descriptor = string();
+				Handle bootstrapMethodHandle = (Handle) object();
+				Object[] bootstrapMethodArguments = objects();
+				if (mv != null) {
+					mv.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
+				}
+				break;
+			}
+			case JUMP_INSN: {
+				int opcode = integer();
+				Label label = label();
+				if (mv != null) {
+					mv.visitJumpInsn(opcode, label);
+				}
+				break;
+			}
+			case LABEL: {
+				Label label = label();
+				if (mv != null) {
+					mv.visitLabel(label);
+				}
+				break;
+			}
+			case LDC_INSN: {
+				Object value = object();
+				if (mv != null) {
+					mv.visitLdcInsn(value);
+				}
+				break;
+			}
+			case IINC_INSN: {
+				int var = integer();
+				int increment = integer();
+				if (mv != null) {
+					mv.visitIincInsn(var, increment);
+				}
+				break;
+			}
+			case TABLE_SWITCH_INSN: {
+				int min = integer();
+				int max = integer();
+				Label dflt = label();
+				Label[] targets = labels();
+				if (mv != null) {
+					mv.visitTableSwitchInsn(min, max, dflt, targets);
+				}
+				break;
+			}
+			case LOOKUP_SWITCH_INSN: {
+				Label dflt = label();
+				int[] keys = integers();
+				Label[] targets = labels();
+				if (mv != null) {
+					mv.visitLookupSwitchInsn(dflt, keys, targets);
+				}
+				break;
+			}
+			case MULTI_ANEW_ARRAY_INSN: {
+				String descriptor = string();
+				int numDimensions = integer();
+				if (mv != null) {
+					mv.visitMultiANewArrayInsn(descriptor, numDimensions);
+				}
+				break;
+			}
+			case INSN_ANNOTATION: {
+				int typeRef = integer();
+				TypePath typePath = (TypePath) object();
+				String descriptor = string();
+				boolean visible = bool();
+				push((mv == null) ? null : mv.visitInsnAnnotation(typeRef, typePath, descriptor, visible));
+				break;
+			}
+			case TRY_CATCH_BLOCK: {
+				Label start = label();
+				Label end = label();
+				Label handler = label();
+				String type = string();
+				if (mv != null) {
+					mv.visitTryCatchBlock(start, end, handler, type);
+				}
+				break;
+			}
+			case TRY_CATCH_ANNOTATION: {
+				int typeRef = integer();
+				TypePath typePath = (TypePath) object();
+				String descriptor = string();
+				boolean visible = bool();
+				push((mv == null) ? null : mv.visitTryCatchAnnotation(typeRef, typePath, descriptor, visible));
+				break;
+			}
+			case LOCAL_VARIABLE: {
+				String name = string();
+				String descriptor = string();
+				String signature = string();
+				Label start = label();
+				Label end = label();
+				int index = integer();
+				if (mv != null) {
+					mv.visitLocalVariable(name, descriptor, signature, start, end, index);
+				}
+				break;
+			}
+			case LOCAL_VARIABLE_ANNOTATION: {
+				int typeRef = integer();
+				TypePath typePath = (TypePath) object();
+				Label[] start = labels();
+				Label[] end = labels();
+				int[] index = integers();
+				String descriptor = string();
+				boolean visible = bool();
+				push((mv == null) ? null
+						: mv.visitLocalVariableAnnotation(typeRef, typePath, start, end, index, descriptor, visible));
+				break;
+			}
+			case LINE_NUMBER: {
+				int line = integer();
+				Label start = label();
+				if (mv != null) {
+					mv.visitLineNumber(line, start);
+				}
+				break;
+			}
+			case MAXS: {
+				int maxStack = integer();
+				int maxLocals = integer();
+				if (mv != null) {
+					mv.visitMaxs(maxStack, maxLocals);
+				}
+				break;
+			}
+			default:
+				throw new IllegalStateException("Unknown method event " + event);
+			}
+		}
+
+		private AnnotationVisitor annotation(Object target, String descriptor, boolean visible) {
+			if (target instanceof ClassVisitor) {
+				return ((ClassVisitor) target).visitAnnotation(descriptor, visible);
+			}
+			if (target instanceof MethodVisitor) {
+				return ((MethodVisitor) target).visitAnnotation(descriptor, visible);
+			}
+			if (target instanceof FieldVisitor) {
+				return ((FieldVisitor) target).visitAnnotation(descriptor, visible);
+			}
+			return ((RecordComponentVisitor) target).visitAnnotation(descriptor, visible);
+		}
+
+		private AnnotationVisitor typeAnnotation(Object target, int typeRef, TypePath typePath, String descriptor,
+				boolean visible) {
+			if (target instanceof ClassVisitor) {
+				return ((ClassVisitor) target).visitTypeAnnotation(typeRef, typePath, descriptor, visible);
+			}
+			if (target instanceof MethodVisitor) {
+				return ((MethodVisitor) target).visitTypeAnnotation(typeRef, typePath, descriptor, visible);
+			}
+			if (target instanceof FieldVisitor) {
+				return ((FieldVisitor) target).visitTypeAnnotation(typeRef, typePath, descriptor, visible);
+			}
+			return ((RecordComponentVisitor) target).visitTypeAnnotation(typeRef, typePath, descriptor, visible);
+		}
+
+		private void attribute(Object target, Attribute attribute) {
+			if (target instanceof ClassVisitor) {
+				((ClassVisitor) target).visitAttribute(attribute);
+			} else if (target instanceof MethodVisitor) {
+				((MethodVisitor) target).visitAttribute(attribute);
+			} else if (target instanceof FieldVisitor) {
+				((FieldVisitor) target).visitAttribute(attribute);
+			} else {
+				((RecordComponentVisitor) target).visitAttribute(attribute);
+			}
+		}
+
+		private void end(Object target) {
+			if (target instanceof ClassVisitor) {
+				((ClassVisitor) target).visitEnd();
+			} else if (target instanceof MethodVisitor) {
+				((MethodVisitor) target).visitEnd();
+			} else if (target instanceof FieldVisitor) {
+				((FieldVisitor) target).visitEnd();
+			} else if (target instanceof AnnotationVisitor) {
+				((AnnotationVisitor) target).visitEnd();
+			} else if (target instanceof ModuleVisitor) {
+				((ModuleVisitor) target).visitEnd();
+			} else {
+				((RecordComponentVisitor) target).visitEnd();
+			}
+		}
+
+		private void push(Object visitor) {
+			if (depth == stack.length) {
+				stack = Arrays.copyOf(stack, depth * 2);
+			}
+			stack[depth++] = visitor;
+		}
+
+		private int integer() {
+			return events[pos++];
+		}
+
+		private boolean bool() {
+			return events[pos++] != 0;
+		}
+
+		private Object object() {
+			int ref = events[pos++];
+			return (ref == 0) ? null : objects[ref - 1];
+		}
+
+		private String string() {
+			return (String) object();
+		}
+
+		private String[] strings() {
+			int length = events[pos++];
+			if (length < 0) {
+				return null;
+			}
+			String[] strings = new String[length];
+			for (int i = 0; i < length; i++) {
+				strings[i] = string();
+			}
+			return strings;
+		}
+
+		private Object[] objects() {
+			int length = events[pos++];
+			Object[] values = new Object[length];
+			for (int i = 0; i < length; i++) {
+				values[i] = object();
+			}
+			return values;
+		}
+
+		private int[] integers() {
+			int length = events[pos++];
+			int[] values = Arrays.copyOfRange(events, pos, pos + length);
+			pos += length;
+			return values;
+		}
+
+		private Label label() {
+			int id = events[pos++];
+			if (id >= labels.length) {
+				labels = Arrays.copyOf(labels, Math.max(id + 1, labels.length * 2));
+			}
+			if (labels[id] == null) {
+				labels[id] = new Label();
+				numLabels = Math.max(numLabels, id + 1);
+			}
+			return labels[id];
+		}
+
+		private Label[] labels() {
+			int length = events[pos++];
+			Label[] values = new Label[length];
+			for (int i = 0; i < length; i++) {
+				values[i] = label();
+			}
+			return values;
+		}
+
+		private Object[] frameItems() {
+			int length = events[pos++];
+			if (length < 0) {
+				return null;
+			}
+			Object[] items = new Object[length];
+			for (int i = 0; i < length; i++) {
+				items[i] = (events[pos++] == FRAME_LABEL) ? label() : object();
+			}
+			return items;
+		}
+	}
+}
@@ -0,0 +1,253 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * a bounded stream that visitors publish their findings to while they visit,
+ * rather than collecting everything until the scan is over. Every
+ * {@link Subscription} sees every finding published after it subscribed, in
+ * the order they were published, and drains them at its own pace to wherever
+ * it likes. Once the slowest subscriber is capacity findings behind,
+ * publishers wait, which slows the scan down to the pace of the consumers
+ * instead of letting findings pile up in memory.
+ * <p>
+ * Findings published while nobody is subscribed are dropped. Any number of
+ * threads may publish, say the threads of a {@link ClassScanner}.
+ *
+ * @param <T>
+ *            the type of finding
+ */
+public final class FindingStream<T> implements Closeable {
+
+	private final Object[] slots;
+	private final int mask;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notFull = lock.newCondition();
+	private final Condition notEmpty = lock.newCondition();
+	private final List<Subscription<T>> subscriptions = new ArrayList<>();
+	private long published;
+	// every slot below this has been taken by all subscribers, and cleared
+	private long cleared;
+	private boolean closed;
+
+	/**
+	 * @param capacity
+	 *            how many findings a subscriber may fall behind by, rounded up
+	 *            to a power of two
+	 */
+	public FindingStream(int capacity) {
+		int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+		slots = new Object[size];
+		mask = size - 1;
+	}
+
+	/**
+	 * @return a subscription that starts with the next finding published
+	 */
+	public Subscription<T> subscribe() {
+		lock.lock();
+		try {
+			Subscription<T> subscription = new Subscription<>(this, published);
+			subscriptions.add(subscription);
+			return subscription;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * adds a finding to the stream, waiting while the slowest subscriber is a
+	 * full stream behind
+	 *
+	 * @throws IllegalStateException
+	 *             if the stream is closed, or the thread is interrupted while
+	 *             waiting
+	 */
+	public void publish(T finding) {
+		lock.lock();
+		try {
+			while (!closed && ((published - slowest()) >= slots.length)) {
+				notFull.await();
+			}
+			if (closed) {
+				throw new IllegalStateException("Finding stream is closed");
+			}
+			if (subscriptions.isEmpty()) {
+				return;
+			}
+
+			slots[(int) published & mask] = finding;
+			published++;
+			notEmpty.signalAll();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for subscribers", e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * ends the stream. Subscribers still get the findings already published, and
+	 * then the end of the stream.
+	 */
+	@Override
+	public void close() {
+		lock.lock();
+		try {
+			closed = true;
+			notFull.signalAll();
+			notEmpty.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private long slowest() {
+		long slowest = published;
+		for (Subscription<T> subscription : subscriptions) {
+			slowest = Math.min(slowest, subscription.next);
+		}
+		return slowest;
+	}
+
+	@SuppressWarnings("unchecked")
+	private T consume(Subscription<T> subscription) {
+		int slot = (int) subscription.next & mask;
+		T finding = (T) slots[slot];
+		subscription.next++;
+		if ((published - clearTaken()) < slots.length) {
+			notFull.signalAll();
+		}
+		return finding;
+	}
+
+	/**
+	 * drops the findings every subscriber has moved past, so that the stream
+	 * doesn't keep them reachable
+	 *
+	 * @return the position of the slowest subscriber
+	 */
+	private long clearTaken() {
+		long slowest = slowest();
+		while (cleared < slowest) {
+			slots[(int) cleared++ & mask] = null;
+		}
+		return slowest;
+	}
+
+	/**
+	 * one consumer's view of a {@link FindingStream}. A subscription is meant to
+	 * be drained by one thread.
+	 *
+	 * @param <T>
+	 *            the type of finding
+	 */
+	public static final class Subscription<T> implements Closeable {
+
+		private final FindingStream<T> stream;
+		private long next;
+		private boolean cancelled;
+
+		Subscription(FindingStream<T> stream, long next) {
+			this.stream = stream;
+			this.next = next;
+		}
+
+		/**
+		 * waits for the next finding
+		 *
+		 * @return the finding, or null once the stream is closed and every finding
+		 *         has been taken, or this subscription was closed
+		 */
+		public T take() throws InterruptedException {
+			stream.lock.lock();
+			try {
+				while (!cancelled && (next == stream.published) && !stream.closed) {
+					stream.notEmpty.await();
+				}
+				if (cancelled || (next == stream.published)) {
+					return null;
+				}
+				return stream.consume(this);
+			} finally {
+				stream.lock.unlock();
+			}
+		}
+
+		/**
+		 * moves the findings that are available right now, up to max of them, into
+		 * the given collection without waiting
+		 *
+		 * @return the number of findings moved
+		 */
+		public int drainTo(Collection<? super T> findings, int max) {
+			stream.lock.lock();
+			try {
+				int count = 0;
+				while (!cancelled && (count < max) && (next != stream.published)) {
+					findings.add(stream.consume(this));
+					count++;
+				}
+				return count;
+			} finally {
+				stream.lock.unlock();
+			}
+		}
+
+		/**
+		 * @return true if the stream is closed and this subscription has taken
+		 *         every finding, or the subscription itself was closed
+		 */
+		public boolean isDone() {
+			stream.lock.lock();
+			try {
+				return cancelled || (stream.closed && (next == stream.published));
+			} finally {
+				stream.lock.unlock();
+			}
+		}
+
+		/**
+		 * stops this subscription, so that it no longer holds publishers back
+		 */
+		@Override
+		public void close() {
+			stream.lock.lock();
+			try {
+				if (!cancelled) {
+					cancelled = true;
+					stream.subscriptions.remove(this);
+					stream.clearTaken();
+					stream.notFull.signalAll();
+					stream.notEmpty.signalAll();
+				}
+			} finally {
+				stream.lock.unlock();
+			}
+		}
+	}
+}
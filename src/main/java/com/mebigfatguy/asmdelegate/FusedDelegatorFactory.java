@@ -0,0 +1,447 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.ModuleVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.RecordComponentVisitor;
+import org.objectweb.asm.Type;
+
+/**
+ * creates delegating visitors whose classes are generated at runtime for the
+ * exact set of child types being delegated to. Each event is compiled into
+ * straight line code that calls every interested child from its own call site,
+ * so the call sites stay monomorphic and the jit can inline the children.
+ * Generated classes are cached by the tuple of child types, so this pays off
+ * when the same combination of children is used over and over again.
+ * <p>
+ * The cache hangs off the child types, and the classes are defined in a
+ * loader below the children's own. So children loaded by a plugin or webapp
+ * loader can be unloaded along with it, taking their fused classes with them.
+ */
+public final class FusedDelegatorFactory {
+
+	private static final int ANNOTATION_KIND = 0;
+	private static final int FIELD_KIND = 1;
+	private static final int METHOD_KIND = 2;
+	private static final int MODULE_KIND = 3;
+	private static final int RECORD_COMPONENT_KIND = 4;
+	private static final int NUM_KINDS = 5;
+
+	private static final String FUNCTION = Type.getInternalName(Function.class);
+	private static final String FUSERS_DESC = "[L" + FUNCTION + ";";
+	private static final String CTOR_DESC = "(I[Ljava/lang/Object;" + FUSERS_DESC + ")V";
+	private static final String GENERATED_PACKAGE = "com/mebigfatguy/asmdelegate/generated/";
+
+	// weakly valued too, as a fused loader holds on to its parent
+	private static final Map<ClassLoader, WeakReference<FusedClassLoader>> LOADERS = new WeakHashMap<>();
+	private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+	private static final Fusion<ClassVisitor> CLASS = new Fusion<>(ClassVisitor.class,
+			DelegatingClassVisitor.INTERESTS, ClassVisitor::getDelegate);
+	private static final Fusion<MethodVisitor> METHOD = new Fusion<>(MethodVisitor.class,
+			DelegatingMethodVisitor.INTERESTS, MethodVisitor::getDelegate);
+	private static final Fusion<FieldVisitor> FIELD = new Fusion<>(FieldVisitor.class,
+			DelegatingFieldVisitor.INTERESTS, FieldVisitor::getDelegate);
+	private static final Fusion<AnnotationVisitor> ANNOTATION = new Fusion<>(AnnotationVisitor.class,
+			DelegatingAnnotationVisitor.INTERESTS, AnnotationVisitor::getDelegate);
+	private static final Fusion<RecordComponentVisitor> RECORD_COMPONENT = new Fusion<>(RecordComponentVisitor.class,
+			DelegatingRecordComponentVisitor.INTERESTS, RecordComponentVisitor::getDelegate);
+	private static final Fusion<ModuleVisitor> MODULE = new Fusion<>(ModuleVisitor.class,
+			DelegatingModuleVisitor.INTERESTS, ModuleVisitor::getDelegate);
+
+	private static final ConcurrentMap<Integer, Function<Object[], Object>[]> FUSERS = new ConcurrentHashMap<>();
+
+	private FusedDelegatorFactory() {
+	}
+
+	public static ClassVisitor newClassVisitor(int api, List<ClassVisitor> visitors) {
+		return CLASS.create(api, visitors);
+	}
+
+	public static MethodVisitor newMethodVisitor(int api, List<MethodVisitor> visitors) {
+		return METHOD.create(api, visitors);
+	}
+
+	public static FieldVisitor newFieldVisitor(int api, List<FieldVisitor> visitors) {
+		return FIELD.create(api, visitors);
+	}
+
+	public static AnnotationVisitor newAnnotationVisitor(int api, List<AnnotationVisitor> visitors) {
+		return ANNOTATION.create(api, visitors);
+	}
+
+	public static RecordComponentVisitor newRecordComponentVisitor(int api, List<RecordComponentVisitor> visitors) {
+		return RECORD_COMPONENT.create(api, visitors);
+	}
+
+	public static ModuleVisitor newModuleVisitor(int api, List<ModuleVisitor> visitors) {
+		return MODULE.create(api, visitors);
+	}
+
+	/**
+	 * the generated classes live in their own class loader, so they can't see
+	 * anything package private here. Sub visitors returned by the children are
+	 * handed back through plain functions instead, one per visitor kind.
+	 */
+	private static Function<Object[], Object>[] fusers(int api) {
+		return FUSERS.computeIfAbsent(Integer.valueOf(api), k -> {
+			@SuppressWarnings("unchecked")
+			Function<Object[], Object>[] fusers = new Function[NUM_KINDS];
+			fusers[ANNOTATION_KIND] = results -> ANNOTATION.fuse(api, results);
+			fusers[FIELD_KIND] = results -> FIELD.fuse(api, results);
+			fusers[METHOD_KIND] = results -> METHOD.fuse(api, results);
+			fusers[MODULE_KIND] = results -> MODULE.fuse(api, results);
+			fusers[RECORD_COMPONENT_KIND] = results -> RECORD_COMPONENT.fuse(api, results);
+			return fusers;
+		});
+	}
+
+	/**
+	 * @return the fused loader for the given child loader, shared by all the
+	 *         fused classes of children from it
+	 */
+	private static FusedClassLoader loaderFor(ClassLoader childLoader) {
+		ClassLoader parent = (childLoader != null) ? childLoader : FusedDelegatorFactory.class.getClassLoader();
+		synchronized (LOADERS) {
+			WeakReference<FusedClassLoader> ref = LOADERS.get(parent);
+			FusedClassLoader loader = (ref != null) ? ref.get() : null;
+			if (loader == null) {
+				loader = new FusedClassLoader(parent);
+				LOADERS.put(parent, new WeakReference<>(loader));
+			}
+			return loader;
+		}
+	}
+
+	/**
+	 * picks the child type to cache a fused class on, the one whose loader is
+	 * below the others', as it can't outlive them anyway
+	 */
+	private static Class<?> anchorOf(Class<?>[] types) {
+		Class<?> anchor = types[0];
+		for (int i = 1; i < types.length; i++) {
+			if (isBelow(types[i].getClassLoader(), anchor.getClassLoader())) {
+				anchor = types[i];
+			}
+		}
+		return anchor;
+	}
+
+	private static boolean isBelow(ClassLoader loader, ClassLoader ancestor) {
+		if (loader == ancestor) {
+			return false;
+		}
+		if (ancestor == null) {
+			return true;
+		}
+		for (ClassLoader l = loader; l != null; l = l.getParent()) {
+			if (l == ancestor) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static int kindOf(Class<?> returnType) {
+		if (returnType == AnnotationVisitor.class) {
+			return ANNOTATION_KIND;
+		} else if (returnType == FieldVisitor.class) {
+			return FIELD_KIND;
+		} else if (returnType == MethodVisitor.class) {
+			return METHOD_KIND;
+		} else if (returnType == ModuleVisitor.class) {
+			return MODULE_KIND;
+		} else if (returnType == RecordComponentVisitor.class) {
+			return RECORD_COMPONENT_KIND;
+		}
+		throw new IllegalArgumentException("Unexpected visitor type " + returnType.getName());
+	}
+
+	private static final class Fusion<T> {
+
+		private final Class<T> baseClass;
+		private final Interests interests;
+		private final Function<T, Object> delegateOf;
+		private final List<Method> events;
+		private final GeneratedClasses generated = new GeneratedClasses();
+
+		Fusion(Class<T> baseClass, Interests interests, Function<T, Object> delegateOf) {
+			this.baseClass = baseClass;
+			this.interests = interests;
+			this.delegateOf = delegateOf;
+
+			events = new ArrayList<>();
+			for (Method m : baseClass.getMethods()) {
+				int modifiers = m.getModifiers();
+				if ((m.getDeclaringClass() == baseClass) && m.getName().startsWith("visit")
+						&& !Modifier.isStatic(modifiers) && !Modifier.isFinal(modifiers)) {
+					events.add(m);
+				}
+			}
+		}
+
+		T create(int api, List<T> visitors) {
+			List<Object> children = new ArrayList<>(visitors.size());
+			for (T visitor : visitors) {
+				if (visitor != null) {
+					children.add(visitor);
+				}
+			}
+			return instantiate(api, children.toArray());
+		}
+
+		Object fuse(int api, Object[] results) {
+			int numResults = 0;
+			for (Object result : results) {
+				if (result != null) {
+					results[numResults++] = result;
+				}
+			}
+
+			if (numResults == 0) {
+				return null;
+			}
+			if (numResults == 1) {
+				return results[0];
+			}
+			return instantiate(api, Arrays.copyOf(results, numResults, Object[].class));
+		}
+
+		private T instantiate(int api, Object[] children) {
+			Class<?>[] types = new Class<?>[children.length];
+			long[] masks = new long[children.length];
+			for (int i = 0; i < children.length; i++) {
+				types[i] = children[i].getClass();
+				masks[i] = interests.maskOf(children[i], delegateOf.apply(baseClass.cast(children[i])));
+			}
+
+			Class<?> anchor = (types.length > 0) ? anchorOf(types) : baseClass;
+			Constructor<?> ctor = generated.get(anchor).computeIfAbsent(new Key(types, masks),
+					key -> generate(key, anchor.getClassLoader()));
+			try {
+				return baseClass.cast(ctor.newInstance(Integer.valueOf(api), children, fusers(api)));
+			} catch (InvocationTargetException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				throw new IllegalStateException("Failed creating fused " + baseClass.getSimpleName(), cause);
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalStateException("Failed creating fused " + baseClass.getSimpleName(), e);
+			}
+		}
+
+		private Constructor<?> generate(Key key, ClassLoader childLoader) {
+			String baseName = Type.getInternalName(baseClass);
+			String className = GENERATED_PACKAGE + "Fused" + baseClass.getSimpleName() + '$'
+					+ NEXT_ID.incrementAndGet();
+			int numChildren = key.types.length;
+
+			ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+			cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, className, null,
+					baseName, null);
+
+			for (int i = 0; i < numChildren; i++) {
+				cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "c" + i, Type.getDescriptor(baseClass), null,
+						null).visitEnd();
+			}
+			cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "fusers", FUSERS_DESC, null, null).visitEnd();
+
+			MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", CTOR_DESC, null, null);
+			mv.visitCode();
+			mv.visitVarInsn(Opcodes.ALOAD, 0);
+			mv.visitVarInsn(Opcodes.ILOAD, 1);
+			mv.visitMethodInsn(Opcodes.INVOKESPECIAL, baseName, "<init>", "(I)V", false);
+			for (int i = 0; i < numChildren; i++) {
+				mv.visitVarInsn(Opcodes.ALOAD, 0);
+				mv.visitVarInsn(Opcodes.ALOAD, 2);
+				mv.visitLdcInsn(Integer.valueOf(i));
+				mv.visitInsn(Opcodes.AALOAD);
+				mv.visitTypeInsn(Opcodes.CHECKCAST, baseName);
+				mv.visitFieldInsn(Opcodes.PUTFIELD, className, "c" + i, Type.getDescriptor(baseClass));
+			}
+			mv.visitVarInsn(Opcodes.ALOAD, 0);
+			mv.visitVarInsn(Opcodes.ALOAD, 3);
+			mv.visitFieldInsn(Opcodes.PUTFIELD, className, "fusers", FUSERS_DESC);
+			mv.visitInsn(Opcodes.RETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+
+			for (Method event : events) {
+				generateEvent(cw, className, baseName, event, key);
+			}
+
+			cw.visitEnd();
+
+			Class<?> fused = loaderFor(childLoader).define(className.replace('/', '.'), cw.toByteArray());
+			try {
+				return fused.getConstructor(int.class, Object[].class, Function[].class);
+			} catch (NoSuchMethodException e) {
+				throw new IllegalStateException("Generated class " + className + " has no constructor", e);
+			}
+		}
+
+		private void generateEvent(ClassWriter cw, String className, String baseName, Method event, Key key) {
+			String desc = Type.getMethodDescriptor(event);
+			Type[] argTypes = Type.getArgumentTypes(desc);
+			Class<?> returnType = event.getReturnType();
+			int eventIndex = interests.indexOf(event.getName());
+			long bit = (eventIndex >= 0) ? (1L << eventIndex) : Interests.ALL;
+
+			int access = Opcodes.ACC_PUBLIC | (event.isVarArgs() ? Opcodes.ACC_VARARGS : 0);
+			MethodVisitor mv = cw.visitMethod(access, event.getName(), desc, null, null);
+			mv.visitCode();
+
+			int resultsSlot = 1;
+			for (Type argType : argTypes) {
+				resultsSlot += argType.getSize();
+			}
+
+			int numInterested = 0;
+			for (long mask : key.masks) {
+				if ((mask & bit) != 0) {
+					numInterested++;
+				}
+			}
+
+			boolean returnsVisitor = returnType != void.class;
+			if (returnsVisitor) {
+				if (numInterested == 0) {
+					mv.visitInsn(Opcodes.ACONST_NULL);
+					mv.visitInsn(Opcodes.ARETURN);
+					mv.visitMaxs(0, 0);
+					mv.visitEnd();
+					return;
+				}
+				mv.visitLdcInsn(Integer.valueOf(numInterested));
+				mv.visitTypeInsn(Opcodes.ANEWARRAY, Type.getInternalName(returnType));
+				mv.visitVarInsn(Opcodes.ASTORE, resultsSlot);
+			}
+
+			int resultIndex = 0;
+			for (int i = 0; i < key.masks.length; i++) {
+				if ((key.masks[i] & bit) == 0) {
+					continue;
+				}
+
+				if (returnsVisitor) {
+					mv.visitVarInsn(Opcodes.ALOAD, resultsSlot);
+					mv.visitLdcInsn(Integer.valueOf(resultIndex++));
+				}
+				mv.visitVarInsn(Opcodes.ALOAD, 0);
+				mv.visitFieldInsn(Opcodes.GETFIELD, className, "c" + i, Type.getDescriptor(baseClass));
+				int slot = 1;
+				for (Type argType : argTypes) {
+					mv.visitVarInsn(argType.getOpcode(Opcodes.ILOAD), slot);
+					slot += argType.getSize();
+				}
+				mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, baseName, event.getName(), desc, false);
+				if (returnsVisitor) {
+					mv.visitInsn(Opcodes.AASTORE);
+				}
+			}
+
+			if (returnsVisitor) {
+				mv.visitVarInsn(Opcodes.ALOAD, 0);
+				mv.visitFieldInsn(Opcodes.GETFIELD, className, "fusers", FUSERS_DESC);
+				mv.visitLdcInsn(Integer.valueOf(kindOf(returnType)));
+				mv.visitInsn(Opcodes.AALOAD);
+				mv.visitVarInsn(Opcodes.ALOAD, resultsSlot);
+				mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, FUNCTION, "apply",
+						"(Ljava/lang/Object;)Ljava/lang/Object;", true);
+				mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(returnType));
+				mv.visitInsn(Opcodes.ARETURN);
+			} else {
+				mv.visitInsn(Opcodes.RETURN);
+			}
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+	}
+
+	/**
+	 * the fused classes generated for child tuples, kept with the tuple's anchor
+	 * type
+	 */
+	private static final class GeneratedClasses extends ClassValue<ConcurrentMap<Key, Constructor<?>>> {
+
+		@Override
+		protected ConcurrentMap<Key, Constructor<?>> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<>();
+		}
+	}
+
+	private static final class Key {
+		private final Class<?>[] types;
+		private final long[] masks;
+		private final int hashCode;
+
+		Key(Class<?>[] types, long[] masks) {
+			this.types = types;
+			this.masks = masks;
+			hashCode = (31 * Arrays.hashCode(types)) + Arrays.hashCode(masks);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key that = (Key) o;
+			return Arrays.equals(types, that.types) && Arrays.equals(masks, that.masks);
+		}
+	}
+
+	private static final class FusedClassLoader extends ClassLoader {
+
+		FusedClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		Class<?> define(String name, byte[] bytes) {
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.util.List;
+
+/**
+ * a view of one annotation in an {@link AnnotationIndex}, or of an annotation
+ * nested in one, which shares the target of the annotation it is nested in.
+ */
+public final class IndexedAnnotation {
+
+	private final AnnotationIndex index;
+	private final int row;
+	private final int type;
+	private final int values;
+
+	IndexedAnnotation(AnnotationIndex index, int row, int type, int values) {
+		this.index = index;
+		this.row = row;
+		this.type = type;
+		this.values = values;
+	}
+
+	int getRow() {
+		return row;
+	}
+
+	/**
+	 * @return the descriptor of the annotation type
+	 */
+	public String getDescriptor() {
+		return index.string(type);
+	}
+
+	/**
+	 * @return what is annotated, one of {@link AnnotationIndex#CLASS},
+	 *         {@link AnnotationIndex#FIELD}, {@link AnnotationIndex#METHOD},
+	 *         {@link AnnotationIndex#PARAMETER} or
+	 *         {@link AnnotationIndex#RECORD_COMPONENT}
+	 */
+	public int getTargetKind() {
+		return index.row(row, AnnotationIndex.KIND);
+	}
+
+	/**
+	 * @return the internal name of the annotated class, or of the class the
+	 *         annotated member belongs to
+	 */
+	public String getClassName() {
+		return index.string(index.row(row, AnnotationIndex.OWNER));
+	}
+
+	/**
+	 * @return the name of the annotated member, or null for a class annotation
+	 */
+	public String getMemberName() {
+		return index.string(index.row(row, AnnotationIndex.NAME));
+	}
+
+	/**
+	 * @return the descriptor of the annotated member, or null for a class
+	 *         annotation
+	 */
+	public String getMemberDescriptor() {
+		return index.string(index.row(row, AnnotationIndex.DESCRIPTOR));
+	}
+
+	/**
+	 * @return the index of the annotated parameter, or -1 if this isn't a
+	 *         parameter annotation
+	 */
+	public int getParameter() {
+		return index.row(row, AnnotationIndex.PARAMETER_INDEX);
+	}
+
+	public boolean isVisible() {
+		return (index.row(row, AnnotationIndex.FLAGS) & AnnotationIndex.VISIBLE) != 0;
+	}
+
+	public boolean isTypeAnnotation() {
+		return (index.row(row, AnnotationIndex.FLAGS) & AnnotationIndex.TYPE) != 0;
+	}
+
+	/**
+	 * @return the type reference of a type annotation, see
+	 *         org.objectweb.asm.TypeReference
+	 */
+	public int getTypeRef() {
+		return index.row(row, AnnotationIndex.TYPE_REF);
+	}
+
+	/**
+	 * @return the type path of a type annotation, in the form of
+	 *         org.objectweb.asm.TypePath.toString, or null
+	 */
+	public String getTypePath() {
+		return index.string(index.row(row, AnnotationIndex.TYPE_PATH));
+	}
+
+	/**
+	 * @return the names of the elements given a value, in class file order
+	 */
+	public List<String> getValueNames() {
+		return index.valueNames(values);
+	}
+
+	/**
+	 * @return the value of the element, or null if it wasn't given one. Values
+	 *         are returned as ASM hands them to an AnnotationVisitor, except that
+	 *         enums are a String[] of the descriptor and the constant, nested
+	 *         annotations are IndexedAnnotations, and arrays, including arrays
+	 *         of primitives, are Lists.
+	 */
+	public Object getValue(String name) {
+		return index.value(this, values, name);
+	}
+}
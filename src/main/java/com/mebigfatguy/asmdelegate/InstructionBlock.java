@@ -0,0 +1,230 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.util.Arrays;
+
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * the instructions, labels and line numbers of a method body, encoded as an
+ * opcode and an int operand per entry, plus a table of the objects operands
+ * refer to. Per opcode the operand is
+ * <ul>
+ * <li>zero-operand instructions: 0</li>
+ * <li>BIPUSH, SIPUSH, NEWARRAY: the operand</li>
+ * <li>loads, stores, RET: the variable</li>
+ * <li>IINC: the variable in the low 16 bits, the increment in the high 16
+ * bits</li>
+ * <li>NEW, ANEWARRAY, CHECKCAST, INSTANCEOF: the index of the type</li>
+ * <li>field instructions: the index of the owner, followed by the name and
+ * descriptor</li>
+ * <li>method instructions: the index of the owner, followed by the name,
+ * descriptor and a Boolean isInterface</li>
+ * <li>INVOKEDYNAMIC: the index of the name, followed by the descriptor, the
+ * bootstrap method Handle and the Object[] of bootstrap arguments</li>
+ * <li>jumps: the index of the target Label</li>
+ * <li>LDC: the index of the constant</li>
+ * <li>TABLESWITCH: the index of the Integer min, followed by the Integer max,
+ * the default Label and the Label[] of cases</li>
+ * <li>LOOKUPSWITCH: the index of the default Label, followed by the int[] of
+ * keys and the Label[] of cases</li>
+ * <li>MULTIANEWARRAY: the index of the descriptor, followed by the Integer
+ * number of dimensions</li>
+ * <li>{@link #LABEL}: the index of the Label</li>
+ * <li>{@link #LINE_NUMBER}: the index of the Integer line, followed by the
+ * start Label</li>
+ * </ul>
+ */
+public final class InstructionBlock {
+
+	public static final int LABEL = -1;
+	public static final int LINE_NUMBER = -2;
+
+	private static final byte INSN = 0;
+	private static final byte INT_INSN = 1;
+	private static final byte VAR_INSN = 2;
+	private static final byte TYPE_INSN = 3;
+	private static final byte FIELD_INSN = 4;
+	private static final byte METHOD_INSN = 5;
+	private static final byte INVOKE_DYNAMIC_INSN = 6;
+	private static final byte JUMP_INSN = 7;
+	private static final byte LDC_INSN = 8;
+	private static final byte IINC_INSN = 9;
+	private static final byte TABLE_SWITCH_INSN = 10;
+	private static final byte LOOKUP_SWITCH_INSN = 11;
+	private static final byte MULTI_ANEW_ARRAY_INSN = 12;
+
+	private static final byte[] KINDS = new byte[256];
+
+	static {
+		kinds(INT_INSN, Opcodes.BIPUSH, Opcodes.SIPUSH);
+		kinds(INT_INSN, Opcodes.NEWARRAY, Opcodes.NEWARRAY);
+		kinds(LDC_INSN, Opcodes.LDC, Opcodes.LDC);
+		kinds(VAR_INSN, Opcodes.ILOAD, Opcodes.ALOAD);
+		kinds(VAR_INSN, Opcodes.ISTORE, Opcodes.ASTORE);
+		kinds(VAR_INSN, Opcodes.RET, Opcodes.RET);
+		kinds(IINC_INSN, Opcodes.IINC, Opcodes.IINC);
+		kinds(JUMP_INSN, Opcodes.IFEQ, Opcodes.JSR);
+		kinds(JUMP_INSN, Opcodes.IFNULL, Opcodes.IFNONNULL);
+		kinds(TABLE_SWITCH_INSN, Opcodes.TABLESWITCH, Opcodes.TABLESWITCH);
+		kinds(LOOKUP_SWITCH_INSN, Opcodes.LOOKUPSWITCH, Opcodes.LOOKUPSWITCH);
+		kinds(FIELD_INSN, Opcodes.GETSTATIC, Opcodes.PUTFIELD);
+		kinds(METHOD_INSN, Opcodes.INVOKEVIRTUAL, Opcodes.INVOKEINTERFACE);
+		kinds(INVOKE_DYNAMIC_INSN, Opcodes.INVOKEDYNAMIC, Opcodes.INVOKEDYNAMIC);
+		kinds(TYPE_INSN, Opcodes.NEW, Opcodes.NEW);
+		kinds(TYPE_INSN, Opcodes.ANEWARRAY, Opcodes.ANEWARRAY);
+		kinds(TYPE_INSN, Opcodes.CHECKCAST, Opcodes.INSTANCEOF);
+		kinds(MULTI_ANEW_ARRAY_INSN, Opcodes.MULTIANEWARRAY, Opcodes.MULTIANEWARRAY);
+	}
+
+	private int[] opcodes = new int[64];
+	private int[] operands = new int[64];
+	private int size;
+	private Object[] objects = new Object[64];
+	private int numObjects;
+
+	InstructionBlock() {
+	}
+
+	private static void kinds(byte kind, int from, int to) {
+		for (int opcode = from; opcode <= to; opcode++) {
+			KINDS[opcode] = kind;
+		}
+	}
+
+	/**
+	 * @return the number of entries, including labels and line numbers
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the opcode of the entry, or {@link #LABEL} or
+	 *         {@link #LINE_NUMBER}
+	 */
+	public int getOpcode(int entry) {
+		return opcodes[entry];
+	}
+
+	public int getOperand(int entry) {
+		return operands[entry];
+	}
+
+	public Object getObject(int index) {
+		return objects[index];
+	}
+
+	/**
+	 * replays the entries as the events they were recorded from
+	 */
+	public void accept(MethodVisitor mv) {
+		for (int i = 0; i < size; i++) {
+			int opcode = opcodes[i];
+			int operand = operands[i];
+			if (opcode == LABEL) {
+				mv.visitLabel((Label) objects[operand]);
+				continue;
+			}
+			if (opcode == LINE_NUMBER) {
+				mv.visitLineNumber(((Integer) objects[operand]).intValue(), (Label) objects[operand + 1]);
+				continue;
+			}
+
+			switch (KINDS[opcode]) {
+			case INT_INSN:
+				mv.visitIntInsn(opcode, operand);
+				break;
+			case VAR_INSN:
+				mv.visitVarInsn(opcode, operand);
+				break;
+			case TYPE_INSN:
+				mv.visitTypeInsn(opcode, (String) objects[operand]);
+				break;
+			case FIELD_INSN:
+				mv.visitFieldInsn(opcode, (String) objects[operand], (String) objects[operand + 1],
+						(String) objects[operand + 2]);
+				break;
+			case METHOD_INSN:
+				mv.visitMethodInsn(opcode, (String) objects[operand], (String) objects[operand + 1],
+						(String) objects[operand + 2], ((Boolean) objects[operand + 3]).booleanValue());
+				break;
+			case INVOKE_DYNAMIC_INSN:
+				mv.visitInvokeDynamicInsn((String) objects[operand], (String) objects[operand + 1],
+						(Handle) objects[operand + 2], (Object[]) objects[operand + 3]);
+				break;
+			case JUMP_INSN:
+				mv.visitJumpInsn(opcode, (Label) objects[operand]);
+				break;
+			case LDC_INSN:
+				mv.visitLdcInsn(objects[operand]);
+				break;
+			case IINC_INSN:
+				mv.visitIincInsn(operand & 0xFFFF, operand >> 16);
+				break;
+			case TABLE_SWITCH_INSN:
+				mv.visitTableSwitchInsn(((Integer) objects[operand]).intValue(),
+						((Integer) objects[operand + 1]).intValue(), (Label) objects[operand + 2],
+						(Label[]) objects[operand + 3]);
+				break;
+			case LOOKUP_SWITCH_INSN:
+				mv.visitLookupSwitchInsn((Label) objects[operand], (int[]) objects[operand + 1],
+						(Label[]) objects[operand + 2]);
+				break;
+			case MULTI_ANEW_ARRAY_INSN:
+				mv.visitMultiANewArrayInsn((String) objects[operand], ((Integer) objects[operand + 1]).intValue());
+				break;
+			default:
+				mv.visitInsn(opcode);
+				break;
+			}
+		}
+	}
+
+	void add(int opcode, int operand) {
+		if (size == opcodes.length) {
+			opcodes = Arrays.copyOf(opcodes, size * 2);
+			operands = Arrays.copyOf(operands, size * 2);
+		}
+		opcodes[size] = opcode;
+		operands[size++] = operand;
+	}
+
+	/**
+	 * @return the index of the object, the objects of one entry being pushed
+	 *         one after the other
+	 */
+	int push(Object object) {
+		if (numObjects == objects.length) {
+			objects = Arrays.copyOf(objects, numObjects * 2);
+		}
+		objects[numObjects] = object;
+		return numObjects++;
+	}
+
+	void clear() {
+		Arrays.fill(objects, 0, numObjects, null);
+		numObjects = 0;
+		size = 0;
+	}
+}
@@ -0,0 +1,212 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * determines, once per visitor class, which of the events of an asm visitor base
+ * class are actually overridden, and builds per event dispatch tables so that
+ * children only get called for events they care about.
+ */
+final class Interests {
+
+	static final long ALL = -1L;
+
+	private final Class<?> baseClass;
+	private final String[] events;
+	private final ClassValue<Long> masks = new ClassValue<Long>() {
+		@Override
+		protected Long computeValue(Class<?> type) {
+			return Long.valueOf(computeMask(type));
+		}
+	};
+
+	Interests(Class<?> baseClass, String... events) {
+		if (events.length > Long.SIZE) {
+			throw new IllegalArgumentException("Too many events for " + baseClass.getName() + ": " + events.length);
+		}
+		this.baseClass = baseClass;
+		this.events = events;
+	}
+
+	int size() {
+		return events.length;
+	}
+
+	String nameOf(int event) {
+		return events[event];
+	}
+
+	int indexOf(String event) {
+		for (int i = 0; i < events.length; i++) {
+			if (events[i].equals(event)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * a visitor that chains to a delegate forwards every event it doesn't
+	 * override, so it is considered interested in everything, except for the
+	 * wrappers of {@link DelegatingClassVisitor#METRICS} mode, which are as
+	 * interested as what they wrap.
+	 */
+	long maskOf(Object visitor, Object delegate) {
+		if (visitor instanceof Metered) {
+			return ((Metered) visitor).getInterestMask();
+		}
+		if (delegate != null) {
+			return ALL;
+		}
+		return masks.get(visitor.getClass()).longValue();
+	}
+
+	<T> T[][] buildDispatch(T[] children, int numChildren, long[] childMasks, T[][] dispatch) {
+		@SuppressWarnings("unchecked")
+		T[][] table = (dispatch != null) ? dispatch
+				: (T[][]) Array.newInstance(children.getClass(), events.length);
+		T[] empty = null;
+
+		for (int e = 0; e < events.length; e++) {
+			long bit = 1L << e;
+			int count = 0;
+			for (int c = 0; c < numChildren; c++) {
+				if ((childMasks[c] & bit) != 0) {
+					count++;
+				}
+			}
+
+			T[] targets = table[e];
+			if ((targets == null) || (targets.length != count)) {
+				if (count > 0) {
+					targets = Arrays.copyOf(children, count);
+				} else {
+					if (empty == null) {
+						empty = Arrays.copyOf(children, 0);
+					}
+					targets = empty;
+				}
+			}
+			if (count > 0) {
+				int t = 0;
+				for (int c = 0; c < numChildren; c++) {
+					if ((childMasks[c] & bit) != 0) {
+						targets[t++] = children[c];
+					}
+				}
+			}
+			table[e] = targets;
+		}
+
+		return table;
+	}
+
+	/**
+	 * builds, alongside a dispatch table built from the same masks, the origin of
+	 * each of its targets, so the root child a target came from is known from
+	 * its index rather than found by a search
+	 */
+	int[][] buildOrigins(int[] childOrigins, int numChildren, long[] childMasks, int[][] origins) {
+		int[][] table = (origins != null) ? origins : new int[events.length][];
+
+		for (int e = 0; e < events.length; e++) {
+			long bit = 1L << e;
+			int count = 0;
+			for (int c = 0; c < numChildren; c++) {
+				if ((childMasks[c] & bit) != 0) {
+					count++;
+				}
+			}
+
+			int[] targets = table[e];
+			if ((targets == null) || (targets.length != count)) {
+				targets = new int[count];
+			}
+			int t = 0;
+			for (int c = 0; c < numChildren; c++) {
+				if ((childMasks[c] & bit) != 0) {
+					targets[t++] = childOrigins[c];
+				}
+			}
+			table[e] = targets;
+		}
+
+		return table;
+	}
+
+	<T> void clearDispatch(T[][] dispatch) {
+		for (T[] targets : dispatch) {
+			Arrays.fill(targets, null);
+		}
+	}
+
+	private long computeMask(Class<?> type) {
+		try {
+			return collectMask(type, new HashSet<>());
+		} catch (SecurityException | LinkageError e) {
+			return ALL;
+		}
+	}
+
+	/**
+	 * walks the super classes of the given type and, when the base is an
+	 * interface, the super interfaces too, as a default method in a sub
+	 * interface overrides the base's just as a class method does
+	 */
+	private long collectMask(Class<?> type, Set<Class<?>> seen) {
+		long mask = 0;
+		Class<?> cls = type;
+		while ((cls != null) && (cls != baseClass) && seen.add(cls)) {
+			for (Method m : cls.getDeclaredMethods()) {
+				int modifiers = m.getModifiers();
+				if (Modifier.isStatic(modifiers) || Modifier.isPrivate(modifiers) || m.isBridge()
+						|| m.isSynthetic()) {
+					continue;
+				}
+				int event = indexOf(m.getName());
+				if ((event >= 0) && overridesBase(m)) {
+					mask |= 1L << event;
+				}
+			}
+			if (baseClass.isInterface()) {
+				for (Class<?> iface : cls.getInterfaces()) {
+					mask |= collectMask(iface, seen);
+				}
+			}
+			cls = cls.getSuperclass();
+		}
+		return mask;
+	}
+
+	private boolean overridesBase(Method m) {
+		try {
+			baseClass.getMethod(m.getName(), m.getParameterTypes());
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+}
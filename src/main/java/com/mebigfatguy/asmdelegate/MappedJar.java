@@ -0,0 +1,198 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import org.objectweb.asm.ClassReader;
+
+/**
+ * a jar file that is memory mapped and whose central directory is read
+ * directly, so class entries can be copied or inflated straight from the
+ * mapping into {@link ClassBuffers}. Jars that are too big to map in one go,
+ * or that need zip64 records, aren't supported, and {@link #open(Path)}
+ * returns null for them.
+ */
+final class MappedJar implements Closeable {
+
+	private static final int LOCAL_HEADER = 0x04034b50;
+	private static final int CENTRAL_HEADER = 0x02014b50;
+	private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+	private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+	private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+	private final Path path;
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final List<Entry> entries;
+
+	private MappedJar(Path path, FileChannel channel, MappedByteBuffer buffer, List<Entry> entries) {
+		this.path = path;
+		this.channel = channel;
+		this.buffer = buffer;
+		this.entries = entries;
+	}
+
+	static MappedJar open(Path jar) throws IOException {
+		FileChannel channel = FileChannel.open(jar, StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			if ((size > Integer.MAX_VALUE) || (size < END_OF_CENTRAL_DIRECTORY_SIZE)) {
+				channel.close();
+				return null;
+			}
+
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			List<Entry> entries = readCentralDirectory(buffer);
+			if (entries == null) {
+				channel.close();
+				return null;
+			}
+			return new MappedJar(jar, channel, buffer, entries);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	List<Entry> getEntries() {
+		return entries;
+	}
+
+	ClassReader read(Entry entry) throws IOException {
+		return read(entry, ClassBuffers.get());
+	}
+
+	/**
+	 * copies or inflates the entry into the given buffers, which needn't be the
+	 * current thread's
+	 */
+	ClassReader read(Entry entry, ClassBuffers buffers) throws IOException {
+		int local = entry.localHeaderOffset;
+		if (buffer.getInt(local) != LOCAL_HEADER) {
+			throw new ZipException("Bad local header for " + entry.name + " in " + path);
+		}
+		int dataOffset = local + 30 + (buffer.getShort(local + 26) & 0xFFFF) + (buffer.getShort(local + 28) & 0xFFFF);
+
+		if (entry.method == ZipEntry.STORED) {
+			return buffers.copy(buffer, dataOffset, entry.size);
+		}
+		if (entry.method == ZipEntry.DEFLATED) {
+			return buffers.inflate(buffer, dataOffset, entry.compressedSize, entry.size);
+		}
+		throw new ZipException("Unsupported compression method " + entry.method + " for " + entry.name);
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private static List<Entry> readCentralDirectory(MappedByteBuffer buffer) throws ZipException {
+		int limit = buffer.limit();
+		int end = -1;
+		int stop = Math.max(0, limit - END_OF_CENTRAL_DIRECTORY_SIZE - MAX_COMMENT_SIZE);
+		for (int i = limit - END_OF_CENTRAL_DIRECTORY_SIZE; i >= stop; i--) {
+			if (buffer.getInt(i) == END_OF_CENTRAL_DIRECTORY) {
+				end = i;
+				break;
+			}
+		}
+		if (end < 0) {
+			throw new ZipException("No end of central directory record found");
+		}
+
+		int numEntries = buffer.getShort(end + 10) & 0xFFFF;
+		long directoryOffset = buffer.getInt(end + 16) & 0xFFFFFFFFL;
+		if ((numEntries == 0xFFFF) || (directoryOffset == 0xFFFFFFFFL)) {
+			return null;
+		}
+
+		List<Entry> entries = new ArrayList<>(numEntries);
+		int offset = (int) directoryOffset;
+		for (int i = 0; i < numEntries; i++) {
+			if (buffer.getInt(offset) != CENTRAL_HEADER) {
+				throw new ZipException("Bad central directory header at " + offset);
+			}
+			int method = buffer.getShort(offset + 10) & 0xFFFF;
+			long compressedSize = buffer.getInt(offset + 20) & 0xFFFFFFFFL;
+			long size = buffer.getInt(offset + 24) & 0xFFFFFFFFL;
+			int nameLength = buffer.getShort(offset + 28) & 0xFFFF;
+			int extraLength = buffer.getShort(offset + 30) & 0xFFFF;
+			int commentLength = buffer.getShort(offset + 32) & 0xFFFF;
+			long localHeaderOffset = buffer.getInt(offset + 42) & 0xFFFFFFFFL;
+
+			if ((compressedSize == 0xFFFFFFFFL) || (size == 0xFFFFFFFFL) || (localHeaderOffset == 0xFFFFFFFFL)) {
+				return null;
+			}
+
+			if (isClassFile(buffer, offset + 46, nameLength)) {
+				byte[] name = new byte[nameLength];
+				for (int b = 0; b < nameLength; b++) {
+					name[b] = buffer.get(offset + 46 + b);
+				}
+				entries.add(new Entry(new String(name, StandardCharsets.UTF_8), method, (int) compressedSize,
+						(int) size, (int) localHeaderOffset));
+			}
+
+			offset += 46 + nameLength + extraLength + commentLength;
+		}
+
+		return Collections.unmodifiableList(entries);
+	}
+
+	private static boolean isClassFile(MappedByteBuffer buffer, int nameOffset, int nameLength) {
+		if (nameLength < 6) {
+			return false;
+		}
+		int suffix = nameOffset + nameLength - 6;
+		return (buffer.get(suffix) == '.') && (buffer.get(suffix + 1) == 'c') && (buffer.get(suffix + 2) == 'l')
+				&& (buffer.get(suffix + 3) == 'a') && (buffer.get(suffix + 4) == 's')
+				&& (buffer.get(suffix + 5) == 's');
+	}
+
+	static final class Entry {
+		final String name;
+		final int method;
+		final int compressedSize;
+		final int size;
+		final int localHeaderOffset;
+
+		Entry(String name, int method, int compressedSize, int size, int localHeaderOffset) {
+			this.name = name;
+			this.method = method;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.localHeaderOffset = localHeaderOffset;
+		}
+	}
+}
@@ -0,0 +1,46 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+/**
+ * implemented by child class visitors of a {@link DelegatingClassVisitor} to
+ * declare which methods, fields and record components they want to visit. The
+ * delegator checks the matchers itself, so a child is only asked for a sub
+ * visitor for the members it matches, and when no child matches a member the
+ * delegator returns null so that its code isn't parsed. The matchers are asked
+ * for once, when the delegator is built.
+ */
+public interface MemberFilter {
+
+	default MemberMatcher getMethodMatcher() {
+		return MemberMatcher.ANY;
+	}
+
+	default MemberMatcher getFieldMatcher() {
+		return MemberMatcher.ANY;
+	}
+
+	/**
+	 * record components have no access flags, so they are matched as if their
+	 * access was 0
+	 */
+	default MemberMatcher getRecordComponentMatcher() {
+		return MemberMatcher.ANY;
+	}
+}
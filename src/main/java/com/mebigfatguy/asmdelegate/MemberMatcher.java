@@ -0,0 +1,106 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.util.Arrays;
+
+/**
+ * an immutable predicate over the access flags, name and descriptor of a
+ * member, built up from {@link #ANY}, such as
+ *
+ * <pre>
+ * MemberMatcher.ANY.withAccess(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC).named("main")
+ * </pre>
+ */
+public final class MemberMatcher {
+
+	public static final MemberMatcher ANY = new MemberMatcher(0, 0, null, null);
+
+	private final int requiredAccess;
+	private final int excludedAccess;
+	private final String[] names;
+	private final String descriptor;
+
+	private MemberMatcher(int requiredAccess, int excludedAccess, String[] names, String descriptor) {
+		this.requiredAccess = requiredAccess;
+		this.excludedAccess = excludedAccess;
+		this.names = names;
+		this.descriptor = descriptor;
+	}
+
+	/**
+	 * @return a matcher that also requires all of the given access flags
+	 */
+	public MemberMatcher withAccess(int access) {
+		return new MemberMatcher(requiredAccess | access, excludedAccess, names, descriptor);
+	}
+
+	/**
+	 * @return a matcher that also requires none of the given access flags
+	 */
+	public MemberMatcher withoutAccess(int access) {
+		return new MemberMatcher(requiredAccess, excludedAccess | access, names, descriptor);
+	}
+
+	/**
+	 * @return a matcher that also requires one of the given names. As with the
+	 *         other criteria, every call has to hold, so
+	 *         {@code named("a", "b").named("b", "c")} only matches b, and
+	 *         {@code named("a").named("b")} matches nothing
+	 */
+	public MemberMatcher named(String... memberNames) {
+		String[] allowed = memberNames.clone();
+		if (names != null) {
+			int count = 0;
+			for (String n : allowed) {
+				if (contains(names, n)) {
+					allowed[count++] = n;
+				}
+			}
+			allowed = Arrays.copyOf(allowed, count);
+		}
+		return new MemberMatcher(requiredAccess, excludedAccess, allowed, descriptor);
+	}
+
+	/**
+	 * @return a matcher that also requires exactly the given descriptor
+	 */
+	public MemberMatcher withDescriptor(String memberDescriptor) {
+		return new MemberMatcher(requiredAccess, excludedAccess, names, memberDescriptor);
+	}
+
+	public boolean matches(int access, String name, String desc) {
+		if (((access & requiredAccess) != requiredAccess) || ((access & excludedAccess) != 0)) {
+			return false;
+		}
+		if ((descriptor != null) && !descriptor.equals(desc)) {
+			return false;
+		}
+		return (names == null) || contains(names, name);
+	}
+
+	private static boolean contains(String[] names, String name) {
+		for (String n : names) {
+			if (n.equals(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,35 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+/**
+ * implemented by class visitors used with a {@link ClassScanner}, which visits
+ * every class with a fresh instance of each visitor, and then folds those
+ * instances together with merge.
+ *
+ * @param <T>
+ *            the type of the visitor itself
+ */
+public interface Mergeable<T> {
+
+	/**
+	 * adds the results collected by another instance into this one
+	 */
+	void merge(T other);
+}
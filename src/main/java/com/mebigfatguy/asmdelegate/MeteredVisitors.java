@@ -0,0 +1,960 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.Attribute;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.ModuleVisitor;
+import org.objectweb.asm.RecordComponentVisitor;
+import org.objectweb.asm.TypePath;
+
+/**
+ * the wrappers that stand in for the children, and the sub visitors they
+ * return, in {@link DelegatingClassVisitor#METRICS} mode, counting and timing
+ * every event before passing it on, even when the child throws. The method
+ * wrapper also meters and passes on the events of the marker interfaces its
+ * child implements, as the delegator finds those through
+ * {@link #unmetered(Object)}.
+ */
+final class MeteredVisitors {
+
+	private MeteredVisitors() {
+	}
+
+	static ModuleVisitor meter(int api, ModuleVisitor mv, ChildMetrics metrics) {
+		metrics.subVisitor(mv);
+		return (mv == null) ? null : new MeteredModuleVisitor(api, mv, metrics);
+	}
+
+	static AnnotationVisitor meter(int api, AnnotationVisitor av, ChildMetrics metrics) {
+		metrics.subVisitor(av);
+		return (av == null) ? null : new MeteredAnnotationVisitor(api, av, metrics);
+	}
+
+	static FieldVisitor meter(int api, FieldVisitor fv, ChildMetrics metrics) {
+		metrics.subVisitor(fv);
+		return (fv == null) ? null : new MeteredFieldVisitor(api, fv, metrics);
+	}
+
+	static MethodVisitor meter(int api, MethodVisitor mv, ChildMetrics metrics) {
+		metrics.subVisitor(mv);
+		return (mv == null) ? null : new MeteredMethodVisitor(api, mv, metrics);
+	}
+
+	static RecordComponentVisitor meter(int api, RecordComponentVisitor rcv, ChildMetrics metrics) {
+		metrics.subVisitor(rcv);
+		return (rcv == null) ? null : new MeteredRecordComponentVisitor(api, rcv, metrics);
+	}
+
+	/**
+	 * @return the child's own visitor if this one is a metered method visitor,
+	 *         so that the marker interfaces the child implements can be seen
+	 */
+	static Object unmetered(Object visitor) {
+		return (visitor instanceof MeteredMethodVisitor) ? ((MeteredMethodVisitor) visitor).getDelegate() : visitor;
+	}
+
+	static final class MeteredClassVisitor extends ClassVisitor implements Metered {
+
+		private final ChildMetrics metrics;
+		private final long interestMask;
+
+		MeteredClassVisitor(int api, ClassVisitor cv, ChildMetrics metrics) {
+			super(api, cv);
+			this.metrics = metrics;
+			interestMask = DelegatingClassVisitor.INTERESTS.maskOf(cv, cv.getDelegate());
+		}
+
+		@Override
+		public long getInterestMask() {
+			return interestMask;
+		}
+
+		@Override
+		public void visit(int version, int access, String name, String signature, String superName,
+				String[] interfaces) {
+			long sample = metrics.enter(ChildMetrics.CLASS, DelegatingClassVisitor.VISIT);
+			try {
+				super.visit(version, access, name, signature, superName, interfaces);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitSource(String source, String debug) {
+			long sample = metrics.enter(ChildMetrics.CLASS, DelegatingClassVisitor.SOURCE);
+			try {
+				super.visitSource(source, debug);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public ModuleVisitor visitModule(String name, int access, String version) {
+			long sample = metrics.enter(ChildMetrics.CLASS, DelegatingClassVisitor.MODULE);
+			ModuleVisitor sub;
+			try {
+				sub = super.visitModule(name, access, version);
+			} finally {
+				metrics.exit(sample);
+			}
+			return meter(api, sub, metrics);
+		}
+
+		@Override
+		public void visitNestHost(String nestHost) {
+			long sample = metrics.enter(ChildMetrics.CLASS, DelegatingClassVisitor.NEST_HOST);
+			try {
+				super.visitNestHost(nestHost);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitOuterClass(String owner, String name, String descriptor) {
+			long sample = metrics.enter(ChildMetrics.CLASS, DelegatingClassVisitor.OUTER_CLASS);
+			try {
+				super.visitOuterClass(owner, name, descriptor);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+			long sample = metrics.enter(ChildMetrics.CLASS, DelegatingClassVisitor.ANNOTATION);
+			AnnotationVisitor sub;
+			try {
+				sub = super.visitAnnotation(descriptor, visible);
+			} finally {
+				metrics.exit(sample);
+			}
+			return meter(api, sub, metrics);
+		}
+
+		@Override
+		public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor,
+				boolean visible) {
+			long sample = metrics.enter(ChildMetrics.CLASS, DelegatingClassVisitor.TYPE_ANNOTATION);
+			AnnotationVisitor sub;
+			try {
+				sub = super.visitTypeAnnotation(typeRef, typePath, descriptor, visible);
+			} finally {
+				metrics.exit(sample);
+			}
+			return meter(api, sub, metrics);
+		}
+
+		@Override
+		public void visitAttribute(Attribute attribute) {
+			long sample = metrics.enter(ChildMetrics.CLASS, DelegatingClassVisitor.ATTRIBUTE);
+			try {
+				super.visitAttribute(attribute);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitNestMember(String nestMember) {
+			long sample = metrics.enter(ChildMetrics.CLASS, DelegatingClassVisitor.NEST_MEMBER);
+			try {
+				super.visitNestMember(nestMember);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitInnerClass(String name, String outerName, String innerName, int access) {
+			long sample = metrics.enter(ChildMetrics.CLASS, DelegatingClassVisitor.INNER_CLASS);
+			try {
+				super.visitInnerClass(name, outerName, innerName, access);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+			long sample = metrics.enter(ChildMetrics.CLASS, DelegatingClassVisitor.FIELD);
+			FieldVisitor sub;
+			try {
+				sub = super.visitField(access, name, descriptor, signature, value);
+			} finally {
+				metrics.exit(sample);
+			}
+			return meter(api, sub, metrics);
+		}
+
+		@Override
+		public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+				String[] exceptions) {
+			long sample = metrics.enter(ChildMetrics.CLASS, DelegatingClassVisitor.METHOD);
+			MethodVisitor sub;
+			try {
+				sub = super.visitMethod(access, name, descriptor, signature, exceptions);
+			} finally {
+				metrics.exit(sample);
+			}
+			return meter(api, sub, metrics);
+		}
+
+		@Override
+		public void visitPermittedSubclass(String permittedSubclass) {
+			long sample = metrics.enter(ChildMetrics.CLASS, DelegatingClassVisitor.PERMITTED_SUBCLASS);
+			try {
+				super.visitPermittedSubclass(permittedSubclass);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public RecordComponentVisitor visitRecordComponent(String name, String descriptor, String signature) {
+			long sample = metrics.enter(ChildMetrics.CLASS, DelegatingClassVisitor.RECORD_COMPONENT);
+			RecordComponentVisitor sub;
+			try {
+				sub = super.visitRecordComponent(name, descriptor, signature);
+			} finally {
+				metrics.exit(sample);
+			}
+			return meter(api, sub, metrics);
+		}
+
+		@Override
+		public void visitEnd() {
+			long sample = metrics.enter(ChildMetrics.CLASS, DelegatingClassVisitor.END);
+			try {
+				super.visitEnd();
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+	}
+
+	static final class MeteredModuleVisitor extends ModuleVisitor implements Metered {
+
+		private final ChildMetrics metrics;
+		private final long interestMask;
+
+		MeteredModuleVisitor(int api, ModuleVisitor mv, ChildMetrics metrics) {
+			super(api, mv);
+			this.metrics = metrics;
+			interestMask = DelegatingModuleVisitor.INTERESTS.maskOf(mv, mv.getDelegate());
+		}
+
+		@Override
+		public long getInterestMask() {
+			return interestMask;
+		}
+
+		@Override
+		public void visitMainClass(String mainClass) {
+			long sample = metrics.enter(ChildMetrics.MODULE, DelegatingModuleVisitor.MAIN_CLASS);
+			try {
+				super.visitMainClass(mainClass);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitPackage(String packaze) {
+			long sample = metrics.enter(ChildMetrics.MODULE, DelegatingModuleVisitor.PACKAGE);
+			try {
+				super.visitPackage(packaze);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitRequire(String module, int access, String version) {
+			long sample = metrics.enter(ChildMetrics.MODULE, DelegatingModuleVisitor.REQUIRE);
+			try {
+				super.visitRequire(module, access, version);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitExport(String packaze, int access, String... modules) {
+			long sample = metrics.enter(ChildMetrics.MODULE, DelegatingModuleVisitor.EXPORT);
+			try {
+				super.visitExport(packaze, access, modules);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitOpen(String packaze, int access, String... modules) {
+			long sample = metrics.enter(ChildMetrics.MODULE, DelegatingModuleVisitor.OPEN);
+			try {
+				super.visitOpen(packaze, access, modules);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitUse(String service) {
+			long sample = metrics.enter(ChildMetrics.MODULE, DelegatingModuleVisitor.USE);
+			try {
+				super.visitUse(service);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitProvide(String service, String... providers) {
+			long sample = metrics.enter(ChildMetrics.MODULE, DelegatingModuleVisitor.PROVIDE);
+			try {
+				super.visitProvide(service, providers);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitEnd() {
+			long sample = metrics.enter(ChildMetrics.MODULE, DelegatingModuleVisitor.END);
+			try {
+				super.visitEnd();
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+	}
+
+	static final class MeteredAnnotationVisitor extends AnnotationVisitor implements Metered {
+
+		private final ChildMetrics metrics;
+		private final long interestMask;
+
+		MeteredAnnotationVisitor(int api, AnnotationVisitor av, ChildMetrics metrics) {
+			super(api, av);
+			this.metrics = metrics;
+			interestMask = DelegatingAnnotationVisitor.INTERESTS.maskOf(av, av.getDelegate());
+		}
+
+		@Override
+		public long getInterestMask() {
+			return interestMask;
+		}
+
+		@Override
+		public void visit(String name, Object value) {
+			long sample = metrics.enter(ChildMetrics.ANNOTATION, DelegatingAnnotationVisitor.VISIT);
+			try {
+				super.visit(name, value);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitEnum(String name, String descriptor, String value) {
+			long sample = metrics.enter(ChildMetrics.ANNOTATION, DelegatingAnnotationVisitor.ENUM);
+			try {
+				super.visitEnum(name, descriptor, value);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotation(String name, String descriptor) {
+			long sample = metrics.enter(ChildMetrics.ANNOTATION, DelegatingAnnotationVisitor.ANNOTATION);
+			AnnotationVisitor sub;
+			try {
+				sub = super.visitAnnotation(name, descriptor);
+			} finally {
+				metrics.exit(sample);
+			}
+			return meter(api, sub, metrics);
+		}
+
+		@Override
+		public AnnotationVisitor visitArray(String name) {
+			long sample = metrics.enter(ChildMetrics.ANNOTATION, DelegatingAnnotationVisitor.ARRAY);
+			AnnotationVisitor sub;
+			try {
+				sub = super.visitArray(name);
+			} finally {
+				metrics.exit(sample);
+			}
+			return meter(api, sub, metrics);
+		}
+
+		@Override
+		public void visitEnd() {
+			long sample = metrics.enter(ChildMetrics.ANNOTATION, DelegatingAnnotationVisitor.END);
+			try {
+				super.visitEnd();
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+	}
+
+	static final class MeteredFieldVisitor extends FieldVisitor implements Metered {
+
+		private final ChildMetrics metrics;
+		private final long interestMask;
+
+		MeteredFieldVisitor(int api, FieldVisitor fv, ChildMetrics metrics) {
+			super(api, fv);
+			this.metrics = metrics;
+			interestMask = DelegatingFieldVisitor.INTERESTS.maskOf(fv, fv.getDelegate());
+		}
+
+		@Override
+		public long getInterestMask() {
+			return interestMask;
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+			long sample = metrics.enter(ChildMetrics.FIELD, DelegatingFieldVisitor.ANNOTATION);
+			AnnotationVisitor sub;
+			try {
+				sub = super.visitAnnotation(descriptor, visible);
+			} finally {
+				metrics.exit(sample);
+			}
+			return meter(api, sub, metrics);
+		}
+
+		@Override
+		public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor,
+				boolean visible) {
+			long sample = metrics.enter(ChildMetrics.FIELD, DelegatingFieldVisitor.TYPE_ANNOTATION);
+			AnnotationVisitor sub;
+			try {
+				sub = super.visitTypeAnnotation(typeRef, typePath, descriptor, visible);
+			} finally {
+				metrics.exit(sample);
+			}
+			return meter(api, sub, metrics);
+		}
+
+		@Override
+		public void visitAttribute(Attribute attribute) {
+			long sample = metrics.enter(ChildMetrics.FIELD, DelegatingFieldVisitor.ATTRIBUTE);
+			try {
+				super.visitAttribute(attribute);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitEnd() {
+			long sample = metrics.enter(ChildMetrics.FIELD, DelegatingFieldVisitor.END);
+			try {
+				super.visitEnd();
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+	}
+
+	static final class MeteredMethodVisitor extends MethodVisitor implements Metered, BatchedInstructions,
+			SharedAnalysis, SymbolicInstructions {
+
+		private final ChildMetrics metrics;
+		private final long interestMask;
+
+		MeteredMethodVisitor(int api, MethodVisitor mv, ChildMetrics metrics) {
+			super(api, mv);
+			this.metrics = metrics;
+			interestMask = DelegatingMethodVisitor.INTERESTS.maskOf(mv, mv.getDelegate());
+		}
+
+		@Override
+		public long getInterestMask() {
+			return interestMask;
+		}
+
+		@Override
+		public void visitParameter(String name, int access) {
+			long sample = metrics.enter(ChildMetrics.METHOD, DelegatingMethodVisitor.PARAMETER);
+			try {
+				super.visitParameter(name, access);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotationDefault() {
+			long sample = metrics.enter(ChildMetrics.METHOD, DelegatingMethodVisitor.ANNOTATION_DEFAULT);
+			AnnotationVisitor sub;
+			try {
+				sub = super.visitAnnotationDefault();
+			} finally {
+				metrics.exit(sample);
+			}
+			return meter(api, sub, metrics);
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+			long sample = metrics.enter(ChildMetrics.METHOD, DelegatingMethodVisitor.ANNOTATION);
+			AnnotationVisitor sub;
+			try {
+				sub = super.visitAnnotation(descriptor, visible);
+			} finally {
+				metrics.exit(sample);
+			}
+			return meter(api, sub, metrics);
+		}
+
+		@Override
+		public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor,
+				boolean visible) {
+			long sample = metrics.enter(ChildMetrics.METHOD, DelegatingMethodVisitor.TYPE_ANNOTATION);
+			AnnotationVisitor sub;
+			try {
+				sub = super.visitTypeAnnotation(typeRef, typePath, descriptor, visible);
+			} finally {
+				metrics.exit(sample);
+			}
+			return meter(api, sub, metrics);
+		}
+
+		@Override
+		public void visitAnnotableParameterCount(int parameterCount, boolean visible) {
+			long sample = metrics.enter(ChildMetrics.METHOD, DelegatingMethodVisitor.ANNOTABLE_PARAMETER_COUNT);
+			try {
+				super.visitAnnotableParameterCount(parameterCount, visible);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public AnnotationVisitor visitParameterAnnotation(int parameter, String descriptor, boolean visible) {
+			long sample = metrics.enter(ChildMetrics.METHOD, DelegatingMethodVisitor.PARAMETER_ANNOTATION);
+			AnnotationVisitor sub;
+			try {
+				sub = super.visitParameterAnnotation(parameter, descriptor, visible);
+			} finally {
+				metrics.exit(sample);
+			}
+			return meter(api, sub, metrics);
+		}
+
+		@Override
+		public void visitAttribute(Attribute attribute) {
+			long sample = metrics.enter(ChildMetrics.METHOD, DelegatingMethodVisitor.ATTRIBUTE);
+			try {
+				super.visitAttribute(attribute);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitCode() {
+			long sample = metrics.enter(ChildMetrics.METHOD, DelegatingMethodVisitor.CODE);
+			try {
+				super.visitCode();
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitFrame(int type, int numLocal, Object[] local, int numStack, Object[] stack) {
+			long sample = metrics.enter(ChildMetrics.METHOD, DelegatingMethodVisitor.FRAME);
+			try {
+				super.visitFrame(type, numLocal, local, numStack, stack);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitInsn(int opcode) {
+			long sample = metrics.enter(ChildMetrics.METHOD, DelegatingMethodVisitor.INSN);
+			try {
+				super.visitInsn(opcode);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitIntInsn(int opcode, int operand) {
+			long sample = metrics.enter(ChildMetrics.METHOD, DelegatingMethodVisitor.INT_INSN);
+			try {
+				super.visitIntInsn(opcode, operand);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitVarInsn(int opcode, int var) {
+			long sample = metrics.enter(ChildMetrics.METHOD, DelegatingMethodVisitor.VAR_INSN);
+			try {
+				super.visitVarInsn(opcode, var);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitTypeInsn(int opcode, String type) {
+			long sample = metrics.enter(ChildMetrics.METHOD, DelegatingMethodVisitor.TYPE_INSN);
+			try {
+				super.visitTypeInsn(opcode, type);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+			long sample = metrics.enter(ChildMetrics.METHOD, DelegatingMethodVisitor.FIELD_INSN);
+			try {
+				super.visitFieldInsn(opcode, owner, name, descriptor);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+			long sample = metrics.enter(ChildMetrics.METHOD, DelegatingMethodVisitor.METHOD_INSN);
+			try {
+				super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle,
+				Object... bootstrapMethodArguments) {
+			long sample = metrics.enter(ChildMetrics.METHOD, DelegatingMethodVisitor.INVOKE_DYNAMIC_INSN);
+			try {
+				super.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitJumpInsn(int opcode, Label label) {
+			long sample = metrics.enter(ChildMetrics.METHOD, DelegatingMethodVisitor.JUMP_INSN);
+			try {
+				super.visitJumpInsn(opcode, label);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitLabel(Label label) {
+			long sample = metrics.enter(ChildMetrics.METHOD, DelegatingMethodVisitor.LABEL);
+			try {
+				super.visitLabel(label);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitLdcInsn(Object value) {
+			long sample = metrics.enter(ChildMetrics.METHOD, DelegatingMethodVisitor.LDC_INSN);
+			try {
+				super.visitLdcInsn(value);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitIincInsn(int var, int increment) {
+			long sample = metrics.enter(ChildMetrics.METHOD, DelegatingMethodVisitor.IINC_INSN);
+			try {
+				super.visitIincInsn(var, increment);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+			long sample = metrics.enter(ChildMetrics.METHOD, DelegatingMethodVisitor.TABLE_SWITCH_INSN);
+			try {
+				super.visitTableSwitchInsn(min, max, dflt, labels);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+			long sample = metrics.enter(ChildMetrics.METHOD, DelegatingMethodVisitor.LOOKUP_SWITCH_INSN);
+			try {
+				super.visitLookupSwitchInsn(dflt, keys, labels);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+			long sample = metrics.enter(ChildMetrics.METHOD, DelegatingMethodVisitor.MULTI_ANEW_ARRAY_INSN);
+			try {
+				super.visitMultiANewArrayInsn(descriptor, numDimensions);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public AnnotationVisitor visitInsnAnnotation(int typeRef, TypePath typePath, String descriptor,
+				boolean visible) {
+			long sample = metrics.enter(ChildMetrics.METHOD, DelegatingMethodVisitor.INSN_ANNOTATION);
+			AnnotationVisitor sub;
+			try {
+				sub = super.visitInsnAnnotation(typeRef, typePath, descriptor, visible);
+			} finally {
+				metrics.exit(sample);
+			}
+			return meter(api, sub, metrics);
+		}
+
+		@Override
+		public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+			long sample = metrics.enter(ChildMetrics.METHOD, DelegatingMethodVisitor.TRY_CATCH_BLOCK);
+			try {
+				super.visitTryCatchBlock(start, end, handler, type);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public AnnotationVisitor visitTryCatchAnnotation(int typeRef, TypePath typePath, String descriptor,
+				boolean visible) {
+			long sample = metrics.enter(ChildMetrics.METHOD, DelegatingMethodVisitor.TRY_CATCH_ANNOTATION);
+			AnnotationVisitor sub;
+			try {
+				sub = super.visitTryCatchAnnotation(typeRef, typePath, descriptor, visible);
+			} finally {
+				metrics.exit(sample);
+			}
+			return meter(api, sub, metrics);
+		}
+
+		@Override
+		public void visitLocalVariable(String name, String descriptor, String signature, Label start, Label end,
+				int index) {
+			long sample = metrics.enter(ChildMetrics.METHOD, DelegatingMethodVisitor.LOCAL_VARIABLE);
+			try {
+				super.visitLocalVariable(name, descriptor, signature, start, end, index);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public AnnotationVisitor visitLocalVariableAnnotation(int typeRef, TypePath typePath, Label[] start,
+				Label[] end, int[] index, String descriptor, boolean visible) {
+			long sample = metrics.enter(ChildMetrics.METHOD, DelegatingMethodVisitor.LOCAL_VARIABLE_ANNOTATION);
+			AnnotationVisitor sub;
+			try {
+				sub = super.visitLocalVariableAnnotation(typeRef, typePath, start, end, index, descriptor, visible);
+			} finally {
+				metrics.exit(sample);
+			}
+			return meter(api, sub, metrics);
+		}
+
+		@Override
+		public void visitLineNumber(int line, Label start) {
+			long sample = metrics.enter(ChildMetrics.METHOD, DelegatingMethodVisitor.LINE_NUMBER);
+			try {
+				super.visitLineNumber(line, start);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitMaxs(int maxStack, int maxLocals) {
+			long sample = metrics.enter(ChildMetrics.METHOD, DelegatingMethodVisitor.MAXS);
+			try {
+				super.visitMaxs(maxStack, maxLocals);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitEnd() {
+			long sample = metrics.enter(ChildMetrics.METHOD, DelegatingMethodVisitor.END);
+			try {
+				super.visitEnd();
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitInstructions(InstructionBlock block) {
+			long sample = metrics.enter(ChildMetrics.MARKER, DelegatingMethodVisitor.INSTRUCTIONS);
+			try {
+				((BatchedInstructions) mv).visitInstructions(block);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitAnalysis(MethodAnalysis analysis) {
+			long sample = metrics.enter(ChildMetrics.MARKER, DelegatingMethodVisitor.ANALYSIS);
+			try {
+				((SharedAnalysis) mv).visitAnalysis(analysis);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitTypeInsnIds(int opcode, int type) {
+			long sample = metrics.enter(ChildMetrics.MARKER, DelegatingMethodVisitor.TYPE_INSN_IDS);
+			try {
+				((SymbolicInstructions) mv).visitTypeInsnIds(opcode, type);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitFieldInsnIds(int opcode, int owner, int name, int descriptor) {
+			long sample = metrics.enter(ChildMetrics.MARKER, DelegatingMethodVisitor.FIELD_INSN_IDS);
+			try {
+				((SymbolicInstructions) mv).visitFieldInsnIds(opcode, owner, name, descriptor);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitMethodInsnIds(int opcode, int owner, int name, int descriptor, boolean isInterface) {
+			long sample = metrics.enter(ChildMetrics.MARKER, DelegatingMethodVisitor.METHOD_INSN_IDS);
+			try {
+				((SymbolicInstructions) mv).visitMethodInsnIds(opcode, owner, name, descriptor, isInterface);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitMultiANewArrayInsnIds(int descriptor, int numDimensions) {
+			long sample = metrics.enter(ChildMetrics.MARKER, DelegatingMethodVisitor.MULTI_ANEW_ARRAY_INSN_IDS);
+			try {
+				((SymbolicInstructions) mv).visitMultiANewArrayInsnIds(descriptor, numDimensions);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+	}
+
+	static final class MeteredRecordComponentVisitor extends RecordComponentVisitor implements Metered {
+
+		private final ChildMetrics metrics;
+		private final long interestMask;
+
+		MeteredRecordComponentVisitor(int api, RecordComponentVisitor rcv, ChildMetrics metrics) {
+			super(api, rcv);
+			this.metrics = metrics;
+			interestMask = DelegatingRecordComponentVisitor.INTERESTS.maskOf(rcv, rcv.getDelegate());
+		}
+
+		@Override
+		public long getInterestMask() {
+			return interestMask;
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+			long sample = metrics.enter(ChildMetrics.RECORD_COMPONENT, DelegatingRecordComponentVisitor.ANNOTATION);
+			AnnotationVisitor sub;
+			try {
+				sub = super.visitAnnotation(descriptor, visible);
+			} finally {
+				metrics.exit(sample);
+			}
+			return meter(api, sub, metrics);
+		}
+
+		@Override
+		public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor,
+				boolean visible) {
+			long sample = metrics.enter(ChildMetrics.RECORD_COMPONENT,
+					DelegatingRecordComponentVisitor.TYPE_ANNOTATION);
+			AnnotationVisitor sub;
+			try {
+				sub = super.visitTypeAnnotation(typeRef, typePath, descriptor, visible);
+			} finally {
+				metrics.exit(sample);
+			}
+			return meter(api, sub, metrics);
+		}
+
+		@Override
+		public void visitAttribute(Attribute attribute) {
+			long sample = metrics.enter(ChildMetrics.RECORD_COMPONENT, DelegatingRecordComponentVisitor.ATTRIBUTE);
+			try {
+				super.visitAttribute(attribute);
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+
+		@Override
+		public void visitEnd() {
+			long sample = metrics.enter(ChildMetrics.RECORD_COMPONENT, DelegatingRecordComponentVisitor.END);
+			try {
+				super.visitEnd();
+			} finally {
+				metrics.exit(sample);
+			}
+		}
+	}
+}
@@ -0,0 +1,295 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.util.Arrays;
+
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.BasicInterpreter;
+import org.objectweb.asm.tree.analysis.BasicValue;
+import org.objectweb.asm.tree.analysis.Frame;
+import org.objectweb.asm.tree.analysis.Interpreter;
+import org.objectweb.asm.tree.analysis.SourceInterpreter;
+import org.objectweb.asm.tree.analysis.SourceValue;
+import org.objectweb.asm.tree.analysis.Value;
+
+/**
+ * the dataflow analysis of one method, shared by all the {@link SharedAnalysis}
+ * visitors of a {@link DelegatingMethodVisitor}. Nothing is computed until a
+ * visitor asks for it, and then each result is computed once and the same,
+ * read only, result is handed to every visitor that asks. The control flow
+ * graph comes out of whichever analysis runs first.
+ * <p>
+ * Instructions are identified by their index in the instructions of
+ * {@link #getMethod()}, which counts labels, line numbers and frames too, as
+ * an Analyzer does.
+ * <p>
+ * This needs the asm-analysis module, which is an optional dependency, and
+ * which isn't loaded unless some visitor implements {@link SharedAnalysis}.
+ */
+public final class MethodAnalysis {
+
+	private final String owner;
+	private final SharedMethodNode method;
+	private Frames<BasicValue> basicFrames;
+	private Frames<SourceValue> sourceFrames;
+	private ControlFlow controlFlow;
+	private IllegalStateException failure;
+
+	MethodAnalysis(int api, String owner, int access, String name, String descriptor, String signature,
+			String[] exceptions) {
+		this.owner = owner;
+		method = new SharedMethodNode(api, access, name, descriptor, signature, exceptions);
+	}
+
+	/**
+	 * @return the visitor the method's code is recorded with
+	 */
+	MethodVisitor recorder() {
+		return method;
+	}
+
+	/**
+	 * @return the internal name of the class the method belongs to
+	 */
+	public String getOwner() {
+		return owner;
+	}
+
+	/**
+	 * @return the code of the method, without its annotations, which is shared
+	 *         and must not be modified
+	 */
+	public MethodNode getMethod() {
+		return method;
+	}
+
+	/**
+	 * @return the frames computed with a BasicInterpreter
+	 * @throws IllegalStateException
+	 *             if the method can't be analyzed
+	 */
+	public synchronized Frames<BasicValue> getBasicFrames() {
+		if (basicFrames == null) {
+			basicFrames = analyze(new BasicInterpreter());
+		}
+		return basicFrames;
+	}
+
+	/**
+	 * @return the frames computed with a SourceInterpreter, which tell which
+	 *         instructions produced each value
+	 * @throws IllegalStateException
+	 *             if the method can't be analyzed
+	 */
+	public synchronized Frames<SourceValue> getSourceFrames() {
+		if (sourceFrames == null) {
+			sourceFrames = analyze(new SourceInterpreter());
+		}
+		return sourceFrames;
+	}
+
+	/**
+	 * @return the control flow graph, running the basic analysis if no analysis
+	 *         has been run yet
+	 * @throws IllegalStateException
+	 *             if the method can't be analyzed
+	 */
+	public synchronized ControlFlow getControlFlow() {
+		if (controlFlow == null) {
+			getBasicFrames();
+		}
+		return controlFlow;
+	}
+
+	private <V extends Value> Frames<V> analyze(Interpreter<V> interpreter) {
+		if (failure != null) {
+			throw failure;
+		}
+
+		EdgeAnalyzer<V> analyzer = new EdgeAnalyzer<>(interpreter, controlFlow == null);
+		try {
+			Frames<V> frames = new Frames<>(analyzer.analyze(owner, method));
+			if (controlFlow == null) {
+				int size = method.instructions.size();
+				controlFlow = new ControlFlow(analyzer.edges.toGraph(size), analyzer.handlerEdges.toGraph(size));
+			}
+			return frames;
+		} catch (AnalyzerException e) {
+			failure = new IllegalStateException("Cannot analyze " + owner + '.' + method.name + method.desc, e);
+			throw failure;
+		}
+	}
+
+	/**
+	 * the frames of an analysis, one per instruction, or none for an unreachable
+	 * instruction
+	 */
+	public static final class Frames<V extends Value> {
+		private final Frame<V>[] frames;
+
+		Frames(Frame<V>[] frames) {
+			this.frames = frames;
+		}
+
+		public int size() {
+			return frames.length;
+		}
+
+		public boolean isReachable(int insn) {
+			return frames[insn] != null;
+		}
+
+		/**
+		 * @return the number of local variable slots, including unused ones
+		 */
+		public int getLocals(int insn) {
+			return frame(insn).getLocals();
+		}
+
+		public V getLocal(int insn, int local) {
+			return frame(insn).getLocal(local);
+		}
+
+		public int getStackSize(int insn) {
+			return frame(insn).getStackSize();
+		}
+
+		/**
+		 * @param slot
+		 *            the stack slot, from 0 at the bottom of the stack
+		 */
+		public V getStack(int insn, int slot) {
+			return frame(insn).getStack(slot);
+		}
+
+		private Frame<V> frame(int insn) {
+			Frame<V> frame = frames[insn];
+			if (frame == null) {
+				throw new IllegalArgumentException("Instruction " + insn + " is unreachable");
+			}
+			return frame;
+		}
+	}
+
+	/**
+	 * the control flow graph of a method, with the successors of each
+	 * instruction in one array, indexed by an offsets array, and the exception
+	 * handlers that cover it in another
+	 */
+	public static final class ControlFlow {
+		private final int[][] successors;
+		private final int[][] handlers;
+
+		ControlFlow(int[][] successors, int[][] handlers) {
+			this.successors = successors;
+			this.handlers = handlers;
+		}
+
+		public int size() {
+			return successors[0].length - 1;
+		}
+
+		/**
+		 * @return the instructions that may run after the given one, not
+		 *         counting exception handlers
+		 */
+		public int[] getSuccessors(int insn) {
+			return slice(successors, insn);
+		}
+
+		/**
+		 * @return the first instructions of the exception handlers that cover the
+		 *         given instruction, and which it may be followed by
+		 */
+		public int[] getHandlers(int insn) {
+			return slice(handlers, insn);
+		}
+
+		private static int[] slice(int[][] graph, int insn) {
+			return Arrays.copyOfRange(graph[1], graph[0][insn], graph[0][insn + 1]);
+		}
+	}
+
+	private static final class EdgeAnalyzer<V extends Value> extends Analyzer<V> {
+		final EdgeList edges = new EdgeList();
+		final EdgeList handlerEdges = new EdgeList();
+		private final boolean collect;
+
+		EdgeAnalyzer(Interpreter<V> interpreter, boolean collect) {
+			super(interpreter);
+			this.collect = collect;
+		}
+
+		@Override
+		protected void newControlFlowEdge(int insnIndex, int successorIndex) {
+			if (collect) {
+				edges.add(insnIndex, successorIndex);
+			}
+		}
+
+		@Override
+		protected boolean newControlFlowExceptionEdge(int insnIndex, int successorIndex) {
+			if (collect) {
+				handlerEdges.add(insnIndex, successorIndex);
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * the edges an Analyzer reports, which repeats them as it iterates to a fix
+	 * point, packed as from and to in a long so they sort and dedupe cheaply
+	 */
+	private static final class EdgeList {
+		private long[] edges = new long[16];
+		private int numEdges;
+
+		void add(int from, int to) {
+			if (numEdges == edges.length) {
+				edges = Arrays.copyOf(edges, numEdges * 2);
+			}
+			edges[numEdges++] = ((long) from << 32) | to;
+		}
+
+		/**
+		 * @return the offsets into the targets per instruction, and the targets
+		 */
+		int[][] toGraph(int size) {
+			Arrays.sort(edges, 0, numEdges);
+			int[] offsets = new int[size + 1];
+			int[] targets = new int[numEdges];
+			int numTargets = 0;
+			for (int i = 0; i < numEdges; i++) {
+				if ((i > 0) && (edges[i] == edges[i - 1])) {
+					continue;
+				}
+				offsets[(int) (edges[i] >>> 32) + 1]++;
+				targets[numTargets++] = (int) edges[i];
+			}
+			for (int i = 0; i < size; i++) {
+				offsets[i + 1] += offsets[i];
+			}
+			return new int[][] { offsets, Arrays.copyOf(targets, numTargets) };
+		}
+	}
+}
@@ -0,0 +1,494 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.asm.Opcodes;
+
+/**
+ * the modules found by a {@link ModuleGraphBuilder}, with what they require,
+ * export, open, use and provide. Module, package and service names are stored
+ * once in a string table and the graph itself is int arrays over it, with
+ * indexes from packages to their exporters and services to their providers,
+ * so resolution and lookups don't touch strings. Package and service names are
+ * internal names, like java/lang.
+ * <p>
+ * When two jars hold a module of the same name, the first one added wins, and
+ * the module is listed by {@link #getDuplicates()}.
+ */
+public final class ModuleGraph {
+
+	private static final int TRANSITIVE = 1;
+	private static final int STATIC = 2;
+	private static final int[] NONE = new int[0];
+
+	private final List<String> strings = new ArrayList<>();
+	private final Map<String, Integer> ids = new HashMap<>();
+	private final List<String> duplicates = new ArrayList<>();
+
+	private final int numModules;
+	private final int[] moduleNames;
+	private final String[] versions;
+	private final Path[] locations;
+	private int[] moduleOf;
+
+	// the string id of each required module, shifted left by two, over its flags
+	private final int[][] requires;
+	private final int[][] exports;
+	private final int[][][] exportTargets;
+	private final int[][] opens;
+	private final int[][][] openTargets;
+	private final int[][] uses;
+	private final int[][] provides;
+	private final int[][][] providers;
+
+	private int[][] exporters;
+	private int[][] serviceProviders;
+
+	ModuleGraph(List<Module> found) {
+		List<Module> modules = new ArrayList<>(found.size());
+		Map<String, Module> byName = new HashMap<>();
+		for (Module module : found) {
+			if (byName.putIfAbsent(module.name, module) == null) {
+				modules.add(module);
+			} else {
+				duplicates.add(module.name);
+			}
+		}
+
+		numModules = modules.size();
+		moduleNames = new int[numModules];
+		versions = new String[numModules];
+		locations = new Path[numModules];
+		requires = new int[numModules][];
+		exports = new int[numModules][];
+		exportTargets = new int[numModules][][];
+		opens = new int[numModules][];
+		openTargets = new int[numModules][][];
+		uses = new int[numModules][];
+		provides = new int[numModules][];
+		providers = new int[numModules][][];
+
+		for (int m = 0; m < numModules; m++) {
+			moduleNames[m] = id(modules.get(m).name);
+		}
+		moduleOf = new int[strings.size()];
+		Arrays.fill(moduleOf, -1);
+		for (int m = 0; m < numModules; m++) {
+			moduleOf[moduleNames[m]] = m;
+		}
+
+		for (int m = 0; m < numModules; m++) {
+			Module module = modules.get(m);
+			versions[m] = module.version;
+			locations[m] = module.location;
+
+			requires[m] = new int[module.requires.size()];
+			for (int r = 0; r < requires[m].length; r++) {
+				int access = module.requireAccess.get(r).intValue();
+				int flags = (((access & Opcodes.ACC_TRANSITIVE) != 0) ? TRANSITIVE : 0)
+						| (((access & Opcodes.ACC_STATIC_PHASE) != 0) ? STATIC : 0);
+				requires[m][r] = (id(module.requires.get(r)) << 2) | flags;
+			}
+			exports[m] = ids(module.exports);
+			exportTargets[m] = targets(module.exportTargets);
+			opens[m] = ids(module.opens);
+			openTargets[m] = targets(module.openTargets);
+			uses[m] = ids(module.uses);
+			provides[m] = ids(module.provides);
+			providers[m] = targets(module.providers);
+		}
+
+		exporters = invert(exports);
+		serviceProviders = invert(provides);
+	}
+
+	/**
+	 * @return the number of modules in the graph
+	 */
+	public int size() {
+		return numModules;
+	}
+
+	public List<String> getModuleNames() {
+		List<String> names = new ArrayList<>(numModules);
+		for (int m = 0; m < numModules; m++) {
+			names.add(strings.get(moduleNames[m]));
+		}
+		return names;
+	}
+
+	public boolean contains(String module) {
+		return moduleOf(module) >= 0;
+	}
+
+	/**
+	 * @return the names of modules that were found more than once
+	 */
+	public List<String> getDuplicates() {
+		return Collections.unmodifiableList(duplicates);
+	}
+
+	/**
+	 * @return the jar or directory the module was read from, or null if it isn't
+	 *         in the graph
+	 */
+	public Path getLocation(String module) {
+		int m = moduleOf(module);
+		return (m < 0) ? null : locations[m];
+	}
+
+	/**
+	 * @return the module's version, or null if it has none or isn't in the
+	 *         graph
+	 */
+	public String getVersion(String module) {
+		int m = moduleOf(module);
+		return (m < 0) ? null : versions[m];
+	}
+
+	/**
+	 * @return the modules the module requires, including static ones, whether or
+	 *         not they are in the graph
+	 */
+	public List<String> getRequires(String module) {
+		int m = moduleOf(module);
+		if (m < 0) {
+			return Collections.emptyList();
+		}
+
+		List<String> required = new ArrayList<>(requires[m].length);
+		for (int r : requires[m]) {
+			required.add(strings.get(r >>> 2));
+		}
+		return required;
+	}
+
+	/**
+	 * @return the services the module uses
+	 */
+	public List<String> getUses(String module) {
+		int m = moduleOf(module);
+		return (m < 0) ? Collections.<String> emptyList() : names(uses[m]);
+	}
+
+	/**
+	 * @return the root modules and every module they need, following requires
+	 *         but not requires static, in breadth first order. Modules that are
+	 *         required but not in the graph are left out, see
+	 *         {@link #getMissing(String...)}.
+	 */
+	public List<String> resolve(String... roots) {
+		List<String> resolved = new ArrayList<>();
+		resolve(roots, resolved, null);
+		return resolved;
+	}
+
+	/**
+	 * @return the modules that resolving the roots needs, but that are not in
+	 *         the graph
+	 */
+	public List<String> getMissing(String... roots) {
+		List<String> missing = new ArrayList<>();
+		resolve(roots, null, missing);
+		return missing;
+	}
+
+	/**
+	 * @return true if the from module reads the to module, because it is the
+	 *         same module, requires it, or requires a module that requires it
+	 *         transitively
+	 */
+	public boolean reads(String from, String to) {
+		int source = moduleOf(from);
+		Integer target = ids.get(to);
+		if ((source < 0) || (target == null)) {
+			return false;
+		}
+		if (source == moduleOf[target.intValue()]) {
+			return true;
+		}
+
+		BitSet seen = new BitSet(strings.size());
+		ArrayDeque<Integer> pending = new ArrayDeque<>();
+		for (int r : requires[source]) {
+			if ((r >>> 2) == target.intValue()) {
+				return true;
+			}
+			pending.add(Integer.valueOf(r >>> 2));
+		}
+
+		// readability is implied through requires transitive
+		while (!pending.isEmpty()) {
+			int name = pending.poll().intValue();
+			int m = moduleOf[name];
+			if ((m < 0) || seen.get(name)) {
+				continue;
+			}
+			seen.set(name);
+			for (int r : requires[m]) {
+				if ((r & TRANSITIVE) != 0) {
+					if ((r >>> 2) == target.intValue()) {
+						return true;
+					}
+					pending.add(Integer.valueOf(r >>> 2));
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the modules that export the package, to everyone or to some
+	 */
+	public List<String> getExporters(String packageName) {
+		Integer p = ids.get(packageName);
+		if ((p == null) || (exporters[p.intValue()] == null)) {
+			return Collections.emptyList();
+		}
+		return moduleNames(exporters[p.intValue()]);
+	}
+
+	/**
+	 * @return true if the module exports the package to everyone, or to the
+	 *         given module
+	 */
+	public boolean isExported(String module, String packageName, String to) {
+		return isGranted(module, packageName, to, exports, exportTargets);
+	}
+
+	/**
+	 * @return true if the module opens the package to everyone, or to the given
+	 *         module
+	 */
+	public boolean isOpened(String module, String packageName, String to) {
+		return isGranted(module, packageName, to, opens, openTargets);
+	}
+
+	/**
+	 * @return the modules that provide implementations of the service
+	 */
+	public List<String> getProviders(String service) {
+		Integer s = ids.get(service);
+		if ((s == null) || (serviceProviders[s.intValue()] == null)) {
+			return Collections.emptyList();
+		}
+		return moduleNames(serviceProviders[s.intValue()]);
+	}
+
+	/**
+	 * @return the implementations of the service the module provides
+	 */
+	public List<String> getProviders(String module, String service) {
+		int m = moduleOf(module);
+		Integer s = ids.get(service);
+		if ((m >= 0) && (s != null)) {
+			for (int i = 0; i < provides[m].length; i++) {
+				if (provides[m][i] == s.intValue()) {
+					return names(providers[m][i]);
+				}
+			}
+		}
+		return Collections.emptyList();
+	}
+
+	private void resolve(String[] roots, List<String> resolved, List<String> missing) {
+		BitSet seen = new BitSet(strings.size());
+		ArrayDeque<Integer> pending = new ArrayDeque<>();
+		for (String root : roots) {
+			Integer id = ids.get(root);
+			if (id == null) {
+				if (missing != null) {
+					missing.add(root);
+				}
+			} else {
+				pending.add(id);
+			}
+		}
+
+		while (!pending.isEmpty()) {
+			int name = pending.poll().intValue();
+			if (seen.get(name)) {
+				continue;
+			}
+			seen.set(name);
+
+			int m = moduleOf[name];
+			if (m < 0) {
+				if (missing != null) {
+					missing.add(strings.get(name));
+				}
+				continue;
+			}
+			if (resolved != null) {
+				resolved.add(strings.get(name));
+			}
+			for (int r : requires[m]) {
+				if ((r & STATIC) == 0) {
+					pending.add(Integer.valueOf(r >>> 2));
+				}
+			}
+		}
+	}
+
+	private boolean isGranted(String module, String packageName, String to, int[][] packages, int[][][] targets) {
+		int m = moduleOf(module);
+		Integer p = ids.get(packageName);
+		if ((m < 0) || (p == null)) {
+			return false;
+		}
+
+		for (int i = 0; i < packages[m].length; i++) {
+			if (packages[m][i] == p.intValue()) {
+				int[] allowed = targets[m][i];
+				if (allowed.length == 0) {
+					return true;
+				}
+				Integer target = ids.get(to);
+				if (target != null) {
+					for (int t : allowed) {
+						if (t == target.intValue()) {
+							return true;
+						}
+					}
+				}
+				return false;
+			}
+		}
+		return false;
+	}
+
+	private int moduleOf(String module) {
+		Integer id = ids.get(module);
+		return ((id == null) || (id.intValue() >= moduleOf.length)) ? -1 : moduleOf[id.intValue()];
+	}
+
+	private int id(String string) {
+		Integer id = ids.get(string);
+		if (id == null) {
+			id = Integer.valueOf(strings.size());
+			strings.add(string);
+			ids.put(string, id);
+		}
+		return id.intValue();
+	}
+
+	private int[] ids(List<String> names) {
+		int[] result = new int[names.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = id(names.get(i));
+		}
+		return result;
+	}
+
+	private int[][] targets(List<String[]> names) {
+		int[][] result = new int[names.size()][];
+		for (int i = 0; i < result.length; i++) {
+			String[] targetNames = names.get(i);
+			if (targetNames == null) {
+				result[i] = NONE;
+			} else {
+				result[i] = new int[targetNames.length];
+				for (int t = 0; t < targetNames.length; t++) {
+					result[i][t] = id(targetNames[t]);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * builds the index from each string id to the modules that list it
+	 */
+	private int[][] invert(int[][] byModule) {
+		// names added after the modules, like packages, aren't modules
+		if (moduleOf.length < strings.size()) {
+			int length = moduleOf.length;
+			moduleOf = Arrays.copyOf(moduleOf, strings.size());
+			Arrays.fill(moduleOf, length, moduleOf.length, -1);
+		}
+
+		int[] counts = new int[strings.size()];
+		for (int[] names : byModule) {
+			for (int name : names) {
+				counts[name]++;
+			}
+		}
+		int[][] index = new int[strings.size()][];
+		for (int m = 0; m < byModule.length; m++) {
+			for (int name : byModule[m]) {
+				if (index[name] == null) {
+					index[name] = new int[counts[name]];
+					counts[name] = 0;
+				}
+				index[name][counts[name]++] = m;
+			}
+		}
+		return index;
+	}
+
+	private List<String> names(int[] stringIds) {
+		List<String> names = new ArrayList<>(stringIds.length);
+		for (int id : stringIds) {
+			names.add(strings.get(id));
+		}
+		return names;
+	}
+
+	private List<String> moduleNames(int[] modules) {
+		List<String> names = new ArrayList<>(modules.length);
+		for (int m : modules) {
+			names.add(strings.get(moduleNames[m]));
+		}
+		return names;
+	}
+
+	/**
+	 * a module descriptor as it was read, before its names are interned
+	 */
+	static final class Module {
+		final String name;
+		final String version;
+		final Path location;
+		final List<String> requires = new ArrayList<>();
+		final List<Integer> requireAccess = new ArrayList<>();
+		final List<String> exports = new ArrayList<>();
+		final List<String[]> exportTargets = new ArrayList<>();
+		final List<String> opens = new ArrayList<>();
+		final List<String[]> openTargets = new ArrayList<>();
+		final List<String> uses = new ArrayList<>();
+		final List<String> provides = new ArrayList<>();
+		final List<String[]> providers = new ArrayList<>();
+
+		Module(String name, String version, Path location) {
+			this.name = name;
+			this.version = version;
+			this.location = location;
+		}
+	}
+}
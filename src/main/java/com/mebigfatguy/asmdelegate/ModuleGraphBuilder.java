@@ -0,0 +1,237 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ModuleVisitor;
+
+/**
+ * builds a {@link ModuleGraph} from the module-info classes of a set of jars
+ * and exploded module directories, in parallel. Only the central directory of
+ * a jar is read to find its module descriptor, no other class is looked at,
+ * and the descriptors are parsed through a {@link DelegatingClassVisitor}.
+ * <p>
+ * A multi release jar's root module-info.class is used if it has one,
+ * otherwise the one of its highest version. Jars without a module descriptor,
+ * automatic modules, are left out of the graph.
+ */
+public class ModuleGraphBuilder {
+
+	private static final String MODULE_INFO = "module-info.class";
+	private static final String VERSIONS = "META-INF/versions/";
+
+	private final int api;
+	private final ForkJoinPool pool;
+	private final List<Path> jars = new ArrayList<>();
+	private final List<Path> directories = new ArrayList<>();
+
+	public ModuleGraphBuilder(int api) {
+		this(api, ForkJoinPool.commonPool());
+	}
+
+	public ModuleGraphBuilder(int api, ForkJoinPool pool) {
+		this.api = api;
+		this.pool = pool;
+	}
+
+	public void addJar(Path jar) {
+		jars.add(jar);
+	}
+
+	/**
+	 * adds an exploded module, a directory with a module-info.class at its
+	 * root. Any file system will do, such as the modules of the jrt file system.
+	 */
+	public void addDirectory(Path directory) {
+		directories.add(directory);
+	}
+
+	public ModuleGraph build() throws IOException {
+		List<Callable<ModuleGraph.Module>> tasks = new ArrayList<>(jars.size() + directories.size());
+		for (Path jar : jars) {
+			tasks.add(() -> readJar(jar));
+		}
+		for (Path directory : directories) {
+			tasks.add(() -> readDirectory(directory));
+		}
+
+		List<ModuleGraph.Module> modules = new ArrayList<>(tasks.size());
+		try {
+			for (Future<ModuleGraph.Module> future : pool.invokeAll(tasks)) {
+				ModuleGraph.Module module = future.get();
+				if (module != null) {
+					modules.add(module);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading module descriptors", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) cause).getCause();
+			}
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException("Failed reading module descriptors", cause);
+		}
+
+		return new ModuleGraph(modules);
+	}
+
+	private ModuleGraph.Module readJar(Path jar) throws IOException {
+		try (MappedJar mappedJar = MappedJar.open(jar)) {
+			if (mappedJar != null) {
+				MappedJar.Entry descriptor = null;
+				int descriptorVersion = -1;
+				for (MappedJar.Entry entry : mappedJar.getEntries()) {
+					int version = versionOf(entry.name);
+					if (version > descriptorVersion) {
+						descriptor = entry;
+						descriptorVersion = version;
+					}
+				}
+				return (descriptor == null) ? null : read(mappedJar.read(descriptor), jar);
+			}
+		}
+
+		// too big to map, or zip64
+		try (ZipFile zip = new ZipFile(jar.toFile())) {
+			ZipEntry descriptor = null;
+			int descriptorVersion = -1;
+			Enumeration<? extends ZipEntry> entries = zip.entries();
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+				int version = versionOf(entry.getName());
+				if (version > descriptorVersion) {
+					descriptor = entry;
+					descriptorVersion = version;
+				}
+			}
+			if (descriptor == null) {
+				return null;
+			}
+			try (InputStream is = zip.getInputStream(descriptor)) {
+				return read(new ClassReader(is), jar);
+			}
+		}
+	}
+
+	private ModuleGraph.Module readDirectory(Path directory) throws IOException {
+		Path descriptor = directory.resolve(MODULE_INFO);
+		if (!Files.isRegularFile(descriptor)) {
+			return null;
+		}
+		return read(new ClassReader(Files.readAllBytes(descriptor)), directory);
+	}
+
+	/**
+	 * @return how much an entry is preferred as the module descriptor, with the
+	 *         root one first, then higher versions, or -1 if it isn't one
+	 */
+	private static int versionOf(String name) {
+		if (!name.endsWith(MODULE_INFO)) {
+			return -1;
+		}
+		if (name.length() == MODULE_INFO.length()) {
+			return Integer.MAX_VALUE;
+		}
+		if (name.startsWith(VERSIONS) && (name.indexOf('/', VERSIONS.length()) == (name.length()
+				- MODULE_INFO.length() - 1))) {
+			try {
+				return Integer.parseInt(name.substring(VERSIONS.length(), name.length() - MODULE_INFO.length() - 1));
+			} catch (NumberFormatException e) {
+				return -1;
+			}
+		}
+		return -1;
+	}
+
+	private ModuleGraph.Module read(ClassReader reader, Path location) {
+		ModuleCollector collector = new ModuleCollector(api, location);
+		new DelegatingClassVisitor(api, Collections.singletonList(collector)).accept(reader);
+		return collector.module;
+	}
+
+	private static class ModuleCollector extends ClassVisitor {
+		private final Path location;
+		ModuleGraph.Module module;
+
+		ModuleCollector(int api, Path location) {
+			super(api);
+			this.location = location;
+		}
+
+		@Override
+		public ModuleVisitor visitModule(String name, int access, String version) {
+			module = new ModuleGraph.Module(name, version, location);
+			return new ModuleVisitor(api) {
+				@Override
+				public void visitRequire(String requiredModule, int requireAccess, String requiredVersion) {
+					module.requires.add(requiredModule);
+					module.requireAccess.add(Integer.valueOf(requireAccess));
+				}
+
+				@Override
+				public void visitExport(String packaze, int exportAccess, String... modules) {
+					module.exports.add(packaze);
+					module.exportTargets.add(modules);
+				}
+
+				@Override
+				public void visitOpen(String packaze, int openAccess, String... modules) {
+					module.opens.add(packaze);
+					module.openTargets.add(modules);
+				}
+
+				@Override
+				public void visitUse(String service) {
+					module.uses.add(service);
+				}
+
+				@Override
+				public void visitProvide(String service, String... providers) {
+					module.provides.add(service);
+					module.providers.add(providers);
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,41 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+/**
+ * implemented by child class visitors of a {@link DelegatingClassVisitor} to
+ * declare what parts of the class file they need, so that
+ * {@link DelegatingClassVisitor#accept(org.objectweb.asm.ClassReader)} can
+ * skip whatever no child needs. Children that don't implement this are assumed
+ * to need code, debug information and frames if they override visitMethod, and
+ * debug information if they override visitSource.
+ */
+public interface ParsingRequirements {
+
+	int CODE = 1;
+	int DEBUG = 2;
+	int FRAMES = 4;
+	int EXPANDED_FRAMES = 8;
+
+	/**
+	 * @return a combination of {@link #CODE}, {@link #DEBUG}, {@link #FRAMES} and
+	 *         {@link #EXPANDED_FRAMES}, or 0
+	 */
+	int getParsingRequirements();
+}
@@ -0,0 +1,244 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * an append only file of the results {@link Cacheable} visitors produced for
+ * classes, keyed by the SHA-256 of the class bytes and the visitor's class and
+ * cache version. Only the index is held in memory, results are read from the
+ * file when they are replayed. Identical classes, say shaded into several
+ * jars, share one entry.
+ * <p>
+ * A cache can be used by several delegators on different threads at once. A
+ * record left half written by a crash is dropped when the cache is next
+ * opened.
+ */
+public final class ResultCache implements Closeable {
+
+	private static final int MAGIC = 0x41444243;
+	private static final int FORMAT = 1;
+	private static final int HEADER_SIZE = 8;
+	private static final int DIGEST_SIZE = 32;
+
+	private static final ThreadLocal<MessageDigest> DIGESTS = ThreadLocal.withInitial(() -> {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	});
+
+	private final FileChannel channel;
+	private final Map<Key, Entry> index = new ConcurrentHashMap<>();
+	private long end;
+
+	private ResultCache(FileChannel channel) {
+		this.channel = channel;
+	}
+
+	/**
+	 * opens the cache in the given file, creating it if it doesn't exist
+	 */
+	public static ResultCache open(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			ResultCache cache = new ResultCache(channel);
+			cache.load();
+			return cache;
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	static byte[] digest(byte[] classFile, int offset, int length) {
+		MessageDigest md = DIGESTS.get();
+		md.update(classFile, offset, length);
+		return md.digest();
+	}
+
+	/**
+	 * @return the number of results in the cache
+	 */
+	public int size() {
+		return index.size();
+	}
+
+	/**
+	 * @return the results stored for the class and visitor version, or null
+	 */
+	byte[] get(byte[] digest, String version) throws IOException {
+		Entry entry = index.get(new Key(digest, version));
+		if (entry == null) {
+			return null;
+		}
+
+		byte[] results = new byte[entry.length];
+		ByteBuffer bb = ByteBuffer.wrap(results);
+		long position = entry.position;
+		while (bb.hasRemaining()) {
+			int read = channel.read(bb, position);
+			if (read < 0) {
+				throw new EOFException("Result cache truncated at " + position);
+			}
+			position += read;
+		}
+		return results;
+	}
+
+	/**
+	 * appends the results for the class and visitor version, unless some are
+	 * already stored
+	 */
+	synchronized void put(byte[] digest, String version, byte[] results) throws IOException {
+		Key key = new Key(digest, version);
+		if (index.containsKey(key)) {
+			return;
+		}
+
+		byte[] versionBytes = version.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer bb = ByteBuffer.allocate(DIGEST_SIZE + 2 + versionBytes.length + 4 + results.length);
+		bb.put(digest).putShort((short) versionBytes.length).put(versionBytes).putInt(results.length).put(results);
+		// flipped through Buffer, as the ByteBuffer override is newer than Java 8
+		((Buffer) bb).flip();
+
+		long position = end;
+		while (bb.hasRemaining()) {
+			position += channel.write(bb, position);
+		}
+		index.put(key, new Entry(position - results.length, results.length));
+		end = position;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			channel.force(false);
+		} finally {
+			channel.close();
+		}
+	}
+
+	private void load() throws IOException {
+		long size = channel.size();
+		if (size == 0) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(FORMAT);
+			((Buffer) header).flip();
+			while (header.hasRemaining()) {
+				channel.write(header, header.position());
+			}
+			end = HEADER_SIZE;
+			return;
+		}
+
+		DataInputStream dis = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(0))));
+		if ((size < HEADER_SIZE) || (dis.readInt() != MAGIC) || (dis.readInt() != FORMAT)) {
+			throw new IOException("Not a result cache, or one of a different format");
+		}
+
+		long position = HEADER_SIZE;
+		try {
+			while (position < size) {
+				byte[] digest = new byte[DIGEST_SIZE];
+				dis.readFully(digest);
+				byte[] versionBytes = new byte[dis.readUnsignedShort()];
+				dis.readFully(versionBytes);
+				int length = dis.readInt();
+				long results = position + DIGEST_SIZE + 2 + versionBytes.length + 4;
+				if ((length < 0) || ((results + length) > size)) {
+					break;
+				}
+				for (int skipped = 0; skipped < length;) {
+					int n = dis.skipBytes(length - skipped);
+					if (n <= 0) {
+						throw new EOFException();
+					}
+					skipped += n;
+				}
+
+				index.put(new Key(digest, new String(versionBytes, StandardCharsets.UTF_8)),
+						new Entry(results, length));
+				position = results + length;
+			}
+		} catch (EOFException e) {
+			// a record was cut short, so drop it
+		}
+
+		if (position < size) {
+			channel.truncate(position);
+		}
+		end = position;
+	}
+
+	private static final class Key {
+		private final byte[] digest;
+		private final String version;
+		private final int hash;
+
+		Key(byte[] digest, String version) {
+			this.digest = digest;
+			this.version = version;
+			hash = (((digest[0] & 0xFF) << 24) | ((digest[1] & 0xFF) << 16) | ((digest[2] & 0xFF) << 8)
+					| (digest[3] & 0xFF)) ^ version.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key that = (Key) o;
+			return (hash == that.hash) && version.equals(that.version) && Arrays.equals(digest, that.digest);
+		}
+	}
+
+	private static final class Entry {
+		final long position;
+		final int length;
+
+		Entry(long position, int length) {
+			this.position = position;
+			this.length = length;
+		}
+	}
+}
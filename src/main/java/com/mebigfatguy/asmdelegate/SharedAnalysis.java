@@ -0,0 +1,39 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+/**
+ * implemented by the method visitors children return, when they want the
+ * dataflow frames or control flow graph of the methods they visit. Rather than
+ * each such visitor running its own Analyzer, a {@link DelegatingMethodVisitor}
+ * records the method once and hands every one of them the same
+ * {@link MethodAnalysis} just before visitMaxs, so only for methods with code.
+ * <p>
+ * The method header comes from the {@link DelegatingClassVisitor}, so a
+ * {@link DelegatingMethodVisitor} built directly doesn't call this.
+ */
+public interface SharedAnalysis {
+
+	/**
+	 * @param analysis
+	 *            the analysis of the method, which computes what is asked of
+	 *            it on first use, and stays valid after the method is visited
+	 */
+	void visitAnalysis(MethodAnalysis analysis);
+}
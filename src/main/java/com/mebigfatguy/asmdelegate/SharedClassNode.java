@@ -0,0 +1,101 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.RecordComponentNode;
+
+/**
+ * the class node a {@link DelegatingClassVisitor} builds for its
+ * {@link TreeConsumer}s, whose methods are {@link SharedMethodNode}s. At
+ * visitEnd its lists, and those of its members, are made unmodifiable, so that
+ * one consumer can't add or remove what the next one sees.
+ */
+final class SharedClassNode extends ClassNode {
+
+	private SharedClassNode(int api) {
+		super(api);
+	}
+
+	/**
+	 * returns a plain ClassVisitor, so the delegator doesn't link against
+	 * asm-tree unless some child consumes trees
+	 */
+	static ClassVisitor create(int api) {
+		return new SharedClassNode(api);
+	}
+
+	@Override
+	public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+			String[] exceptions) {
+		MethodNode method = new SharedMethodNode(api, access, name, descriptor, signature, exceptions);
+		methods.add(method);
+		return method;
+	}
+
+	@Override
+	public void visitEnd() {
+		super.visitEnd();
+		interfaces = frozen(interfaces);
+		visibleAnnotations = frozen(visibleAnnotations);
+		invisibleAnnotations = frozen(invisibleAnnotations);
+		visibleTypeAnnotations = frozen(visibleTypeAnnotations);
+		invisibleTypeAnnotations = frozen(invisibleTypeAnnotations);
+		attrs = frozen(attrs);
+		innerClasses = frozen(innerClasses);
+		nestMembers = frozen(nestMembers);
+		permittedSubclasses = frozen(permittedSubclasses);
+
+		for (FieldNode field : fields) {
+			field.visibleAnnotations = frozen(field.visibleAnnotations);
+			field.invisibleAnnotations = frozen(field.invisibleAnnotations);
+			field.visibleTypeAnnotations = frozen(field.visibleTypeAnnotations);
+			field.invisibleTypeAnnotations = frozen(field.invisibleTypeAnnotations);
+			field.attrs = frozen(field.attrs);
+		}
+		fields = frozen(fields);
+
+		for (MethodNode method : methods) {
+			((SharedMethodNode) method).freeze();
+		}
+		methods = frozen(methods);
+
+		if (recordComponents != null) {
+			for (RecordComponentNode recordComponent : recordComponents) {
+				recordComponent.visibleAnnotations = frozen(recordComponent.visibleAnnotations);
+				recordComponent.invisibleAnnotations = frozen(recordComponent.invisibleAnnotations);
+				recordComponent.visibleTypeAnnotations = frozen(recordComponent.visibleTypeAnnotations);
+				recordComponent.invisibleTypeAnnotations = frozen(recordComponent.invisibleTypeAnnotations);
+				recordComponent.attrs = frozen(recordComponent.attrs);
+			}
+			recordComponents = frozen(recordComponents);
+		}
+	}
+
+	static <T> List<T> frozen(List<T> list) {
+		return (list == null) ? null : Collections.unmodifiableList(list);
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.asm.Label;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.AnnotationNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * a method node that keeps its own label nodes, rather than storing them in
+ * Label.info, which children, or a MethodWriter, may be using for the same
+ * labels in the same pass. Its lists, instructions included, are made
+ * unmodifiable when the class is done.
+ */
+final class SharedMethodNode extends MethodNode {
+
+	private final Map<Label, LabelNode> labels = new IdentityHashMap<>();
+
+	SharedMethodNode(int api, int access, String name, String descriptor, String signature, String[] exceptions) {
+		super(api, access, name, descriptor, signature, exceptions);
+		instructions = new SharedInsnList();
+	}
+
+	@Override
+	protected LabelNode getLabelNode(Label label) {
+		return labels.computeIfAbsent(label, l -> new LabelNode());
+	}
+
+	void freeze() {
+		exceptions = SharedClassNode.frozen(exceptions);
+		parameters = SharedClassNode.frozen(parameters);
+		visibleAnnotations = SharedClassNode.frozen(visibleAnnotations);
+		invisibleAnnotations = SharedClassNode.frozen(invisibleAnnotations);
+		visibleTypeAnnotations = SharedClassNode.frozen(visibleTypeAnnotations);
+		invisibleTypeAnnotations = SharedClassNode.frozen(invisibleTypeAnnotations);
+		attrs = SharedClassNode.frozen(attrs);
+		freeze(visibleParameterAnnotations);
+		freeze(invisibleParameterAnnotations);
+		tryCatchBlocks = SharedClassNode.frozen(tryCatchBlocks);
+		localVariables = SharedClassNode.frozen(localVariables);
+		visibleLocalVariableAnnotations = SharedClassNode.frozen(visibleLocalVariableAnnotations);
+		invisibleLocalVariableAnnotations = SharedClassNode.frozen(invisibleLocalVariableAnnotations);
+		((SharedInsnList) instructions).frozen = true;
+	}
+
+	private static void freeze(List<AnnotationNode>[] parameterAnnotations) {
+		if (parameterAnnotations != null) {
+			for (int i = 0; i < parameterAnnotations.length; i++) {
+				parameterAnnotations[i] = SharedClassNode.frozen(parameterAnnotations[i]);
+			}
+		}
+	}
+
+	/**
+	 * an instruction list that refuses changes once frozen. resetLabels is still
+	 * allowed, as accepting a method node calls it.
+	 */
+	static final class SharedInsnList extends InsnList {
+
+		boolean frozen;
+
+		@Override
+		public void set(AbstractInsnNode oldInsnNode, AbstractInsnNode newInsnNode) {
+			checkNotFrozen();
+			super.set(oldInsnNode, newInsnNode);
+		}
+
+		@Override
+		public void add(AbstractInsnNode insnNode) {
+			checkNotFrozen();
+			super.add(insnNode);
+		}
+
+		@Override
+		public void add(InsnList insnList) {
+			checkNotFrozen();
+			super.add(insnList);
+		}
+
+		@Override
+		public void insert(AbstractInsnNode insnNode) {
+			checkNotFrozen();
+			super.insert(insnNode);
+		}
+
+		@Override
+		public void insert(InsnList insnList) {
+			checkNotFrozen();
+			super.insert(insnList);
+		}
+
+		@Override
+		public void insert(AbstractInsnNode previousInsn, AbstractInsnNode insnNode) {
+			checkNotFrozen();
+			super.insert(previousInsn, insnNode);
+		}
+
+		@Override
+		public void insert(AbstractInsnNode previousInsn, InsnList insnList) {
+			checkNotFrozen();
+			super.insert(previousInsn, insnList);
+		}
+
+		@Override
+		public void insertBefore(AbstractInsnNode nextInsn, AbstractInsnNode insnNode) {
+			checkNotFrozen();
+			super.insertBefore(nextInsn, insnNode);
+		}
+
+		@Override
+		public void insertBefore(AbstractInsnNode nextInsn, InsnList insnList) {
+			checkNotFrozen();
+			super.insertBefore(nextInsn, insnList);
+		}
+
+		@Override
+		public void remove(AbstractInsnNode insnNode) {
+			checkNotFrozen();
+			super.remove(insnNode);
+		}
+
+		@Override
+		public void clear() {
+			checkNotFrozen();
+			super.clear();
+		}
+
+		private void checkNotFrozen() {
+			if (frozen) {
+				throw new UnsupportedOperationException("The shared tree can't be modified");
+			}
+		}
+	}
+}
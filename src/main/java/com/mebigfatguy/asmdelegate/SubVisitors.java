@@ -0,0 +1,71 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.util.Arrays;
+
+/**
+ * scratch space for collecting the sub visitors children return for a member,
+ * along with the index of the root class visitor each one came from.
+ */
+final class SubVisitors {
+
+	private Object[] visitors = new Object[0];
+	private int[] origins = new int[0];
+	private int count;
+
+	SubVisitors clear(int capacity) {
+		if (visitors.length < capacity) {
+			visitors = new Object[capacity];
+			origins = new int[capacity];
+		}
+		count = 0;
+		return this;
+	}
+
+	void add(Object visitor, int origin) {
+		if (origin >= 0) {
+			visitors[count] = visitor;
+			origins[count++] = origin;
+		}
+	}
+
+	int size() {
+		return count;
+	}
+
+	Object get(int index) {
+		return visitors[index];
+	}
+
+	int originOf(int index) {
+		return origins[index];
+	}
+
+	Object takeOnly() {
+		Object visitor = visitors[0];
+		release();
+		return visitor;
+	}
+
+	void release() {
+		Arrays.fill(visitors, 0, count, null);
+		count = 0;
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * a concurrent, append only table of class names, member names and
+ * descriptors, that hands out a dense int id per distinct string. Ids start at
+ * 0 and never change for the life of the table, so children can keep ids in
+ * primitive keyed collections, and each string is held once, by the table, no
+ * matter how many children refer to it.
+ * <p>
+ * One table is meant to be shared by every delegator of a scan, see
+ * {@link DelegatingClassVisitor#setSymbolTable(SymbolTable)} and
+ * {@link ClassScanner#getSymbolTable()}.
+ */
+public final class SymbolTable {
+
+	private static final int CHUNK_SHIFT = 12;
+	private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+	private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+	// written under the lock, and read without it once size says the id is there
+	private volatile String[][] chunks = new String[16][];
+	private volatile int size;
+
+	/**
+	 * @return the id of the symbol, adding it to the table if it is new
+	 */
+	public int id(String symbol) {
+		// computeIfAbsent locks the bin even when the key is there, so look first
+		Integer id = ids.get(symbol);
+		if (id == null) {
+			id = ids.computeIfAbsent(symbol, this::add);
+		}
+		return id.intValue();
+	}
+
+	/**
+	 * @return the id of the symbol, or -1 if it isn't in the table
+	 */
+	public int find(String symbol) {
+		Integer id = ids.get(symbol);
+		return (id == null) ? -1 : id.intValue();
+	}
+
+	/**
+	 * @return the symbol with the given id
+	 * @throws IndexOutOfBoundsException
+	 *             if no symbol has that id
+	 */
+	public String symbol(int id) {
+		if ((id < 0) || (id >= size)) {
+			throw new IndexOutOfBoundsException("No symbol " + id + " in a table of " + size);
+		}
+		return chunks[id >>> CHUNK_SHIFT][id & CHUNK_MASK];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private synchronized Integer add(String symbol) {
+		int id = size;
+		int chunk = id >>> CHUNK_SHIFT;
+		String[][] table = chunks;
+		if (chunk == table.length) {
+			table = Arrays.copyOf(table, table.length * 2);
+		}
+		if (table[chunk] == null) {
+			table[chunk] = new String[CHUNK_MASK + 1];
+		}
+		table[chunk][id & CHUNK_MASK] = symbol;
+		chunks = table;
+		size = id + 1;
+		return Integer.valueOf(id);
+	}
+}
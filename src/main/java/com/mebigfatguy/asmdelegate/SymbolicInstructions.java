@@ -0,0 +1,42 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+/**
+ * implemented by the method visitors children return, to get the class names,
+ * member names and descriptors of instructions as ids from the delegator's
+ * {@link SymbolTable}. The delegator looks each string up once per event, for
+ * all such visitors. The ids come right after the event itself, so a visitor
+ * that wants both overrides both methods, and one that only wants ids just
+ * doesn't override the MethodVisitor method, and isn't sent it.
+ */
+public interface SymbolicInstructions {
+
+	default void visitTypeInsnIds(int opcode, int type) {
+	}
+
+	default void visitFieldInsnIds(int opcode, int owner, int name, int descriptor) {
+	}
+
+	default void visitMethodInsnIds(int opcode, int owner, int name, int descriptor, boolean isInterface) {
+	}
+
+	default void visitMultiANewArrayInsnIds(int descriptor, int numDimensions) {
+	}
+}
@@ -0,0 +1,46 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import org.objectweb.asm.tree.ClassNode;
+
+/**
+ * implemented by children of a {@link DelegatingClassVisitor} that work on the
+ * tree API. Rather than each such child building its own ClassNode, the
+ * delegator builds one per class from the same events it forwards to the
+ * streaming children, and hands it to every consumer at visitEnd, before the
+ * children's own visitEnd.
+ * <p>
+ * A consumer that is also a {@link MemberFilter} only asks for the members it
+ * matches, and the tree only holds the members some consumer asked for, so
+ * the code of other methods isn't materialized. A consumer still gets the
+ * events it overrides, as any other child.
+ * <p>
+ * This needs the asm-tree module, which is an optional dependency.
+ */
+public interface TreeConsumer {
+
+	/**
+	 * @param tree
+	 *            the class, shared with the other consumers. Its lists and
+	 *            instruction lists are unmodifiable, and the nodes in them must
+	 *            not be modified either.
+	 */
+	void visitTree(ClassNode tree);
+}
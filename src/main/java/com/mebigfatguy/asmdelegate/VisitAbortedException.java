@@ -0,0 +1,36 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+/**
+ * thrown out of ClassReader.accept once every child of a
+ * {@link DelegatingClassVisitor} has detached from the class, to stop parsing
+ * the rest of it. It carries no stack trace, and is swallowed by
+ * {@link DelegatingClassVisitor#accept(org.objectweb.asm.ClassReader)}.
+ */
+public final class VisitAbortedException extends RuntimeException {
+
+	private static final long serialVersionUID = -2851366217806417384L;
+
+	static final VisitAbortedException INSTANCE = new VisitAbortedException();
+
+	private VisitAbortedException() {
+		super("All children detached from the class", null, false, false);
+	}
+}
@@ -0,0 +1,58 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import org.objectweb.asm.ClassVisitor;
+
+/**
+ * an exception a child of a {@link DelegatingClassVisitor} threw in
+ * {@link DelegatingClassVisitor#ISOLATED} mode, along with the class that was
+ * being visited at the time.
+ */
+public final class VisitorFailure {
+
+	private final ClassVisitor visitor;
+	private final String className;
+	private final RuntimeException cause;
+
+	VisitorFailure(ClassVisitor visitor, String className, RuntimeException cause) {
+		this.visitor = visitor;
+		this.className = className;
+		this.cause = cause;
+	}
+
+	/**
+	 * @return the child that failed, or whose sub visitor failed
+	 */
+	public ClassVisitor getVisitor() {
+		return visitor;
+	}
+
+	/**
+	 * @return the internal name of the class being visited, or null if the
+	 *         failure happened before visit
+	 */
+	public String getClassName() {
+		return className;
+	}
+
+	public RuntimeException getCause() {
+		return cause;
+	}
+}
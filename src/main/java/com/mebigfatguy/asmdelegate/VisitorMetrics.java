@@ -0,0 +1,94 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * a snapshot of what one child of a {@link DelegatingClassVisitor} in
+ * {@link DelegatingClassVisitor#METRICS} mode has been asked to do, including
+ * the events of the sub visitors it returned.
+ */
+public final class VisitorMetrics {
+
+	private final String visitorClassName;
+	private final long classesVisited;
+	private final long invocations;
+	private final Map<String, Long> eventCounts;
+	private final long estimatedNanos;
+	private final long subVisitorsCreated;
+	private final long subVisitorsDeclined;
+
+	VisitorMetrics(String visitorClassName, long classesVisited, long invocations, Map<String, Long> eventCounts,
+			long estimatedNanos, long subVisitorsCreated, long subVisitorsDeclined) {
+		this.visitorClassName = visitorClassName;
+		this.classesVisited = classesVisited;
+		this.invocations = invocations;
+		this.eventCounts = Collections.unmodifiableMap(eventCounts);
+		this.estimatedNanos = estimatedNanos;
+		this.subVisitorsCreated = subVisitorsCreated;
+		this.subVisitorsDeclined = subVisitorsDeclined;
+	}
+
+	public String getVisitorClassName() {
+		return visitorClassName;
+	}
+
+	public long getClassesVisited() {
+		return classesVisited;
+	}
+
+	/**
+	 * @return the number of events the visitor, and its sub visitors, received
+	 */
+	public long getInvocations() {
+		return invocations;
+	}
+
+	/**
+	 * @return the number of calls per event that was called at least once, keyed
+	 *         like MethodVisitor.visitInsn
+	 */
+	public Map<String, Long> getEventCounts() {
+		return eventCounts;
+	}
+
+	/**
+	 * @return the time spent in the visitor, extrapolated from a sample of its
+	 *         events
+	 */
+	public long getEstimatedNanos() {
+		return estimatedNanos;
+	}
+
+	/**
+	 * @return how often a visitX call returned a sub visitor
+	 */
+	public long getSubVisitorsCreated() {
+		return subVisitorsCreated;
+	}
+
+	/**
+	 * @return how often a visitX call returned null
+	 */
+	public long getSubVisitorsDeclined() {
+		return subVisitorsDeclined;
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+public class AnnotationIndexTest {
+
+	private static final String MARKER = Type.getDescriptor(Marker.class);
+
+	@Test
+	public void testIndex() throws IOException {
+		AnnotationIndex index = new AnnotationIndex();
+		DelegatingClassVisitor dcv = new DelegatingClassVisitor(Opcodes.ASM9,
+				Collections.singletonList(new AnnotationIndexer(Opcodes.ASM9, index)));
+		Assert.assertTrue((dcv.getParsingOptions() & ClassReader.SKIP_CODE) != 0);
+
+		try (InputStream is = AnnotationIndexTest.class
+				.getResourceAsStream("/" + Fixture.class.getName().replace('.', '/') + ".class")) {
+			dcv.accept(new ClassReader(is));
+		}
+		verify(index);
+
+		Path file = Files.createTempFile("annotations", ".idx");
+		try {
+			index.write(file);
+			verify(AnnotationIndex.read(file));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	private static void verify(AnnotationIndex index) {
+		Assert.assertEquals(3, index.getAnnotations(MARKER).size());
+
+		List<IndexedAnnotation> onClass = index.getAnnotations(MARKER, "value", "type");
+		Assert.assertEquals(1, onClass.size());
+		Assert.assertEquals(AnnotationIndex.CLASS, onClass.get(0).getTargetKind());
+		Assert.assertEquals(Type.getInternalName(Fixture.class), onClass.get(0).getClassName());
+		Assert.assertNull(onClass.get(0).getMemberName());
+
+		List<IndexedAnnotation> onField = index.getAnnotations(MARKER, "n", Integer.valueOf(3));
+		Assert.assertEquals(1, onField.size());
+		IndexedAnnotation field = onField.get(0);
+		Assert.assertEquals(AnnotationIndex.FIELD, field.getTargetKind());
+		Assert.assertEquals("field", field.getMemberName());
+		Assert.assertTrue(field.isVisible());
+		Assert.assertEquals(Arrays.asList("value", "n", "tags", "kind", "nested", "type", "longs"),
+				field.getValueNames());
+		Assert.assertEquals(Arrays.asList("a", "b"), field.getValue("tags"));
+		Assert.assertArrayEquals(new String[] { Type.getDescriptor(ElementType.class), "FIELD" },
+				(String[]) field.getValue("kind"));
+		IndexedAnnotation nested = (IndexedAnnotation) field.getValue("nested");
+		Assert.assertEquals(Type.getDescriptor(Inner.class), nested.getDescriptor());
+		Assert.assertEquals(Integer.valueOf(7), nested.getValue("value"));
+		Assert.assertEquals(Type.getType(String.class), field.getValue("type"));
+		Assert.assertEquals(Arrays.asList(Long.valueOf(1), Long.valueOf(-2)), field.getValue("longs"));
+		Assert.assertNull(field.getValue("missing"));
+
+		List<IndexedAnnotation> onParameter = index.getAnnotations(MARKER, "value", "param");
+		Assert.assertEquals(AnnotationIndex.PARAMETER, onParameter.get(0).getTargetKind());
+		Assert.assertEquals(1, onParameter.get(0).getParameter());
+		Assert.assertEquals("method", onParameter.get(0).getMemberName());
+		Assert.assertEquals("(ILjava/lang/String;)V", onParameter.get(0).getMemberDescriptor());
+
+		List<IndexedAnnotation> deprecated = index.getAnnotations(Type.getDescriptor(Deprecated.class));
+		Assert.assertEquals(1, deprecated.size());
+		Assert.assertEquals(AnnotationIndex.METHOD, deprecated.get(0).getTargetKind());
+
+		List<IndexedAnnotation> typed = index.getAnnotations(Type.getDescriptor(Typed.class));
+		Assert.assertEquals(1, typed.size());
+		Assert.assertTrue(typed.get(0).isTypeAnnotation());
+		Assert.assertEquals("field", typed.get(0).getMemberName());
+
+		Assert.assertTrue(index.getAnnotations("Lnot/Indexed;").isEmpty());
+	}
+
+	@Retention(RetentionPolicy.RUNTIME)
+	@interface Marker {
+		String value();
+
+		int n() default 0;
+
+		String[] tags() default {};
+
+		ElementType kind() default ElementType.TYPE;
+
+		Inner nested() default @Inner(0);
+
+		Class<?> type() default Object.class;
+
+		long[] longs() default {};
+	}
+
+	@Retention(RetentionPolicy.RUNTIME)
+	@interface Inner {
+		int value();
+	}
+
+	@Retention(RetentionPolicy.RUNTIME)
+	@Target(ElementType.TYPE_USE)
+	@interface Typed {
+	}
+
+	@Marker("type")
+	static class Fixture {
+		@Marker(value = "field", n = 3, tags = { "a", "b" }, kind = ElementType.FIELD, nested = @Inner(7),
+				type = String.class, longs = { 1, -2 })
+		@Typed
+		String field;
+
+		@Deprecated
+		void method(int unmarked, @Marker("param") String marked) {
+		}
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Opcodes;
+
+import com.mebigfatguy.asmdelegate.DelegationFixture.InsnCounter;
+
+public class AsyncDelegatingClassVisitorTest {
+
+	private static final List<Class<?>> CLASSES = Arrays.asList(AsyncDelegatingClassVisitorTest.class,
+			DelegatingClassVisitor.class, EventTape.class, EventRecorder.class);
+
+	@Test
+	public void testAsyncMatchesSync() throws IOException {
+		InsnCounter syncCounter = new InsnCounter();
+		InsnCounter counter1 = new InsnCounter();
+		InsnCounter counter2 = new InsnCounter();
+		DelegatingClassVisitorTest.CV1 cv1 = new DelegatingClassVisitorTest.CV1();
+
+		try (AsyncDelegatingClassVisitor adcv = new AsyncDelegatingClassVisitor(Opcodes.ASM9,
+				Arrays.asList(Arrays.asList(counter1, cv1), Arrays.<ClassVisitor>asList(counter2)), 2, 0)) {
+			for (int i = 0; i < 10; i++) {
+				for (Class<?> cls : CLASSES) {
+					ClassReader reader = DelegationFixture.reader(cls);
+					reader.accept(syncCounter, 0);
+					adcv.accept(reader);
+				}
+			}
+			adcv.await();
+
+			Assert.assertEquals(syncCounter.insns, counter1.insns);
+			Assert.assertEquals(syncCounter.insns, counter2.insns);
+			Assert.assertEquals(syncCounter.methods, counter2.methods);
+			Assert.assertTrue(cv1.isVisited);
+		}
+	}
+
+	@Test
+	public void testFailureIsReported() throws IOException {
+		InsnCounter counter = new InsnCounter();
+		ClassVisitor failing = new ClassVisitor(Opcodes.ASM9) {
+			@Override
+			public void visitEnd() {
+				throw new UnsupportedOperationException("boom");
+			}
+		};
+
+		try (AsyncDelegatingClassVisitor adcv = new AsyncDelegatingClassVisitor(Opcodes.ASM9,
+				Arrays.asList(counter, failing))) {
+			adcv.accept(DelegationFixture.reader(AsyncDelegatingClassVisitorTest.class));
+			try {
+				adcv.await();
+				Assert.fail("Expected the failure to be reported");
+			} catch (IllegalStateException e) {
+				Assert.assertTrue(e.getCause() instanceof UnsupportedOperationException);
+			}
+			Assert.assertTrue(counter.ended);
+		}
+	}
+}
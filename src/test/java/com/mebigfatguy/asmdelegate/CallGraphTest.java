@@ -0,0 +1,105 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.objectweb.asm.Opcodes;
+
+public class CallGraphTest {
+
+	@Test
+	public void testScanAndMap() throws IOException, URISyntaxException {
+		Path classes = Paths.get(CallGraph.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+
+		CallGraph graph = scan(classes, ForkJoinPool.commonPool());
+		int visitEnd = graph.getMethodId(CallGraphCollector.class.getName().replace('.', '/'), "visitEnd", "()V");
+		int addEdges = graph.getMethodId(CallGraphBuilder.class.getName().replace('.', '/'), "addEdges", "([JI)V");
+		Assert.assertTrue(visitEnd >= 0);
+		Assert.assertTrue(addEdges >= 0);
+		Assert.assertTrue(Arrays.binarySearch(graph.getCallees(visitEnd), addEdges) >= 0);
+		Assert.assertTrue(Arrays.binarySearch(graph.getCallers(addEdges), visitEnd) >= 0);
+		Assert.assertEquals(-1, graph.getMethodId("java/lang/Missing", "visitEnd", "()V"));
+
+		int methodId = graph.getMethodId(CallGraphBuilder.class.getName().replace('.', '/'), "methodId",
+				"(Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;)I");
+		boolean lambda = false;
+		for (int callee : graph.getCallees(methodId)) {
+			lambda |= graph.getName(callee).startsWith("lambda$");
+		}
+		Assert.assertTrue(lambda);
+
+		int numCallees = 0;
+		int numCallers = 0;
+		for (int m = 0; m < graph.size(); m++) {
+			int[] callees = graph.getCallees(m);
+			Assert.assertEquals(callees.length, graph.getCalleeCount(m));
+			for (int i = 0; i < callees.length; i++) {
+				Assert.assertTrue((i == 0) || (callees[i - 1] < callees[i]));
+				Assert.assertTrue(Arrays.binarySearch(graph.getCallers(callees[i]), m) >= 0);
+			}
+			numCallees += callees.length;
+			numCallers += graph.getCallerCount(m);
+		}
+		Assert.assertEquals(graph.getEdgeCount(), numCallees);
+		Assert.assertEquals(graph.getEdgeCount(), numCallers);
+
+		ForkJoinPool single = new ForkJoinPool(1);
+		try {
+			CallGraph sequential = scan(classes, single);
+			Assert.assertEquals(graph.size(), sequential.size());
+			Assert.assertEquals(graph.getEdgeCount(), sequential.getEdgeCount());
+		} finally {
+			single.shutdown();
+		}
+
+		Path file = Files.createTempFile("callgraph", ".bin");
+		try {
+			graph.write(file);
+			CallGraph mapped = CallGraph.read(file);
+			Assert.assertEquals(graph.size(), mapped.size());
+			Assert.assertEquals(graph.getEdgeCount(), mapped.getEdgeCount());
+			for (int m = 0; m < graph.size(); m++) {
+				int id = mapped.getMethodId(graph.getOwner(m), graph.getName(m), graph.getDescriptor(m));
+				Assert.assertEquals(m, id);
+				Assert.assertArrayEquals(graph.getCallees(m), mapped.getCallees(m));
+				Assert.assertArrayEquals(graph.getCallers(m), mapped.getCallers(m));
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	private static CallGraph scan(Path classes, ForkJoinPool pool) throws IOException {
+		ClassScanner scanner = new ClassScanner(Opcodes.ASM9, DelegatingClassVisitor.POOLED, pool);
+		CallGraphBuilder builder = new CallGraphBuilder(scanner.getSymbolTable());
+		scanner.addDirectory(classes);
+		scanner.addVisitor(() -> new CallGraphCollector(Opcodes.ASM9, builder));
+		scanner.scan();
+		return builder.build();
+	}
+}
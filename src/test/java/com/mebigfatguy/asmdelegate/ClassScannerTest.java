@@ -0,0 +1,146 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Opcodes;
+
+public class ClassScannerTest {
+
+	@Test
+	public void testScanDirectoryAndJar() throws IOException, URISyntaxException {
+		scanDirectoryAndJar(new ClassScanner(Opcodes.ASM9));
+	}
+
+	@Test
+	public void testPipeline() throws IOException, URISyntaxException {
+		ClassScanner scanner = new ClassScanner(Opcodes.ASM9);
+		try {
+			scanner.setPipeline(0, 1, 1);
+			Assert.fail("A pipeline without readers should be rejected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+
+		// fewer buffers than threads, so the readers have to wait on the parsers
+		scanner.setPipeline(3, 2, 2);
+		scanDirectoryAndJar(scanner);
+	}
+
+	private void scanDirectoryAndJar(ClassScanner scanner) throws IOException, URISyntaxException {
+		Path classes = Paths.get(ClassScannerTest.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+		List<Path> classFiles;
+		try (Stream<Path> paths = Files.walk(classes)) {
+			classFiles = paths.filter(p -> p.toString().endsWith(".class")).collect(Collectors.toList());
+		}
+
+		Path jar = Files.createTempFile("scanner", ".jar");
+		try {
+			// alternate stored and deflated entries, as the mapped jar reads those differently
+			try (OutputStream os = Files.newOutputStream(jar); ZipOutputStream zos = new ZipOutputStream(os)) {
+				boolean stored = false;
+				for (Path classFile : classFiles) {
+					byte[] bytes = Files.readAllBytes(classFile);
+					ZipEntry entry = new ZipEntry(classes.relativize(classFile).toString().replace('\\', '/'));
+					if (stored) {
+						CRC32 crc = new CRC32();
+						crc.update(bytes);
+						entry.setMethod(ZipEntry.STORED);
+						entry.setSize(bytes.length);
+						entry.setCompressedSize(bytes.length);
+						entry.setCrc(crc.getValue());
+					}
+					stored = !stored;
+					zos.putNextEntry(entry);
+					zos.write(bytes);
+					zos.closeEntry();
+				}
+			}
+
+			scanner.addDirectory(classes);
+			scanner.addJar(jar);
+			scanner.addVisitor(ClassNames::new);
+			scanner.addVisitor(ClassCounter::new);
+
+			List<ClassVisitor> results = scanner.scan();
+
+			ClassNames names = (ClassNames) results.get(0);
+			ClassCounter counter = (ClassCounter) results.get(1);
+			Assert.assertEquals(classFiles.size() * 2, counter.count);
+			Assert.assertEquals(classFiles.size(), names.names.size());
+			Assert.assertTrue(names.names.contains(ClassScannerTest.class.getName().replace('.', '/')));
+		} finally {
+			Files.delete(jar);
+		}
+	}
+
+	static class ClassNames extends ClassVisitor implements Mergeable<ClassNames> {
+		Set<String> names = new HashSet<>();
+
+		ClassNames() {
+			super(Opcodes.ASM9);
+		}
+
+		@Override
+		public void visit(int version, int access, String name, String signature, String superName,
+				String[] interfaces) {
+			names.add(name);
+		}
+
+		@Override
+		public void merge(ClassNames other) {
+			names.addAll(other.names);
+		}
+	}
+
+	static class ClassCounter extends ClassVisitor implements Mergeable<ClassCounter> {
+		int count;
+
+		ClassCounter() {
+			super(Opcodes.ASM9);
+		}
+
+		@Override
+		public void visitEnd() {
+			count++;
+		}
+
+		@Override
+		public void merge(ClassCounter other) {
+			count += other.count;
+		}
+	}
+}
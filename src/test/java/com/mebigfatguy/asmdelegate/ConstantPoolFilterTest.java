@@ -0,0 +1,89 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.objectweb.asm.Opcodes;
+
+import com.mebigfatguy.asmdelegate.DelegationFixture.InsnCounter;
+
+public class ConstantPoolFilterTest {
+
+	@Test
+	public void testConstantPoolFilter() throws IOException {
+		OwnerFilter usesAssert = new OwnerFilter("org/junit/Assert");
+		OwnerFilter usesCrypto = new OwnerFilter("javax/crypto/");
+		InsnCounter counter = new InsnCounter();
+
+		DelegatingClassVisitor dcv = new DelegatingClassVisitor(Opcodes.ASM7,
+				Arrays.asList(usesAssert, usesCrypto, counter));
+		dcv.accept(DelegationFixture.reader());
+
+		Assert.assertTrue(usesAssert.insns > 0);
+		Assert.assertEquals(counter.insns, usesAssert.insns);
+		Assert.assertEquals(0, usesCrypto.methods);
+		Assert.assertFalse(usesCrypto.ended);
+
+		OwnerFilter onlyCrypto = new OwnerFilter("javax/crypto/");
+		dcv = new DelegatingClassVisitor(Opcodes.ASM7, Arrays.asList(onlyCrypto));
+		dcv.accept(DelegationFixture.reader());
+		Assert.assertFalse(onlyCrypto.ended);
+	}
+
+	@Test
+	public void testDefaultsFromSubInterface() throws IOException {
+		Assert.assertNotEquals(0, ConstantPoolScan.INTERESTS.maskOf(new InheritedFilter(), null));
+
+		InheritedFilter inherited = new InheritedFilter();
+		InsnCounter counter = new InsnCounter();
+		DelegatingClassVisitor dcv = new DelegatingClassVisitor(Opcodes.ASM7, Arrays.asList(inherited, counter));
+		dcv.accept(DelegationFixture.reader());
+
+		Assert.assertTrue(inherited.insns > 0);
+		Assert.assertEquals(counter.insns, inherited.insns);
+	}
+
+	static class OwnerFilter extends InsnCounter implements ConstantPoolFilter {
+		private final String prefix;
+
+		OwnerFilter(String prefix) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public boolean acceptsMemberReference(String owner, String name, String descriptor) {
+			return owner.startsWith(prefix);
+		}
+	}
+
+	interface UsesAssert extends ConstantPoolFilter {
+
+		@Override
+		default boolean acceptsMemberReference(String owner, String name, String descriptor) {
+			return owner.equals("org/junit/Assert");
+		}
+	}
+
+	static class InheritedFilter extends InsnCounter implements UsesAssert {
+	}
+}
@@ -28,6 +28,8 @@ import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.Opcodes;
 
+import com.mebigfatguy.asmdelegate.DelegationFixture.InsnCounter;
+
 public class DelegatingClassVisitorTest {
 
 	@Test
@@ -46,6 +48,26 @@ public class DelegatingClassVisitorTest {
 		Assert.assertTrue(visitor2.isVisited);
 	}
 
+	@Test
+	public void testOnlyInterestedChildrenAreCalled() throws IOException {
+		CV1 visitor1 = new CV1();
+		InsnCounter counter = new InsnCounter();
+		CV1 chained = new CV1();
+		ClassVisitor chaining = new ClassVisitor(Opcodes.ASM7, chained) {
+		};
+		DelegatingClassVisitor dcv = new DelegatingClassVisitor(Opcodes.ASM7,
+				Arrays.asList(visitor1, counter, chaining));
+
+		DelegationFixture.accept(dcv, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+		Assert.assertTrue(visitor1.isVisited);
+		Assert.assertTrue(chained.isVisited);
+		Assert.assertTrue(counter.methods > 0);
+		Assert.assertTrue(counter.insns > 0);
+		Assert.assertEquals(0, DelegatingClassVisitor.INTERESTS.maskOf(new ClassVisitor(Opcodes.ASM7) {
+		}, null));
+	}
+
 	static class CV1 extends ClassVisitor {
 		boolean isVisited;
 
@@ -0,0 +1,91 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Assert;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * the class the delegation tests parse, and the children they share. Its one
+ * constructor, its try block, its inner classes and its call into junit are
+ * what the member filter, analysis, tree and constant pool tests look for.
+ */
+final class DelegationFixture {
+
+	static final String NAME = DelegationFixture.class.getName().replace('.', '/');
+
+	private DelegationFixture() {
+	}
+
+	static ClassReader reader() throws IOException {
+		return reader(DelegationFixture.class);
+	}
+
+	static ClassReader reader(Class<?> cls) throws IOException {
+		try (InputStream is = cls.getResourceAsStream("/" + cls.getName().replace('.', '/') + ".class")) {
+			Assert.assertNotNull("No class file for " + cls.getName(), is);
+			return new ClassReader(is);
+		}
+	}
+
+	static void accept(ClassVisitor cv, int flags) throws IOException {
+		reader().accept(cv, flags);
+	}
+
+	static class InsnCounter extends ClassVisitor {
+		int methods;
+		int insns;
+		boolean ended;
+
+		InsnCounter() {
+			super(Opcodes.ASM7);
+		}
+
+		@Override
+		public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+				String[] exceptions) {
+			methods++;
+			return new MethodVisitor(Opcodes.ASM7) {
+				@Override
+				public void visitInsn(int opcode) {
+					insns++;
+				}
+			};
+		}
+
+		@Override
+		public void visitEnd() {
+			ended = true;
+		}
+	}
+
+	static class ConstructorsOnly extends InsnCounter implements MemberFilter {
+
+		@Override
+		public MemberMatcher getMethodMatcher() {
+			return MemberMatcher.ANY.named("<init>");
+		}
+	}
+}
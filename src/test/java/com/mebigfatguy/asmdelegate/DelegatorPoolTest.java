@@ -0,0 +1,52 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.objectweb.asm.Opcodes;
+
+import com.mebigfatguy.asmdelegate.DelegatingClassVisitorTest.CV1;
+import com.mebigfatguy.asmdelegate.DelegationFixture.InsnCounter;
+
+public class DelegatorPoolTest {
+
+	@Test
+	public void testPooledDelegation() throws IOException {
+		InsnCounter counter1 = new InsnCounter();
+		InsnCounter counter2 = new InsnCounter();
+		DelegationFixture.accept(new DelegatingClassVisitor(Opcodes.ASM7, Arrays.asList(counter1, counter2)), 0);
+
+		InsnCounter pooled1 = new InsnCounter();
+		InsnCounter pooled2 = new InsnCounter();
+		InsnCounter single = new InsnCounter();
+		DelegationFixture.accept(new DelegatingClassVisitor(Opcodes.ASM7, Arrays.asList(pooled1, pooled2),
+				DelegatingClassVisitor.POOLED), 0);
+		DelegationFixture.accept(new DelegatingClassVisitor(Opcodes.ASM7, Arrays.asList(new CV1(), single),
+				DelegatingClassVisitor.POOLED), 0);
+
+		Assert.assertEquals(counter1.methods, pooled1.methods);
+		Assert.assertEquals(counter1.insns, pooled1.insns);
+		Assert.assertEquals(counter2.insns, pooled2.insns);
+		Assert.assertEquals(counter1.insns, single.insns);
+	}
+}
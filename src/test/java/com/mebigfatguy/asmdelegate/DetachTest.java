@@ -0,0 +1,114 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import com.mebigfatguy.asmdelegate.DelegationFixture.InsnCounter;
+
+public class DetachTest {
+
+	@Test
+	public void testDetach() throws IOException {
+		InsnCounter counter = new InsnCounter();
+		Detacher detachInVisit = new Detacher(false);
+		Detacher detachInMethod = new Detacher(true);
+		DelegatingClassVisitor dcv = new DelegatingClassVisitor(Opcodes.ASM7,
+				Arrays.asList(counter, detachInVisit, detachInMethod));
+
+		DelegationFixture.accept(dcv, 0);
+
+		Assert.assertTrue(counter.insns > 1);
+		Assert.assertEquals(0, detachInVisit.insns);
+		Assert.assertEquals(1, detachInMethod.insns);
+		Assert.assertEquals(1, detachInMethod.methods);
+		Assert.assertFalse(detachInVisit.ended);
+		Assert.assertTrue(counter.ended);
+	}
+
+	@Test
+	public void testAllDetachedAborts() throws IOException {
+		Detacher detacher = new Detacher(false);
+		DelegatingClassVisitor dcv = new DelegatingClassVisitor(Opcodes.ASM7, Arrays.asList(detacher));
+
+		dcv.accept(DelegationFixture.reader());
+
+		Assert.assertEquals(0, detacher.methods);
+		Assert.assertFalse(detacher.ended);
+	}
+
+	@Test
+	public void testDetachInAsyncGroup() throws IOException {
+		InsnCounter counter = new InsnCounter();
+		Detacher detacher = new Detacher(true);
+		try (AsyncDelegatingClassVisitor adcv = new AsyncDelegatingClassVisitor(Opcodes.ASM9,
+				Arrays.asList(Arrays.asList(counter, detacher)), 2, 0)) {
+			adcv.accept(DelegationFixture.reader());
+			adcv.await();
+		}
+
+		Assert.assertTrue(counter.insns > 1);
+		Assert.assertEquals(1, detacher.insns);
+		Assert.assertEquals(1, detacher.methods);
+		Assert.assertFalse(detacher.ended);
+	}
+
+	static class Detacher extends InsnCounter implements Detachable {
+		private final boolean inMethod;
+		private DelegatingClassVisitor delegator;
+
+		Detacher(boolean inMethod) {
+			this.inMethod = inMethod;
+		}
+
+		@Override
+		public void setDelegator(DelegatingClassVisitor delegator) {
+			this.delegator = delegator;
+		}
+
+		@Override
+		public void visit(int version, int access, String name, String signature, String superName,
+				String[] interfaces) {
+			if (!inMethod) {
+				delegator.detach(this);
+			}
+		}
+
+		@Override
+		public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+				String[] exceptions) {
+			methods++;
+			return new MethodVisitor(Opcodes.ASM7) {
+				@Override
+				public void visitInsn(int opcode) {
+					insns++;
+					if (inMethod) {
+						delegator.detach(Detacher.this);
+					}
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import com.mebigfatguy.asmdelegate.DelegationFixture.InsnCounter;
+
+public class EventRecorderTest {
+
+	@Test
+	public void testReplayMatchesParse() throws IOException {
+		for (Class<?> cls : Arrays.asList(EventRecorderTest.class, EventTape.class, DelegationFixture.class)) {
+			ClassReader reader = DelegationFixture.reader(cls);
+
+			ClassWriter parsed = new ClassWriter(0);
+			reader.accept(parsed, 0);
+
+			EventRecorder recorder = new EventRecorder(Opcodes.ASM9);
+			InsnCounter counter = new InsnCounter();
+			reader.accept(new DelegatingClassVisitor(Opcodes.ASM9, Arrays.asList(recorder, counter)), 0);
+
+			ClassWriter replayed = new ClassWriter(0);
+			recorder.getTape().accept(replayed);
+			Assert.assertArrayEquals(parsed.toByteArray(), replayed.toByteArray());
+
+			InsnCounter replayCounter = new InsnCounter();
+			recorder.getTape().accept(replayCounter);
+			Assert.assertEquals(counter.insns, replayCounter.insns);
+			Assert.assertEquals(counter.methods, replayCounter.methods);
+		}
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+public class FindingStreamTest {
+
+	@Test
+	public void testBackPressure() throws InterruptedException {
+		FindingStream<Integer> stream = new FindingStream<>(4);
+		FindingStream.Subscription<Integer> subscription = stream.subscribe();
+		for (int i = 0; i < 4; i++) {
+			stream.publish(i);
+		}
+
+		Thread publisher = new Thread(() -> stream.publish(4));
+		publisher.start();
+		publisher.join(200);
+		Assert.assertTrue(publisher.isAlive());
+
+		Assert.assertEquals(Integer.valueOf(0), subscription.take());
+		publisher.join(5000);
+		Assert.assertFalse(publisher.isAlive());
+
+		stream.close();
+		List<Integer> rest = new ArrayList<>();
+		subscription.drainTo(rest, Integer.MAX_VALUE);
+		Assert.assertEquals(4, rest.size());
+		Assert.assertEquals(Integer.valueOf(4), rest.get(3));
+		Assert.assertNull(subscription.take());
+		Assert.assertTrue(subscription.isDone());
+	}
+
+	@Test
+	public void testTakenSlotsAreCleared() throws Exception {
+		FindingStream<String> stream = new FindingStream<>(4);
+		FindingStream.Subscription<String> fast = stream.subscribe();
+		FindingStream.Subscription<String> slow = stream.subscribe();
+		stream.publish("a");
+		stream.publish("b");
+
+		Field field = FindingStream.class.getDeclaredField("slots");
+		field.setAccessible(true);
+		Object[] slots = (Object[]) field.get(stream);
+
+		Assert.assertEquals("a", fast.take());
+		Assert.assertEquals("b", fast.take());
+		Assert.assertEquals("a", slots[0]);
+
+		Assert.assertEquals("a", slow.take());
+		Assert.assertNull(slots[0]);
+		Assert.assertEquals("b", slots[1]);
+
+		slow.close();
+		Assert.assertNull(slots[1]);
+	}
+
+	@Test
+	public void testStreamWhileVisiting() throws IOException, InterruptedException {
+		FindingStream<String> stream = new FindingStream<>(2);
+		FindingStream.Subscription<String> subscription = stream.subscribe();
+		List<String> found = Collections.synchronizedList(new ArrayList<>());
+		Thread consumer = new Thread(() -> {
+			try {
+				String finding;
+				while ((finding = subscription.take()) != null) {
+					found.add(finding);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		consumer.start();
+
+		MethodPublisher publisher = new MethodPublisher(stream);
+		try (InputStream is = FindingStreamTest.class
+				.getResourceAsStream("/" + FindingStreamTest.class.getName().replace('.', '/') + ".class")) {
+			new DelegatingClassVisitor(Opcodes.ASM9, Collections.singletonList(publisher))
+					.accept(new ClassReader(is));
+		}
+		stream.close();
+		consumer.join(5000);
+
+		Assert.assertFalse(consumer.isAlive());
+		Assert.assertEquals(publisher.methods, found.size());
+		Assert.assertTrue(found.contains("testBackPressure"));
+	}
+
+	static class MethodPublisher extends ClassVisitor {
+		private final FindingStream<String> stream;
+		int methods;
+
+		MethodPublisher(FindingStream<String> stream) {
+			super(Opcodes.ASM9);
+			this.stream = stream;
+		}
+
+		@Override
+		public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+				String[] exceptions) {
+			methods++;
+			stream.publish(name);
+			return null;
+		}
+	}
+}
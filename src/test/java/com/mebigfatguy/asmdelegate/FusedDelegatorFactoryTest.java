@@ -0,0 +1,133 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Opcodes;
+
+import com.mebigfatguy.asmdelegate.DelegatingClassVisitorTest.CV1;
+import com.mebigfatguy.asmdelegate.DelegationFixture.InsnCounter;
+
+public class FusedDelegatorFactoryTest {
+
+	@Test
+	public void testFusedMatchesListDelegation() throws IOException {
+		InsnCounter listCounter1 = new InsnCounter();
+		InsnCounter listCounter2 = new InsnCounter();
+		accept(new DelegatingClassVisitor(Opcodes.ASM7, Arrays.asList(listCounter1, listCounter2)));
+
+		CV1 visitor = new CV1();
+		InsnCounter fusedCounter1 = new InsnCounter();
+		InsnCounter fusedCounter2 = new InsnCounter();
+		ClassVisitor fused = FusedDelegatorFactory.newClassVisitor(Opcodes.ASM7,
+				Arrays.asList(visitor, fusedCounter1, fusedCounter2));
+		accept(fused);
+
+		Assert.assertTrue(visitor.isVisited);
+		Assert.assertEquals(listCounter1.methods, fusedCounter1.methods);
+		Assert.assertEquals(listCounter1.insns, fusedCounter1.insns);
+		Assert.assertEquals(listCounter2.insns, fusedCounter2.insns);
+	}
+
+	@Test
+	public void testGeneratedClassIsShared() {
+		ClassVisitor first = FusedDelegatorFactory.newClassVisitor(Opcodes.ASM7,
+				Arrays.asList(new CV1(), new InsnCounter()));
+		ClassVisitor second = FusedDelegatorFactory.newClassVisitor(Opcodes.ASM7,
+				Arrays.asList(new CV1(), new InsnCounter()));
+		ClassVisitor reordered = FusedDelegatorFactory.newClassVisitor(Opcodes.ASM7,
+				Arrays.asList(new InsnCounter(), new CV1()));
+
+		Assert.assertSame(first.getClass(), second.getClass());
+		Assert.assertNotSame(first.getClass(), reordered.getClass());
+	}
+
+	@Test
+	public void testFusedClassIsDefinedBelowChildLoader() throws IOException, ReflectiveOperationException {
+		ChildFirstLoader loader = new ChildFirstLoader(CV1.class);
+		Constructor<?> ctor = loader.loadClass(CV1.class.getName()).getDeclaredConstructor();
+		ctor.setAccessible(true);
+		ClassVisitor isolated = (ClassVisitor) ctor.newInstance();
+
+		ClassVisitor fused = FusedDelegatorFactory.newClassVisitor(Opcodes.ASM7,
+				Arrays.asList(isolated, new InsnCounter()));
+		Assert.assertSame(loader, fused.getClass().getClassLoader().getParent());
+
+		ClassVisitor local = FusedDelegatorFactory.newClassVisitor(Opcodes.ASM7,
+				Arrays.asList(new CV1(), new InsnCounter()));
+		Assert.assertNotSame(fused.getClass(), local.getClass());
+		Assert.assertNotSame(loader, local.getClass().getClassLoader().getParent());
+
+		accept(fused);
+		Field visited = isolated.getClass().getDeclaredField("isVisited");
+		visited.setAccessible(true);
+		Assert.assertTrue(visited.getBoolean(isolated));
+	}
+
+	private static void accept(ClassVisitor cv) throws IOException {
+		DelegationFixture.accept(cv, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+	}
+
+	/**
+	 * loads one class itself rather than asking its parent, as a plugin loader
+	 * would
+	 */
+	static class ChildFirstLoader extends ClassLoader {
+		private final String name;
+		private final byte[] bytes;
+
+		ChildFirstLoader(Class<?> cls) throws IOException {
+			super(cls.getClassLoader());
+			name = cls.getName();
+			try (InputStream is = cls.getResourceAsStream("/" + name.replace('.', '/') + ".class")) {
+				ByteArrayOutputStream baos = new ByteArrayOutputStream();
+				byte[] buffer = new byte[4096];
+				int len;
+				while ((len = is.read(buffer)) >= 0) {
+					baos.write(buffer, 0, len);
+				}
+				bytes = baos.toByteArray();
+			}
+		}
+
+		@Override
+		protected Class<?> loadClass(String className, boolean resolve) throws ClassNotFoundException {
+			if (!className.equals(name)) {
+				return super.loadClass(className, resolve);
+			}
+			synchronized (getClassLoadingLock(className)) {
+				Class<?> cls = findLoadedClass(className);
+				if (cls == null) {
+					cls = defineClass(className, bytes, 0, bytes.length);
+				}
+				return cls;
+			}
+		}
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import com.mebigfatguy.asmdelegate.DelegationFixture.InsnCounter;
+
+public class InstructionBlockTest {
+
+	@Test
+	public void testBatchedInstructions() throws IOException {
+		InsnCounter counter = new InsnCounter();
+		BatchCounter batchCounter = new BatchCounter();
+		DelegationFixture.accept(new DelegatingClassVisitor(Opcodes.ASM7, Arrays.asList(counter, batchCounter)), 0);
+
+		Assert.assertTrue(counter.insns > 0);
+		Assert.assertEquals(counter.methods, batchCounter.blocks);
+		Assert.assertEquals(counter.insns, batchCounter.insns);
+		Assert.assertTrue(batchCounter.labels > 0);
+
+		BatchCounter alone = new BatchCounter();
+		DelegationFixture.accept(new DelegatingClassVisitor(Opcodes.ASM7, Arrays.asList(alone),
+				DelegatingClassVisitor.POOLED), 0);
+		Assert.assertEquals(counter.methods, alone.blocks);
+		Assert.assertEquals(counter.insns, alone.insns);
+	}
+
+	@Test
+	public void testMeteredBatchedInstructions() throws IOException {
+		InsnCounter counter = new InsnCounter();
+		BatchCounter batchCounter = new BatchCounter();
+		DelegatingClassVisitor dcv = new DelegatingClassVisitor(Opcodes.ASM7, Arrays.asList(counter, batchCounter),
+				DelegatingClassVisitor.METRICS);
+		DelegationFixture.accept(dcv, 0);
+
+		Assert.assertEquals(counter.methods, batchCounter.blocks);
+		Assert.assertEquals(counter.insns, batchCounter.insns);
+		Assert.assertNull(dcv.getMetrics().get(1).getEventCounts().get("MethodVisitor.visitInsn"));
+		Assert.assertEquals(Long.valueOf(batchCounter.blocks),
+				dcv.getMetrics().get(1).getEventCounts().get("MethodVisitor.visitInstructions"));
+
+		BatchCounter alone = new BatchCounter();
+		DelegationFixture.accept(new DelegatingClassVisitor(Opcodes.ASM7, Arrays.asList(alone),
+				DelegatingClassVisitor.METRICS | DelegatingClassVisitor.POOLED), 0);
+		Assert.assertEquals(counter.methods, alone.blocks);
+		Assert.assertEquals(counter.insns, alone.insns);
+	}
+
+	static class BatchCounter extends ClassVisitor {
+		int blocks;
+		int insns;
+		int labels;
+
+		BatchCounter() {
+			super(Opcodes.ASM7);
+		}
+
+		@Override
+		public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+				String[] exceptions) {
+			return new BatchedMethodVisitor();
+		}
+
+		class BatchedMethodVisitor extends MethodVisitor implements BatchedInstructions {
+
+			BatchedMethodVisitor() {
+				super(Opcodes.ASM7);
+			}
+
+			@Override
+			public void visitInstructions(InstructionBlock block) {
+				blocks++;
+				for (int i = 0; i < block.size(); i++) {
+					if (block.getOpcode(i) == InstructionBlock.LABEL) {
+						labels++;
+					}
+				}
+				block.accept(new MethodVisitor(Opcodes.ASM7) {
+					@Override
+					public void visitInsn(int opcode) {
+						insns++;
+					}
+				});
+			}
+
+			@Override
+			public void visitInsn(int opcode) {
+				throw new IllegalStateException("Instructions should come in a block");
+			}
+		}
+	}
+}
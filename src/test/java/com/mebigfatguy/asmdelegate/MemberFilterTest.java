@@ -0,0 +1,86 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import com.mebigfatguy.asmdelegate.DelegationFixture.ConstructorsOnly;
+import com.mebigfatguy.asmdelegate.DelegationFixture.InsnCounter;
+
+public class MemberFilterTest {
+
+	@Test
+	public void testMemberFilter() throws IOException {
+		InsnCounter counter = new InsnCounter();
+		ConstructorsOnly constructors = new ConstructorsOnly();
+		DelegationFixture.accept(new DelegatingClassVisitor(Opcodes.ASM7, Arrays.asList(counter, constructors)), 0);
+
+		Assert.assertTrue(counter.methods > 1);
+		Assert.assertEquals(1, constructors.methods);
+
+		DelegatingClassVisitor dcv = new DelegatingClassVisitor(Opcodes.ASM7, Arrays.asList(new ConstructorsOnly()));
+		Assert.assertNull(dcv.visitMethod(Opcodes.ACC_PUBLIC, "run", "()V", null, null));
+		Assert.assertNotNull(dcv.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null));
+	}
+
+	@Test
+	public void testNamesNarrow() {
+		MemberMatcher runOrCall = MemberMatcher.ANY.named("run", "call");
+		MemberMatcher call = runOrCall.named("call", "get");
+
+		Assert.assertTrue(runOrCall.matches(Opcodes.ACC_PUBLIC, "run", "()V"));
+		Assert.assertTrue(runOrCall.matches(Opcodes.ACC_PUBLIC, "call", "()V"));
+		Assert.assertFalse(runOrCall.matches(Opcodes.ACC_PUBLIC, "get", "()V"));
+		Assert.assertTrue(call.matches(Opcodes.ACC_PUBLIC, "call", "()V"));
+		Assert.assertFalse(call.matches(Opcodes.ACC_PUBLIC, "run", "()V"));
+		Assert.assertFalse(call.matches(Opcodes.ACC_PUBLIC, "get", "()V"));
+		Assert.assertFalse(MemberMatcher.ANY.named("run").named("call").matches(Opcodes.ACC_PUBLIC, "run", "()V"));
+	}
+
+	@Test
+	public void testWriterCopiesMethods() throws IOException {
+		ClassReader reader = DelegationFixture.reader();
+
+		ClassWriter copy = new ClassWriter(reader, 0);
+		reader.accept(copy, 0);
+
+		ClassWriter cw = new ClassWriter(reader, 0);
+		ConstructorsOnly constructors = new ConstructorsOnly();
+		DelegatingClassVisitor dcv = new DelegatingClassVisitor(Opcodes.ASM7, cw, Arrays.asList(constructors), 0);
+		dcv.accept(reader);
+
+		Assert.assertEquals(1, constructors.methods);
+		Assert.assertArrayEquals(copy.toByteArray(), cw.toByteArray());
+
+		dcv = new DelegatingClassVisitor(Opcodes.ASM7, new ClassWriter(reader, 0), Arrays.asList(new ConstructorsOnly()),
+				0);
+		MethodVisitor mv = dcv.visitMethod(Opcodes.ACC_PUBLIC, "run", "()V", null, null);
+		Assert.assertEquals("org.objectweb.asm.MethodWriter", mv.getClass().getName());
+		mv = dcv.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+		Assert.assertTrue(mv instanceof DelegatingMethodVisitor);
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.analysis.BasicValue;
+import org.objectweb.asm.tree.analysis.SourceValue;
+
+import com.mebigfatguy.asmdelegate.DelegationFixture.InsnCounter;
+
+public class MethodAnalysisTest {
+
+	@Test
+	public void testSharedAnalysis() throws IOException {
+		InsnCounter counter = new InsnCounter();
+		AnalysisCollector collector = new AnalysisCollector();
+		AnalysisCollector other = new AnalysisCollector();
+		DelegationFixture.accept(new DelegatingClassVisitor(Opcodes.ASM7, Arrays.asList(counter, collector, other)), 0);
+
+		Assert.assertEquals(counter.methods, collector.analyses.size());
+		boolean handled = false;
+		for (int i = 0; i < collector.analyses.size(); i++) {
+			MethodAnalysis analysis = collector.analyses.get(i);
+			Assert.assertSame(analysis, other.analyses.get(i));
+			Assert.assertEquals(DelegationFixture.NAME, analysis.getOwner());
+
+			MethodAnalysis.Frames<BasicValue> frames = analysis.getBasicFrames();
+			Assert.assertSame(frames, analysis.getBasicFrames());
+			Assert.assertEquals(analysis.getMethod().instructions.size(), frames.size());
+			Assert.assertTrue(frames.isReachable(0));
+			Assert.assertEquals(0, frames.getStackSize(0));
+
+			MethodAnalysis.ControlFlow controlFlow = analysis.getControlFlow();
+			Assert.assertEquals(frames.size(), controlFlow.size());
+			for (int insn = 0; insn < controlFlow.size(); insn++) {
+				handled |= controlFlow.getHandlers(insn).length > 0;
+				int opcode = analysis.getMethod().instructions.get(insn).getOpcode();
+				if (frames.isReachable(insn) && ((opcode < Opcodes.IRETURN) || (opcode > Opcodes.RETURN))
+						&& (opcode != Opcodes.ATHROW)) {
+					Assert.assertTrue(controlFlow.getSuccessors(insn).length > 0);
+				}
+			}
+
+			int last = frames.size() - 1;
+			while (!frames.isReachable(last)) {
+				last--;
+			}
+			MethodAnalysis.Frames<SourceValue> sources = analysis.getSourceFrames();
+			Assert.assertEquals(frames.getStackSize(last), sources.getStackSize(last));
+		}
+		Assert.assertTrue(handled);
+
+		AnalysisCollector alone = new AnalysisCollector();
+		DelegationFixture.accept(new DelegatingClassVisitor(Opcodes.ASM7, Arrays.asList(alone),
+				DelegatingClassVisitor.POOLED), 0);
+		Assert.assertEquals(counter.methods, alone.analyses.size());
+	}
+
+	@Test
+	public void testMeteredSharedAnalysis() throws IOException {
+		InsnCounter counter = new InsnCounter();
+		AnalysisCollector collector = new AnalysisCollector();
+		DelegatingClassVisitor dcv = new DelegatingClassVisitor(Opcodes.ASM7, Arrays.asList(counter, collector),
+				DelegatingClassVisitor.METRICS);
+		DelegationFixture.accept(dcv, 0);
+		Assert.assertEquals(counter.methods, collector.analyses.size());
+		Assert.assertEquals(Long.valueOf(counter.methods),
+				dcv.getMetrics().get(1).getEventCounts().get("MethodVisitor.visitAnalysis"));
+		Assert.assertEquals(DelegationFixture.NAME, collector.analyses.get(0).getOwner());
+
+		AnalysisCollector alone = new AnalysisCollector();
+		DelegationFixture.accept(new DelegatingClassVisitor(Opcodes.ASM7, Arrays.asList(alone),
+				DelegatingClassVisitor.METRICS | DelegatingClassVisitor.POOLED), 0);
+		Assert.assertEquals(counter.methods, alone.analyses.size());
+	}
+
+	static class AnalysisCollector extends ClassVisitor {
+		List<MethodAnalysis> analyses = new ArrayList<>();
+
+		AnalysisCollector() {
+			super(Opcodes.ASM7);
+		}
+
+		@Override
+		public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+				String[] exceptions) {
+			return new AnalyzedMethodVisitor();
+		}
+
+		class AnalyzedMethodVisitor extends MethodVisitor implements SharedAnalysis {
+
+			AnalyzedMethodVisitor() {
+				super(Opcodes.ASM7);
+			}
+
+			@Override
+			public void visitAnalysis(MethodAnalysis analysis) {
+				analyses.add(analysis);
+			}
+		}
+	}
+}
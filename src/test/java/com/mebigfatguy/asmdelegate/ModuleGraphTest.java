@@ -0,0 +1,125 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.ModuleVisitor;
+import org.objectweb.asm.Opcodes;
+
+public class ModuleGraphTest {
+
+	@Test
+	public void testBuildGraph() throws IOException {
+		FileSystem jrt;
+		try {
+			jrt = FileSystems.getFileSystem(URI.create("jrt:/"));
+		} catch (FileSystemNotFoundException | IllegalArgumentException e) {
+			Assume.assumeNoException(e);
+			return;
+		}
+
+		Path jar = Files.createTempFile("module", ".jar");
+		try {
+			try (OutputStream os = Files.newOutputStream(jar); ZipOutputStream zos = new ZipOutputStream(os)) {
+				zos.putNextEntry(new ZipEntry("com/acme/api/Api.class"));
+				zos.write(new byte[] { 1, 2, 3 });
+				zos.closeEntry();
+				zos.putNextEntry(new ZipEntry("META-INF/versions/11/module-info.class"));
+				zos.write(moduleInfo());
+				zos.closeEntry();
+			}
+
+			ModuleGraphBuilder builder = new ModuleGraphBuilder(Opcodes.ASM9);
+			builder.addJar(jar);
+			List<Path> modules;
+			try (Stream<Path> paths = Files.list(jrt.getPath("/modules"))) {
+				modules = paths.collect(Collectors.toList());
+			}
+			for (Path module : modules) {
+				builder.addDirectory(module);
+			}
+
+			ModuleGraph graph = builder.build();
+			Assert.assertEquals(modules.size() + 1, graph.size());
+			Assert.assertTrue(graph.contains("java.base"));
+			Assert.assertEquals(jar, graph.getLocation("com.acme.app"));
+			Assert.assertEquals("1.0", graph.getVersion("com.acme.app"));
+
+			List<String> resolved = graph.resolve("com.acme.app");
+			Assert.assertEquals("com.acme.app", resolved.get(0));
+			Assert.assertTrue(resolved.containsAll(Arrays.asList("java.base", "java.sql", "java.logging", "java.xml")));
+			Assert.assertFalse(resolved.contains("com.acme.optional"));
+			Assert.assertEquals(Collections.singletonList("com.acme.missing"), graph.getMissing("com.acme.app"));
+
+			Assert.assertTrue(graph.reads("com.acme.app", "java.sql"));
+			Assert.assertTrue(graph.reads("com.acme.app", "java.logging"));
+			Assert.assertFalse(graph.reads("com.acme.app", "java.desktop"));
+
+			Assert.assertEquals(Collections.singletonList("java.base"), graph.getExporters("java/lang"));
+			Assert.assertTrue(graph.isExported("com.acme.app", "com/acme/api", "anyone"));
+			Assert.assertTrue(graph.isExported("com.acme.app", "com/acme/spi", "com.acme.plugin"));
+			Assert.assertFalse(graph.isExported("com.acme.app", "com/acme/spi", "anyone"));
+			Assert.assertTrue(graph.isOpened("com.acme.app", "com/acme/model", "anyone"));
+
+			Assert.assertTrue(graph.getProviders("java/nio/file/spi/FileSystemProvider").contains("jdk.zipfs"));
+			Assert.assertEquals(Collections.singletonList("com/acme/impl/AcmeDriver"),
+					graph.getProviders("com.acme.app", "java/sql/Driver"));
+			Assert.assertEquals(Collections.singletonList("java/sql/Driver"), graph.getUses("com.acme.app"));
+		} finally {
+			Files.delete(jar);
+		}
+	}
+
+	private static byte[] moduleInfo() {
+		ClassWriter cw = new ClassWriter(0);
+		cw.visit(Opcodes.V11, Opcodes.ACC_MODULE, "module-info", null, null, null);
+		ModuleVisitor mv = cw.visitModule("com.acme.app", 0, "1.0");
+		mv.visitRequire("java.base", Opcodes.ACC_MANDATED, null);
+		mv.visitRequire("java.sql", Opcodes.ACC_TRANSITIVE, null);
+		mv.visitRequire("com.acme.optional", Opcodes.ACC_STATIC_PHASE, null);
+		mv.visitRequire("com.acme.missing", 0, null);
+		mv.visitExport("com/acme/api", 0);
+		mv.visitExport("com/acme/spi", 0, "com.acme.plugin");
+		mv.visitOpen("com/acme/model", 0);
+		mv.visitUse("java/sql/Driver");
+		mv.visitProvide("java/sql/Driver", "com/acme/impl/AcmeDriver");
+		mv.visitEnd();
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+}
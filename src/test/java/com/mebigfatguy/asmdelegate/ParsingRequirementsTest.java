@@ -0,0 +1,61 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Opcodes;
+
+import com.mebigfatguy.asmdelegate.DelegatingClassVisitorTest.CV1;
+import com.mebigfatguy.asmdelegate.DelegationFixture.InsnCounter;
+
+public class ParsingRequirementsTest {
+
+	@Test
+	public void testParsingOptions() throws IOException {
+		DelegatingClassVisitor headerOnly = new DelegatingClassVisitor(Opcodes.ASM7, Arrays.asList(new CV1()));
+		Assert.assertEquals(ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES,
+				headerOnly.getParsingOptions());
+
+		InsnCounter counter = new InsnCounter();
+		DelegatingClassVisitor withCode = new DelegatingClassVisitor(Opcodes.ASM7,
+				Arrays.asList(new CV1(), counter, new FramesNeeded()));
+		Assert.assertEquals(ClassReader.EXPAND_FRAMES, withCode.getParsingOptions());
+
+		withCode.accept(DelegationFixture.reader());
+		Assert.assertTrue(counter.insns > 0);
+	}
+
+	static class FramesNeeded extends ClassVisitor implements ParsingRequirements {
+
+		FramesNeeded() {
+			super(Opcodes.ASM7);
+		}
+
+		@Override
+		public int getParsingRequirements() {
+			return ParsingRequirements.EXPANDED_FRAMES;
+		}
+	}
+}
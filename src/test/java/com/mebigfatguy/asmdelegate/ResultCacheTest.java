@@ -0,0 +1,133 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+public class ResultCacheTest {
+
+	@Test
+	public void testReplay() throws IOException {
+		byte[] bytes;
+		try (InputStream is = ResultCacheTest.class
+				.getResourceAsStream("/" + ResultCacheTest.class.getName().replace('.', '/') + ".class")) {
+			bytes = new byte[is.available()];
+			Assert.assertEquals(bytes.length, is.read(bytes));
+		}
+
+		Path file = Files.createTempFile("results", ".cache");
+		Files.delete(file);
+		try {
+			CachedCounter counter = new CachedCounter("1");
+			try (ResultCache cache = ResultCache.open(file)) {
+				new DelegatingClassVisitor(Opcodes.ASM9, Collections.singletonList(counter)).accept(bytes, 0,
+						bytes.length, cache);
+				Assert.assertEquals(1, counter.parsed);
+				Assert.assertTrue(counter.insns > 0);
+				Assert.assertEquals(1, cache.size());
+
+				// the same bytes again, as if shaded into another jar
+				CachedCounter again = new CachedCounter("1");
+				new DelegatingClassVisitor(Opcodes.ASM9, Collections.singletonList(again)).accept(bytes, 0,
+						bytes.length, cache);
+				Assert.assertEquals(0, again.parsed);
+				Assert.assertEquals(counter.insns, again.insns);
+			}
+
+			// leave a half written record behind
+			Files.write(file, new byte[] { 1, 2, 3 }, StandardOpenOption.APPEND);
+
+			try (ResultCache cache = ResultCache.open(file)) {
+				Assert.assertEquals(1, cache.size());
+
+				CachedCounter replayed = new CachedCounter("1");
+				CachedCounter newVersion = new CachedCounter("2");
+				new DelegatingClassVisitor(Opcodes.ASM9, Arrays.asList(replayed, newVersion)).accept(bytes, 0,
+						bytes.length, cache);
+				Assert.assertEquals(0, replayed.parsed);
+				Assert.assertEquals(1, newVersion.parsed);
+				Assert.assertEquals(counter.insns, replayed.insns);
+				Assert.assertEquals(counter.insns, newVersion.insns);
+				Assert.assertEquals(2, cache.size());
+			}
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	static class CachedCounter extends ClassVisitor implements Cacheable {
+		private final String version;
+		int parsed;
+		int insns;
+		int classInsns;
+
+		CachedCounter(String version) {
+			super(Opcodes.ASM9);
+			this.version = version;
+		}
+
+		@Override
+		public void visit(int version, int access, String name, String signature, String superName,
+				String[] interfaces) {
+			parsed++;
+			classInsns = 0;
+		}
+
+		@Override
+		public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+				String[] exceptions) {
+			return new MethodVisitor(Opcodes.ASM9) {
+				@Override
+				public void visitInsn(int opcode) {
+					insns++;
+					classInsns++;
+				}
+			};
+		}
+
+		@Override
+		public String getCacheVersion() {
+			return version;
+		}
+
+		@Override
+		public void writeResults(DataOutput out) throws IOException {
+			out.writeInt(classInsns);
+		}
+
+		@Override
+		public void readResults(DataInput in) throws IOException {
+			insns += in.readInt();
+		}
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+public class SymbolTableTest {
+
+	@Test
+	public void testConcurrentIds() throws Exception {
+		SymbolTable symbols = new SymbolTable();
+		int numSymbols = 10000;
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<int[]>> futures = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				futures.add(executor.submit(() -> {
+					int[] ids = new int[numSymbols];
+					for (int i = 0; i < numSymbols; i++) {
+						ids[i] = symbols.id("java/lang/Symbol" + i);
+					}
+					return ids;
+				}));
+			}
+
+			int[] first = futures.get(0).get();
+			for (Future<int[]> future : futures) {
+				Assert.assertArrayEquals(first, future.get());
+			}
+			Assert.assertEquals(numSymbols, symbols.size());
+			boolean[] seen = new boolean[numSymbols];
+			for (int i = 0; i < numSymbols; i++) {
+				Assert.assertEquals("java/lang/Symbol" + i, symbols.symbol(first[i]));
+				Assert.assertFalse(seen[first[i]]);
+				seen[first[i]] = true;
+			}
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		}
+
+		Assert.assertEquals(-1, symbols.find("java/lang/Missing"));
+		Assert.assertEquals(numSymbols, symbols.size());
+	}
+
+	@Test
+	public void testSymbolicInstructions() throws IOException {
+		CallCollector calls = new CallCollector();
+		IdCollector ids = new IdCollector();
+		DelegatingClassVisitor dcv = new DelegatingClassVisitor(Opcodes.ASM9, Arrays.asList(calls, ids),
+				DelegatingClassVisitor.POOLED);
+		try (InputStream is = SymbolTableTest.class
+				.getResourceAsStream("/" + SymbolTableTest.class.getName().replace('.', '/') + ".class")) {
+			dcv.accept(new ClassReader(is));
+		}
+
+		SymbolTable symbols = dcv.getSymbolTable();
+		Assert.assertFalse(calls.calls.isEmpty());
+		Assert.assertEquals(calls.calls.size(), ids.calls.size());
+		for (int i = 0; i < ids.calls.size(); i++) {
+			int[] call = ids.calls.get(i);
+			Assert.assertEquals(calls.calls.get(i),
+					symbols.symbol(call[0]) + '.' + symbols.symbol(call[1]) + symbols.symbol(call[2]));
+		}
+
+		IdCollector alone = new IdCollector();
+		DelegatingClassVisitor shared = new DelegatingClassVisitor(Opcodes.ASM9, Arrays.asList(alone),
+				DelegatingClassVisitor.POOLED);
+		shared.setSymbolTable(symbols);
+		try (InputStream is = SymbolTableTest.class
+				.getResourceAsStream("/" + SymbolTableTest.class.getName().replace('.', '/') + ".class")) {
+			int size = symbols.size();
+			shared.accept(new ClassReader(is));
+			Assert.assertEquals(size, symbols.size());
+		}
+		Assert.assertEquals(ids.calls.size(), alone.calls.size());
+		for (int i = 0; i < ids.calls.size(); i++) {
+			Assert.assertArrayEquals(ids.calls.get(i), alone.calls.get(i));
+		}
+	}
+
+	@Test
+	public void testMeteredSymbolicInstructions() throws IOException {
+		CallCollector calls = new CallCollector();
+		IdCollector ids = new IdCollector();
+		DelegatingClassVisitor dcv = new DelegatingClassVisitor(Opcodes.ASM9, Arrays.asList(calls, ids),
+				DelegatingClassVisitor.METRICS);
+		try (InputStream is = SymbolTableTest.class
+				.getResourceAsStream("/" + SymbolTableTest.class.getName().replace('.', '/') + ".class")) {
+			dcv.accept(new ClassReader(is));
+		}
+
+		SymbolTable symbols = dcv.getSymbolTable();
+		Assert.assertFalse(calls.calls.isEmpty());
+		Assert.assertEquals(calls.calls.size(), ids.calls.size());
+		Assert.assertEquals(Long.valueOf(ids.calls.size()),
+				dcv.getMetrics().get(1).getEventCounts().get("MethodVisitor.visitMethodInsnIds"));
+		int[] call = ids.calls.get(0);
+		Assert.assertEquals(calls.calls.get(0),
+				symbols.symbol(call[0]) + '.' + symbols.symbol(call[1]) + symbols.symbol(call[2]));
+
+		IdCollector alone = new IdCollector();
+		try (InputStream is = SymbolTableTest.class
+				.getResourceAsStream("/" + SymbolTableTest.class.getName().replace('.', '/') + ".class")) {
+			new DelegatingClassVisitor(Opcodes.ASM9, Arrays.asList(alone),
+					DelegatingClassVisitor.METRICS | DelegatingClassVisitor.POOLED).accept(new ClassReader(is));
+		}
+		Assert.assertEquals(ids.calls.size(), alone.calls.size());
+	}
+
+	@Test
+	public void testDirectDelegatorsShareIds() {
+		SymbolTable symbols = new SymbolTable();
+		IdCollector ids = new IdCollector();
+		for (int i = 0; i < 2; i++) {
+			DelegatingMethodVisitor dmv = new DelegatingMethodVisitor(Opcodes.ASM9,
+					Arrays.asList(ids.visitMethod(Opcodes.ACC_PUBLIC, "run" + i, "()V", null, null)));
+			dmv.setSymbolTable(symbols);
+			Assert.assertSame(symbols, dmv.getSymbolTable());
+			dmv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Thread", "yield", "()V", false);
+		}
+
+		Assert.assertEquals(2, ids.calls.size());
+		Assert.assertArrayEquals(ids.calls.get(0), ids.calls.get(1));
+		Assert.assertEquals("java/lang/Thread", symbols.symbol(ids.calls.get(0)[0]));
+	}
+
+	static class CallCollector extends ClassVisitor {
+		List<String> calls = new ArrayList<>();
+
+		CallCollector() {
+			super(Opcodes.ASM9);
+		}
+
+		@Override
+		public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+				String[] exceptions) {
+			return new MethodVisitor(Opcodes.ASM9) {
+				@Override
+				public void visitMethodInsn(int opcode, String owner, String name, String descriptor,
+						boolean isInterface) {
+					calls.add(owner + '.' + name + descriptor);
+				}
+			};
+		}
+	}
+
+	static class IdCollector extends ClassVisitor {
+		List<int[]> calls = new ArrayList<>();
+
+		IdCollector() {
+			super(Opcodes.ASM9);
+		}
+
+		@Override
+		public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+				String[] exceptions) {
+			return new IdMethodVisitor();
+		}
+
+		class IdMethodVisitor extends MethodVisitor implements SymbolicInstructions {
+
+			IdMethodVisitor() {
+				super(Opcodes.ASM9);
+			}
+
+			@Override
+			public void visitMethodInsnIds(int opcode, int owner, int name, int descriptor, boolean isInterface) {
+				calls.add(new int[] { owner, name, descriptor });
+			}
+		}
+	}
+}
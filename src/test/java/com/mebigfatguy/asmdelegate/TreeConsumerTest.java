@@ -0,0 +1,126 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import com.mebigfatguy.asmdelegate.DelegationFixture.InsnCounter;
+
+public class TreeConsumerTest {
+
+	@Test
+	public void testTreeConsumers() throws IOException {
+		InsnCounter counter = new InsnCounter();
+		TreeCollector all = new TreeCollector(MemberMatcher.ANY);
+		TreeCollector accepts = new TreeCollector(MemberMatcher.ANY.named("accept"));
+		DelegationFixture.accept(new DelegatingClassVisitor(Opcodes.ASM7, Arrays.asList(counter, all, accepts)), 0);
+
+		Assert.assertNotNull(all.tree);
+		Assert.assertSame(all.tree, accepts.tree);
+		Assert.assertEquals(DelegationFixture.NAME, all.tree.name);
+		Assert.assertEquals(counter.methods, all.tree.methods.size());
+		int insns = 0;
+		for (MethodNode method : all.tree.methods) {
+			for (AbstractInsnNode insn : method.instructions) {
+				if (insn.getType() == AbstractInsnNode.INSN) {
+					insns++;
+				}
+			}
+		}
+		Assert.assertEquals(counter.insns, insns);
+
+		TreeCollector alone = new TreeCollector(MemberMatcher.ANY.named("accept"));
+		DelegationFixture.accept(new DelegatingClassVisitor(Opcodes.ASM7, Arrays.asList(alone),
+				DelegatingClassVisitor.POOLED), 0);
+		Assert.assertNotSame(all.tree, alone.tree);
+		Assert.assertEquals(1, alone.tree.methods.size());
+		Assert.assertEquals("accept", alone.tree.methods.get(0).name);
+		Assert.assertTrue(alone.tree.methods.get(0).instructions.size() > 0);
+		Assert.assertFalse(alone.tree.innerClasses.isEmpty());
+	}
+
+	@Test
+	public void testTreeIsReadOnly() throws IOException {
+		TreeCollector meddler = new TreeCollector(MemberMatcher.ANY) {
+			@Override
+			public void visitTree(ClassNode tree) {
+				super.visitTree(tree);
+				MethodNode method = tree.methods.get(0);
+				try {
+					tree.methods.remove(0);
+					Assert.fail("Expected the methods to be unmodifiable");
+				} catch (UnsupportedOperationException e) {
+					// the next consumer still sees every method
+				}
+				try {
+					method.instructions.remove(method.instructions.getFirst());
+					Assert.fail("Expected the instructions to be unmodifiable");
+				} catch (UnsupportedOperationException e) {
+					// the next consumer still sees every instruction
+				}
+				tree.accept(new ClassWriter(0));
+			}
+		};
+		TreeCollector other = new TreeCollector(MemberMatcher.ANY);
+		InsnCounter counter = new InsnCounter();
+		DelegationFixture.accept(new DelegatingClassVisitor(Opcodes.ASM7, Arrays.asList(meddler, other, counter)), 0);
+
+		Assert.assertSame(meddler.tree, other.tree);
+		Assert.assertEquals(counter.methods, other.tree.methods.size());
+		int insns = 0;
+		for (MethodNode method : other.tree.methods) {
+			for (AbstractInsnNode insn : method.instructions) {
+				if (insn.getType() == AbstractInsnNode.INSN) {
+					insns++;
+				}
+			}
+		}
+		Assert.assertEquals(counter.insns, insns);
+	}
+
+	static class TreeCollector extends ClassVisitor implements TreeConsumer, MemberFilter {
+		private final MemberMatcher methodMatcher;
+		ClassNode tree;
+
+		TreeCollector(MemberMatcher methodMatcher) {
+			super(Opcodes.ASM7);
+			this.methodMatcher = methodMatcher;
+		}
+
+		@Override
+		public MemberMatcher getMethodMatcher() {
+			return methodMatcher;
+		}
+
+		@Override
+		public void visitTree(ClassNode tree) {
+			this.tree = tree;
+		}
+	}
+}
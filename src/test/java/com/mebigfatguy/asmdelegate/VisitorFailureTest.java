@@ -0,0 +1,107 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import com.mebigfatguy.asmdelegate.DelegatingClassVisitorTest.CV1;
+import com.mebigfatguy.asmdelegate.DelegationFixture.InsnCounter;
+
+public class VisitorFailureTest {
+
+	@Test
+	public void testIsolated() throws IOException {
+		InsnCounter counter = new InsnCounter();
+		Thrower thrower = new Thrower();
+		DelegatingClassVisitor dcv = new DelegatingClassVisitor(Opcodes.ASM7, Arrays.asList(thrower, counter),
+				DelegatingClassVisitor.ISOLATED | DelegatingClassVisitor.POOLED);
+		DelegationFixture.accept(dcv, 0);
+
+		Assert.assertTrue(counter.insns > 1);
+		Assert.assertTrue(counter.ended);
+		Assert.assertEquals(1, thrower.insns);
+		Assert.assertFalse(thrower.ended);
+
+		List<VisitorFailure> failures = dcv.getFailures();
+		Assert.assertEquals(1, failures.size());
+		Assert.assertSame(thrower, failures.get(0).getVisitor());
+		Assert.assertEquals(DelegationFixture.NAME,
+				failures.get(0).getClassName());
+		Assert.assertTrue(failures.get(0).getCause() instanceof IllegalStateException);
+
+		try {
+			DelegationFixture.accept(
+					new DelegatingClassVisitor(Opcodes.ASM7, Arrays.asList(new Thrower(), new InsnCounter())), 0);
+			Assert.fail("Expected the failure to abort the visit");
+		} catch (IllegalStateException e) {
+			// without isolation the child's failure stops the parse
+		}
+	}
+
+	@Test
+	public void testLoneSubVisitorIsIsolated() throws IOException {
+		Thrower thrower = new Thrower();
+		CV1 cv1 = new CV1();
+		DelegatingClassVisitor dcv = new DelegatingClassVisitor(Opcodes.ASM7, Arrays.asList(thrower, cv1),
+				DelegatingClassVisitor.ISOLATED | DelegatingClassVisitor.POOLED);
+		DelegationFixture.accept(dcv, 0);
+
+		Assert.assertTrue(cv1.isVisited);
+		Assert.assertEquals(1, thrower.insns);
+		Assert.assertEquals(1, dcv.getFailures().size());
+		Assert.assertSame(thrower, dcv.getFailures().get(0).getVisitor());
+	}
+
+	@Test
+	public void testWriterFailureAborts() throws IOException {
+		InsnCounter counter = new InsnCounter();
+		DelegatingClassVisitor dcv = new DelegatingClassVisitor(Opcodes.ASM7, new Thrower(),
+				Arrays.asList(counter), DelegatingClassVisitor.ISOLATED);
+		try {
+			DelegationFixture.accept(dcv, 0);
+			Assert.fail("Expected the writer's failure to abort the visit");
+		} catch (IllegalStateException e) {
+			// the writer's output can't be left half written
+		}
+		Assert.assertTrue(dcv.getFailures().isEmpty());
+	}
+
+	static class Thrower extends InsnCounter {
+
+		@Override
+		public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+				String[] exceptions) {
+			methods++;
+			return new MethodVisitor(Opcodes.ASM7) {
+				@Override
+				public void visitInsn(int opcode) {
+					insns++;
+					throw new IllegalStateException("Failed on " + name);
+				}
+			};
+		}
+	}
+}
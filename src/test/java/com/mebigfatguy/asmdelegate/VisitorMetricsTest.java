@@ -0,0 +1,91 @@
+/*
+ * asm-delegate - a set of asm visitors that allows multiple visitors to be used at the same time, simply
+ *
+ * Copyright 2019-2024 MeBigFatGuy.com
+ * Copyright 2019-2024 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.mebigfatguy.asmdelegate;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import com.mebigfatguy.asmdelegate.DelegatingClassVisitorTest.CV1;
+import com.mebigfatguy.asmdelegate.DelegationFixture.InsnCounter;
+
+public class VisitorMetricsTest {
+
+	@Test
+	public void testMetrics() throws IOException {
+		InsnCounter counter = new InsnCounter();
+		InsnCounter other = new InsnCounter();
+		CV1 cv1 = new CV1();
+		DelegatingClassVisitor dcv = new DelegatingClassVisitor(Opcodes.ASM7, Arrays.asList(counter, other, cv1),
+				DelegatingClassVisitor.METRICS | DelegatingClassVisitor.POOLED);
+		DelegationFixture.accept(dcv, 0);
+
+		Assert.assertTrue(cv1.isVisited);
+		Assert.assertEquals(counter.insns, other.insns);
+
+		List<VisitorMetrics> metrics = dcv.getMetrics();
+		Assert.assertEquals(3, metrics.size());
+
+		VisitorMetrics counterMetrics = metrics.get(0);
+		Assert.assertEquals(InsnCounter.class.getName(), counterMetrics.getVisitorClassName());
+		Assert.assertEquals(1, counterMetrics.getClassesVisited());
+		Assert.assertEquals(Long.valueOf(counter.insns), counterMetrics.getEventCounts().get("MethodVisitor.visitInsn"));
+		Assert.assertEquals(Long.valueOf(counter.methods),
+				counterMetrics.getEventCounts().get("ClassVisitor.visitMethod"));
+		Assert.assertNull(counterMetrics.getEventCounts().get("MethodVisitor.visitVarInsn"));
+		Assert.assertEquals(counter.methods, counterMetrics.getSubVisitorsCreated());
+		Assert.assertEquals(0, counterMetrics.getSubVisitorsDeclined());
+
+		VisitorMetrics cv1Metrics = metrics.get(2);
+		Assert.assertEquals(Long.valueOf(1), cv1Metrics.getEventCounts().get("ClassVisitor.visit"));
+		Assert.assertEquals(1, cv1Metrics.getInvocations());
+
+		Assert.assertTrue(new DelegatingClassVisitor(Opcodes.ASM7, Arrays.asList(new CV1())).getMetrics().isEmpty());
+	}
+
+	@Test
+	public void testFailingEventsAreTimed() {
+		ChildMetrics metrics = new ChildMetrics(new CV1());
+		MethodVisitor failing = MeteredVisitors.meter(Opcodes.ASM7, new MethodVisitor(Opcodes.ASM7) {
+			@Override
+			public void visitInsn(int opcode) {
+				throw new IllegalStateException("Failed");
+			}
+		}, metrics);
+
+		for (int i = 0; i < 64; i++) {
+			try {
+				failing.visitInsn(Opcodes.NOP);
+				Assert.fail("Expected the child's failure");
+			} catch (IllegalStateException e) {
+				// the sample is still closed
+			}
+		}
+
+		VisitorMetrics snapshot = metrics.snapshot();
+		Assert.assertEquals(Long.valueOf(64), snapshot.getEventCounts().get("MethodVisitor.visitInsn"));
+		Assert.assertTrue(snapshot.getEstimatedNanos() > 0);
+	}
+}